@@ -2,10 +2,17 @@ package com.taxi.rides;
 
 import com.google.common.base.Stopwatch;
 import com.taxi.rides.RidesTable.Settings;
+import com.taxi.rides.server.QueryServer;
+import com.taxi.rides.storage.PartitionPattern;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import picocli.CommandLine;
 
@@ -22,14 +29,12 @@ public class App implements Runnable, CommandLine.ITypeConverter<LocalDateTime>
 
   @CommandLine.Option(
       names = {"--from", "-b"},
-      required = true,
-      description = "Start date to query CSV storage")
+      description = "Start date to query CSV storage(required if not in server mode)")
   private LocalDateTime startDate;
 
   @CommandLine.Option(
       names = {"--until", "-u"},
-      required = true,
-      description = "End date to query CSV storage")
+      description = "End date to query CSV storage(required if not in server mode)")
   private LocalDateTime endDate;
 
   @CommandLine.Option(
@@ -50,6 +55,38 @@ public class App implements Runnable, CommandLine.ITypeConverter<LocalDateTime>
       description = "Step used by sparse indexes(each 'step' row will be indexed)")
   private int skipIndex;
 
+  @CommandLine.Option(
+      names = {"--index-granularity"},
+      defaultValue = "512",
+      description =
+          "Max size(in KB) of file region between two sparse index marks(mark is placed when"
+              + " either 'index-step' rows or this size reached)")
+  private long skipIndexKb;
+
+  @CommandLine.Option(
+      names = {"--index-refine-hits"},
+      defaultValue = "4",
+      description =
+          "Refine sparse index region with finer marks after it contains boundary of scanned rows"
+              + " this count of times(0 disables refinement)")
+  private int refineIndexHits;
+
+  @CommandLine.Option(
+      names = {"--coalesce-gap"},
+      defaultValue = "64",
+      description =
+          "Max gap(in KB) between file regions matched by indexes which is read instead of seek to"
+              + " the next region")
+  private long coalesceGapKb;
+
+  @CommandLine.Option(
+      names = {"--direct-scan-threshold"},
+      defaultValue = "1000",
+      description =
+          "Queries expected to scan more data(in MB) than this threshold read files bypassing OS"
+              + " page cache(0 disables direct I/O)")
+  private long directScanMb;
+
   @CommandLine.Option(
       names = {"--split-size"},
       defaultValue = "100",
@@ -71,12 +108,81 @@ public class App implements Runnable, CommandLine.ITypeConverter<LocalDateTime>
       description = "Disable not-null index")
   boolean disableNotNullIndex = false;
 
+  @CommandLine.Option(
+      names = {"--sample-size"},
+      defaultValue = "1024",
+      description =
+          "Count of trips sampled from each split during initialization for approximate queries"
+              + "(0 disables sampling)")
+  private int sampleSize;
+
+  @CommandLine.Option(
+      names = {"--rollup"},
+      description =
+          "Materialize rollup 'measure:group' during initialization, e.g."
+              + " trip_distance:passenger_count(can be repeated)")
+  private List<String> rollups = List.of();
+
+  @CommandLine.Option(
+      names = {"--partition-pattern"},
+      description =
+          "Extract month/day partition of file from its path, e.g."
+              + " yellow_tripdata_{year}-{month}.csv or year={year}/month={month}/")
+  private String partitionPattern;
+
+  @CommandLine.Option(
+      names = {"--lazy-partitions"},
+      description = "Index partitioned file when query touches its partition for the first time")
+  boolean lazyPartitions = false;
+
+  @CommandLine.Option(
+      names = {"--approx-error"},
+      description = "Run approximate query: target relative error of averages(e.g., 0.01 for 1%)")
+  private Double approxError;
+
+  @CommandLine.Option(
+      names = {"--approx-deadline"},
+      defaultValue = "1000",
+      description = "Max time(in ms) spent on approximate query")
+  private long approxDeadlineMs;
+
+  @CommandLine.Option(
+      names = {"--socket"},
+      description = "Run in server mode: serve queries over Unix-domain socket at this path")
+  private Path socketPath;
+
+  @CommandLine.Option(
+      names = {"--port"},
+      description = "Run in server mode: serve queries over TCP port on loopback interface")
+  private Integer port;
+
+  @CommandLine.Option(
+      names = {"--max-concurrent-queries"},
+      defaultValue = "2",
+      description = "Server mode: count of queries which can be executed concurrently")
+  private int maxConcurrentQueries;
+
+  @CommandLine.Option(
+      names = {"--admission-timeout"},
+      defaultValue = "1000",
+      description =
+          "Server mode: time(in ms) query waits for execution slot before rejected as busy")
+  private long admissionTimeoutMs;
+
+  @CommandLine.Option(
+      names = {"--max-connections"},
+      defaultValue = "64",
+      description = "Server mode: max count of concurrently opened client connections")
+  private int maxConnections;
+
   @CommandLine.Option(
       names = {"-h", "--help"},
       usageHelp = true,
       description = "Print help")
   boolean help;
 
+  @CommandLine.Spec private CommandLine.Model.CommandSpec spec;
+
   private RidesTable table;
 
   public static void main(String[] args) {
@@ -90,26 +196,56 @@ public class App implements Runnable, CommandLine.ITypeConverter<LocalDateTime>
       CommandLine.usage(new App(), System.out);
       return;
     }
+    boolean serverMode = socketPath != null || port != null;
+    if (!serverMode && (startDate == null || endDate == null)) {
+      throw new CommandLine.ParameterException(
+          spec.commandLine(), "--from and --until are required if not in server mode");
+    }
 
-    table =
-        new RidesTable(
-            new Settings(
+    var settings =
+        new Settings(
                 initThreads,
                 queryThreads,
                 skipIndex,
                 splitSize * 1024 * 1024,
                 disableBucketIndex,
                 disableNotNullIndex,
-                disableMinMaxIndex));
+                disableMinMaxIndex)
+            .withSkipIndexBytes(skipIndexKb * 1024)
+            .withRefineIndexHits(refineIndexHits)
+            .withCoalesceGapBytes(coalesceGapKb * 1024)
+            .withDirectScanBytes(directScanMb * 1024 * 1024)
+            .withSampleSize(sampleSize)
+            .withRollups(
+                rollups.stream().map(RollupDefinition::parse).toArray(RollupDefinition[]::new));
+    if (partitionPattern != null) {
+      settings.withPartitions(PartitionPattern.compile(partitionPattern), lazyPartitions);
+    }
+    table = new RidesTable(settings);
     var sw = Stopwatch.createStarted();
     System.out.println("Initializing from folder: " + csvFolder);
     table.init(csvFolder);
     System.out.println("Initialization took " + sw.elapsed(TimeUnit.SECONDS) + "sec");
+    System.out.println(
+        "Indexes occupy "
+            + table.indexMemoryUsage() / 1024
+            + "KB("
+            + table.offHeapIndexMemoryUsage() / 1024
+            + "KB off-heap)");
     System.out.println();
 
+    if (serverMode) {
+      serve();
+      return;
+    }
+
     sw.reset();
     sw.start();
-    var res = table.getAverageDistances(startDate, endDate);
+    Map<Integer, ?> res =
+        approxError != null
+            ? table.getAverageDistancesApprox(
+                startDate, endDate, approxError, Duration.ofMillis(approxDeadlineMs))
+            : table.getAverageDistances(startDate, endDate);
     long timeInSec = sw.elapsed(TimeUnit.SECONDS);
     if (timeInSec == 0) {
       System.out.println("Query took: " + sw.elapsed(TimeUnit.MILLISECONDS) + "ms");
@@ -117,10 +253,46 @@ public class App implements Runnable, CommandLine.ITypeConverter<LocalDateTime>
       System.out.println("Query took: " + timeInSec + "sec");
     }
     System.out.println();
-    System.out.println("Average distances(passengers count to average distance):");
+    System.out.println(
+        approxError != null
+            ? "Average distances(passengers count to estimated average distance [95% CI]):"
+            : "Average distances(passengers count to average distance):");
     res.forEach((k, v) -> System.out.println(k + " : " + v));
   }
 
+  private void serve() {
+    var serverSettings =
+        new QueryServer.Settings(maxConnections, maxConcurrentQueries, admissionTimeoutMs);
+    try {
+      // not a resource of try statement: it's also closed by shutdown hook
+      var server =
+          socketPath != null
+              ? QueryServer.startOnSocket(table, serverSettings, socketPath)
+              : QueryServer.startOnPort(table, serverSettings, port);
+      System.out.println("Serving queries at " + server.localAddress());
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> closeQuietly(server)));
+      try {
+        server.awaitTermination();
+      } finally {
+        server.close();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      table.close();
+    }
+  }
+
+  private static void closeQuietly(QueryServer server) {
+    try {
+      server.close();
+    } catch (IOException e) {
+      // exiting anyway
+    }
+  }
+
   @Override
   public LocalDateTime convert(String value) {
     return LocalDateTime.parse(value, DATE_FORMATTER);
@@ -0,0 +1,74 @@
+package com.taxi.rides;
+
+import com.taxi.rides.query.aggregations.DoubleAvgAggregation;
+import com.taxi.rides.storage.Row;
+import com.taxi.rides.storage.SplitCollector;
+import com.taxi.rides.storage.schema.Column;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Rollup of one split(see {@link RollupDefinition}) collected while split is indexed. Rollup
+ * contains one cell per distinct combination of pickup day, dropoff day and group value. Only rows
+ * which have all rollup columns are aggregated.
+ */
+final class DayRollup implements SplitCollector {
+
+  private final List<Column<?>> columns;
+  private final HashMap<Cell, DoubleAvgAggregation> cells = new HashMap<>();
+
+  /**
+   * @param columns Pickup time, dropoff time, group and measure columns.
+   */
+  DayRollup(List<Column<?>> columns) {
+    this.columns = List.copyOf(columns);
+  }
+
+  @Override
+  public List<Column<?>> columns() {
+    return columns;
+  }
+
+  @Override
+  public void collect(long rowId, Row row) {
+    var pickup = (LocalDateTime) row.get(0);
+    var dropoff = (LocalDateTime) row.get(1);
+    var group = (Number) row.get(2);
+    var measure = (Number) row.get(3);
+    if (pickup == null || dropoff == null || group == null || measure == null) {
+      return;
+    }
+    var cell =
+        new Cell(
+            pickup.toLocalDate().toEpochDay(),
+            dropoff.toLocalDate().toEpochDay(),
+            group.longValue());
+    cells.computeIfAbsent(cell, k -> new DoubleAvgAggregation()).add(measure.doubleValue());
+  }
+
+  /**
+   * Aggregate rows which pickup and dropoff days are both inside passed range of days.
+   *
+   * @return Map of group value to aggregate.
+   */
+  HashMap<Long, DoubleAvgAggregation> aggregate(long firstEpochDay, long lastEpochDay) {
+    var res = new HashMap<Long, DoubleAvgAggregation>();
+    cells.forEach(
+        (cell, agg) -> {
+          if (cell.pickupDay >= firstEpochDay
+              && cell.pickupDay <= lastEpochDay
+              && cell.dropoffDay >= firstEpochDay
+              && cell.dropoffDay <= lastEpochDay) {
+            res.merge(cell.group, agg, DoubleAvgAggregation::merge);
+          }
+        });
+    return res;
+  }
+
+  int cellsCount() {
+    return cells.size();
+  }
+
+  private record Cell(long pickupDay, long dropoffDay, long group) {}
+}
@@ -0,0 +1,15 @@
+package com.taxi.rides;
+
+import java.time.Duration;
+
+/**
+ * Scheduling metrics of queries of one priority class(see {@link RidesTable#schedulerMetrics()}).
+ *
+ * @param queries Count of queries executed in the class.
+ * @param tasks Count of started split scan tasks.
+ * @param avgQueueWait Average time between submission and start of task.
+ * @param maxQueueWait Max time between submission and start of task.
+ * @param avgRunTime Average execution time of task.
+ */
+public record QueryClassMetrics(
+    long queries, long tasks, Duration avgQueueWait, Duration maxQueueWait, Duration avgRunTime) {}
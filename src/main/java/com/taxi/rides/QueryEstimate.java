@@ -0,0 +1,10 @@
+package com.taxi.rides;
+
+/**
+ * Estimated cost of query computed from column statistics(see {@link
+ * RidesTable#estimateTrips(java.time.LocalDateTime, java.time.LocalDateTime)}).
+ *
+ * @param rows Estimated count of rows matched by query predicate.
+ * @param bytes Estimated count of CSV bytes which contain matched rows.
+ */
+public record QueryEstimate(long rows, long bytes) {}
@@ -0,0 +1,65 @@
+package com.taxi.rides;
+
+import com.taxi.rides.storage.CancellationToken;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Handle of query which is executed asynchronously. Query scans splits of the table in parallel,
+ * handle reports how many splits are already scanned and can be used to cancel the query.
+ *
+ * @param <T> Type of query result.
+ */
+public final class QueryHandle<T> {
+
+  private final CancellationToken cancellation;
+  private final CompletableFuture<T> result = new CompletableFuture<>();
+  private final int totalSplits;
+  private final AtomicInteger completedSplits = new AtomicInteger();
+
+  QueryHandle(CancellationToken cancellation, int totalSplits) {
+    this.cancellation = cancellation;
+    this.totalSplits = totalSplits;
+  }
+
+  /**
+   * Returns future of the final query result. Future fails with {@link CancellationException} if
+   * query is cancelled or its deadline expired.
+   */
+  public CompletableFuture<T> result() {
+    return result;
+  }
+
+  /** Cancel the query: result future fails immediately, running scans stop cooperatively. */
+  public void cancel() {
+    cancellation.cancel();
+    result.completeExceptionally(new CancellationException("Query cancelled"));
+  }
+
+  public int totalSplits() {
+    return totalSplits;
+  }
+
+  public int completedSplits() {
+    return completedSplits.get();
+  }
+
+  CancellationToken cancellation() {
+    return cancellation;
+  }
+
+  void splitCompleted() {
+    completedSplits.incrementAndGet();
+  }
+
+  void complete(T value) {
+    result.complete(value);
+  }
+
+  void fail(Throwable error) {
+    // stop scans which are still running
+    cancellation.cancel();
+    result.completeExceptionally(error);
+  }
+}
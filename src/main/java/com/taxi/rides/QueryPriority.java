@@ -0,0 +1,13 @@
+package com.taxi.rides;
+
+/**
+ * Priority class of query(see {@link QueryScheduler}). Split scans of interactive queries are
+ * always started before scans of batch queries, count of batch queries which scan splits
+ * concurrently is limited.
+ */
+public enum QueryPriority {
+  /** Short latency sensitive query(e.g., dashboard query). */
+  INTERACTIVE,
+  /** Heavy query which may scan large part of the table(e.g., report over the whole year). */
+  BATCH
+}
@@ -0,0 +1,249 @@
+package com.taxi.rides;
+
+import com.google.common.base.Preconditions;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Schedules split scans of concurrent queries on shared worker pool. Query submits each split scan
+ * as separate task, scheduler starts at most one task per worker thread and chooses next task when
+ * running one completes. So long query doesn't occupy workers until it completes: workers are
+ * re-assigned after each split and short queries interleave with it at split granularity.
+ *
+ * <p>Next task is chosen as follows:
+ *
+ * <ul>
+ *   <li>tasks of {@link QueryPriority#INTERACTIVE} queries are started before tasks of {@link
+ *       QueryPriority#BATCH} queries;
+ *   <li>queries of the same class are served in round-robin order;
+ *   <li>each query runs at most 'task budget' tasks concurrently;
+ *   <li>at most 'max heavy queries' batch queries run tasks concurrently, other batch queries wait
+ *       until one of them finishes.
+ * </ul>
+ *
+ * Scheduler collects queue wait and run time of tasks per priority class(see {@link #metrics()}).
+ */
+final class QueryScheduler {
+
+  private final ExecutorService workers;
+  private final int slots;
+  private final int taskBudget;
+  private final int maxHeavyQueries;
+  private final Map<QueryPriority, ArrayDeque<Query>> queries = new EnumMap<>(QueryPriority.class);
+  private final Map<QueryPriority, ClassStats> stats = new EnumMap<>(QueryPriority.class);
+  private int runningTasks;
+  private int runningHeavyQueries;
+  private boolean closed;
+
+  /**
+   * @param workers Pool which executes tasks.
+   * @param slots Max count of concurrently running tasks, usually count of worker threads.
+   * @param taskBudget Max count of concurrently running tasks of one query.
+   * @param maxHeavyQueries Max count of batch queries which run tasks concurrently.
+   */
+  QueryScheduler(ExecutorService workers, int slots, int taskBudget, int maxHeavyQueries) {
+    Preconditions.checkArgument(slots > 0, "Slots count must be positive");
+    Preconditions.checkArgument(taskBudget > 0, "Task budget must be positive");
+    Preconditions.checkArgument(maxHeavyQueries > 0, "Max heavy queries must be positive");
+    this.workers = workers;
+    this.slots = slots;
+    this.taskBudget = taskBudget;
+    this.maxHeavyQueries = maxHeavyQueries;
+    for (QueryPriority priority : QueryPriority.values()) {
+      queries.put(priority, new ArrayDeque<>());
+      stats.put(priority, new ClassStats());
+    }
+  }
+
+  /**
+   * Register new query. Returned query is executor of its tasks, it must be {@link Query#finish()
+   * finished} when all tasks are submitted and completed(or not required anymore).
+   */
+  synchronized Query newQuery(QueryPriority priority) {
+    if (closed) {
+      throw new RejectedExecutionException("Scheduler is closed");
+    }
+    var query = new Query(priority);
+    queries.get(priority).add(query);
+    stats.get(priority).queries.increment();
+    return query;
+  }
+
+  /** Returns metrics of each priority class. */
+  Map<QueryPriority, QueryClassMetrics> metrics() {
+    var res = new EnumMap<QueryPriority, QueryClassMetrics>(QueryPriority.class);
+    stats.forEach((priority, classStats) -> res.put(priority, classStats.snapshot()));
+    return res;
+  }
+
+  /**
+   * Stop accepting new tasks. Tasks which are already queued are passed to workers, so queries
+   * which are in progress complete as if scheduler was not closed.
+   */
+  synchronized void close() {
+    closed = true;
+    for (ArrayDeque<Query> classQueries : queries.values()) {
+      for (Query query : classQueries) {
+        Task task;
+        while ((task = query.pending.poll()) != null) {
+          startTask(task);
+        }
+      }
+    }
+  }
+
+  /** Start queued tasks while there are free slots. */
+  private synchronized void dispatch() {
+    while (runningTasks < slots) {
+      var next = pollNextTask();
+      if (next == null) {
+        return;
+      }
+      startTask(next);
+    }
+  }
+
+  private Task pollNextTask() {
+    for (QueryPriority priority : QueryPriority.values()) {
+      var classQueries = queries.get(priority);
+      for (int i = 0; i < classQueries.size(); i++) {
+        // rotate queries of the class to serve them in round-robin order
+        var query = classQueries.poll();
+        classQueries.add(query);
+        if (query.pending.isEmpty() || query.runningTasks >= taskBudget) {
+          continue;
+        }
+        if (priority == QueryPriority.BATCH && !query.admitted) {
+          if (runningHeavyQueries >= maxHeavyQueries) {
+            continue;
+          }
+          query.admitted = true;
+          runningHeavyQueries++;
+        }
+        return query.pending.poll();
+      }
+    }
+    return null;
+  }
+
+  private void startTask(Task task) {
+    var query = task.query;
+    runningTasks++;
+    query.runningTasks++;
+    try {
+      workers.execute(() -> runTask(task));
+    } catch (RejectedExecutionException e) {
+      runningTasks--;
+      query.runningTasks--;
+      throw e;
+    }
+  }
+
+  private void runTask(Task task) {
+    var query = task.query;
+    long startedAt = System.nanoTime();
+    var classStats = stats.get(query.priority);
+    classStats.queueWait(startedAt - task.queuedAt);
+    try {
+      task.command.run();
+    } finally {
+      classStats.runTime(System.nanoTime() - startedAt);
+      synchronized (this) {
+        runningTasks--;
+        query.runningTasks--;
+        removeIfDone(query);
+      }
+      dispatch();
+    }
+  }
+
+  private void removeIfDone(Query query) {
+    if (query.finished && query.pending.isEmpty() && query.runningTasks == 0) {
+      queries.get(query.priority).remove(query);
+    }
+  }
+
+  /** Tasks of one query, query is used as executor of its tasks. */
+  final class Query implements Executor {
+
+    private final QueryPriority priority;
+    private final ArrayDeque<Task> pending = new ArrayDeque<>();
+    private int runningTasks;
+    // batch query holds heavy query slot since its first task is started
+    private boolean admitted;
+    private boolean finished;
+
+    private Query(QueryPriority priority) {
+      this.priority = priority;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      synchronized (QueryScheduler.this) {
+        if (closed) {
+          throw new RejectedExecutionException("Scheduler is closed");
+        }
+        pending.add(new Task(this, command, System.nanoTime()));
+      }
+      dispatch();
+    }
+
+    /**
+     * Mark query as finished: heavy query slot is released and other batch queries can start. Tasks
+     * which are still queued are executed anyway.
+     */
+    void finish() {
+      synchronized (QueryScheduler.this) {
+        if (finished) {
+          return;
+        }
+        finished = true;
+        if (admitted) {
+          runningHeavyQueries--;
+        }
+        removeIfDone(this);
+      }
+      dispatch();
+    }
+  }
+
+  private record Task(Query query, Runnable command, long queuedAt) {}
+
+  private static final class ClassStats {
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder tasks = new LongAdder();
+    private final LongAdder totalQueueWaitNs = new LongAdder();
+    private final LongAccumulator maxQueueWaitNs = new LongAccumulator(Math::max, 0);
+    private final LongAdder completedTasks = new LongAdder();
+    private final LongAdder totalRunTimeNs = new LongAdder();
+
+    void queueWait(long nanos) {
+      tasks.increment();
+      totalQueueWaitNs.add(nanos);
+      maxQueueWaitNs.accumulate(nanos);
+    }
+
+    void runTime(long nanos) {
+      completedTasks.increment();
+      totalRunTimeNs.add(nanos);
+    }
+
+    QueryClassMetrics snapshot() {
+      long started = tasks.sum();
+      long completed = completedTasks.sum();
+      return new QueryClassMetrics(
+          queries.sum(),
+          started,
+          Duration.ofNanos(started == 0 ? 0 : totalQueueWaitNs.sum() / started),
+          Duration.ofNanos(maxQueueWaitNs.get()),
+          Duration.ofNanos(completed == 0 ? 0 : totalRunTimeNs.sum() / completed));
+    }
+  }
+}
@@ -0,0 +1,14 @@
+package com.taxi.rides;
+
+import java.math.BigDecimal;
+
+/**
+ * Revenue of trips(see {@link RidesTable#getRevenue}). Amounts are exact sums of values which are
+ * present in trip records, missing amounts are not counted.
+ *
+ * @param trips Count of trips.
+ * @param fares Sum of fare amounts.
+ * @param tips Sum of tip amounts.
+ * @param total Sum of total amounts charged to passengers.
+ */
+public record Revenue(long trips, BigDecimal fares, BigDecimal tips, BigDecimal total) {}
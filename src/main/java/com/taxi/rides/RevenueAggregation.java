@@ -0,0 +1,60 @@
+package com.taxi.rides;
+
+import com.taxi.rides.query.aggregations.DecimalSumAggregation;
+import com.taxi.rides.storage.schema.datatypes.DataType;
+
+/** Exact sums which compute {@link Revenue} of one split, can be merged with other splits. */
+final class RevenueAggregation {
+
+  private final DecimalSumAggregation fares;
+  private final DecimalSumAggregation tips;
+  private final DecimalSumAggregation total;
+  private long trips;
+
+  RevenueAggregation(int scale) {
+    this(
+        0,
+        new DecimalSumAggregation(scale),
+        new DecimalSumAggregation(scale),
+        new DecimalSumAggregation(scale));
+  }
+
+  private RevenueAggregation(
+      long trips,
+      DecimalSumAggregation fares,
+      DecimalSumAggregation tips,
+      DecimalSumAggregation total) {
+    this.trips = trips;
+    this.fares = fares;
+    this.tips = tips;
+    this.total = total;
+  }
+
+  /** Add amounts of one trip, scaled amounts can be {@link DataType#NULL_LONG}. */
+  void add(long fare, long tip, long totalAmount) {
+    trips++;
+    if (fare != DataType.NULL_LONG) {
+      fares.add(fare);
+    }
+    if (tip != DataType.NULL_LONG) {
+      tips.add(tip);
+    }
+    if (totalAmount != DataType.NULL_LONG) {
+      total.add(totalAmount);
+    }
+  }
+
+  /** Returns aggregation which contains trips of both aggregations. Arguments are not changed. */
+  RevenueAggregation merge(RevenueAggregation other) {
+    return new RevenueAggregation(
+        trips + other.trips,
+        fares.merge(other.fares),
+        tips.merge(other.tips),
+        total.merge(other.total));
+  }
+
+  Revenue computeResult() {
+    return new Revenue(
+        trips, fares.computeResult(), tips.computeResult(), total.computeResult());
+  }
+}
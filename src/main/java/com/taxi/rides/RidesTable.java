@@ -1,60 +1,146 @@
 package com.taxi.rides;
 
+import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Range;
+import com.taxi.rides.query.aggregations.ApproxAvgAggregation;
 import com.taxi.rides.query.aggregations.DoubleAvgAggregation;
+import com.taxi.rides.storage.CancellationToken;
+import com.taxi.rides.storage.ColumnStatistics;
+import com.taxi.rides.storage.CsvInput;
 import com.taxi.rides.storage.CsvStorageFile;
+import com.taxi.rides.storage.DimensionTable;
+import com.taxi.rides.storage.GzipCsvInput;
+import com.taxi.rides.storage.PartitionPattern;
+import com.taxi.rides.storage.PlainCsvInput;
 import com.taxi.rides.storage.QueryPredicate;
 import com.taxi.rides.storage.QueryPredicate.Between;
 import com.taxi.rides.storage.QueryPredicate.NotEqual;
 import com.taxi.rides.storage.Row;
 import com.taxi.rides.storage.RowReader;
+import com.taxi.rides.storage.SplitCatalog;
+import com.taxi.rides.storage.SplitCollector;
 import com.taxi.rides.storage.index.BucketColumnIndex;
 import com.taxi.rides.storage.index.ColumnIndex;
-import com.taxi.rides.storage.index.MinMaxColumnIndex;
+import com.taxi.rides.storage.index.IndexStatistics;
 import com.taxi.rides.storage.index.NotNullColumnIndex;
+import com.taxi.rides.storage.index.OutlierMinMaxColumnIndex;
 import com.taxi.rides.storage.index.RowOffsetLocator;
 import com.taxi.rides.storage.schema.Column;
 import com.taxi.rides.storage.schema.Schema;
 import com.taxi.rides.storage.schema.datatypes.ByteDataType;
+import com.taxi.rides.storage.schema.datatypes.DataType;
+import com.taxi.rides.storage.schema.datatypes.DecimalDataType;
+import com.taxi.rides.storage.schema.datatypes.DictionaryDataType;
 import com.taxi.rides.storage.schema.datatypes.DoubleDataType;
-import com.taxi.rides.storage.schema.datatypes.FloatDataType;
+import com.taxi.rides.storage.schema.datatypes.IntegralDataType;
 import com.taxi.rides.storage.schema.datatypes.ShortDataType;
-import com.taxi.rides.storage.schema.datatypes.StringDataType;
+import com.taxi.rides.storage.schema.datatypes.StringDictionary;
 import com.taxi.rides.storage.schema.datatypes.TimestampDataType;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
 import java.nio.file.FileVisitOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ToIntFunction;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public final class RidesTable implements AverageDistances {
 
+  // count of sub-regions created by row locator refinement inside each hot region
+  private static final int REFINE_FACTOR = 8;
+  private static final LocalTime LAST_SECOND_OF_DAY = LocalTime.of(23, 59, 59);
+  private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(10);
+  // count of fractional digits of monetary amounts
+  private static final int CENTS_SCALE = 2;
+  // limits size of accumulator arrays allocated by time series query
+  private static final int MAX_SERIES_BUCKETS = 1 << 20;
+  // max count of outlier rows kept by min-max index on each side of its range
+  private static final int MAX_OUTLIERS = 256;
+
   private final Settings settings;
   private final Schema csvSchema;
   private final ForkJoinPool workerPool;
+  // indexes files on init, refresh and first query of deferred partitions
+  private final ForkJoinPool initPool;
+  private final QueryScheduler scheduler;
+  private final IndexStatistics indexStatistics;
   private final Column<LocalDateTime> pickupDateCol;
   private final Column<LocalDateTime> dropoffDateCol;
   private final Column<Byte> passengerCountCol;
   private final Column<Double> tripDistanceCol;
-  private final List<Column> avgDistColumns;
-  private List<CsvStorageFile> csvFiles;
+  private final Column<BigDecimal> fareAmountCol;
+  private final Column<BigDecimal> tipAmountCol;
+  private final Column<BigDecimal> totalAmountCol;
+  private final Column<Short> pickupLocationCol;
+  private final Column<Short> dropoffLocationCol;
+  private final List<Column<?>> avgDistColumns;
+  private final List<Column<?>> tripStatsColumns;
+  private final List<Column<?>> revenueColumns;
+  private final Map<RollupDefinition, List<Column<?>>> rollupColumns = new HashMap<>();
+  private final AtomicBoolean refinementRunning = new AtomicBoolean();
+  private volatile TableSnapshot snapshot = TableSnapshot.of(List.of());
+  private Path dataDir;
 
   public RidesTable(Settings settings) {
     this.settings = settings;
     workerPool = new ForkJoinPool(settings.executionThreads);
+    initPool = new ForkJoinPool(settings.initThreads);
+    indexStatistics =
+        settings.indexStatistics != null ? settings.indexStatistics : new IndexStatistics();
+    scheduler =
+        new QueryScheduler(
+            workerPool,
+            settings.executionThreads,
+            settings.queryTaskBudget > 0 ? settings.queryTaskBudget : settings.executionThreads,
+            settings.maxHeavyQueries);
     pickupDateCol = new Column<>("tpep_pickup_datetime", new TimestampDataType());
     dropoffDateCol = new Column<>("tpep_dropoff_datetime", new TimestampDataType());
     passengerCountCol = new Column<>("passenger_count", new ByteDataType());
     tripDistanceCol = new Column<>("trip_distance", new DoubleDataType());
+    // monetary amounts are parsed into cents, so they can be summed exactly
+    fareAmountCol = new Column<>("fare_amount", new DecimalDataType(CENTS_SCALE));
+    tipAmountCol = new Column<>("tip_amount", new DecimalDataType(CENTS_SCALE));
+    totalAmountCol = new Column<>("total_amount", new DecimalDataType(CENTS_SCALE));
+    pickupLocationCol = new Column<>("PULocationID", new ShortDataType());
+    dropoffLocationCol = new Column<>("DOLocationID", new ShortDataType());
     csvSchema =
         new Schema(
             List.of(
@@ -64,19 +150,39 @@ public final class RidesTable implements AverageDistances {
                 passengerCountCol,
                 tripDistanceCol,
                 new Column<>("RatecodeID", new ByteDataType()),
-                new Column<>("store_and_fwd_flag", new StringDataType()),
-                new Column<>("PULocationID", new ShortDataType()),
-                new Column<>("DOLocationID", new ShortDataType()),
+                new Column<>("store_and_fwd_flag", new DictionaryDataType()),
+                pickupLocationCol,
+                dropoffLocationCol,
                 new Column<>("payment_type", new ByteDataType()),
-                new Column<>("fare_amount", new FloatDataType()),
-                new Column<>("extra", new FloatDataType()),
-                new Column<>("mta_tax", new FloatDataType()),
-                new Column<>("tip_amount", new FloatDataType()),
-                new Column<>("tolls_amount", new FloatDataType()),
-                new Column<>("improvement_surcharge", new FloatDataType()),
-                new Column<>("total_amount", new FloatDataType()),
-                new Column<>("congestion_surcharge", new FloatDataType())));
+                fareAmountCol,
+                new Column<>("extra", new DecimalDataType(CENTS_SCALE)),
+                new Column<>("mta_tax", new DecimalDataType(CENTS_SCALE)),
+                tipAmountCol,
+                new Column<>("tolls_amount", new DecimalDataType(CENTS_SCALE)),
+                new Column<>("improvement_surcharge", new DecimalDataType(CENTS_SCALE)),
+                totalAmountCol,
+                new Column<>("congestion_surcharge", new DecimalDataType(CENTS_SCALE))));
     avgDistColumns = List.of(pickupDateCol, dropoffDateCol, passengerCountCol, tripDistanceCol);
+    tripStatsColumns =
+        List.of(
+            pickupDateCol,
+            dropoffDateCol,
+            tripDistanceCol,
+            fareAmountCol,
+            pickupLocationCol,
+            dropoffLocationCol);
+    revenueColumns =
+        List.of(pickupDateCol, dropoffDateCol, fareAmountCol, tipAmountCol, totalAmountCol);
+
+    for (RollupDefinition rollup : settings.rollups) {
+      rollupColumns.put(
+          rollup,
+          List.of(
+              pickupDateCol,
+              dropoffDateCol,
+              rollupColumn(rollup.groupColumn()),
+              rollupColumn(rollup.measureColumn())));
+    }
 
     if (settings.disableMinMaxIndex) {
       System.out.println("Min-max index disabled");
@@ -89,11 +195,10 @@ public final class RidesTable implements AverageDistances {
     }
   }
 
-  private static HashMap<Byte, DoubleAvgAggregation> mergeGroupbyMaps(
-      HashMap<Byte, DoubleAvgAggregation> m1, HashMap<Byte, DoubleAvgAggregation> m2) {
-    var res = new HashMap<>(m1);
-    m2.forEach((k, v) -> res.merge(k, v, DoubleAvgAggregation::merge));
-    return res;
+  private Column<?> rollupColumn(String name) {
+    return csvSchema
+        .getColumn(name)
+        .orElseThrow(() -> new IllegalArgumentException("Unknown rollup column: " + name));
   }
 
   @Override
@@ -101,11 +206,32 @@ public final class RidesTable implements AverageDistances {
     if (!Files.exists(dataDir)) {
       throw new IllegalArgumentException(dataDir + " is not exists");
     }
+    this.dataDir = dataDir;
+    ingest(true);
+  }
+
+  /**
+   * Synchronize table with content of data directory: index new CSV files and bytes appended to
+   * already indexed files. Appended bytes are indexed as new splits which start right after the
+   * last indexed split of the file. Only complete lines are indexed, trailing line which is still
+   * written will be indexed by subsequent refresh.
+   *
+   * <p>Table state is replaced atomically, queries which are running during refresh continue to use
+   * previous state.
+   *
+   * @return Count of new splits added to the table.
+   */
+  public int refresh() {
+    Preconditions.checkState(dataDir != null, "Table is not initialized");
+    return ingest(false);
+  }
 
-    ForkJoinPool pool = new ForkJoinPool(settings.initThreads);
+  private synchronized int ingest(boolean initial) {
+    var current = snapshot;
     try {
-      csvFiles =
-          pool.submit(
+      var indexedFiles =
+          initPool
+              .submit(
                   () -> {
                     try (var files = Files.walk(dataDir, FileVisitOption.FOLLOW_LINKS)) {
                       // original stream can not be split and hence, cannot be parallel
@@ -113,64 +239,333 @@ public final class RidesTable implements AverageDistances {
                       return csvFiles.stream()
                           .parallel()
                           .filter(RidesTable::isCsvFile)
-                          .flatMap(this::openCsvFile)
+                          .map(path -> ingestFile(path, current.files().get(path), initial))
                           .collect(Collectors.toList());
                     } catch (IOException e) {
                       throw new RuntimeException(e);
                     }
                   })
               .get();
+      var next = TableSnapshot.of(indexedFiles);
+      publish(next);
+      var known = Set.copyOf(current.splits());
+      return (int) next.splits().stream().filter(split -> !known.contains(split)).count();
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Index CSV file or defer its indexing if file belongs to partition and partitions are indexed
+   * lazily(see {@link Settings#withPartitions(PartitionPattern, boolean)}).
+   */
+  private IndexedFile ingestFile(Path path, IndexedFile indexed, boolean initial) {
+    var partition = partitionOf(path);
+    if (partition != null && settings.lazyPartitions && (indexed == null || indexed.deferred())) {
+      // partition is indexed when query touches it
+      return new IndexedFile(path, List.of(), 0, partition, true);
+    }
+    return indexFile(path, indexed, initial, partition);
+  }
+
+  /** Returns range of pickup time covered by partition of the file, null if it has no partition. */
+  private Range<LocalDateTime> partitionOf(Path path) {
+    if (settings.partitionPattern == null) {
+      return null;
+    }
+    return settings
+        .partitionPattern
+        .dateRange(dataDir.relativize(path))
+        .map(
+            dates ->
+                Range.closed(
+                    dates.lowerEndpoint().atStartOfDay(),
+                    dates.upperEndpoint().atTime(LocalTime.MAX)))
+        .orElse(null);
+  }
+
+  /**
+   * Replace snapshot of the table. Splits which are not contained in the next snapshot are closed
+   * when queries which use previous snapshots are done.
+   */
+  private void publish(TableSnapshot next) {
+    var previous = snapshot;
+    snapshot = next;
+    var kept = Set.copyOf(next.splits());
+    previous
+        .refs()
+        .retire(
+            previous.splits().stream()
+                .filter(split -> !kept.contains(split))
+                .collect(Collectors.toList()),
+            next.refs());
+  }
+
+  /**
+   * Returns snapshot of the table where all partitions which intersect pickup range are indexed.
+   * Deferred partitions are indexed by the calling query, concurrent queries which touch the same
+   * partitions wait until it's done. Snapshot is referenced by caller, it should be released by
+   * {@link SnapshotRefs#release()} when splits of the snapshot are not used anymore.
+   */
+  private TableSnapshot acquireSnapshot(Range<LocalDateTime> pickupRange) {
+    var current = acquireSnapshot();
+    if (current.files().values().stream().noneMatch(file -> file.touchedBy(pickupRange))) {
+      return current;
+    }
+    current.refs().release();
+    indexPartitions(pickupRange);
+    return acquireSnapshot();
+  }
+
+  private TableSnapshot acquireSnapshot() {
+    while (true) {
+      var current = snapshot;
+      // snapshot can be released between read and retain if it was replaced concurrently
+      if (current.refs().tryRetain()) {
+        return current;
+      }
+    }
+  }
+
+  private synchronized void indexPartitions(Range<LocalDateTime> pickupRange) {
+    var current = snapshot;
+    try {
+      var files =
+          initPool
+              .submit(
+                  () ->
+                      current.files().values().stream()
+                          .parallel()
+                          .map(
+                              file ->
+                                  file.touchedBy(pickupRange)
+                                      ? indexFile(file.path(), null, true, file.partition())
+                                      : file)
+                          .collect(Collectors.toList()))
+              .get();
+      publish(TableSnapshot.of(files));
     } catch (Exception e) {
       throw new RuntimeException(e);
-    } finally {
-      // simple shutdown, no need to wait termination of pool here
-      pool.shutdown();
     }
   }
 
-  /** Open CSV file at path and logically split it to several files if needed. */
-  private Stream<CsvStorageFile> openCsvFile(Path path) {
-    var res = new ArrayList<CsvStorageFile>();
-    long startAt = 0;
-    long fileSize;
+  /** Returns range of pickup time required by predicate. */
+  private Range<LocalDateTime> pickupRange(QueryPredicate predicate) {
+    for (Between<?> between : predicate.between()) {
+      if (between.column().name().equals(pickupDateCol.name())) {
+        // endpoints are checked by cast, range of pickup column always contains timestamps
+        Range<?> range = between.range();
+        Range<LocalDateTime> res = Range.all();
+        if (range.hasLowerBound()) {
+          res =
+              res.intersection(
+                  Range.downTo(
+                      LocalDateTime.class.cast(range.lowerEndpoint()), range.lowerBoundType()));
+        }
+        if (range.hasUpperBound()) {
+          res =
+              res.intersection(
+                  Range.upTo(
+                      LocalDateTime.class.cast(range.upperEndpoint()), range.upperBoundType()));
+        }
+        return res;
+      }
+    }
+    return Range.all();
+  }
+
+  /**
+   * Index CSV file or its part which was appended since previous indexing.
+   *
+   * @param indexed Result of previous indexing of the file, null if file is new.
+   * @param initial Flag is set when table is initializing, in this case file is indexed till the
+   *     end, even if it doesn't end with line break.
+   * @param partition Range of pickup time covered by partition of the file, null if file has no
+   *     partition.
+   */
+  private IndexedFile indexFile(
+      Path path, IndexedFile indexed, boolean initial, Range<LocalDateTime> partition) {
     try {
-      fileSize = Files.size(path);
+      long fileSize = Files.size(path);
+      if (indexed != null && !indexed.deferred() && fileSize == indexed.indexedSize()) {
+        return indexed;
+      }
+      if (isGzipFile(path)) {
+        return indexGzipFile(path, indexed, fileSize, partition);
+      }
+
+      long startAt = 0;
+      var splits = new ArrayList<TableSplit>();
+      if (indexed != null
+          && fileSize > indexed.indexedSize()
+          && endsWithLineBreak(path, indexed.indexedSize())) {
+        // data appended to file: keep existing splits and index only new bytes
+        startAt = indexed.indexedSize();
+        splits.addAll(indexed.splits());
+      }
+      // otherwise, file is new or it was rewritten and should be indexed from scratch
+
+      long sizeToIndex = initial ? fileSize : completeLinesSize(path, startAt, fileSize);
+      if (sizeToIndex > startAt) {
+        splits.addAll(
+            openCsvFile(new PlainCsvInput(path, sizeToIndex), startAt, settings.splitSize));
+      }
+      return new IndexedFile(
+          path, List.copyOf(splits), Math.max(startAt, sizeToIndex), partition, false);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
+  }
+
+  /**
+   * Index complete members of gzip file. Members appended since previous indexing are indexed as
+   * new splits, if data of previously indexed members ends with line break. Otherwise, file is
+   * indexed from scratch.
+   */
+  private IndexedFile indexGzipFile(
+      Path path, IndexedFile indexed, long fileSize, Range<LocalDateTime> partition)
+      throws IOException {
+    GzipCsvInput previous = null;
+    if (indexed != null && !indexed.deferred() && !indexed.splits().isEmpty()) {
+      var split = indexed.splits().get(indexed.splits().size() - 1);
+      previous = split.file().input() instanceof GzipCsvInput gzip ? gzip : null;
+    }
+    if (previous != null
+        && (fileSize < previous.scannedSize() || !endsWithLineBreak(previous, previous.size()))) {
+      // file was rewritten
+      previous = null;
+    }
+    var input = previous != null ? previous.refresh() : GzipCsvInput.open(path);
+    long startAt = previous != null ? previous.size() : 0;
+    var splits = new ArrayList<TableSplit>();
+    if (previous != null) {
+      splits.addAll(indexed.splits());
+    }
+    // data without member boundaries can be decompressed only from the beginning, splitting of
+    // such data doesn't allow to scan it in parallel
+    int newCheckpoints =
+        input.checkpointsCount() - (previous != null ? previous.checkpointsCount() : 0);
+    long splitSize = newCheckpoints > 1 ? settings.splitSize : input.size() - startAt;
+    if (input.size() > startAt) {
+      splits.addAll(openCsvFile(input, startAt, splitSize));
+    }
+    return new IndexedFile(path, List.copyOf(splits), input.scannedSize(), partition, false);
+  }
+
+  private static boolean endsWithLineBreak(CsvInput input, long size) throws IOException {
+    if (size == 0) {
+      return true;
+    }
+    try (var stream = input.openAt(size - 1)) {
+      return stream.read() == '\n';
+    }
+  }
+
+  private static boolean endsWithLineBreak(Path path, long size) throws IOException {
+    if (size == 0) {
+      return true;
+    }
+    try (var channel = Files.newByteChannel(path, StandardOpenOption.READ)) {
+      var buffer = ByteBuffer.allocate(1);
+      channel.position(size - 1);
+      return channel.read(buffer) == 1 && buffer.get(0) == '\n';
+    }
+  }
+
+  /** Returns size of file part which ends with last line break found after passed offset. */
+  private static long completeLinesSize(Path path, long from, long fileSize) throws IOException {
+    try (var channel = Files.newByteChannel(path, StandardOpenOption.READ)) {
+      var buffer = ByteBuffer.allocate(8 * 1024);
+      long end = fileSize;
+      while (end > from) {
+        long start = Math.max(from, end - buffer.capacity());
+        buffer.clear().limit((int) (end - start));
+        channel.position(start);
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer) < 0) {
+            break;
+          }
+        }
+        for (int i = buffer.position() - 1; i >= 0; i--) {
+          if (buffer.get(i) == '\n') {
+            return start + i + 1;
+          }
+        }
+        end = start;
+      }
+      return from;
+    }
+  }
+
+  /** Open CSV file and logically split it to several files if needed. */
+  private List<TableSplit> openCsvFile(CsvInput input, long startAt, long splitSize) {
+    var res = new ArrayList<TableSplit>();
     while (true) {
+      var sample =
+          settings.sampleSize > 0 ? new TripSample(avgDistColumns, settings.sampleSize) : null;
+      var rollups = new HashMap<RollupDefinition, DayRollup>();
+      rollupColumns.forEach((rollup, columns) -> rollups.put(rollup, new DayRollup(columns)));
+      var collectors = new ArrayList<SplitCollector>(rollups.values());
+      if (sample != null) {
+        collectors.add(sample);
+      }
       var file =
           new CsvStorageFile(
-              path,
+              input,
               csvSchema,
-              new RowOffsetLocator(settings.skipIndexStep),
+              new RowOffsetLocator(settings.skipIndexStep, settings.skipIndexBytes),
               prepareIndexes(),
+              collectors,
               startAt,
-              settings.splitSize);
-      res.add(file);
-      if (fileSize <= file.endOffset() + 1) {
+              splitSize,
+              indexStatistics,
+              settings.coalesceGapBytes);
+      res.add(new TableSplit(file, sample, rollups));
+      if (input.size() <= file.endOffset() + 1) {
         break;
       }
       startAt = file.endOffset() + 1;
     }
-    return res.stream();
+    return res;
+  }
+
+  private List<ColumnIndex<?>> prepareIndexes() {
+    var indexList = new ArrayList<ColumnIndex<?>>();
+    addIndexes(indexList);
+    if (settings.skipUselessIndexes) {
+      // statistics show that these index types never prune rows of the dataset
+      indexList.removeIf(index -> indexStatistics.isUseless(IndexStatistics.key(index)));
+    }
+    return indexList;
   }
 
-  private List<ColumnIndex> prepareIndexes() {
-    var indexList = new ArrayList<ColumnIndex>();
+  private void addIndexes(List<ColumnIndex<?>> indexList) {
     if (!settings.disableMinMaxIndex) {
-      indexList.add(new MinMaxColumnIndex<>(pickupDateCol));
-      indexList.add(new MinMaxColumnIndex<>(dropoffDateCol));
+      indexList.add(outlierMinMaxIndex(pickupDateCol));
+      indexList.add(outlierMinMaxIndex(dropoffDateCol));
     }
     if (!settings.disableBucketIndex) {
-      indexList.add(new BucketColumnIndex<>(pickupDateCol, t -> t.truncatedTo(ChronoUnit.DAYS)));
-      indexList.add(new BucketColumnIndex<>(dropoffDateCol, t -> t.truncatedTo(ChronoUnit.DAYS)));
+      indexList.add(dayBucketIndex(pickupDateCol));
+      indexList.add(dayBucketIndex(dropoffDateCol));
     }
     if (!settings.disableNotNullIndex) {
       indexList.add(new NotNullColumnIndex<>(passengerCountCol));
       indexList.add(new NotNullColumnIndex<>(tripDistanceCol));
     }
-    return indexList;
+  }
+
+  /**
+   * Returns min-max index which ignores outlier timestamps(e.g., trips of 2008 in file of 2020):
+   * its range covers 99.8% of values, rows outside of the range are read individually.
+   */
+  private static ColumnIndex<LocalDateTime> outlierMinMaxIndex(Column<LocalDateTime> column) {
+    return new OutlierMinMaxColumnIndex<>(column, 0.001, 0.999, MAX_OUTLIERS);
+  }
+
+  /** Returns bucket index where each bucket contains timestamps of one day. */
+  private static ColumnIndex<LocalDateTime> dayBucketIndex(Column<LocalDateTime> column) {
+    return new BucketColumnIndex<>(
+        column, t -> t.truncatedTo(ChronoUnit.DAYS), day -> Range.closedOpen(day, day.plusDays(1)));
   }
 
   private static boolean isCsvFile(Path path) {
@@ -178,79 +573,892 @@ public final class RidesTable implements AverageDistances {
       return Files.isRegularFile(path)
           && !Files.isHidden(path)
           && !Files.isExecutable(path)
-          && path.getFileName().toString().endsWith(".csv");
+          && (path.getFileName().toString().endsWith(".csv") || isGzipFile(path));
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
+  private static boolean isGzipFile(Path path) {
+    return path.getFileName().toString().endsWith(".csv.gz");
+  }
+
+  private QueryPredicate averageDistancesPredicate(LocalDateTime start, LocalDateTime end) {
+    // both pickup and dropoff time should be inside of the range
+    var timeRange = end.isBefore(start) ? Range.closedOpen(start, start) : Range.closed(start, end);
+    return tripsPredicate(timeRange, timeRange);
+  }
+
+  private QueryPredicate tripsPredicate(
+      Range<LocalDateTime> pickupRange, Range<LocalDateTime> dropoffRange) {
+    return new QueryPredicate()
+        .withBetween(
+            List.of(
+                new Between<>(pickupDateCol, pickupRange),
+                new Between<>(dropoffDateCol, dropoffRange)))
+        .withNotEquals(
+            List.of(
+                new NotEqual<>(passengerCountCol, null), new NotEqual<>(tripDistanceCol, null)));
+  }
+
   @Override
   public HashMap<Integer, Double> getAverageDistances(LocalDateTime start, LocalDateTime end) {
+    var query = getAverageDistancesAsync(start, end, null, null);
+    try {
+      return query.result().get();
+    } catch (InterruptedException e) {
+      query.cancel();
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Asynchronously computes average distances(see {@link #getAverageDistances(LocalDateTime,
+   * LocalDateTime)}). Each split is scanned by separate task, partial result is reported when split
+   * scan completes.
+   *
+   * @param deadline Max time of query execution, query is cancelled when it expires. {@code null}
+   *     means no deadline.
+   * @param partialResults Receives averages merged from all splits scanned so far. Callback is
+   *     invoked sequentially, once per split, from worker threads. {@code null} if partial results
+   *     are not required.
+   */
+  public QueryHandle<HashMap<Integer, Double>> getAverageDistancesAsync(
+      LocalDateTime start,
+      LocalDateTime end,
+      Duration deadline,
+      Consumer<HashMap<Integer, Double>> partialResults) {
+    return getAverageDistancesAsync(
+        start, end, deadline, QueryPriority.INTERACTIVE, partialResults);
+  }
+
+  /**
+   * Same as {@link #getAverageDistancesAsync(LocalDateTime, LocalDateTime, Duration, Consumer)},
+   * but split scans are scheduled with passed priority(e.g., {@link QueryPriority#BATCH} for
+   * reports which scan large part of the table).
+   */
+  public QueryHandle<HashMap<Integer, Double>> getAverageDistancesAsync(
+      LocalDateTime start,
+      LocalDateTime end,
+      Duration deadline,
+      QueryPriority priority,
+      Consumer<HashMap<Integer, Double>> partialResults) {
+    return getAverageDistancesAsync(start, end, deadline, priority, ScanMode.AUTO, partialResults);
+  }
+
+  /**
+   * Same as {@link #getAverageDistancesAsync(LocalDateTime, LocalDateTime, Duration, QueryPriority,
+   * Consumer)}, but data of splits is read in passed mode(e.g., {@link ScanMode#DIRECT} for one-off
+   * report which shouldn't evict data of dashboard queries from OS page cache).
+   */
+  public QueryHandle<HashMap<Integer, Double>> getAverageDistancesAsync(
+      LocalDateTime start,
+      LocalDateTime end,
+      Duration deadline,
+      QueryPriority priority,
+      ScanMode scanMode,
+      Consumer<HashMap<Integer, Double>> partialResults) {
+    var timeRange = Range.closed(start, end);
+    var epochRange = EpochRange.of(timeRange);
+    var predicate = averageDistancesPredicate(start, end);
+    var rollup = new RollupDefinition(tripDistanceCol.name(), passengerCountCol.name());
+    var fullDays = fullyCoveredDays(start, end);
+    boolean useRollup = fullDays != null && settings.rollups.contains(rollup);
+    return scanSplits(
+        deadline,
+        priority,
+        scanMode,
+        predicate,
+        (split, scan) ->
+            useRollup && split.rollups().containsKey(rollup)
+                ? aggregateUsingRollup(
+                    split, split.rollups().get(rollup), timeRange, fullDays, scan)
+                : aggregate(
+                    openCsvReader(avgDistColumns, predicate, split.file(), scan),
+                    epochRange,
+                    epochRange,
+                    expectedGroups(split.file(), passengerCountCol)),
+        new HashMap<>(),
+        RidesTable::mergeGroupbyMaps,
+        RidesTable::averages,
+        partialResults);
+  }
+
+  /**
+   * Computes average distances(see {@link #getAverageDistances(LocalDateTime, LocalDateTime)}) for
+   * each time bucket of the range by single scan of the table. Trip belongs to the bucket which
+   * contains its pickup time.
+   *
+   * @param interval Size of time bucket(e.g., 1 hour), buckets are aligned to start of the range.
+   * @return Map where key is start time of bucket and value is averages of trips in the bucket.
+   *     Buckets without trips are not present in the result.
+   */
+  public TreeMap<LocalDateTime, HashMap<Integer, Double>> getAverageDistanceSeries(
+      LocalDateTime start, LocalDateTime end, Duration interval) {
+    Preconditions.checkArgument(
+        interval.getSeconds() > 0 && interval.getNano() == 0,
+        "Interval must be positive count of seconds: %s",
+        interval);
+    long startEpochSecond = start.toEpochSecond(ZoneOffset.UTC);
+    long endEpochSecond = end.toEpochSecond(ZoneOffset.UTC);
+    long intervalSeconds = interval.getSeconds();
+    long buckets = Math.max(0, endEpochSecond - startEpochSecond) / intervalSeconds + 1;
+    Preconditions.checkArgument(
+        buckets <= MAX_SERIES_BUCKETS,
+        "Range is split into %s buckets, max %s buckets are supported",
+        buckets,
+        MAX_SERIES_BUCKETS);
+    // indexes prune splits and row ranges by time range of the whole series
+    var predicate = averageDistancesPredicate(start, end);
+    var query =
+        scanSplits(
+            null,
+            QueryPriority.INTERACTIVE,
+            ScanMode.AUTO,
+            predicate,
+            (split, scan) ->
+                aggregateSeries(
+                    openCsvReader(avgDistColumns, predicate, split.file(), scan),
+                    new TimeSeriesAggregation(startEpochSecond, intervalSeconds, (int) buckets),
+                    startEpochSecond,
+                    endEpochSecond),
+            new TimeSeriesAggregation(startEpochSecond, intervalSeconds, (int) buckets),
+            TimeSeriesAggregation::merge,
+            TimeSeriesAggregation::computeResult,
+            null);
+    try {
+      return query.result().get();
+    } catch (InterruptedException e) {
+      query.cancel();
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private TimeSeriesAggregation aggregateSeries(
+      RowReader rowReader,
+      TimeSeriesAggregation series,
+      long startEpochSecond,
+      long endEpochSecond) {
+    var schema = rowReader.schema();
+    int countIdx = schema.getColumnIndex(passengerCountCol.name()).getAsInt();
+    int distIdx = schema.getColumnIndex(tripDistanceCol.name()).getAsInt();
+    int startTimeIdx = schema.getColumnIndex(pickupDateCol.name()).getAsInt();
+    int endTimeIdx = schema.getColumnIndex(dropoffDateCol.name()).getAsInt();
+    try (rowReader) {
+      while (rowReader.hasNext()) {
+        Row row = rowReader.next();
+        // timestamps are compared as epoch seconds, without creation of LocalDateTime objects
+        long pickup = row.getLong(startTimeIdx);
+        long dropoff = row.getLong(endTimeIdx);
+        if (pickup == DataType.NULL_LONG
+            || dropoff == DataType.NULL_LONG
+            || pickup < startEpochSecond
+            || dropoff > endEpochSecond
+            || pickup > endEpochSecond
+            || dropoff < startEpochSecond) {
+          continue;
+        }
+        long passengerCnt = row.getLong(countIdx);
+        double distance = row.getDouble(distIdx);
+        if (passengerCnt != DataType.NULL_LONG && !Double.isNaN(distance)) {
+          series.add(pickup, (byte) passengerCnt, distance);
+        }
+      }
+      rowReader.printStats();
+    } catch (CancellationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    return series;
+  }
+
+  /**
+   * Returns range of days which are fully covered by time range, {@code null} if there are no such
+   * days. Timestamps of trips have seconds precision, so range which ends at the last second of the
+   * day covers the whole day.
+   */
+  private static Range<LocalDate> fullyCoveredDays(LocalDateTime start, LocalDateTime end) {
+    var firstDay = start.toLocalDate();
+    if (start.isAfter(firstDay.atStartOfDay())) {
+      firstDay = firstDay.plusDays(1);
+    }
+    var lastDay = end.toLocalDate();
+    if (end.isBefore(lastDay.atTime(LAST_SECOND_OF_DAY))) {
+      lastDay = lastDay.minusDays(1);
+    }
+    return firstDay.isAfter(lastDay) ? null : Range.closed(firstDay, lastDay);
+  }
+
+  /**
+   * Aggregate trips of split using rollup for trips which are picked up and dropped off during
+   * fully covered days. Remaining trips have pickup or dropoff time inside partially covered day at
+   * the edge of time range, they are read from CSV file: trips picked up at the edge day, and trips
+   * picked up at fully covered day and dropped off at the edge day. These sets of trips don't
+   * intersect, so each trip is aggregated once.
+   */
+  private HashMap<Byte, DoubleAvgAggregation> aggregateUsingRollup(
+      TableSplit split,
+      DayRollup rollup,
+      Range<LocalDateTime> timeRange,
+      Range<LocalDate> fullDays,
+      ScanContext scan) {
+    var fromRollup = new HashMap<Byte, DoubleAvgAggregation>();
+    rollup
+        .aggregate(fullDays.lowerEndpoint().toEpochDay(), fullDays.upperEndpoint().toEpochDay())
+        .forEach((group, agg) -> fromRollup.put(group.byteValue(), agg));
+
+    var fullDaysTime =
+        Range.closed(
+            fullDays.lowerEndpoint().atStartOfDay(),
+            fullDays.upperEndpoint().atTime(LocalTime.MAX));
+    var res = fromRollup;
+    var edgeDays = new ArrayList<LocalDate>();
+    if (timeRange.lowerEndpoint().toLocalDate().isBefore(fullDays.lowerEndpoint())) {
+      edgeDays.add(timeRange.lowerEndpoint().toLocalDate());
+    }
+    if (timeRange.upperEndpoint().toLocalDate().isAfter(fullDays.upperEndpoint())) {
+      edgeDays.add(timeRange.upperEndpoint().toLocalDate());
+    }
+    for (LocalDate edgeDay : edgeDays) {
+      var edgeDayTime =
+          Range.closed(edgeDay.atStartOfDay(), edgeDay.atTime(LocalTime.MAX))
+              .intersection(timeRange);
+      var pickedUp =
+          aggregate(
+              openCsvReader(
+                  avgDistColumns, tripsPredicate(edgeDayTime, timeRange), split.file(), scan),
+              EpochRange.of(edgeDayTime),
+              EpochRange.of(timeRange),
+              expectedGroups(split.file(), passengerCountCol));
+      var droppedOff =
+          aggregate(
+              openCsvReader(
+                  avgDistColumns, tripsPredicate(fullDaysTime, edgeDayTime), split.file(), scan),
+              EpochRange.of(fullDaysTime),
+              EpochRange.of(edgeDayTime),
+              expectedGroups(split.file(), passengerCountCol));
+      res = mergeGroupbyMaps(res, mergeGroupbyMaps(pickedUp, droppedOff));
+    }
+    return res;
+  }
+
+  /**
+   * Computes distribution statistics of trips with pickup time >= start and dropoff time <= end:
+   * quantiles of trip distance and fare amount, count of distinct pickup/dropoff locations and
+   * histogram of trip distances. Statistics are computed using mergeable sketches, so memory used
+   * by the query doesn't depend on count of scanned trips.
+   */
+  public TripStatistics getTripStatistics(LocalDateTime start, LocalDateTime end) {
     var timeRange = Range.closed(start, end);
+    var epochRange = EpochRange.of(timeRange);
+    var predicate =
+        new QueryPredicate()
+            .withBetween(
+                List.of(
+                    new Between<>(pickupDateCol, timeRange),
+                    new Between<>(dropoffDateCol, timeRange)));
+    var query =
+        scanSplits(
+            null,
+            QueryPriority.INTERACTIVE,
+            ScanMode.AUTO,
+            predicate,
+            (split, scan) ->
+                collectTripStatistics(
+                    openCsvReader(tripStatsColumns, predicate, split.file(), scan), epochRange),
+            new TripStatisticsAggregation(),
+            TripStatisticsAggregation::merge,
+            TripStatisticsAggregation::computeResult,
+            null);
+    try {
+      return query.result().get();
+    } catch (InterruptedException e) {
+      query.cancel();
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
 
+  /**
+   * Computes exact revenue of trips with pickup time >= start and dropoff time <= end: sums of
+   * fare, tip and total amounts. Amounts are summed as cents, without rounding errors of floating
+   * point arithmetic.
+   */
+  public Revenue getRevenue(LocalDateTime start, LocalDateTime end) {
+    var timeRange = Range.closed(start, end);
+    var epochRange = EpochRange.of(timeRange);
     var predicate =
         new QueryPredicate()
             .withBetween(
                 List.of(
-                    new Between<>(pickupDateCol, Range.atLeast(start)),
-                    new Between<>(dropoffDateCol, Range.atMost(end))))
-            .withNotEquals(
+                    new Between<>(pickupDateCol, timeRange),
+                    new Between<>(dropoffDateCol, timeRange)));
+    var query =
+        scanSplits(
+            null,
+            QueryPriority.INTERACTIVE,
+            ScanMode.AUTO,
+            predicate,
+            (split, scan) ->
+                collectRevenue(
+                    openCsvReader(revenueColumns, predicate, split.file(), scan), epochRange),
+            new RevenueAggregation(CENTS_SCALE),
+            RevenueAggregation::merge,
+            RevenueAggregation::computeResult,
+            null);
+    try {
+      return query.result().get();
+    } catch (InterruptedException e) {
+      query.cancel();
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Counts trips with pickup time >= start and dropoff time <= end grouped by values of dictionary
+   * encoded column(e.g., store_and_fwd_flag).
+   *
+   * @param groupColumn Name of column with {@link DictionaryDataType}.
+   * @param values Values of group column to count, empty set means all values. Trips with missing
+   *     value are not counted.
+   * @return Map where key is column value and value is count of trips.
+   */
+  public TreeMap<String, Long> getTripCounts(
+      LocalDateTime start, LocalDateTime end, String groupColumn, Set<String> values) {
+    var column = tableColumn(groupColumn);
+    if (!(column.dataType() instanceof DictionaryDataType dictionaryType)) {
+      throw new IllegalArgumentException(groupColumn + " is not dictionary encoded column");
+    }
+    return countTrips(
+        start,
+        end,
+        column,
+        LongUnaryOperator.identity(),
+        dictionaryType::codeOf,
+        code -> dictionaryType.decode(code),
+        dictionaryType.dictionary().size(),
+        values);
+  }
+
+  /**
+   * Counts trips with pickup time >= start and dropoff time <= end grouped by attribute of
+   * dimension table(e.g., borough of pickup zone). Trips are joined with dimension by key column:
+   * key of each trip is mapped to code of attribute value through dense array of dimension table.
+   *
+   * @param keyColumn Name of integer column which references dimension key(e.g., PULocationID).
+   * @param attribute Attribute of dimension table to group by.
+   * @param values Attribute values to count, empty set means all values. Trips with missing key or
+   *     key which is not in dimension table are not counted.
+   * @return Map where key is attribute value and value is count of trips.
+   */
+  public TreeMap<String, Long> getTripCounts(
+      LocalDateTime start,
+      LocalDateTime end,
+      String keyColumn,
+      DimensionTable.Attribute attribute,
+      Set<String> values) {
+    var column = tableColumn(keyColumn);
+    if (!(column.dataType() instanceof IntegralDataType)) {
+      throw new IllegalArgumentException(keyColumn + " is not integer column");
+    }
+    return countTrips(
+        start,
+        end,
+        column,
+        key -> {
+          int code = attribute.codeOf(key);
+          return code != StringDictionary.NO_CODE ? code : DataType.NULL_LONG;
+        },
+        attribute::codeOfValue,
+        attribute::decode,
+        attribute.cardinality(),
+        values);
+  }
+
+  private Column<?> tableColumn(String name) {
+    return csvSchema
+        .getColumn(name)
+        .orElseThrow(() -> new IllegalArgumentException("Unknown column: " + name));
+  }
+
+  /**
+   * Counts trips grouped by codes of values.
+   *
+   * @param column Column which values are mapped to codes.
+   * @param toCode Maps value of the column read by {@link Row#getLong(int)} to code, returns {@link
+   *     DataType#NULL_LONG} if trip doesn't belong to any group.
+   * @param codeOfValue Returns code of group value, {@link StringDictionary#NO_CODE} if there is no
+   *     such value.
+   * @param decoder Returns group value of code.
+   * @param groups Expected count of groups, accumulators are pre-sized for them.
+   * @param values Group values to count, empty set means all values.
+   */
+  private TreeMap<String, Long> countTrips(
+      LocalDateTime start,
+      LocalDateTime end,
+      Column<?> column,
+      LongUnaryOperator toCode,
+      ToIntFunction<String> codeOfValue,
+      IntFunction<String> decoder,
+      int groups,
+      Set<String> values) {
+    // values are compared by codes, values which have no code can't match any trip
+    BitSet codes = null;
+    if (!values.isEmpty()) {
+      codes = new BitSet();
+      for (String value : values) {
+        int code = codeOfValue.applyAsInt(value);
+        if (code != StringDictionary.NO_CODE) {
+          codes.set(code);
+        }
+      }
+      if (codes.isEmpty()) {
+        return new TreeMap<>();
+      }
+    }
+    var acceptedCodes = codes;
+    var timeRange = Range.closed(start, end);
+    var predicate =
+        new QueryPredicate()
+            .withBetween(
                 List.of(
-                    new NotEqual(passengerCountCol, null), new NotEqual(tripDistanceCol, null)));
+                    new Between<>(pickupDateCol, timeRange),
+                    new Between<>(dropoffDateCol, timeRange)))
+            .withNotEquals(List.of(new NotEqual<>(column, null)));
+    List<Column<?>> columns = List.of(pickupDateCol, dropoffDateCol, column);
+    var query =
+        scanSplits(
+            null,
+            QueryPriority.INTERACTIVE,
+            ScanMode.AUTO,
+            predicate,
+            (split, scan) ->
+                countCodes(
+                    openCsvReader(columns, predicate, split.file(), scan),
+                    column,
+                    toCode,
+                    EpochRange.of(timeRange),
+                    acceptedCodes,
+                    groups),
+            new long[0],
+            RidesTable::mergeCodeCounts,
+            counts -> decodeCounts(counts, decoder),
+            null);
     try {
-      // scan each CSV in separate thread
-      return workerPool
-          .submit(
-              () -> {
-                var merged =
-                    csvFiles.stream()
-                        .parallel()
-                        .map(csvFile -> openCsvReader(predicate, csvFile))
-                        .map(rowReader -> aggregate(rowReader, timeRange))
-                        .reduce(
-                            new HashMap<>(),
-                            RidesTable::mergeGroupbyMaps,
-                            RidesTable::mergeGroupbyMaps);
-
-                var res = new HashMap<Integer, Double>();
-                merged.forEach((k, v) -> res.put((int) k, v.computeResult()));
-                return res;
-              })
-          .get();
+      return query.result().get();
+    } catch (InterruptedException e) {
+      query.cancel();
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Returns trip counts indexed by codes of group values. */
+  private long[] countCodes(
+      RowReader rowReader,
+      Column<?> column,
+      LongUnaryOperator toCode,
+      EpochRange timeRange,
+      BitSet acceptedCodes,
+      int groups) {
+    var schema = rowReader.schema();
+    int startTimeIdx = schema.getColumnIndex(pickupDateCol.name()).getAsInt();
+    int endTimeIdx = schema.getColumnIndex(dropoffDateCol.name()).getAsInt();
+    int valueIdx = schema.getColumnIndex(column.name()).getAsInt();
+    var counts = new long[Math.max(1, groups)];
+    try (rowReader) {
+      while (rowReader.hasNext()) {
+        Row row = rowReader.next();
+        if (!timeRange.contains(row.getLong(startTimeIdx))
+            || !timeRange.contains(row.getLong(endTimeIdx))) {
+          continue;
+        }
+        long value = row.getLong(valueIdx);
+        if (value == DataType.NULL_LONG) {
+          continue;
+        }
+        long code = toCode.applyAsLong(value);
+        if (code == DataType.NULL_LONG
+            || (acceptedCodes != null && !acceptedCodes.get((int) code))) {
+          continue;
+        }
+        if (code >= counts.length) {
+          counts = Arrays.copyOf(counts, Math.max(counts.length * 2, (int) code + 1));
+        }
+        counts[(int) code]++;
+      }
+      rowReader.printStats();
+    } catch (CancellationException e) {
+      throw e;
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
+    return counts;
+  }
+
+  private static long[] mergeCodeCounts(long[] c1, long[] c2) {
+    var res = Arrays.copyOf(c1, Math.max(c1.length, c2.length));
+    for (int i = 0; i < c2.length; i++) {
+      res[i] += c2[i];
+    }
+    return res;
+  }
+
+  private static TreeMap<String, Long> decodeCounts(long[] counts, IntFunction<String> decoder) {
+    var res = new TreeMap<String, Long>();
+    for (int code = 0; code < counts.length; code++) {
+      if (counts[code] > 0) {
+        res.put(decoder.apply(code), counts[code]);
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Scan each candidate split of the table by separate task and merge partial states computed for
+   * splits.
+   *
+   * @param deadline Max time of query execution, {@code null} means no deadline.
+   * @param priority Priority class used to schedule split scans.
+   * @param scanMode Way of reading data of splits, {@link ScanMode#AUTO} reads by direct I/O if
+   *     query is expected to scan more bytes than configured threshold.
+   * @param predicate Predicate of the query, only splits which can contain matched rows are
+   *     scanned.
+   * @param splitScan Computes partial state of the query for one split, readers opened by the scan
+   *     should use passed scan context.
+   * @param emptyState State of the query before any split is scanned.
+   * @param merger Merges state of split into state merged so far, can update and return the first
+   *     argument, state of split should not be changed.
+   * @param finisher Converts merged state into query result.
+   * @param partialResults Receives result computed from splits scanned so far, invoked sequentially
+   *     once per split. {@code null} means partial results are not computed.
+   */
+  private <S, R> QueryHandle<R> scanSplits(
+      Duration deadline,
+      QueryPriority priority,
+      ScanMode scanMode,
+      QueryPredicate predicate,
+      BiFunction<TableSplit, ScanContext, S> splitScan,
+      S emptyState,
+      BinaryOperator<S> merger,
+      Function<S, R> finisher,
+      Consumer<R> partialResults) {
+    // splits which can't contain matched rows are excluded by catalog without opening readers
+    var pickupRange = pickupRange(predicate);
+    var current = acquireSnapshot(pickupRange);
+    var csvFiles = current.candidates(predicate, pickupRange);
+    var cancellation =
+        deadline != null ? CancellationToken.withDeadline(deadline) : new CancellationToken();
+    var scan = new ScanContext(cancellation, useDirectIo(scanMode, predicate, csvFiles));
+    var query = new QueryHandle<R>(cancellation, csvFiles.size());
+    var merged = new AtomicReference<>(emptyState);
+    var tasks = scheduler.newQuery(priority);
+
+    // scan each CSV in separate task
+    var scans = new CompletableFuture<?>[csvFiles.size()];
+    for (int i = 0; i < scans.length; i++) {
+      var split = csvFiles.get(i);
+      scans[i] =
+          CompletableFuture.supplyAsync(() -> splitScan.apply(split, scan), tasks)
+              .thenAccept(
+                  splitResult -> {
+                    synchronized (merged) {
+                      merged.set(merger.apply(merged.get(), splitResult));
+                      query.splitCompleted();
+                      if (partialResults != null) {
+                        partialResults.accept(finisher.apply(merged.get()));
+                      }
+                    }
+                  })
+              .whenComplete(
+                  (ignored, error) -> {
+                    if (error != null) {
+                      // fail fast, other scans will stop cooperatively
+                      query.fail(unwrap(error));
+                    }
+                  });
+    }
+    CompletableFuture.allOf(scans)
+        .whenComplete(
+            (ignored, error) -> {
+              tasks.finish();
+              if (error == null) {
+                synchronized (merged) {
+                  query.complete(finisher.apply(merged.get()));
+                }
+              }
+              // splits of snapshot are used by refinement
+              scheduleIndexRefinement(csvFiles, current.refs()::release);
+            });
+    return query;
+  }
+
+  /**
+   * Returns true if splits should be read bypassing OS page cache: large one-off scans would evict
+   * pages of recently queried data which are used by short queries.
+   */
+  private boolean useDirectIo(
+      ScanMode scanMode, QueryPredicate predicate, List<TableSplit> splits) {
+    if (scanMode != ScanMode.AUTO) {
+      return scanMode == ScanMode.DIRECT;
+    }
+    long threshold = settings.directScanBytes();
+    if (threshold == 0) {
+      return false;
+    }
+    double bytes = 0;
+    for (TableSplit split : splits) {
+      var file = split.file();
+      bytes += file.estimateSelectivity(predicate) * (file.endOffset() - file.startOffset() + 1);
+    }
+    return bytes >= threshold;
+  }
+
+  private static HashMap<Byte, DoubleAvgAggregation> mergeGroupbyMaps(
+      HashMap<Byte, DoubleAvgAggregation> m1, HashMap<Byte, DoubleAvgAggregation> m2) {
+    var res = new HashMap<>(m1);
+    m2.forEach((k, v) -> res.merge(k, v, DoubleAvgAggregation::merge));
+    return res;
+  }
+
+  private static HashMap<Integer, Double> averages(Map<Byte, DoubleAvgAggregation> groupby) {
+    var res = new HashMap<Integer, Double>();
+    groupby.forEach((k, v) -> res.put((int) k, v.computeResult()));
+    return res;
+  }
+
+  private static Throwable unwrap(Throwable error) {
+    return error instanceof CompletionException && error.getCause() != null
+        ? error.getCause()
+        : error;
+  }
+
+  /**
+   * Estimates average distances(see {@link #getAverageDistances(LocalDateTime, LocalDateTime)})
+   * within requested error or time budget.
+   *
+   * <p>First estimation is computed from samples of trips collected during initialization. If
+   * estimation is not precise enough, splits are scanned exactly in random order, and their samples
+   * are replaced by exact aggregates, until all estimations reach target error or deadline expires.
+   *
+   * @param targetError Target relative error of each average(half-width of 95% confidence interval
+   *     divided by the estimated value).
+   * @param deadline Max time to spend on the query.
+   * @return Map where key is passenger count and value is estimated average trip distance.
+   */
+  public HashMap<Integer, ApproxAvgAggregation.Estimate> getAverageDistancesApprox(
+      LocalDateTime start, LocalDateTime end, double targetError, Duration deadline) {
+    long deadlineAt = System.nanoTime() + deadline.toNanos();
+    var cancellation = CancellationToken.withDeadline(deadline);
+    var scan = new ScanContext(cancellation, false);
+    var epochRange = EpochRange.of(Range.closed(start, end));
+    var predicate = averageDistancesPredicate(start, end);
+
+    // start from estimations computed using samples, splits without samples are scanned anyway
+    var estimations = new HashMap<Byte, ApproxAvgAggregation>();
+    var splitSamples = new HashMap<TableSplit, HashMap<Byte, ApproxAvgAggregation>>();
+    var splitsToScan = new ArrayList<TableSplit>();
+    var unsampledSplits = new ArrayList<TableSplit>();
+    var pickupRange = pickupRange(predicate);
+    var current = acquireSnapshot(pickupRange);
+    for (TableSplit split : current.candidates(predicate, pickupRange)) {
+      if (split.sample() == null) {
+        unsampledSplits.add(split);
+        continue;
+      }
+      var samples = split.sample().estimate(start, end);
+      samples.forEach(
+          (k, v) ->
+              estimations.computeIfAbsent(k, key -> new ApproxAvgAggregation()).addSamples(v));
+      splitSamples.put(split, samples);
+      splitsToScan.add(split);
+    }
+    Collections.shuffle(splitsToScan);
+    splitsToScan.addAll(0, unsampledSplits);
+
+    if (unsampledSplits.isEmpty() && isPreciseEnough(estimations, targetError)) {
+      current.refs().release();
+      return approxResult(estimations);
+    }
+
+    var tasks = scheduler.newQuery(QueryPriority.INTERACTIVE);
+    var completionService =
+        new ExecutorCompletionService<Map.Entry<TableSplit, HashMap<Byte, DoubleAvgAggregation>>>(
+            tasks);
+    var scans = new ArrayList<Future<?>>();
+    for (TableSplit split : splitsToScan) {
+      scans.add(
+          completionService.submit(
+              () -> {
+                // scan which starts after query is done can't use splits of released snapshot
+                if (!current.refs().tryRetain()) {
+                  throw new CancellationException("Query is done");
+                }
+                try {
+                  return Map.entry(
+                      split,
+                      aggregate(
+                          openCsvReader(avgDistColumns, predicate, split.file(), scan),
+                          epochRange,
+                          epochRange,
+                          expectedGroups(split.file(), passengerCountCol)));
+                } finally {
+                  current.refs().release();
+                }
+              }));
+    }
+    try {
+      int scanned = 0;
+      while (scanned < scans.size()) {
+        long timeLeft = deadlineAt - System.nanoTime();
+        var completed = completionService.poll(Math.max(0, timeLeft), TimeUnit.NANOSECONDS);
+        if (completed == null) {
+          // deadline expired
+          break;
+        }
+        scanned++;
+        Map.Entry<TableSplit, HashMap<Byte, DoubleAvgAggregation>> splitResult;
+        try {
+          splitResult = completed.get();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof CancellationException) {
+            // scan was stopped because deadline expired
+            break;
+          }
+          throw e;
+        }
+        var samples = splitSamples.getOrDefault(splitResult.getKey(), new HashMap<>());
+        samples.forEach((k, v) -> estimations.get(k).removeSamples(v));
+        splitResult
+            .getValue()
+            .forEach(
+                (k, v) ->
+                    estimations.computeIfAbsent(k, key -> new ApproxAvgAggregation()).addExact(v));
+        if (scanned >= unsampledSplits.size() && isPreciseEnough(estimations, targetError)) {
+          break;
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e);
+    } finally {
+      // stop scans which are not required anymore
+      cancellation.cancel();
+      scans.forEach(future -> future.cancel(false));
+      tasks.finish();
+      current.refs().release();
+    }
+    return approxResult(estimations);
+  }
+
+  private static boolean isPreciseEnough(
+      Map<Byte, ApproxAvgAggregation> estimations, double targetError) {
+    // no sampled trip in range doesn't mean there are no trips, splits should be scanned
+    return !estimations.isEmpty()
+        && estimations.values().stream()
+            .allMatch(estimation -> estimation.computeResult().relativeError() <= targetError);
+  }
+
+  private static HashMap<Integer, ApproxAvgAggregation.Estimate> approxResult(
+      Map<Byte, ApproxAvgAggregation> estimations) {
+    var res = new HashMap<Integer, ApproxAvgAggregation.Estimate>();
+    estimations.forEach((k, v) -> res.put((int) k, v.computeResult()));
+    return res;
+  }
+
+  /**
+   * Refine row locators of splits in background: regions of row locator which often contain
+   * boundaries of scanned ranges get finer marks. Only one refinement runs at a time.
+   *
+   * @param onDone Invoked when refinement is done or if it is not scheduled.
+   */
+  private void scheduleIndexRefinement(List<TableSplit> csvFiles, Runnable onDone) {
+    if (settings.refineIndexHits <= 0 || !refinementRunning.compareAndSet(false, true)) {
+      onDone.run();
+      return;
+    }
+    try {
+      workerPool.execute(
+          () -> {
+            try {
+              int refined =
+                  csvFiles.stream()
+                      .mapToInt(
+                          split ->
+                              split
+                                  .file()
+                                  .refineRowLocator(settings.refineIndexHits, REFINE_FACTOR))
+                      .sum();
+              if (refined > 0) {
+                System.out.println("Row locator refined in " + refined + " regions");
+              }
+            } finally {
+              refinementRunning.set(false);
+              onDone.run();
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      // table is closed
+      refinementRunning.set(false);
+      onDone.run();
+    }
   }
 
-  private RowReader openCsvReader(QueryPredicate predicate, CsvStorageFile csvFile) {
+  private RowReader openCsvReader(
+      List<Column<?>> columns, QueryPredicate predicate, CsvStorageFile csvFile, ScanContext scan) {
     try {
       // pass query predicate to reduce scan intervals in CSV files
-      return csvFile.openReader(avgDistColumns, predicate);
+      return csvFile.openReader(columns, predicate, scan.cancellation(), scan.directIo());
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
+  /**
+   * Aggregate trip distances by passenger count.
+   *
+   * @param pickupRange Range of pickup time of trips which should be aggregated.
+   * @param dropoffRange Range of dropoff time of trips which should be aggregated.
+   * @param expectedGroups Expected count of passenger counts, group by map is pre-sized for them.
+   */
   private HashMap<Byte, DoubleAvgAggregation> aggregate(
-      RowReader rowReader, Range<LocalDateTime> timeRange) {
+      RowReader rowReader, EpochRange pickupRange, EpochRange dropoffRange, int expectedGroups) {
     int countIdx = rowReader.schema().getColumnIndex(passengerCountCol.name()).getAsInt();
     int distIdx = rowReader.schema().getColumnIndex(tripDistanceCol.name()).getAsInt();
     int startTimeIdx = rowReader.schema().getColumnIndex(pickupDateCol.name()).getAsInt();
     int endTimeIdx = rowReader.schema().getColumnIndex(dropoffDateCol.name()).getAsInt();
-    var groupby = new HashMap<Byte, DoubleAvgAggregation>();
+    HashMap<Byte, DoubleAvgAggregation> groupby = Maps.newHashMapWithExpectedSize(expectedGroups);
     long totalMs = 0;
     var sw = Stopwatch.createUnstarted();
-    try (var usedToCloseReader = rowReader) {
+    try (rowReader) {
       while (rowReader.hasNext()) {
         Row row = rowReader.next();
         sw.start();
-        var start = (LocalDateTime) row.get(startTimeIdx);
-        var end = (LocalDateTime) row.get(endTimeIdx);
-        if (start != null && end != null && timeRange.contains(start) && timeRange.contains(end)) {
-          var passengerCnt = (Byte) row.get(countIdx);
-          var distance = (Double) row.get(distIdx);
-          if (passengerCnt != null && distance != null) {
-            groupby.computeIfAbsent(passengerCnt, key -> new DoubleAvgAggregation()).add(distance);
+        if (pickupRange.contains(row.getLong(startTimeIdx))
+            && dropoffRange.contains(row.getLong(endTimeIdx))) {
+          // numeric values are parsed into primitives, without boxing
+          long passengerCnt = row.getLong(countIdx);
+          double distance = row.getDouble(distIdx);
+          if (passengerCnt != DataType.NULL_LONG && !Double.isNaN(distance)) {
+            groupby
+                .computeIfAbsent((byte) passengerCnt, key -> new DoubleAvgAggregation())
+                .add(distance);
           }
         }
         sw.stop();
@@ -262,6 +1470,8 @@ public final class RidesTable implements AverageDistances {
         System.out.println("Agg time took " + totalMs + "ms");
       }
       rowReader.printStats();
+    } catch (CancellationException e) {
+      throw e;
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
@@ -269,20 +1479,354 @@ public final class RidesTable implements AverageDistances {
     return groupby;
   }
 
+  /** Returns count of distinct values of column in split, estimated by column statistics. */
+  private static int expectedGroups(CsvStorageFile file, Column<?> column) {
+    return file.columnStatistics(column.name())
+        .map(stats -> (int) Math.min(stats.distinctCount(), Integer.MAX_VALUE))
+        .orElse(0);
+  }
+
+  private TripStatisticsAggregation collectTripStatistics(
+      RowReader rowReader, EpochRange timeRange) {
+    var schema = rowReader.schema();
+    int startTimeIdx = schema.getColumnIndex(pickupDateCol.name()).getAsInt();
+    int endTimeIdx = schema.getColumnIndex(dropoffDateCol.name()).getAsInt();
+    int distIdx = schema.getColumnIndex(tripDistanceCol.name()).getAsInt();
+    int fareIdx = schema.getColumnIndex(fareAmountCol.name()).getAsInt();
+    int pickupLocationIdx = schema.getColumnIndex(pickupLocationCol.name()).getAsInt();
+    int dropoffLocationIdx = schema.getColumnIndex(dropoffLocationCol.name()).getAsInt();
+    var stats = new TripStatisticsAggregation();
+    try (rowReader) {
+      while (rowReader.hasNext()) {
+        Row row = rowReader.next();
+        if (!timeRange.contains(row.getLong(startTimeIdx))
+            || !timeRange.contains(row.getLong(endTimeIdx))) {
+          continue;
+        }
+        double distance = row.getDouble(distIdx);
+        if (!Double.isNaN(distance)) {
+          stats.addDistance(distance);
+        }
+        double fare = row.getDouble(fareIdx);
+        if (!Double.isNaN(fare)) {
+          stats.addFare(fare);
+        }
+        long pickupLocation = row.getLong(pickupLocationIdx);
+        if (pickupLocation != DataType.NULL_LONG) {
+          stats.addPickupLocation(pickupLocation);
+        }
+        long dropoffLocation = row.getLong(dropoffLocationIdx);
+        if (dropoffLocation != DataType.NULL_LONG) {
+          stats.addDropoffLocation(dropoffLocation);
+        }
+      }
+      rowReader.printStats();
+    } catch (CancellationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    return stats;
+  }
+
+  private RevenueAggregation collectRevenue(RowReader rowReader, EpochRange timeRange) {
+    var schema = rowReader.schema();
+    int startTimeIdx = schema.getColumnIndex(pickupDateCol.name()).getAsInt();
+    int endTimeIdx = schema.getColumnIndex(dropoffDateCol.name()).getAsInt();
+    int fareIdx = schema.getColumnIndex(fareAmountCol.name()).getAsInt();
+    int tipIdx = schema.getColumnIndex(tipAmountCol.name()).getAsInt();
+    int totalIdx = schema.getColumnIndex(totalAmountCol.name()).getAsInt();
+    var revenue = new RevenueAggregation(CENTS_SCALE);
+    try (rowReader) {
+      while (rowReader.hasNext()) {
+        Row row = rowReader.next();
+        if (!timeRange.contains(row.getLong(startTimeIdx))
+            || !timeRange.contains(row.getLong(endTimeIdx))) {
+          continue;
+        }
+        // amounts are read as cents
+        revenue.add(row.getLong(fareIdx), row.getLong(tipIdx), row.getLong(totalIdx));
+      }
+      rowReader.printStats();
+    } catch (CancellationException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    return revenue;
+  }
+
+  /**
+   * Returns statistics of index types: how often they prune rows and how much they cost. Statistics
+   * can be passed to other table over the same dataset(see {@link
+   * Settings#withIndexStatistics(IndexStatistics, boolean)}).
+   */
+  public IndexStatistics indexStatistics() {
+    return indexStatistics;
+  }
+
+  /**
+   * Estimates count of trips matched by average distances query(see {@link
+   * #getAverageDistances(LocalDateTime, LocalDateTime)}) and count of bytes scanned by it. Estimate
+   * is computed from column statistics of splits, no data is read.
+   */
+  public QueryEstimate estimateTrips(LocalDateTime start, LocalDateTime end) {
+    var predicate = averageDistancesPredicate(start, end);
+    double rows = 0;
+    double bytes = 0;
+    for (TableSplit split : snapshot.splits()) {
+      var file = split.file();
+      double selectivity = file.estimateSelectivity(predicate);
+      rows += selectivity * file.rowsCount();
+      bytes += selectivity * (file.endOffset() - file.startOffset() + 1);
+    }
+    return new QueryEstimate(Math.round(rows), Math.round(bytes));
+  }
+
+  /**
+   * Returns statistics of column values in each split, in order of splits. Statistics are collected
+   * for indexed columns and columns used by rollups and samples.
+   */
+  public List<ColumnStatistics> columnStatistics(String column) {
+    return snapshot.splits().stream()
+        .flatMap(split -> split.file().columnStatistics(column).stream())
+        .collect(Collectors.toList());
+  }
+
+  /** Returns queue wait and run time metrics of split scans for each query priority class. */
+  public Map<QueryPriority, QueryClassMetrics> schedulerMetrics() {
+    return scheduler.metrics();
+  }
+
+  /** Approximate count of bytes occupied by indexes of all splits, both in heap and off-heap. */
+  public long indexMemoryUsage() {
+    return snapshot.splits().stream().mapToLong(split -> split.file().indexMemoryUsage()).sum();
+  }
+
+  /** Count of bytes occupied by indexes of all splits outside of Java heap. */
+  public long offHeapIndexMemoryUsage() {
+    return snapshot.splits().stream()
+        .mapToLong(split -> split.file().offHeapIndexMemoryUsage())
+        .sum();
+  }
+
   @Override
   public void close() {
-    csvFiles.clear();
+    var splits = snapshot.splits();
+    snapshot = TableSnapshot.of(List.of());
+    scheduler.close();
+    // simple shutdown, indexing tasks are not awaited
+    initPool.shutdown();
     workerPool.shutdown();
+    try {
+      // indexes are read by split scans, their memory can be released only when scans are done
+      if (!workerPool.awaitTermination(CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+        System.out.println("Queries are still running, index memory will be released by GC");
+        return;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    splits.forEach(split -> split.file().close());
+  }
+
+  /**
+   * Context of split scans of one query.
+   *
+   * @param cancellation Token of the query, readers stop when it is cancelled.
+   * @param directIo Read data bypassing OS page cache.
+   */
+  record ScanContext(CancellationToken cancellation, boolean directIo) {}
+
+  /**
+   * Range of trip time as closed range of epoch seconds in UTC. Timestamps of rows are read as
+   * epoch seconds(see {@link Row#getLong(int)}) and compared with bounds of the range, without
+   * creation of {@link LocalDateTime} objects.
+   */
+  record EpochRange(long first, long last) {
+
+    static EpochRange of(Range<LocalDateTime> range) {
+      // timestamps of rows have whole seconds, so bounds are rounded inside of the range
+      long first = Long.MIN_VALUE + 1;
+      if (range.hasLowerBound()) {
+        var lower = range.lowerEndpoint();
+        first = lower.toEpochSecond(ZoneOffset.UTC);
+        if (lower.getNano() > 0 || range.lowerBoundType() == BoundType.OPEN) {
+          first++;
+        }
+      }
+      long last = Long.MAX_VALUE;
+      if (range.hasUpperBound()) {
+        var upper = range.upperEndpoint();
+        last = upper.toEpochSecond(ZoneOffset.UTC);
+        if (upper.getNano() == 0 && range.upperBoundType() == BoundType.OPEN) {
+          last--;
+        }
+      }
+      return new EpochRange(first, last);
+    }
+
+    /** Returns false for {@link DataType#NULL_LONG}: it is less than any bound. */
+    boolean contains(long epochSecond) {
+      return epochSecond >= first && epochSecond <= last;
+    }
+  }
+
+  /** Logical part of CSV file and data collected for it during indexing. */
+  record TableSplit(
+      CsvStorageFile file, TripSample sample, Map<RollupDefinition, DayRollup> rollups) {}
+
+  /**
+   * Indexed part of CSV file.
+   *
+   * @param partition Range of pickup time covered by partition of the file, null if file has no
+   *     partition.
+   * @param deferred File is not indexed yet, it will be indexed when query touches its partition.
+   */
+  record IndexedFile(
+      Path path,
+      List<TableSplit> splits,
+      long indexedSize,
+      Range<LocalDateTime> partition,
+      boolean deferred) {
+
+    /** Returns true if file is not indexed yet and its partition intersects pickup range. */
+    boolean touchedBy(Range<LocalDateTime> pickupRange) {
+      return deferred && partition.isConnected(pickupRange);
+    }
+  }
+
+  /**
+   * Immutable state of the table: files known to table, their splits and catalog of value ranges of
+   * splits.
+   */
+  record TableSnapshot(
+      Map<Path, IndexedFile> files,
+      List<TableSplit> splits,
+      SplitCatalog catalog,
+      SnapshotRefs refs) {
+
+    static TableSnapshot of(List<IndexedFile> files) {
+      var splits =
+          files.stream().flatMap(f -> f.splits().stream()).collect(Collectors.toUnmodifiableList());
+      return new TableSnapshot(
+          files.stream().collect(Collectors.toUnmodifiableMap(IndexedFile::path, f -> f)),
+          splits,
+          SplitCatalog.of(splits.stream().map(TableSplit::file).collect(Collectors.toList())),
+          new SnapshotRefs());
+    }
+
+    /**
+     * Returns splits which can contain rows matched by predicate, according to catalog. Splits of
+     * partitions which don't intersect pickup range are excluded.
+     */
+    List<TableSplit> candidates(QueryPredicate predicate, Range<LocalDateTime> pickupRange) {
+      return catalog.candidates(predicate).stream()
+          .mapToObj(splits::get)
+          .filter(
+              split -> {
+                var partition = files.get(split.file().path()).partition();
+                return partition == null || partition.isConnected(pickupRange);
+              })
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Reference count of table snapshot: table references snapshot while it is current, queries
+   * reference it while they scan its splits. Splits which are dropped by the next snapshot(e.g.,
+   * splits of rewritten file) are closed when the snapshot and all previous snapshots are not
+   * referenced anymore, because previous snapshots can contain the same splits.
+   */
+  static final class SnapshotRefs {
+
+    // guards links between snapshots and their draining
+    private static final Object LOCK = new Object();
+
+    // reference of the table is released when snapshot is replaced
+    private final AtomicInteger refs = new AtomicInteger(1);
+    private List<TableSplit> retired = List.of();
+    // previous snapshot which is not drained yet
+    private SnapshotRefs previous;
+    private SnapshotRefs next;
+    private boolean drained;
+
+    /** Reference snapshot, returns false if it is already released by all users. */
+    boolean tryRetain() {
+      while (true) {
+        int current = refs.get();
+        if (current == 0) {
+          return false;
+        }
+        if (refs.compareAndSet(current, current + 1)) {
+          return true;
+        }
+      }
+    }
+
+    void release() {
+      if (refs.decrementAndGet() == 0) {
+        synchronized (LOCK) {
+          drain(this);
+        }
+      }
+    }
+
+    /**
+     * Snapshot is replaced by the next one, table releases its reference.
+     *
+     * @param retired Splits of this snapshot which are not contained in the next snapshot.
+     */
+    void retire(List<TableSplit> retired, SnapshotRefs next) {
+      synchronized (LOCK) {
+        this.retired = retired;
+        this.next = next;
+        next.previous = this;
+      }
+      release();
+    }
+
+    private static void drain(SnapshotRefs refs) {
+      // snapshot is drained after all previous ones, so its retired splits are not used by queries
+      while (refs != null && !refs.drained && refs.refs.get() == 0 && refs.previous == null) {
+        refs.drained = true;
+        refs.retired.forEach(split -> split.file().close());
+        refs.retired = List.of();
+        refs.next.previous = null;
+        refs = refs.next;
+      }
+    }
   }
 
   public static class Settings {
+    /**
+     * Default count of splits which query should be expected to scan to read them by direct I/O.
+     */
+    public static final int DEFAULT_DIRECT_SCAN_SPLITS = 10;
+
     int initThreads = Runtime.getRuntime().availableProcessors();
     int executionThreads = Runtime.getRuntime().availableProcessors();
     int skipIndexStep = 8 * 1024;
+    long skipIndexBytes = 512 * 1024;
+    int refineIndexHits = 4;
+    long coalesceGapBytes = CsvStorageFile.DEFAULT_COALESCE_GAP_BYTES;
+    // negative means default threshold of DEFAULT_DIRECT_SCAN_SPLITS splits, 0 means that queries
+    // read data by direct I/O only if it is requested explicitly
+    long directScanBytes = -1;
+    int sampleSize = 1024;
+    List<RollupDefinition> rollups = List.of();
     long splitSize = 100 * 1024 * 1024;
     boolean disableBucketIndex = false;
     boolean disableNotNullIndex = false;
     boolean disableMinMaxIndex = false;
+    // 0 means that query can use all execution threads
+    int queryTaskBudget = 0;
+    int maxHeavyQueries = 1;
+    IndexStatistics indexStatistics;
+    boolean skipUselessIndexes = false;
+    PartitionPattern partitionPattern;
+    boolean lazyPartitions = false;
 
     public Settings() {}
 
@@ -306,5 +1850,105 @@ public final class RidesTable implements AverageDistances {
       this.disableNotNullIndex = disableNotNullIndex;
       this.disableMinMaxIndex = disableMinMaxIndex;
     }
+
+    /**
+     * Set max count of bytes between marks of row locator. Together with skip index step, it
+     * defines granularity of row locator for each file: mark is placed when any of limits reached.
+     */
+    public Settings withSkipIndexBytes(long skipIndexBytes) {
+      this.skipIndexBytes = skipIndexBytes;
+      return this;
+    }
+
+    /**
+     * Set count of times region of row locator should contain boundary of scanned rows range before
+     * it will be refined with finer marks. 0 disables refinement.
+     */
+    public Settings withRefineIndexHits(int refineIndexHits) {
+      this.refineIndexHits = refineIndexHits;
+      return this;
+    }
+
+    /**
+     * Set max gap in bytes between regions of file matched by indexes which is read by query
+     * instead of seek to the next region. Larger gap reduces count of seeks at cost of over-read.
+     */
+    public Settings withCoalesceGapBytes(long coalesceGapBytes) {
+      this.coalesceGapBytes = coalesceGapBytes;
+      return this;
+    }
+
+    /**
+     * Set count of bytes which query should be expected to scan to read data by direct I/O,
+     * bypassing OS page cache(see {@link ScanMode#AUTO}). 0 disables automatic selection. By
+     * default, threshold is size of {@value #DEFAULT_DIRECT_SCAN_SPLITS} splits.
+     */
+    public Settings withDirectScanBytes(long directScanBytes) {
+      this.directScanBytes = directScanBytes;
+      return this;
+    }
+
+    /** Returns threshold of direct I/O selection, 0 if it's disabled. */
+    long directScanBytes() {
+      return directScanBytes >= 0 ? directScanBytes : DEFAULT_DIRECT_SCAN_SPLITS * splitSize;
+    }
+
+    /**
+     * Set count of trips sampled from each split during initialization. Samples are used by
+     * approximate queries. 0 disables sampling.
+     */
+    public Settings withSampleSize(int sampleSize) {
+      this.sampleSize = sampleSize;
+      return this;
+    }
+
+    /**
+     * Set limits used to schedule concurrent queries(see {@link QueryScheduler}).
+     *
+     * @param queryTaskBudget Max count of splits scanned concurrently by one query, 0 means count
+     *     of execution threads.
+     * @param maxHeavyQueries Max count of {@link QueryPriority#BATCH} queries which scan splits
+     *     concurrently.
+     */
+    public Settings withScheduling(int queryTaskBudget, int maxHeavyQueries) {
+      this.queryTaskBudget = queryTaskBudget;
+      this.maxHeavyQueries = maxHeavyQueries;
+      return this;
+    }
+
+    /**
+     * Use index statistics collected before(e.g., by previous table instance over the same dataset)
+     * instead of empty ones.
+     *
+     * @param skipUselessIndexes Don't build index types which statistics show as useless for the
+     *     dataset(see {@link IndexStatistics#isUseless(String)}). Applies to initialization and
+     *     files indexed by refresh.
+     */
+    public Settings withIndexStatistics(IndexStatistics statistics, boolean skipUselessIndexes) {
+      this.indexStatistics = statistics;
+      this.skipUselessIndexes = skipUselessIndexes;
+      return this;
+    }
+
+    /**
+     * Extract partitions of files from their paths(e.g., month from {@code
+     * yellow_tripdata_2020-05.csv}). Partition is authoritative range of pickup time of the file:
+     * queries skip files which partition doesn't intersect queried range without evaluation of
+     * indexes, so trips with pickup time outside of partition are visible only to queries which
+     * touch the partition.
+     *
+     * @param lazyIndexing Defer indexing of partitioned files until query touches their partition.
+     */
+    public Settings withPartitions(PartitionPattern pattern, boolean lazyIndexing) {
+      this.partitionPattern = pattern;
+      this.lazyPartitions = lazyIndexing;
+      return this;
+    }
+
+    /** Set rollups which are materialized during initialization(see {@link RollupDefinition}). */
+    public Settings withRollups(RollupDefinition... rollups) {
+      this.rollups = List.of(rollups);
+      return this;
+    }
   }
 }
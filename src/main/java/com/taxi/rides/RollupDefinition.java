@@ -0,0 +1,33 @@
+package com.taxi.rides;
+
+import java.util.Objects;
+
+/**
+ * Declares materialized rollup computed while table is initialized: {@code SUM/COUNT(measure) BY
+ * day(pickup), day(dropoff), group}. Queries which aggregate the same measure by the same group use
+ * the rollup for days which are fully covered by queried time range, and scan CSV files only for
+ * partially covered days at the edges of the range.
+ *
+ * @param measureColumn Name of numeric column which is aggregated.
+ * @param groupColumn Name of integral column used to group rows.
+ */
+public record RollupDefinition(String measureColumn, String groupColumn) {
+
+  public RollupDefinition {
+    Objects.requireNonNull(measureColumn, "Measure column missed");
+    Objects.requireNonNull(groupColumn, "Group column missed");
+  }
+
+  /**
+   * Parse rollup definition in form {@code measure:group}, e.g. {@code
+   * trip_distance:passenger_count}.
+   */
+  public static RollupDefinition parse(String definition) {
+    var parts = definition.split(":");
+    if (parts.length != 2 || parts[0].isBlank() || parts[1].isBlank()) {
+      throw new IllegalArgumentException(
+          "Rollup should be defined as 'measure:group', but was: " + definition);
+    }
+    return new RollupDefinition(parts[0].trim(), parts[1].trim());
+  }
+}
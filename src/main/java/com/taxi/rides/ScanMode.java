@@ -0,0 +1,15 @@
+package com.taxi.rides;
+
+/**
+ * Way of reading data of splits by query. Regular reads go through OS page cache: large one-off
+ * scan(e.g., report over the whole year) evicts pages of recently queried data, and latency of
+ * short queries grows until pages are loaded again. Direct I/O reads data bypassing page cache.
+ */
+public enum ScanMode {
+  /** Use direct I/O if query is expected to scan more bytes than configured threshold. */
+  AUTO,
+  /** Read data through OS page cache. */
+  CACHED,
+  /** Read data by direct I/O, if file system supports it. */
+  DIRECT
+}
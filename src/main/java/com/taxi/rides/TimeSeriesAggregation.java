@@ -0,0 +1,118 @@
+package com.taxi.rides;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * Averages of trip distance grouped by time bucket and passenger count. Accumulators are dense
+ * primitive arrays: for each passenger count there are arrays of sums and counts indexed by bucket
+ * number({@code (pickupEpochSecond - startEpochSecond) / interval}), so adding a trip doesn't
+ * allocate and doesn't hash keys.
+ *
+ * <p>Arrays of each passenger count cover only window of buckets which contain trips(e.g., pickup
+ * times of one split) and are doubled when trip falls outside of the window, so aggregation of
+ * split is not sized to the whole series.
+ */
+final class TimeSeriesAggregation {
+
+  // passenger count is byte, arrays of each possible value are indexed by value - Byte.MIN_VALUE
+  private static final int KEYS = 256;
+  // initial count of buckets covered by arrays of passenger count
+  private static final int INITIAL_WINDOW = 16;
+
+  private final long startEpochSecond;
+  private final long intervalSeconds;
+  private final int buckets;
+  // arrays are allocated on first trip with passenger count
+  private final double[][] sums = new double[KEYS][];
+  private final long[][] counts = new long[KEYS][];
+  // number of bucket stored at index 0 of arrays
+  private final int[] firstBuckets = new int[KEYS];
+
+  TimeSeriesAggregation(long startEpochSecond, long intervalSeconds, int buckets) {
+    this.startEpochSecond = startEpochSecond;
+    this.intervalSeconds = intervalSeconds;
+    this.buckets = buckets;
+  }
+
+  /** Add trip picked up at passed time, pickup time must not precede start of the series. */
+  void add(long pickupEpochSecond, byte passengerCount, double distance) {
+    int bucket = (int) ((pickupEpochSecond - startEpochSecond) / intervalSeconds);
+    int key = passengerCount - Byte.MIN_VALUE;
+    int idx = bucket - firstBuckets[key];
+    if (sums[key] == null || idx < 0 || idx >= sums[key].length) {
+      cover(key, bucket, bucket + 1);
+      idx = bucket - firstBuckets[key];
+    }
+    sums[key][idx] += distance;
+    counts[key][idx]++;
+  }
+
+  /**
+   * Adds trips of other aggregation into this one and returns this aggregation. Other aggregation
+   * is not changed.
+   */
+  TimeSeriesAggregation merge(TimeSeriesAggregation other) {
+    for (int key = 0; key < KEYS; key++) {
+      if (other.sums[key] == null) {
+        continue;
+      }
+      int otherFirst = other.firstBuckets[key];
+      int otherLength = other.sums[key].length;
+      cover(key, otherFirst, otherFirst + otherLength);
+      int offset = otherFirst - firstBuckets[key];
+      for (int i = 0; i < otherLength; i++) {
+        sums[key][offset + i] += other.sums[key][i];
+        counts[key][offset + i] += other.counts[key][i];
+      }
+    }
+    return this;
+  }
+
+  /** Grow arrays of passenger count, so they contain buckets [from, to). */
+  private void cover(int key, int from, int to) {
+    int first = sums[key] != null ? firstBuckets[key] : from;
+    int length = sums[key] != null ? sums[key].length : 0;
+    if (from >= first && to <= first + length) {
+      return;
+    }
+    int low = Math.min(first, from);
+    int high = Math.max(first + length, to);
+    int capacity = Math.min(buckets, Math.max(high - low, Math.max(2 * length, INITIAL_WINDOW)));
+    // spare buckets are added in direction of growth
+    int newFirst = from < first ? Math.max(0, high - capacity) : Math.min(low, buckets - capacity);
+    var newSums = new double[capacity];
+    var newCounts = new long[capacity];
+    if (length > 0) {
+      System.arraycopy(sums[key], 0, newSums, first - newFirst, length);
+      System.arraycopy(counts[key], 0, newCounts, first - newFirst, length);
+    }
+    sums[key] = newSums;
+    counts[key] = newCounts;
+    firstBuckets[key] = newFirst;
+  }
+
+  /** Returns averages of non-empty buckets, mapped by start time of bucket. */
+  TreeMap<LocalDateTime, HashMap<Integer, Double>> computeResult() {
+    var res = new TreeMap<LocalDateTime, HashMap<Integer, Double>>();
+    for (int key = 0; key < KEYS; key++) {
+      if (sums[key] == null) {
+        continue;
+      }
+      for (int i = 0; i < counts[key].length; i++) {
+        if (counts[key][i] == 0) {
+          continue;
+        }
+        long bucket = firstBuckets[key] + i;
+        var bucketStart =
+            LocalDateTime.ofEpochSecond(
+                startEpochSecond + bucket * intervalSeconds, 0, ZoneOffset.UTC);
+        res.computeIfAbsent(bucketStart, k -> new HashMap<>())
+            .put(key + Byte.MIN_VALUE, sums[key][i] / counts[key][i]);
+      }
+    }
+    return res;
+  }
+}
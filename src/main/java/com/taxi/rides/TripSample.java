@@ -0,0 +1,98 @@
+package com.taxi.rides;
+
+import com.taxi.rides.query.aggregations.ApproxAvgAggregation;
+import com.taxi.rides.storage.Row;
+import com.taxi.rides.storage.SplitCollector;
+import com.taxi.rides.storage.schema.Column;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Uniform sample of trips of one split collected using reservoir sampling while split is indexed.
+ * Only trips which have all columns required by average distance query are sampled.
+ */
+final class TripSample implements SplitCollector {
+
+  private final List<Column<?>> columns;
+  private final SplittableRandom random = new SplittableRandom();
+  private final long[] pickupTimes;
+  private final long[] dropoffTimes;
+  private final byte[] passengerCounts;
+  private final double[] distances;
+  private int size;
+  private long seenTrips;
+
+  /**
+   * @param columns Pickup time, dropoff time, passenger count and trip distance columns.
+   * @param capacity Max count of sampled trips.
+   */
+  TripSample(List<Column<?>> columns, int capacity) {
+    this.columns = List.copyOf(columns);
+    pickupTimes = new long[capacity];
+    dropoffTimes = new long[capacity];
+    passengerCounts = new byte[capacity];
+    distances = new double[capacity];
+  }
+
+  @Override
+  public List<Column<?>> columns() {
+    return columns;
+  }
+
+  @Override
+  public void collect(long rowId, Row row) {
+    var pickup = (LocalDateTime) row.get(0);
+    var dropoff = (LocalDateTime) row.get(1);
+    var passengerCnt = (Byte) row.get(2);
+    var distance = (Double) row.get(3);
+    if (pickup == null || dropoff == null || passengerCnt == null || distance == null) {
+      return;
+    }
+
+    seenTrips++;
+    int slot;
+    if (size < pickupTimes.length) {
+      slot = size++;
+    } else {
+      // replace random sample with probability capacity/seen trips
+      long candidate = random.nextLong(seenTrips);
+      if (candidate >= pickupTimes.length) {
+        return;
+      }
+      slot = (int) candidate;
+    }
+    pickupTimes[slot] = pickup.toEpochSecond(ZoneOffset.UTC);
+    dropoffTimes[slot] = dropoff.toEpochSecond(ZoneOffset.UTC);
+    passengerCounts[slot] = passengerCnt;
+    distances[slot] = distance;
+  }
+
+  /**
+   * Estimate average distances of trips inside time range using sampled trips.
+   *
+   * @return Map of passenger count to aggregation which contains only samples.
+   */
+  HashMap<Byte, ApproxAvgAggregation> estimate(LocalDateTime start, LocalDateTime end) {
+    var res = new HashMap<Byte, ApproxAvgAggregation>();
+    if (size == 0) {
+      return res;
+    }
+    long startSec = start.toEpochSecond(ZoneOffset.UTC);
+    long endSec = end.toEpochSecond(ZoneOffset.UTC);
+    // each sampled trip represents the same count of trips of the split
+    double weight = (double) seenTrips / size;
+    for (int i = 0; i < size; i++) {
+      if (pickupTimes[i] >= startSec
+          && pickupTimes[i] <= endSec
+          && dropoffTimes[i] >= startSec
+          && dropoffTimes[i] <= endSec) {
+        res.computeIfAbsent(passengerCounts[i], k -> new ApproxAvgAggregation())
+            .addSample(distances[i], weight);
+      }
+    }
+    return res;
+  }
+}
@@ -0,0 +1,22 @@
+package com.taxi.rides;
+
+/**
+ * Distribution statistics of trips(see {@link RidesTable#getTripStatistics}).
+ *
+ * @param distanceQuantiles Approximate values of {@link #QUANTILES} of trip distance.
+ * @param fareQuantiles Approximate values of {@link #QUANTILES} of fare amount.
+ * @param distinctPickupLocations Approximate count of distinct pickup locations.
+ * @param distinctDropoffLocations Approximate count of distinct dropoff locations.
+ * @param distanceHistogram Count of trips per 1 mile distance bucket in [0, 50) range, preceded by
+ *     count of trips with negative distance and followed by count of trips with distance >= 50.
+ */
+public record TripStatistics(
+    double[] distanceQuantiles,
+    double[] fareQuantiles,
+    long distinctPickupLocations,
+    long distinctDropoffLocations,
+    long[] distanceHistogram) {
+
+  /** Quantiles computed for trip distance and fare amount: p50, p95, p99. */
+  public static final double[] QUANTILES = {0.5, 0.95, 0.99};
+}
@@ -0,0 +1,77 @@
+package com.taxi.rides;
+
+import com.taxi.rides.query.aggregations.HistogramAggregation;
+import com.taxi.rides.query.aggregations.HyperLogLogAggregation;
+import com.taxi.rides.query.aggregations.TDigestAggregation;
+
+/** Sketches which compute {@link TripStatistics} of one split, can be merged with other splits. */
+final class TripStatisticsAggregation {
+
+  private static final double DIGEST_COMPRESSION = 100;
+  private static final int HLL_PRECISION = 12;
+  private static final double HISTOGRAM_MAX_DISTANCE = 50;
+
+  private final TDigestAggregation distances;
+  private final TDigestAggregation fares;
+  private final HyperLogLogAggregation pickupLocations;
+  private final HyperLogLogAggregation dropoffLocations;
+  private final HistogramAggregation distanceHistogram;
+
+  TripStatisticsAggregation() {
+    this(
+        new TDigestAggregation(DIGEST_COMPRESSION, TripStatistics.QUANTILES),
+        new TDigestAggregation(DIGEST_COMPRESSION, TripStatistics.QUANTILES),
+        new HyperLogLogAggregation(HLL_PRECISION),
+        new HyperLogLogAggregation(HLL_PRECISION),
+        new HistogramAggregation(0, HISTOGRAM_MAX_DISTANCE, (int) HISTOGRAM_MAX_DISTANCE));
+  }
+
+  private TripStatisticsAggregation(
+      TDigestAggregation distances,
+      TDigestAggregation fares,
+      HyperLogLogAggregation pickupLocations,
+      HyperLogLogAggregation dropoffLocations,
+      HistogramAggregation distanceHistogram) {
+    this.distances = distances;
+    this.fares = fares;
+    this.pickupLocations = pickupLocations;
+    this.dropoffLocations = dropoffLocations;
+    this.distanceHistogram = distanceHistogram;
+  }
+
+  void addDistance(double distance) {
+    distances.add(distance);
+    distanceHistogram.add(distance);
+  }
+
+  void addFare(double fare) {
+    fares.add(fare);
+  }
+
+  void addPickupLocation(long location) {
+    pickupLocations.add(location);
+  }
+
+  void addDropoffLocation(long location) {
+    dropoffLocations.add(location);
+  }
+
+  /** Returns aggregation which contains trips of both aggregations. Arguments are not changed. */
+  TripStatisticsAggregation merge(TripStatisticsAggregation other) {
+    return new TripStatisticsAggregation(
+        distances.merge(other.distances),
+        fares.merge(other.fares),
+        pickupLocations.merge(other.pickupLocations),
+        dropoffLocations.merge(other.dropoffLocations),
+        distanceHistogram.merge(other.distanceHistogram));
+  }
+
+  TripStatistics computeResult() {
+    return new TripStatistics(
+        distances.computeResult(),
+        fares.computeResult(),
+        pickupLocations.computeResult(),
+        dropoffLocations.computeResult(),
+        distanceHistogram.computeResult());
+  }
+}
@@ -1,10 +1,18 @@
 package com.taxi.rides.query.aggregations;
 
-public interface AggregationOperator<R> {
+/**
+ * Aggregation which can be computed independently on parts of data(e.g., splits scanned by
+ * different threads) and then merged.
+ *
+ * @param <T> Type of aggregated values.
+ * @param <R> Type of aggregation result.
+ */
+public interface AggregationOperator<T, R> {
 
-  void add(R value);
+  void add(T value);
 
-  AggregationOperator<R> merge(AggregationOperator<R> otherAgg);
+  /** Returns aggregation which contains values of both aggregations. Arguments are not changed. */
+  AggregationOperator<T, R> merge(AggregationOperator<T, R> otherAgg);
 
   R computeResult();
 }
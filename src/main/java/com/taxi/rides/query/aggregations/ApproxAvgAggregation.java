@@ -0,0 +1,119 @@
+package com.taxi.rides.query.aggregations;
+
+import java.util.StringJoiner;
+
+/**
+ * Estimates average of values using exact aggregates for part of data and samples for the rest of
+ * data. Each sample represents some count of rows(weight of the sample), e.g. if sample of 1000
+ * rows was taken from 1M rows, each sampled row has weight 1000.
+ *
+ * <p>Estimation is returned with confidence interval computed using normal approximation of sampled
+ * mean. Only sampled part of data contributes to the interval width, so when more data is
+ * aggregated exactly, the interval becomes narrower.
+ *
+ * <p>Aggregation supports removal of samples: when part of data which was estimated by samples is
+ * later aggregated exactly, its samples should be removed from the aggregation.
+ */
+public final class ApproxAvgAggregation {
+
+  // z-value of 95% confidence interval
+  private static final double Z_95 = 1.96;
+
+  private double exactSum;
+  private long exactCount;
+  private double weightedSum;
+  private double weightedCount;
+  private long samplesCount;
+  private double samplesSum;
+  private double samplesSumOfSquares;
+
+  /** Add aggregate computed on exact data. */
+  public void addExact(DoubleAvgAggregation exact) {
+    exactSum += exact.sum();
+    exactCount += exact.count();
+  }
+
+  /**
+   * Add sampled value.
+   *
+   * @param value Sampled value.
+   * @param weight Count of rows represented by sampled value.
+   */
+  public void addSample(double value, double weight) {
+    weightedSum += value * weight;
+    weightedCount += weight;
+    samplesCount++;
+    samplesSum += value;
+    samplesSumOfSquares += value * value;
+  }
+
+  /** Add all samples(but not exact values) of passed aggregation. */
+  public void addSamples(ApproxAvgAggregation other) {
+    weightedSum += other.weightedSum;
+    weightedCount += other.weightedCount;
+    samplesCount += other.samplesCount;
+    samplesSum += other.samplesSum;
+    samplesSumOfSquares += other.samplesSumOfSquares;
+  }
+
+  /** Remove samples of passed aggregation which were added by {@link #addSamples}. */
+  public void removeSamples(ApproxAvgAggregation other) {
+    weightedSum -= other.weightedSum;
+    weightedCount -= other.weightedCount;
+    samplesCount -= other.samplesCount;
+    samplesSum -= other.samplesSum;
+    samplesSumOfSquares -= other.samplesSumOfSquares;
+    if (samplesCount == 0) {
+      // drop accumulated floating point error
+      weightedSum = weightedCount = samplesSum = samplesSumOfSquares = 0;
+    }
+  }
+
+  public Estimate computeResult() {
+    double estimatedCount = exactCount + weightedCount;
+    if (estimatedCount <= 0) {
+      return new Estimate(Double.NaN, Double.NaN, Double.NaN);
+    }
+    double value = (exactSum + weightedSum) / estimatedCount;
+    if (samplesCount == 0) {
+      return new Estimate(value, value, value);
+    }
+    if (samplesCount < 2) {
+      return new Estimate(value, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+    double mean = samplesSum / samplesCount;
+    double variance = Math.max(0, (samplesSumOfSquares - mean * samplesSum) / (samplesCount - 1));
+    // only sampled fraction of rows is uncertain
+    double sampledFraction = weightedCount / estimatedCount;
+    double halfWidth = Z_95 * sampledFraction * Math.sqrt(variance / samplesCount);
+    return new Estimate(value, value - halfWidth, value + halfWidth);
+  }
+
+  @Override
+  public String toString() {
+    return new StringJoiner(", ", ApproxAvgAggregation.class.getSimpleName() + "[", "]")
+        .add("exactSum=" + exactSum)
+        .add("exactCount=" + exactCount)
+        .add("weightedSum=" + weightedSum)
+        .add("weightedCount=" + weightedCount)
+        .add("samplesCount=" + samplesCount)
+        .toString();
+  }
+
+  /** Estimated value and its 95% confidence interval. */
+  public record Estimate(double value, double lowerBound, double upperBound) {
+
+    /** Returns half-width of confidence interval relative to estimated value. */
+    public double relativeError() {
+      if (lowerBound == upperBound) {
+        return 0;
+      }
+      return (upperBound - lowerBound) / 2 / Math.abs(value);
+    }
+
+    @Override
+    public String toString() {
+      return value + " [" + lowerBound + ", " + upperBound + "]";
+    }
+  }
+}
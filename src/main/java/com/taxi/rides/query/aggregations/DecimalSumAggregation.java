@@ -0,0 +1,53 @@
+package com.taxi.rides.query.aggregations;
+
+import com.google.common.base.Preconditions;
+import java.math.BigDecimal;
+
+/**
+ * Exact sum of decimal values represented as longs scaled by {@code 10^scale}(see {@link
+ * com.taxi.rides.storage.schema.datatypes.DecimalDataType}). Sum is computed in long arithmetic,
+ * overflow fails aggregation with {@link ArithmeticException} instead of returning wrong sum.
+ */
+public final class DecimalSumAggregation implements AggregationOperator<Long, BigDecimal> {
+
+  private final int scale;
+  private long sum;
+  private long count;
+
+  public DecimalSumAggregation(int scale) {
+    this.scale = scale;
+  }
+
+  @Override
+  public void add(Long value) {
+    if (value != null) {
+      add(value.longValue());
+    }
+  }
+
+  /** Add value scaled by {@code 10^scale}. */
+  public void add(long unscaledValue) {
+    sum = Math.addExact(sum, unscaledValue);
+    count++;
+  }
+
+  @Override
+  public DecimalSumAggregation merge(AggregationOperator<Long, BigDecimal> otherAgg) {
+    var other = (DecimalSumAggregation) otherAgg;
+    Preconditions.checkArgument(other.scale == scale, "Sums with different scale can't be merged");
+    var res = new DecimalSumAggregation(scale);
+    res.sum = Math.addExact(sum, other.sum);
+    res.count = count + other.count;
+    return res;
+  }
+
+  /** Returns count of added values. */
+  public long count() {
+    return count;
+  }
+
+  @Override
+  public BigDecimal computeResult() {
+    return BigDecimal.valueOf(sum, scale);
+  }
+}
@@ -2,7 +2,7 @@ package com.taxi.rides.query.aggregations;
 
 import java.util.StringJoiner;
 
-public final class DoubleAvgAggregation implements AggregationOperator<Double> {
+public final class DoubleAvgAggregation implements AggregationOperator<Double, Double> {
 
   private double sum;
   private int count;
@@ -18,16 +18,28 @@ public final class DoubleAvgAggregation implements AggregationOperator<Double> {
 
   @Override
   public void add(Double value) {
+    add(value.doubleValue());
+  }
+
+  public void add(double value) {
     sum += value;
     count++;
   }
 
   @Override
-  public DoubleAvgAggregation merge(AggregationOperator<Double> otherAgg) {
+  public DoubleAvgAggregation merge(AggregationOperator<Double, Double> otherAgg) {
     var otherAvg = (DoubleAvgAggregation) otherAgg;
     return new DoubleAvgAggregation(sum + otherAvg.sum, count + otherAvg.count);
   }
 
+  public double sum() {
+    return sum;
+  }
+
+  public int count() {
+    return count;
+  }
+
   @Override
   public Double computeResult() {
     return sum / count;
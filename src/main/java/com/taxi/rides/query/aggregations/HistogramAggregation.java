@@ -0,0 +1,75 @@
+package com.taxi.rides.query.aggregations;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Histogram with fixed count of equal-width buckets over {@code [min, max)} range. Values outside
+ * the range are counted by two additional buckets: underflow bucket(values less than min) and
+ * overflow bucket(values greater or equal to max).
+ *
+ * <p>Result of aggregation is array of counts of size {@code bucketCount + 2}: underflow bucket is
+ * at index 0, bucket {@code i} of the range is at index {@code i + 1}, overflow bucket is the last
+ * one.
+ */
+public final class HistogramAggregation implements AggregationOperator<Double, long[]> {
+
+  private final double min;
+  private final double max;
+  private final double bucketWidth;
+  private final long[] counts;
+
+  public HistogramAggregation(double min, double max, int bucketCount) {
+    Preconditions.checkArgument(min < max, "Histogram range is empty");
+    Preconditions.checkArgument(bucketCount > 0, "Bucket count should be > 0");
+    this.min = min;
+    this.max = max;
+    this.bucketWidth = (max - min) / bucketCount;
+    this.counts = new long[bucketCount + 2];
+  }
+
+  @Override
+  public void add(Double value) {
+    if (value != null) {
+      add(value.doubleValue());
+    }
+  }
+
+  public void add(double value) {
+    if (Double.isNaN(value)) {
+      return;
+    }
+    int bucket;
+    if (value < min) {
+      bucket = 0;
+    } else if (value >= max) {
+      bucket = counts.length - 1;
+    } else {
+      // rounding can move value close to max into overflow bucket
+      bucket = Math.min(counts.length - 2, 1 + (int) ((value - min) / bucketWidth));
+    }
+    counts[bucket]++;
+  }
+
+  @Override
+  public HistogramAggregation merge(AggregationOperator<Double, long[]> otherAgg) {
+    var other = (HistogramAggregation) otherAgg;
+    Preconditions.checkArgument(
+        other.min == min && other.max == max && other.counts.length == counts.length,
+        "Histograms with different buckets can't be merged");
+    var res = new HistogramAggregation(min, max, counts.length - 2);
+    for (int i = 0; i < counts.length; i++) {
+      res.counts[i] = counts[i] + other.counts[i];
+    }
+    return res;
+  }
+
+  @Override
+  public long[] computeResult() {
+    return counts.clone();
+  }
+
+  /** Returns inclusive lower bound of values counted by bucket {@code i} of the range. */
+  public double bucketLowerBound(int bucket) {
+    return min + bucket * bucketWidth;
+  }
+}
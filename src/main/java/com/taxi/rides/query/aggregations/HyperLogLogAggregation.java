@@ -0,0 +1,100 @@
+package com.taxi.rides.query.aggregations;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Estimates count of distinct values using HyperLogLog. Sketch occupies {@code 2^precision} bytes
+ * regardless of count of added values, relative standard error of estimation is {@code
+ * 1.04/sqrt(2^precision)}(e.g., ~1.6% for precision 12).
+ *
+ * <p>Values are hashed by 64-bit mixing function, so there is no need in large range correction.
+ * Small cardinalities are estimated using linear counting.
+ */
+public final class HyperLogLogAggregation implements AggregationOperator<Long, Long> {
+
+  private final int precision;
+  private final byte[] registers;
+
+  /**
+   * @param precision Count of bits used to select register, in range [4, 16].
+   */
+  public HyperLogLogAggregation(int precision) {
+    Preconditions.checkArgument(
+        precision >= 4 && precision <= 16, "Precision should be in [4, 16] range");
+    this.precision = precision;
+    this.registers = new byte[1 << precision];
+  }
+
+  @Override
+  public void add(Long value) {
+    if (value != null) {
+      add(value.longValue());
+    }
+  }
+
+  public void add(long value) {
+    long hash = mix(value);
+    int register = (int) (hash >>> (64 - precision));
+    // position of the first 1-bit in the rest of hash, sentinel bit limits the rank
+    long rest = (hash << precision) | (1L << (precision - 1));
+    byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+    if (rank > registers[register]) {
+      registers[register] = rank;
+    }
+  }
+
+  @Override
+  public HyperLogLogAggregation merge(AggregationOperator<Long, Long> otherAgg) {
+    var other = (HyperLogLogAggregation) otherAgg;
+    Preconditions.checkArgument(
+        other.precision == precision, "Sketches with different precision can't be merged");
+    var res = new HyperLogLogAggregation(precision);
+    for (int i = 0; i < registers.length; i++) {
+      res.registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+    }
+    return res;
+  }
+
+  @Override
+  public Long computeResult() {
+    int m = registers.length;
+    double sum = 0;
+    int zeroRegisters = 0;
+    for (byte rank : registers) {
+      sum += Math.scalb(1.0, -rank);
+      if (rank == 0) {
+        zeroRegisters++;
+      }
+    }
+    double estimate = alpha(m) * m * m / sum;
+    if (estimate <= 2.5 * m && zeroRegisters > 0) {
+      // linear counting is more precise for small cardinalities
+      estimate = m * Math.log((double) m / zeroRegisters);
+    }
+    return Math.round(estimate);
+  }
+
+  private static double alpha(int m) {
+    switch (m) {
+      case 16:
+        return 0.673;
+      case 32:
+        return 0.697;
+      case 64:
+        return 0.709;
+      default:
+        return 0.7213 / (1 + 1.079 / m);
+    }
+  }
+
+  /** Finalizer of MurmurHash3: spreads bits of value over whole 64-bit hash. */
+  private static long mix(long value) {
+    long h = value;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
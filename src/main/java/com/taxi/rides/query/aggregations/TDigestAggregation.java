@@ -0,0 +1,215 @@
+package com.taxi.rides.query.aggregations;
+
+import com.google.common.base.Preconditions;
+import java.util.Arrays;
+
+/**
+ * Computes approximate quantiles using t-digest(merging variant). Values are summarized by
+ * centroids(mean and weight), centroids near the tails hold fewer values than centroids near the
+ * median, so extreme quantiles(p95, p99) are estimated with small relative error.
+ *
+ * <p>Added values are collected into fixed buffer and merged into centroids when buffer is full.
+ * Size of centroids is limited by arcsine scale function, digest holds at most {@code compression +
+ * 2} centroids regardless of count of added values. All arrays are allocated upfront, adding of
+ * value doesn't allocate.
+ */
+public final class TDigestAggregation implements AggregationOperator<Double, double[]> {
+
+  private final double compression;
+  private final double[] quantiles;
+  private final double[] buffer;
+  private int buffered;
+  private double[] means;
+  private double[] weights;
+  private int centroids;
+  private double totalWeight;
+  // scratch arrays used to merge centroids
+  private double[] mergedMeans;
+  private double[] mergedWeights;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+
+  /**
+   * @param compression Accuracy parameter, larger values give more precise quantiles but use more
+   *     memory. Typical value is 100.
+   * @param quantiles Quantiles(in range [0, 1]) returned by {@link #computeResult()}.
+   */
+  public TDigestAggregation(double compression, double... quantiles) {
+    Preconditions.checkArgument(compression >= 10, "Compression should be >= 10");
+    for (double q : quantiles) {
+      Preconditions.checkArgument(q >= 0 && q <= 1, "Quantile should be in [0, 1] range");
+    }
+    this.compression = compression;
+    this.quantiles = quantiles.clone();
+    int maxCentroids = (int) Math.ceil(compression) + 2;
+    this.buffer = new double[maxCentroids * 2];
+    // centroids array should fit own centroids and either full buffer or centroids of other digest
+    this.means = new double[maxCentroids + buffer.length];
+    this.weights = new double[means.length];
+    this.mergedMeans = new double[means.length];
+    this.mergedWeights = new double[means.length];
+  }
+
+  @Override
+  public void add(Double value) {
+    if (value != null) {
+      add(value.doubleValue());
+    }
+  }
+
+  public void add(double value) {
+    if (Double.isNaN(value)) {
+      return;
+    }
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+    buffer[buffered++] = value;
+    if (buffered == buffer.length) {
+      flushBuffer();
+    }
+  }
+
+  @Override
+  public TDigestAggregation merge(AggregationOperator<Double, double[]> otherAgg) {
+    var other = (TDigestAggregation) otherAgg;
+    var res = new TDigestAggregation(compression, quantiles);
+    res.mergeCentroids(means, weights, centroids);
+    res.mergeCentroids(other.means, other.weights, other.centroids);
+    for (int i = 0; i < buffered; i++) {
+      res.add(buffer[i]);
+    }
+    for (int i = 0; i < other.buffered; i++) {
+      res.add(other.buffer[i]);
+    }
+    res.min = Math.min(res.min, Math.min(min, other.min));
+    res.max = Math.max(res.max, Math.max(max, other.max));
+    return res;
+  }
+
+  /** Returns values of quantiles passed to constructor, NaN if no values were added. */
+  @Override
+  public double[] computeResult() {
+    var res = new double[quantiles.length];
+    for (int i = 0; i < quantiles.length; i++) {
+      res[i] = quantile(quantiles[i]);
+    }
+    return res;
+  }
+
+  /** Returns approximate value of quantile {@code q}, NaN if no values were added. */
+  public double quantile(double q) {
+    flushBuffer();
+    if (centroids == 0) {
+      return Double.NaN;
+    }
+    if (centroids == 1) {
+      return means[0];
+    }
+    double index = q * totalWeight;
+    // values between min and center of the first centroid
+    if (index < weights[0] / 2) {
+      return min + (means[0] - min) * index / (weights[0] / 2);
+    }
+    double weightSoFar = weights[0] / 2;
+    for (int i = 0; i < centroids - 1; i++) {
+      double distance = (weights[i] + weights[i + 1]) / 2;
+      if (weightSoFar + distance > index) {
+        double fraction = (index - weightSoFar) / distance;
+        return means[i] + (means[i + 1] - means[i]) * fraction;
+      }
+      weightSoFar += distance;
+    }
+    // values between center of the last centroid and max
+    double lastHalf = weights[centroids - 1] / 2;
+    double fraction = lastHalf == 0 ? 1 : Math.min(1, (index - weightSoFar) / lastHalf);
+    return means[centroids - 1] + (max - means[centroids - 1]) * fraction;
+  }
+
+  /** Returns count of values added to digest. */
+  public long count() {
+    return Math.round(totalWeight) + buffered;
+  }
+
+  private void flushBuffer() {
+    if (buffered == 0) {
+      return;
+    }
+    Arrays.sort(buffer, 0, buffered);
+    int count = buffered;
+    buffered = 0;
+    mergeCentroids(buffer, null, count);
+  }
+
+  /**
+   * Merge sorted sequence of centroids into this digest.
+   *
+   * @param addedWeights Weights of added centroids, {@code null} means each centroid has weight 1.
+   */
+  private void mergeCentroids(double[] addedMeans, double[] addedWeights, int count) {
+    if (count == 0) {
+      return;
+    }
+    double addedWeight = addedWeights == null ? count : sum(addedWeights, count);
+    double newTotal = totalWeight + addedWeight;
+
+    int i = 0;
+    int j = 0;
+    int merged = 0;
+    double weightSoFar = 0;
+    double kLeft = scale(0);
+    double curMean = 0;
+    double curWeight = 0;
+    while (i < centroids || j < count) {
+      double mean;
+      double weight;
+      if (j >= count || (i < centroids && means[i] <= addedMeans[j])) {
+        mean = means[i];
+        weight = weights[i++];
+      } else {
+        mean = addedMeans[j];
+        weight = addedWeights == null ? 1 : addedWeights[j];
+        j++;
+      }
+
+      if (curWeight == 0) {
+        curMean = mean;
+        curWeight = weight;
+      } else if (scale((weightSoFar + curWeight + weight) / newTotal) - kLeft <= 1) {
+        curWeight += weight;
+        curMean += (mean - curMean) * weight / curWeight;
+      } else {
+        mergedMeans[merged] = curMean;
+        mergedWeights[merged++] = curWeight;
+        weightSoFar += curWeight;
+        kLeft = scale(weightSoFar / newTotal);
+        curMean = mean;
+        curWeight = weight;
+      }
+    }
+    mergedMeans[merged] = curMean;
+    mergedWeights[merged++] = curWeight;
+
+    // swap centroids and scratch arrays
+    var tmpMeans = means;
+    var tmpWeights = weights;
+    means = mergedMeans;
+    weights = mergedWeights;
+    mergedMeans = tmpMeans;
+    mergedWeights = tmpWeights;
+    centroids = merged;
+    totalWeight = newTotal;
+  }
+
+  /** Arcsine scale function: maps quantile to k-space where each centroid spans at most 1. */
+  private double scale(double q) {
+    return compression / (2 * Math.PI) * Math.asin(2 * Math.min(1, q) - 1);
+  }
+
+  private static double sum(double[] values, int count) {
+    double sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += values[i];
+    }
+    return sum;
+  }
+}
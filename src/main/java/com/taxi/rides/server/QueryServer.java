@@ -0,0 +1,369 @@
+package com.taxi.rides.server;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Stopwatch;
+import com.taxi.rides.RidesTable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Serves queries against already initialized {@link RidesTable}. Server keeps table (and its
+ * indexes) warm between queries, so each query pays only scan cost, not initialization cost.
+ *
+ * <p>Server uses simple line based protocol over Unix-domain socket or loopback TCP port. Each
+ * request is one line of '|' separated fields, server responds with one line:
+ *
+ * <ul>
+ *   <li>{@code AVG|2020-05-01 00:00:00|2020-08-11 00:00:00[|<deadline_ms>]} - returns {@code
+ *       OK|<latency_us>|<passengers>=<avg_distance>,...}. Query which doesn't complete before
+ *       optional deadline is cancelled and answered with error.
+ *   <li>{@code APPROX|2020-05-01 00:00:00|2020-08-11 00:00:00|0.01|500} - estimates averages with
+ *       target relative error and deadline in ms, returns {@code
+ *       OK|<latency_us>|<passengers>=<estimate>:<lower_bound>:<upper_bound>,...}
+ *   <li>{@code REFRESH} - index new and appended CSV files, returns {@code
+ *       OK|<latency_us>|<new_splits>}
+ *   <li>{@code STATS} - returns {@code OK|served=..,rejected=..,failed=..,avg_us=..,max_us=..}
+ *       followed by split scan scheduling metrics of each query priority class({@code
+ *       <class>_tasks=..,<class>_wait_us=..,<class>_max_wait_us=..,<class>_run_us=..})
+ *   <li>{@code PING} - returns {@code PONG}
+ *   <li>{@code QUIT} - closes connection
+ * </ul>
+ *
+ * Failed request is answered with {@code ERR|<message>}. When server can't admit query in
+ * configured time(too many queries already running), it answers with {@code BUSY|<latency_us>}.
+ */
+public final class QueryServer implements AutoCloseable {
+
+  private static final DateTimeFormatter DATE_FORMATTER =
+      new DateTimeFormatterBuilder().appendPattern("yyyy-MM-dd HH:mm:ss").toFormatter();
+  private static final Splitter FIELD_SPLITTER = Splitter.on('|').trimResults();
+
+  private final RidesTable table;
+  private final Settings settings;
+  private final ServerSocketChannel serverChannel;
+  private final ExecutorService connectionPool;
+  private final Semaphore admission;
+  private final Thread acceptor;
+  private final LongAdder servedQueries = new LongAdder();
+  private final LongAdder rejectedQueries = new LongAdder();
+  private final LongAdder failedQueries = new LongAdder();
+  private final AtomicLong totalLatencyUs = new AtomicLong();
+  private final LongAccumulator maxLatencyUs = new LongAccumulator(Math::max, 0);
+  private volatile boolean closed;
+
+  private QueryServer(RidesTable table, Settings settings, ServerSocketChannel serverChannel) {
+    this.table = table;
+    this.settings = settings;
+    this.serverChannel = serverChannel;
+    this.admission = new Semaphore(settings.maxConcurrentQueries, true);
+    // direct hand-off: connection which can't get handler thread is closed immediately
+    this.connectionPool =
+        new ThreadPoolExecutor(
+            0,
+            settings.maxConnections,
+            60,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            r -> {
+              var thread = Executors.defaultThreadFactory().newThread(r);
+              thread.setName("query-server-conn-" + thread.getId());
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.acceptor = new Thread(this::acceptLoop, "query-server-acceptor");
+    this.acceptor.setDaemon(true);
+  }
+
+  /**
+   * Start server listening on Unix-domain socket.
+   *
+   * @param socketPath Path of socket file, existing file will be replaced.
+   */
+  public static QueryServer startOnSocket(RidesTable table, Settings settings, Path socketPath)
+      throws IOException {
+    Files.deleteIfExists(socketPath);
+    var channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    channel.bind(UnixDomainSocketAddress.of(socketPath));
+    return start(table, settings, channel);
+  }
+
+  /**
+   * Start server listening on loopback interface.
+   *
+   * @param port TCP port, 0 means any free port(see {@link #localAddress()}).
+   */
+  public static QueryServer startOnPort(RidesTable table, Settings settings, int port)
+      throws IOException {
+    var channel = ServerSocketChannel.open();
+    channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    return start(table, settings, channel);
+  }
+
+  private static QueryServer start(
+      RidesTable table, Settings settings, ServerSocketChannel channel) {
+    var server = new QueryServer(table, settings, channel);
+    server.acceptor.start();
+    return server;
+  }
+
+  public SocketAddress localAddress() throws IOException {
+    return serverChannel.getLocalAddress();
+  }
+
+  /** Block caller until server is closed. */
+  public void awaitTermination() throws InterruptedException {
+    acceptor.join();
+  }
+
+  private void acceptLoop() {
+    while (!closed) {
+      SocketChannel client;
+      try {
+        client = serverChannel.accept();
+      } catch (ClosedChannelException e) {
+        return;
+      } catch (IOException e) {
+        System.out.println("Failed to accept connection: " + e.getMessage());
+        continue;
+      }
+
+      try {
+        connectionPool.execute(() -> serve(client));
+      } catch (RejectedExecutionException e) {
+        try (client) {
+          var writer = Channels.newWriter(client, StandardCharsets.UTF_8);
+          writer.write("BUSY|too many connections\n");
+          writer.flush();
+        } catch (IOException ignored) {
+          // client will observe closed connection
+        }
+      }
+    }
+  }
+
+  private void serve(SocketChannel client) {
+    try (client;
+        var reader = new BufferedReader(Channels.newReader(client, StandardCharsets.UTF_8));
+        var writer = new PrintWriter(Channels.newWriter(client, StandardCharsets.UTF_8))) {
+      String line;
+      while (!closed && (line = reader.readLine()) != null) {
+        if (line.isBlank()) {
+          continue;
+        }
+        var fields = FIELD_SPLITTER.splitToList(line);
+        var command = fields.get(0).toUpperCase();
+        if (command.equals("QUIT")) {
+          return;
+        }
+        writer.print(handle(command, fields));
+        writer.print('\n');
+        writer.flush();
+      }
+    } catch (IOException e) {
+      if (!closed) {
+        System.out.println("Connection failed: " + e.getMessage());
+      }
+    }
+  }
+
+  private String handle(String command, List<String> fields) {
+    switch (command) {
+      case "PING":
+        return "PONG";
+      case "STATS":
+        return "OK|" + stats();
+      case "AVG":
+        return averageDistances(fields);
+      case "APPROX":
+        return averageDistancesApprox(fields);
+      case "REFRESH":
+        return refresh();
+      default:
+        return "ERR|unknown command " + command;
+    }
+  }
+
+  private String averageDistances(List<String> fields) {
+    var sw = Stopwatch.createStarted();
+    if (fields.size() != 3 && fields.size() != 4) {
+      return "ERR|expected AVG|<from>|<until>[|<deadline_ms>]";
+    }
+    LocalDateTime from;
+    LocalDateTime until;
+    Duration deadline;
+    try {
+      from = LocalDateTime.parse(fields.get(1), DATE_FORMATTER);
+      until = LocalDateTime.parse(fields.get(2), DATE_FORMATTER);
+      deadline = fields.size() == 4 ? Duration.ofMillis(Long.parseLong(fields.get(3))) : null;
+    } catch (DateTimeParseException | NumberFormatException e) {
+      return "ERR|" + e.getMessage();
+    }
+    return execute(
+        sw,
+        () -> table.getAverageDistancesAsync(from, until, deadline, null).result().join(),
+        String::valueOf);
+  }
+
+  private String averageDistancesApprox(List<String> fields) {
+    var sw = Stopwatch.createStarted();
+    if (fields.size() != 5) {
+      return "ERR|expected APPROX|<from>|<until>|<error>|<deadline_ms>";
+    }
+    LocalDateTime from;
+    LocalDateTime until;
+    double error;
+    Duration deadline;
+    try {
+      from = LocalDateTime.parse(fields.get(1), DATE_FORMATTER);
+      until = LocalDateTime.parse(fields.get(2), DATE_FORMATTER);
+      error = Double.parseDouble(fields.get(3));
+      deadline = Duration.ofMillis(Long.parseLong(fields.get(4)));
+    } catch (DateTimeParseException | NumberFormatException e) {
+      return "ERR|" + e.getMessage();
+    }
+    return execute(
+        sw,
+        () -> table.getAverageDistancesApprox(from, until, error, deadline),
+        estimate -> estimate.value() + ":" + estimate.lowerBound() + ":" + estimate.upperBound());
+  }
+
+  private <V> String execute(
+      Stopwatch sw, Supplier<Map<Integer, V>> query, Function<V, String> valueFormatter) {
+    // admission control: bound number of queries which compete for table's worker pool
+    try {
+      if (!admission.tryAcquire(settings.admissionTimeoutMs, TimeUnit.MILLISECONDS)) {
+        rejectedQueries.increment();
+        return "BUSY|" + sw.elapsed(TimeUnit.MICROSECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return "ERR|interrupted";
+    }
+
+    Map<Integer, V> result;
+    try {
+      result = new TreeMap<>(query.get());
+    } catch (RuntimeException e) {
+      failedQueries.increment();
+      return "ERR|" + e.getMessage();
+    } finally {
+      admission.release();
+    }
+
+    long latencyUs = sw.elapsed(TimeUnit.MICROSECONDS);
+    servedQueries.increment();
+    totalLatencyUs.addAndGet(latencyUs);
+    maxLatencyUs.accumulate(latencyUs);
+    return "OK|"
+        + latencyUs
+        + "|"
+        + result.entrySet().stream()
+            .map(e -> e.getKey() + "=" + valueFormatter.apply(e.getValue()))
+            .collect(Collectors.joining(","));
+  }
+
+  private String refresh() {
+    var sw = Stopwatch.createStarted();
+    try {
+      int newSplits = table.refresh();
+      return "OK|" + sw.elapsed(TimeUnit.MICROSECONDS) + "|" + newSplits;
+    } catch (RuntimeException e) {
+      return "ERR|" + e.getMessage();
+    }
+  }
+
+  private String stats() {
+    long served = servedQueries.sum();
+    return "served="
+        + served
+        + ",rejected="
+        + rejectedQueries.sum()
+        + ",failed="
+        + failedQueries.sum()
+        + ",avg_us="
+        + (served == 0 ? 0 : totalLatencyUs.get() / served)
+        + ",max_us="
+        + maxLatencyUs.get()
+        + table.schedulerMetrics().entrySet().stream()
+            .map(
+                e -> {
+                  var prefix = "," + e.getKey().name().toLowerCase() + "_";
+                  var metrics = e.getValue();
+                  return prefix
+                      + "tasks="
+                      + metrics.tasks()
+                      + prefix
+                      + "wait_us="
+                      + TimeUnit.NANOSECONDS.toMicros(metrics.avgQueueWait().toNanos())
+                      + prefix
+                      + "max_wait_us="
+                      + TimeUnit.NANOSECONDS.toMicros(metrics.maxQueueWait().toNanos())
+                      + prefix
+                      + "run_us="
+                      + TimeUnit.NANOSECONDS.toMicros(metrics.avgRunTime().toNanos());
+                })
+            .collect(Collectors.joining());
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    var address = serverChannel.getLocalAddress();
+    serverChannel.close();
+    connectionPool.shutdownNow();
+    if (address instanceof UnixDomainSocketAddress unixAddress) {
+      Files.deleteIfExists(unixAddress.getPath());
+    }
+  }
+
+  public static class Settings {
+    int maxConnections = 64;
+    int maxConcurrentQueries = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    long admissionTimeoutMs = 1000;
+
+    public Settings() {}
+
+    public Settings(int maxConnections, int maxConcurrentQueries, long admissionTimeoutMs) {
+      this.maxConnections = maxConnections;
+      this.maxConcurrentQueries = maxConcurrentQueries;
+      this.admissionTimeoutMs = admissionTimeoutMs;
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package com.taxi.rides.storage;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Token used to cooperatively stop scans of a query. Row readers periodically check the token and
+ * fail with {@link CancellationException} when query was cancelled or its deadline expired, so
+ * abandoned queries release worker threads as soon as possible.
+ */
+public final class CancellationToken {
+
+  private final long deadlineNanos;
+  private final boolean hasDeadline;
+  private volatile String cancelReason;
+
+  /** Create token without deadline, it can be cancelled only explicitly. */
+  public CancellationToken() {
+    this.deadlineNanos = 0;
+    this.hasDeadline = false;
+  }
+
+  private CancellationToken(Duration deadline) {
+    this.deadlineNanos = System.nanoTime() + deadline.toNanos();
+    this.hasDeadline = true;
+  }
+
+  /** Create token which is cancelled automatically when deadline expires. */
+  public static CancellationToken withDeadline(Duration deadline) {
+    return new CancellationToken(deadline);
+  }
+
+  /** Cancel the token. Subsequent checks of the token will fail. */
+  public void cancel() {
+    if (cancelReason == null) {
+      cancelReason = "Query cancelled";
+    }
+  }
+
+  public boolean isCancelled() {
+    if (cancelReason != null) {
+      return true;
+    }
+    if (hasDeadline && System.nanoTime() - deadlineNanos >= 0) {
+      cancelReason = "Query deadline expired";
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Check the token.
+   *
+   * @throws CancellationException if token is cancelled or its deadline expired.
+   */
+  public void throwIfCancelled() {
+    if (isCancelled()) {
+      throw new CancellationException(cancelReason);
+    }
+  }
+}
@@ -0,0 +1,310 @@
+package com.taxi.rides.storage;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+import com.taxi.rides.storage.schema.datatypes.DataType;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Statistics of column values in one split, collected while split is indexed. They are used to
+ * estimate cardinality of queries before split is scanned(e.g., count of rows matched by range
+ * predicate or count of groups of group by).
+ *
+ * <p>Statistics contain:
+ *
+ * <ul>
+ *   <li>count of rows and count of null(empty) values;
+ *   <li>approximate count of distinct values, estimated by K minimum values sketch;
+ *   <li>equi-depth histogram of numeric values(timestamps are represented by epoch seconds), built
+ *       from uniform sample of values, so each bucket holds approximately the same count of rows;
+ *   <li>average width of raw CSV field in bytes.
+ * </ul>
+ */
+public final class ColumnStatistics {
+
+  private final String column;
+  private final long rowCount;
+  private final long nullCount;
+  private final long distinctCount;
+  private final long totalWidth;
+  // bounds of histogram buckets, first and last bounds are exact min and max of values,
+  // empty if column is not numeric
+  private final double[] bounds;
+
+  private ColumnStatistics(
+      String column,
+      long rowCount,
+      long nullCount,
+      long distinctCount,
+      long totalWidth,
+      double[] bounds) {
+    this.column = column;
+    this.rowCount = rowCount;
+    this.nullCount = nullCount;
+    this.distinctCount = distinctCount;
+    this.totalWidth = totalWidth;
+    this.bounds = bounds;
+  }
+
+  public String column() {
+    return column;
+  }
+
+  public long rowCount() {
+    return rowCount;
+  }
+
+  public long nullCount() {
+    return nullCount;
+  }
+
+  /** Returns approximate count of distinct non-null values. */
+  public long distinctCount() {
+    return distinctCount;
+  }
+
+  /** Returns average width of raw field in bytes(including empty fields). */
+  public double averageWidth() {
+    return rowCount == 0 ? 0 : (double) totalWidth / rowCount;
+  }
+
+  /** Returns min of numeric values, NaN if column is not numeric or has only null values. */
+  public double min() {
+    return bounds.length > 0 ? bounds[0] : Double.NaN;
+  }
+
+  /** Returns max of numeric values, NaN if column is not numeric or has only null values. */
+  public double max() {
+    return bounds.length > 0 ? bounds[bounds.length - 1] : Double.NaN;
+  }
+
+  /** Returns bounds of histogram buckets, empty array if column is not numeric. */
+  public double[] histogramBounds() {
+    return bounds.clone();
+  }
+
+  /**
+   * Returns estimated fraction of rows which value is not null and belongs to the range. Range
+   * endpoints should be of column type, estimation is not possible for non-numeric columns, so
+   * fraction of non-null values is returned for them.
+   */
+  public double selectivity(Range<? extends Comparable<?>> range) {
+    if (rowCount == 0) {
+      return 0;
+    }
+    double nonNullFraction = 1 - (double) nullCount / rowCount;
+    if (bounds.length == 0) {
+      return nonNullFraction;
+    }
+    double below = 0;
+    if (range.hasLowerBound()) {
+      double lower = toNumber(range.lowerEndpoint());
+      if (Double.isNaN(lower)) {
+        return nonNullFraction;
+      }
+      below =
+          fractionAtMost(range.lowerBoundType() == BoundType.CLOSED ? Math.nextDown(lower) : lower);
+    }
+    double atMost = 1;
+    if (range.hasUpperBound()) {
+      double upper = toNumber(range.upperEndpoint());
+      if (Double.isNaN(upper)) {
+        return nonNullFraction;
+      }
+      atMost =
+          fractionAtMost(range.upperBoundType() == BoundType.CLOSED ? upper : Math.nextDown(upper));
+    }
+    return Math.max(0, atMost - below) * nonNullFraction;
+  }
+
+  /** Returns estimated fraction of rows which value is not equal to passed one. */
+  public double notEqualSelectivity(Object value) {
+    if (rowCount == 0) {
+      return 0;
+    }
+    double nonNullFraction = 1 - (double) nullCount / rowCount;
+    if (value == null) {
+      return nonNullFraction;
+    }
+    // values are assumed to be distributed uniformly
+    return nonNullFraction * (1 - 1.0 / Math.max(1, distinctCount));
+  }
+
+  /** Returns fraction of non-null values which are less than or equal to {@code x}. */
+  private double fractionAtMost(double x) {
+    int buckets = bounds.length - 1;
+    if (x < bounds[0]) {
+      return 0;
+    }
+    if (x >= bounds[buckets]) {
+      return 1;
+    }
+    // last bound which is <= x, values are distributed uniformly inside bucket
+    int bucket = 0;
+    while (bounds[bucket + 1] <= x) {
+      bucket++;
+    }
+    double fraction = (x - bounds[bucket]) / (bounds[bucket + 1] - bounds[bucket]);
+    return (bucket + fraction) / buckets;
+  }
+
+  /** Returns numeric representation of value, NaN if value is not numeric. */
+  static double toNumber(Object value) {
+    if (value instanceof Number number) {
+      return number.doubleValue();
+    }
+    if (value instanceof LocalDateTime time) {
+      return time.toEpochSecond(ZoneOffset.UTC);
+    }
+    return Double.NaN;
+  }
+
+  @Override
+  public String toString() {
+    return column
+        + "(rows="
+        + rowCount
+        + ", nulls="
+        + nullCount
+        + ", distinct="
+        + distinctCount
+        + ", avgWidth="
+        + String.format("%.1f", averageWidth())
+        + ")";
+  }
+
+  /** Collects statistics of column from parsed values of split rows. */
+  static final class Builder {
+
+    private static final int BUCKETS = 16;
+    private static final int SAMPLE_SIZE = 1024;
+    // count of minimum hashes kept to estimate count of distinct values, relative error ~6%
+    private static final int MIN_HASHES = 256;
+
+    private final String column;
+    private final SplittableRandom random;
+    private long rowCount;
+    private long nullCount;
+    private long totalWidth;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    // reservoir sample of numeric values
+    private final double[] sample = new double[SAMPLE_SIZE];
+    private long numericValues;
+    // minimum distinct hashes of values in ascending order
+    private final long[] hashes = new long[MIN_HASHES];
+    private int hashesCount;
+
+    Builder(String column) {
+      this.column = column;
+      // sample doesn't depend on order of splits indexing
+      this.random = new SplittableRandom(column.hashCode());
+    }
+
+    /**
+     * Add value of the next row.
+     *
+     * @param rawWidth Length of raw CSV field.
+     * @param value Parsed value, {@code null} if field is empty.
+     */
+    void add(int rawWidth, Comparable<?> value) {
+      rowCount++;
+      totalWidth += rawWidth;
+      if (value == null) {
+        nullCount++;
+        return;
+      }
+      double number = toNumber(value);
+      long key;
+      if (Double.isNaN(number)) {
+        key = value.hashCode();
+      } else {
+        key = Double.doubleToLongBits(number);
+        addNumber(number);
+      }
+      addHash(mix(key) >>> 1);
+    }
+
+    /**
+     * Same as {@link #add(int, Comparable)}, but value is encoded as long by data type(e.g., epoch
+     * second of timestamp), {@link DataType#NULL_LONG} if field is empty.
+     */
+    void add(int rawWidth, long value) {
+      rowCount++;
+      totalWidth += rawWidth;
+      if (value == DataType.NULL_LONG) {
+        nullCount++;
+        return;
+      }
+      double number = value;
+      addNumber(number);
+      addHash(mix(Double.doubleToLongBits(number)) >>> 1);
+    }
+
+    private void addNumber(double number) {
+      min = Math.min(min, number);
+      max = Math.max(max, number);
+      numericValues++;
+      if (numericValues <= SAMPLE_SIZE) {
+        sample[(int) numericValues - 1] = number;
+      } else {
+        long pos = random.nextLong(numericValues);
+        if (pos < SAMPLE_SIZE) {
+          sample[(int) pos] = number;
+        }
+      }
+    }
+
+    private void addHash(long hash) {
+      if (hashesCount == MIN_HASHES && hash >= hashes[MIN_HASHES - 1]) {
+        return;
+      }
+      int pos = Arrays.binarySearch(hashes, 0, hashesCount, hash);
+      if (pos >= 0) {
+        return;
+      }
+      pos = -pos - 1;
+      int moved = Math.min(hashesCount, MIN_HASHES - 1) - pos;
+      System.arraycopy(hashes, pos, hashes, pos + 1, moved);
+      hashes[pos] = hash;
+      hashesCount = Math.min(hashesCount + 1, MIN_HASHES);
+    }
+
+    ColumnStatistics build() {
+      long distinct = hashesCount;
+      if (hashesCount == MIN_HASHES) {
+        // hashes are uniform in [0, 2^63), k-th minimum hash estimates k / distinct
+        double kthHash = (double) hashes[MIN_HASHES - 1] / Long.MAX_VALUE;
+        distinct = Math.round((MIN_HASHES - 1) / kthHash);
+      }
+      distinct = Math.min(distinct, rowCount - nullCount);
+      double[] histogram = new double[0];
+      if (numericValues > 0) {
+        int sampled = (int) Math.min(numericValues, SAMPLE_SIZE);
+        double[] sorted = Arrays.copyOf(sample, sampled);
+        Arrays.sort(sorted);
+        histogram = new double[BUCKETS + 1];
+        histogram[0] = min;
+        for (int i = 1; i < BUCKETS; i++) {
+          histogram[i] = sorted[(int) ((long) i * sampled / BUCKETS)];
+        }
+        histogram[BUCKETS] = max;
+      }
+      return new ColumnStatistics(column, rowCount, nullCount, distinct, totalWidth, histogram);
+    }
+
+    // finalizer of MurmurHash3
+    private static long mix(long value) {
+      long h = value;
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      h *= 0xc4ceb9fe1a85ec53L;
+      h ^= h >>> 33;
+      return h;
+    }
+  }
+}
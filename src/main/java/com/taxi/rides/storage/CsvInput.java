@@ -0,0 +1,28 @@
+package com.taxi.rides.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * Source of CSV data which can be read starting from any offset. Offsets used by input(and by
+ * indexes built on top of it) are offsets inside uncompressed CSV data.
+ */
+public interface CsvInput {
+
+  Path path();
+
+  /** Returns size of CSV data available for reading. */
+  long size();
+
+  /** Open stream which returns CSV data starting from passed offset. */
+  InputStream openAt(long offset) throws IOException;
+
+  /**
+   * Open stream which returns CSV data starting from passed offset and bypasses OS page cache if
+   * input supports it(e.g., for large one-off scans which would evict hot data from the cache).
+   */
+  default InputStream openDirectAt(long offset) throws IOException {
+    return openAt(offset);
+  }
+}
@@ -1,56 +1,113 @@
 package com.taxi.rides.storage;
 
-import com.google.common.collect.Iterators;
-import com.google.common.collect.PeekingIterator;
+import com.google.common.collect.ImmutableRangeSet;
 import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import com.google.common.io.ByteStreams;
 import com.taxi.rides.storage.index.ColumnIndex;
 import com.taxi.rides.storage.index.ColumnIndexes;
+import com.taxi.rides.storage.index.IndexArena;
+import com.taxi.rides.storage.index.IndexStatistics;
 import com.taxi.rides.storage.index.RowOffsetLocator;
 import com.taxi.rides.storage.schema.Column;
 import com.taxi.rides.storage.schema.Schema;
+import com.taxi.rides.storage.schema.datatypes.DataType;
+import com.taxi.rides.storage.schema.datatypes.DictionaryDataType;
 import de.siegmar.fastcsv.reader.CsvReader;
 import de.siegmar.fastcsv.reader.CsvRow;
 import java.io.IOException;
-import java.nio.channels.Channels;
-import java.nio.channels.SeekableByteChannel;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
-public final class CsvStorageFile implements StorageFile {
+public final class CsvStorageFile implements StorageFile, AutoCloseable {
 
+  // readers check cancellation of query each 1024 rows
+  private static final int CANCELLATION_CHECK_MASK = 1024 - 1;
+  // rows are added into indexes by batches of this size
+  private static final int INDEX_BATCH_SIZE = 1024;
+  // indexes are not evaluated if predicate is expected to match at least this fraction of rows
+  private static final double FULL_SCAN_SELECTIVITY = 0.95;
+  /** Default max gap between scanned offset ranges which is read instead of seek. */
+  public static final long DEFAULT_COALESCE_GAP_BYTES = 64 * 1024;
+
+  private final CsvInput input;
   private final Path csvPath;
   private final Schema csvSchema;
   private final RowOffsetLocator rowLocator;
   private final ColumnIndexes indexes;
+  // frozen indexes are stored off-heap until file is closed
+  private final IndexArena indexArena = IndexArena.offHeap();
   private final long fileStartOffset;
   private final long rowsCount;
   private final long fileEndOffset;
   private final long lastRowOffset;
+  private final Map<String, ColumnStatistics> columnStatistics = new HashMap<>();
+  private final long coalesceGapBytes;
 
   public CsvStorageFile(
-      Path csvPath,
+      CsvInput input,
       Schema expectedSchema,
       RowOffsetLocator rowLocator,
-      List<ColumnIndex> indexesToPopulate,
+      List<? extends ColumnIndex<?>> indexesToPopulate,
+      List<SplitCollector> collectors,
       long startAt,
       long splitSize) {
-    this.csvPath = Objects.requireNonNull(csvPath, "CSV file path missed");
+    this(
+        input,
+        expectedSchema,
+        rowLocator,
+        indexesToPopulate,
+        collectors,
+        startAt,
+        splitSize,
+        new IndexStatistics(),
+        DEFAULT_COALESCE_GAP_BYTES);
+  }
+
+  /**
+   * Index part of CSV file.
+   *
+   * @param indexStatistics Statistics shared by splits of the table: they receive build cost of
+   *     indexes and their observed pruning rate when queries evaluate indexes of this file.
+   * @param coalesceGapBytes Max gap between offset ranges of rows matched by indexes which is read
+   *     by query instead of seek to the next range.
+   */
+  public CsvStorageFile(
+      CsvInput input,
+      Schema expectedSchema,
+      RowOffsetLocator rowLocator,
+      List<? extends ColumnIndex<?>> indexesToPopulate,
+      List<SplitCollector> collectors,
+      long startAt,
+      long splitSize,
+      IndexStatistics indexStatistics,
+      long coalesceGapBytes) {
+    this.input = Objects.requireNonNull(input, "CSV input missed");
+    this.csvPath = input.path();
     this.csvSchema = expectedSchema;
     this.rowLocator = rowLocator;
-    this.indexes = new ColumnIndexes(indexesToPopulate);
+    this.indexes = new ColumnIndexes(indexesToPopulate, indexStatistics);
     this.fileStartOffset = startAt;
+    this.coalesceGapBytes = coalesceGapBytes;
 
     // populate indexes
-    try (var fileChannel = Files.newByteChannel(csvPath, StandardOpenOption.READ)) {
-      fileChannel.position(fileStartOffset);
+    // file can grow while we index it, read only bytes which were present when file was listed
+    try (var stream = ByteStreams.limit(input.openAt(fileStartOffset), input.size() - startAt)) {
       try (var reader =
-              CsvReader.builder().build(Channels.newReader(fileChannel, StandardCharsets.UTF_8));
+              CsvReader.builder().build(new InputStreamReader(stream, StandardCharsets.UTF_8));
           var iterator = reader.iterator()) {
 
         // skip CSV header if we start from file beginning
@@ -58,13 +115,60 @@ public final class CsvStorageFile implements StorageFile {
           iterator.next();
         }
 
+        // each column required by indexes or collectors is parsed once per row
+        var parsedColumns = new ArrayList<Integer>();
         var indexCtxs =
             indexesToPopulate.stream()
+                .map(index -> new IndexState(index, parsedPosition(parsedColumns, index.column())))
+                .collect(Collectors.toList());
+        var collectorCtxs =
+            collectors.stream()
                 .map(
-                    index ->
-                        new IndexState(
-                            index, csvSchema.getColumnIndex(index.column().name()).getAsInt()))
+                    collector ->
+                        new CollectorState(
+                            collector,
+                            collector.columns().stream()
+                                .mapToInt(col -> parsedPosition(parsedColumns, col))
+                                .toArray(),
+                            new Row(collector.columns().size())))
                 .collect(Collectors.toList());
+        // dictionary columns are parsed even without indexes, so queries which filter by value
+        // find codes of all values present in indexed splits
+        for (Column<?> column : csvSchema.columns()) {
+          if (column.dataType() instanceof DictionaryDataType) {
+            parsedPosition(parsedColumns, column);
+          }
+        }
+        int[] parsedColIdx = parsedColumns.stream().mapToInt(Integer::intValue).toArray();
+        var parsedTypes = new DataType<?>[parsedColIdx.length];
+        var parsedValues = new Comparable<?>[parsedColIdx.length];
+        var statistics = new ColumnStatistics.Builder[parsedColIdx.length];
+        // values encoded as longs are decoded only if collectors require them
+        var decodedColumns = new boolean[parsedColIdx.length];
+        for (CollectorState collectorState : collectorCtxs) {
+          for (int pos : collectorState.parsedPositions) {
+            decodedColumns[pos] = true;
+          }
+        }
+        // values of parsed columns are buffered and added into indexes by batches, columns encoded
+        // as longs(e.g., timestamps as epoch seconds) are buffered as primitives
+        var batchRowIds = new long[INDEX_BATCH_SIZE];
+        var batchOffsets = new long[INDEX_BATCH_SIZE];
+        var batchValues = new Comparable<?>[parsedColIdx.length][];
+        var batchLongs = new long[parsedColIdx.length][];
+        for (int i = 0; i < parsedColIdx.length; i++) {
+          var column = csvSchema.getColumnAt(parsedColIdx[i]);
+          parsedTypes[i] = column.dataType();
+          statistics[i] = new ColumnStatistics.Builder(column.name());
+          if (parsedTypes[i].isLongEncoded()) {
+            batchLongs[i] = new long[INDEX_BATCH_SIZE];
+          } else {
+            batchValues[i] = new Comparable<?>[INDEX_BATCH_SIZE];
+          }
+        }
+        int batchSize = 0;
+        // build time of each index
+        var buildNanos = new long[indexCtxs.size()];
 
         long splitPoint = fileStartOffset + splitSize;
         long countOfRows = 0;
@@ -77,10 +181,42 @@ public final class CsvStorageFile implements StorageFile {
           long rowId = row.getOriginalLineNumber() - (fileStartOffset == 0 ? 2 : 1);
           lastOffset = fileStartOffset + row.getStartingOffset();
           this.rowLocator.addEntry(rowId, lastOffset);
-          for (IndexState indexState : indexCtxs) {
-            var rawColVal = row.getField(indexState.columnIndex);
-            var colValue = indexState.index.column().dataType().parseFrom(rawColVal);
-            indexState.index.addEntry(rowId, colValue);
+          for (int i = 0; i < parsedValues.length; i++) {
+            var field = row.getField(parsedColIdx[i]);
+            var dataType = parsedTypes[i];
+            if (batchLongs[i] != null) {
+              long value = dataType.parseLong(field);
+              statistics[i].add(field.length(), value);
+              batchLongs[i][batchSize] = value;
+              parsedValues[i] =
+                  decodedColumns[i] && value != DataType.NULL_LONG
+                      ? dataType.fromLong(value)
+                      : null;
+            } else {
+              parsedValues[i] = dataType.parseFrom(field);
+              statistics[i].add(field.length(), parsedValues[i]);
+              batchValues[i][batchSize] = parsedValues[i];
+            }
+          }
+          batchRowIds[batchSize] = rowId;
+          batchOffsets[batchSize] = lastOffset;
+          batchSize++;
+          if (batchSize == INDEX_BATCH_SIZE) {
+            addBatch(
+                indexCtxs,
+                batchRowIds,
+                batchOffsets,
+                batchValues,
+                batchLongs,
+                batchSize,
+                buildNanos);
+            batchSize = 0;
+          }
+          for (CollectorState collectorState : collectorCtxs) {
+            for (int i = 0; i < collectorState.parsedPositions.length; i++) {
+              collectorState.row.set(i, parsedValues[collectorState.parsedPositions[i]]);
+            }
+            collectorState.collector.collect(rowId, collectorState.row);
           }
 
           if (lastOffset >= splitPoint) {
@@ -89,31 +225,202 @@ public final class CsvStorageFile implements StorageFile {
           }
         }
 
+        addBatch(
+            indexCtxs, batchRowIds, batchOffsets, batchValues, batchLongs, batchSize, buildNanos);
         rowsCount = countOfRows;
+        for (ColumnStatistics.Builder builder : statistics) {
+          var columnStats = builder.build();
+          columnStatistics.put(columnStats.column(), columnStats);
+        }
         lastRowOffset = lastOffset;
+        for (int i = 0; i < indexCtxs.size(); i++) {
+          indexStatistics.recordBuild(
+              IndexStatistics.key(indexCtxs.get(i).index), buildNanos[i], countOfRows);
+        }
         if (iterator.hasNext()) {
           // reach split point
           fileEndOffset = fileStartOffset + iterator.next().getStartingOffset() - 1;
         } else {
           // reach end of file
-          fileEndOffset = Files.size(this.csvPath) - 1;
+          fileEndOffset = input.size() - 1;
         }
       }
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
+    // all rows are indexed, indexes can be converted to compact form
+    this.rowLocator.freeze(indexArena);
+    indexesToPopulate.forEach(index -> index.pinRows(this.rowLocator));
+    indexesToPopulate.forEach(index -> index.freeze(indexArena));
+  }
+
+  /** Add buffered rows into indexes and accumulate time spent by each index. */
+  private static void addBatch(
+      List<IndexState> indexCtxs,
+      long[] rowIds,
+      long[] offsets,
+      Comparable<?>[][] values,
+      long[][] longValues,
+      int count,
+      long[] buildNanos) {
+    if (count == 0) {
+      return;
+    }
+    for (int i = 0; i < indexCtxs.size(); i++) {
+      var indexState = indexCtxs.get(i);
+      int pos = indexState.parsedPosition;
+      long startedAt = System.nanoTime();
+      if (longValues[pos] != null) {
+        indexState.index.addEntries(rowIds, offsets, longValues[pos], count);
+      } else {
+        addEntries(indexState.index, rowIds, offsets, values[pos], count);
+      }
+      buildNanos[i] += System.nanoTime() - startedAt;
+    }
+  }
+
+  // values are parsed by data type of index column, so they have value type of index
+  @SuppressWarnings("unchecked")
+  private static <T extends Comparable<? super T>> void addEntries(
+      ColumnIndex<T> index, long[] rowIds, long[] offsets, Comparable<?>[] values, int count) {
+    index.addEntries(rowIds, offsets, (T[]) values, count);
+  }
+
+  /** Returns input which file data is read from. */
+  public CsvInput input() {
+    return input;
+  }
+
+  public Path path() {
+    return csvPath;
+  }
+
+  public long startOffset() {
+    return fileStartOffset;
   }
 
   public long endOffset() {
     return fileEndOffset;
   }
 
+  /**
+   * Add finer marks to row locator in regions which often contain boundaries of scanned row ranges.
+   * Such regions cause reading of rows which are not required by query.
+   *
+   * @param minHits Count of boundary hits after which region is refined.
+   * @param refineFactor Count of sub-regions created inside each refined region.
+   * @return Count of refined regions.
+   */
+  public int refineRowLocator(int minHits, int refineFactor) {
+    var regions = rowLocator.hotRegions(minHits, refineFactor);
+    if (regions.isEmpty()) {
+      return 0;
+    }
+
+    var rowIds = new long[regions.size() * refineFactor];
+    var offsets = new long[rowIds.length];
+    int count = 0;
+    try {
+      for (RowOffsetLocator.Region region : regions) {
+        long period = (region.endRowId() - region.startRowId()) / refineFactor;
+        try (var stream =
+            ByteStreams.limit(
+                input.openAt(region.startOffset()), region.endOffset() - region.startOffset())) {
+          var reader =
+              CsvReader.builder().build(new InputStreamReader(stream, StandardCharsets.UTF_8));
+          long rowId = region.startRowId();
+          for (CsvRow row : reader) {
+            if (rowId > region.startRowId() && (rowId - region.startRowId()) % period == 0) {
+              if (count == rowIds.length) {
+                break;
+              }
+              rowIds[count] = rowId;
+              offsets[count++] = region.startOffset() + row.getStartingOffset();
+            }
+            rowId++;
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    rowLocator.refine(rowIds, offsets, count);
+    return regions.size();
+  }
+
+  /** Returns count of rows in this file. */
+  public long rowsCount() {
+    return rowsCount;
+  }
+
+  /**
+   * Returns statistics of column values collected during indexing. Statistics are collected for
+   * columns parsed during indexing: columns of indexes, collectors and dictionary encoded columns.
+   */
+  public Optional<ColumnStatistics> columnStatistics(String column) {
+    return Optional.ofNullable(columnStatistics.get(column));
+  }
+
+  /** Returns names of columns which have statistics. */
+  public Set<String> statisticsColumns() {
+    return Collections.unmodifiableSet(columnStatistics.keySet());
+  }
+
+  /**
+   * Returns estimated fraction of rows matched by predicate. Conditions on different columns are
+   * assumed to be independent, conditions on columns without statistics are assumed to match all
+   * rows.
+   */
+  public double estimateSelectivity(QueryPredicate predicate) {
+    if (rowsCount == 0) {
+      return 0;
+    }
+    double selectivity = 1;
+    for (QueryPredicate.Between<?> between : predicate.between()) {
+      var stats = columnStatistics.get(between.column().name());
+      if (stats != null) {
+        selectivity *= stats.selectivity(between.range());
+      }
+    }
+    for (QueryPredicate.NotEqual<?> notEqual : predicate.notEquals()) {
+      var stats = columnStatistics.get(notEqual.column().name());
+      if (stats != null) {
+        selectivity *= stats.notEqualSelectivity(notEqual.notEqualTo());
+      }
+    }
+    return selectivity;
+  }
+
+  /** Approximate count of bytes occupied by indexes of this file(including row locator). */
+  public long indexMemoryUsage() {
+    return rowLocator.memoryUsage() + indexes.memoryUsage();
+  }
+
+  /** Count of bytes occupied by indexes of this file outside of Java heap. */
+  public long offHeapIndexMemoryUsage() {
+    return indexArena.allocatedBytes();
+  }
+
+  /**
+   * Release off-heap memory of indexes. Readers can't be opened and row locator can't be refined
+   * after this call.
+   */
+  @Override
+  public void close() {
+    indexArena.close();
+  }
+
   @Override
-  public RowReader openReader(List<Column> requiredColumns, QueryPredicate predicate)
+  public RowReader openReader(
+      List<Column<?>> requiredColumns,
+      QueryPredicate predicate,
+      CancellationToken cancellation,
+      boolean directIo)
       throws IOException {
+    cancellation.throwIfCancelled();
     int[] colIdx = new int[requiredColumns.size()];
     int i = 0;
-    for (Column reqCol : requiredColumns) {
+    for (Column<?> reqCol : requiredColumns) {
       int index =
           csvSchema
               .getColumnIndex(reqCol.name())
@@ -128,8 +435,13 @@ public final class CsvStorageFile implements StorageFile {
       System.out.println(csvPath.getFileName() + ": skipped because empty.");
       return RowReader.empty(new Schema(requiredColumns));
     }
-    Range<Long> rowsRange = indexes.evaluatePredicate(predicate);
-    if (rowsRange.isEmpty()) {
+    // index range scan can't skip many rows if predicate matches almost all rows of the file,
+    // so sequential scan of whole file is cheaper than evaluation of indexes
+    RangeSet<Long> rowsRanges =
+        estimateSelectivity(predicate) >= FULL_SCAN_SELECTIVITY
+            ? ImmutableRangeSet.of(Range.all())
+            : indexes.evaluateRanges(predicate, rowsCount);
+    if (rowsRanges.isEmpty()) {
       System.out.println(
           csvPath.getFileName()
               + "("
@@ -140,75 +452,117 @@ public final class CsvStorageFile implements StorageFile {
               + ": skipped using indexes.");
       return RowReader.empty(new Schema(requiredColumns));
     }
-    // compute byte offsets of rows which should be scanned in this file according to index data
-    Range<Long> rowOffsets = rowLocator.getClosestOffsets(rowsRange);
-    return new CsvIter(colIdx, rowOffsets);
+    // compute byte offsets of rows which should be scanned in this file according to index data,
+    // offsets of row ranges located between the same marks are merged, so rows are read once
+    RangeSet<Long> offsets = TreeRangeSet.create();
+    for (Range<Long> rowsRange : rowsRanges.asRanges()) {
+      var rowOffsets = rowLocator.getClosestOffsets(rowsRange);
+      if (!rowOffsets.isEmpty()) {
+        offsets.add(rowOffsets);
+      }
+    }
+    if (offsets.isEmpty()) {
+      return RowReader.empty(new Schema(requiredColumns));
+    }
+    // rows of ranges are read by one stream which skips gaps between ranges, ranges separated by
+    // small gaps are merged: over-read is cheaper than seek
+    var ranges = new ArrayList<Range<Long>>(offsets.asRanges().size());
+    for (Range<Long> range : offsets.asRanges()) {
+      ranges.add(
+          Range.closed(
+              range.hasLowerBound() ? range.lowerEndpoint() : fileStartOffset,
+              range.hasUpperBound() ? range.upperEndpoint() : lastRowOffset));
+    }
+    return new CsvIter(
+        colIdx, OffsetRangesInputStream.coalesce(ranges, coalesceGapBytes), cancellation, directIo);
   }
 
-  record IndexState(ColumnIndex index, int columnIndex) {}
+  /**
+   * Returns position of column in list of parsed columns. Column is added to the list if it is not
+   * there yet.
+   */
+  private int parsedPosition(List<Integer> parsedColumns, Column<?> column) {
+    int colIdx =
+        csvSchema
+            .getColumnIndex(column.name())
+            .orElseThrow(
+                () ->
+                    new IllegalArgumentException(column + " not contained in CSV file" + csvPath));
+    int pos = parsedColumns.indexOf(colIdx);
+    if (pos < 0) {
+      parsedColumns.add(colIdx);
+      pos = parsedColumns.size() - 1;
+    }
+    return pos;
+  }
+
+  record IndexState(ColumnIndex<?> index, int parsedPosition) {}
 
+  record CollectorState(SplitCollector collector, int[] parsedPositions, Row row) {}
+
+  /** Reads rows of ordered offset ranges of the file. */
   private class CsvIter implements RowReader {
 
     private final Schema readerSchema;
     private final CsvReader csvReader;
-    private final PeekingIterator<CsvRow> rowIter;
+    private final Iterator<CsvRow> rowIter;
     private final int[] colIdx;
-    private final SeekableByteChannel fileChannel;
-    private final long startRowOffset;
-    private final long endRowOffset;
+    private final OffsetRangesInputStream stream;
+    private final CancellationToken cancellation;
+    // row holds raw values of the current CSV row, values are parsed by consumer on access
+    private final Row row;
     private long rowsRead;
 
-    public CsvIter(int[] colIdx, Range<Long> offsets) throws IOException {
+    /**
+     * @param offsets Closed ranges of offsets of rows ordered by offset, each range is [first row
+     *     offset, last row offset].
+     * @param directIo Read file bypassing OS page cache.
+     */
+    public CsvIter(
+        int[] colIdx, List<Range<Long>> offsets, CancellationToken cancellation, boolean directIo)
+        throws IOException {
       this.colIdx = colIdx;
-      fileChannel = Files.newByteChannel(csvPath, StandardOpenOption.READ);
-      if (offsets.hasLowerBound()) {
-        fileChannel.position(offsets.lowerEndpoint());
-        startRowOffset = offsets.lowerEndpoint();
-      } else {
-        fileChannel.position(fileStartOffset);
-        startRowOffset = fileStartOffset;
-      }
-      if (offsets.hasUpperBound()) {
-        endRowOffset = offsets.upperEndpoint();
-      } else {
-        endRowOffset = lastRowOffset;
-      }
-      csvReader =
-          CsvReader.builder().build(Channels.newReader(fileChannel, StandardCharsets.UTF_8));
-      rowIter = Iterators.peekingIterator(csvReader.iterator());
-      if (startRowOffset == 0) {
+      this.cancellation = cancellation;
+      stream = new OffsetRangesInputStream(input, offsets, input.size(), directIo);
+      csvReader = CsvReader.builder().build(new InputStreamReader(stream, StandardCharsets.UTF_8));
+      rowIter = csvReader.iterator();
+      if (offsets.get(0).lowerEndpoint() == 0) {
         // we start from beginning of CSV file and should skip header
         rowIter.next();
       }
       readerSchema =
           new Schema(
               Arrays.stream(colIdx).mapToObj(csvSchema::getColumnAt).collect(Collectors.toList()));
+      row =
+          new Row(
+              Arrays.stream(colIdx)
+                  .mapToObj(idx -> csvSchema.getColumnAt(idx).dataType())
+                  .toArray(DataType[]::new));
     }
 
     @Override
-    public void close() throws Exception {
-      fileChannel.close();
+    public void close() throws IOException {
+      stream.close();
       csvReader.close();
     }
 
     @Override
     public boolean hasNext() {
-      return rowIter.hasNext()
-          && endRowOffset >= startRowOffset + rowIter.peek().getStartingOffset();
+      if ((rowsRead & CANCELLATION_CHECK_MASK) == 0) {
+        cancellation.throwIfCancelled();
+      }
+      // stream ends after the last row of the last range
+      return rowIter.hasNext();
     }
 
     @Override
     public Row next() {
       rowsRead++;
-      var result = new Row(colIdx.length);
-      var row = rowIter.next();
-      int outputSchemaIdx = 0;
-      for (int idx : colIdx) {
-        String rawVal = row.getField(idx);
-        var columnValue = csvSchema.getColumnAt(idx).dataType().parseFrom(rawVal);
-        result.set(outputSchemaIdx++, columnValue);
+      var csvRow = rowIter.next();
+      for (int i = 0; i < colIdx.length; i++) {
+        row.set(i, csvRow.getField(colIdx[i]));
       }
-      return result;
+      return row;
     }
 
     @Override
@@ -232,7 +586,13 @@ public final class CsvStorageFile implements StorageFile {
               + "read/total "
               + "rows="
               + rowsCount
-              + ".");
+              + ", "
+              + stream.bytesRead()
+              + " bytes read/"
+              + stream.bytesSkipped()
+              + " bytes skipped in "
+              + stream.rangesCount()
+              + " ranges.");
     }
   }
 }
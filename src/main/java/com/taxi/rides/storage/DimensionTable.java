@@ -0,0 +1,187 @@
+package com.taxi.rides.storage;
+
+import com.taxi.rides.storage.schema.datatypes.StringDictionary;
+import de.siegmar.fastcsv.reader.CsvReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Small in-memory lookup table(e.g., TLC taxi zone lookup) keyed by non-negative integer ID. Each
+ * attribute is stored as dense array indexed by key which contains dictionary code of attribute
+ * value, so fact rows are joined with dimension by array access: scan maps key of the row to code
+ * of attribute and filters/groups rows by codes, joined rows are never materialized.
+ *
+ * <p>Table is immutable after it is loaded and can be shared by concurrent queries.
+ */
+public final class DimensionTable {
+
+  // keys are short IDs(e.g., location IDs), larger keys would waste memory of dense arrays
+  private static final int MAX_KEY = Short.MAX_VALUE;
+
+  private final String keyColumn;
+  private final int size;
+  private final Map<String, Attribute> attributes;
+
+  private DimensionTable(String keyColumn, int size, Map<String, Attribute> attributes) {
+    this.keyColumn = keyColumn;
+    this.size = size;
+    this.attributes = Collections.unmodifiableMap(attributes);
+  }
+
+  /**
+   * Load table from CSV file with header. All columns except key column become attributes of the
+   * table.
+   *
+   * @param keyColumn Name of column which contains integer key in range [0, 32767].
+   */
+  public static DimensionTable load(Path csvFile, String keyColumn) throws IOException {
+    try (var reader =
+        CsvReader.builder().build(Files.newBufferedReader(csvFile, StandardCharsets.UTF_8))) {
+      var rows = reader.iterator();
+      if (!rows.hasNext()) {
+        throw new IllegalArgumentException(csvFile + " has no header");
+      }
+      var header = rows.next().getFields();
+      int keyIdx = header.indexOf(keyColumn);
+      if (keyIdx < 0) {
+        throw new IllegalArgumentException(csvFile + " has no column " + keyColumn);
+      }
+      var dictionaries = new ArrayList<StringDictionary>();
+      var codes = new ArrayList<int[]>();
+      for (int i = 0; i < header.size(); i++) {
+        dictionaries.add(new StringDictionary());
+        codes.add(new int[0]);
+      }
+      int size = 0;
+      while (rows.hasNext()) {
+        var row = rows.next();
+        if (row.isEmpty()) {
+          continue;
+        }
+        int key = parseKey(row.getField(keyIdx), csvFile);
+        for (int i = 0; i < header.size(); i++) {
+          if (i == keyIdx) {
+            continue;
+          }
+          var values = codes.get(i);
+          if (key >= values.length) {
+            int length = values.length;
+            values = Arrays.copyOf(values, Math.min(MAX_KEY + 1, Math.max(length * 2, key + 1)));
+            Arrays.fill(values, length, values.length, StringDictionary.NO_CODE);
+            codes.set(i, values);
+          }
+          var value = i < row.getFieldCount() ? row.getField(i).trim() : "";
+          values[key] =
+              value.isEmpty() ? StringDictionary.NO_CODE : dictionaries.get(i).encode(value);
+        }
+        size++;
+      }
+      var attributes = new LinkedHashMap<String, Attribute>();
+      for (int i = 0; i < header.size(); i++) {
+        if (i != keyIdx) {
+          attributes.put(
+              header.get(i), new Attribute(header.get(i), codes.get(i), dictionaries.get(i)));
+        }
+      }
+      return new DimensionTable(keyColumn, size, attributes);
+    }
+  }
+
+  private static int parseKey(String rawKey, Path csvFile) {
+    int key;
+    try {
+      key = Integer.parseInt(rawKey.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid key '" + rawKey + "' in " + csvFile, e);
+    }
+    if (key < 0 || key > MAX_KEY) {
+      throw new IllegalArgumentException("Key " + key + " is out of range in " + csvFile);
+    }
+    return key;
+  }
+
+  public String keyColumn() {
+    return keyColumn;
+  }
+
+  /** Returns count of rows in the table. */
+  public int size() {
+    return size;
+  }
+
+  public Set<String> attributeNames() {
+    return attributes.keySet();
+  }
+
+  /**
+   * Returns attribute column of the table.
+   *
+   * @throws IllegalArgumentException if there is no such attribute.
+   */
+  public Attribute attribute(String name) {
+    var attribute = attributes.get(name);
+    if (attribute == null) {
+      throw new IllegalArgumentException(
+          "Unknown attribute " + name + ", expected one of " + attributeNames());
+    }
+    return attribute;
+  }
+
+  /** Attribute column of dimension table(e.g., borough of zone). */
+  public static final class Attribute {
+
+    private final String name;
+    // dictionary code of value by key, NO_CODE for unknown keys and missing values
+    private final int[] codes;
+    private final StringDictionary dictionary;
+
+    private Attribute(String name, int[] codes, StringDictionary dictionary) {
+      this.name = name;
+      this.codes = codes;
+      this.dictionary = dictionary;
+    }
+
+    public String name() {
+      return name;
+    }
+
+    /**
+     * Returns code of attribute value for key, {@link StringDictionary#NO_CODE} if it's unknown.
+     */
+    public int codeOf(long key) {
+      return key >= 0 && key < codes.length ? codes[(int) key] : StringDictionary.NO_CODE;
+    }
+
+    /** Returns code of attribute value, {@link StringDictionary#NO_CODE} if no key has it. */
+    public int codeOfValue(String value) {
+      return dictionary.codeOf(value);
+    }
+
+    public String decode(int code) {
+      return dictionary.decode(code);
+    }
+
+    /** Returns count of distinct attribute values. */
+    public int cardinality() {
+      return dictionary.size();
+    }
+
+    /** Returns distinct values of attribute ordered by codes. */
+    public List<String> values() {
+      var values = new ArrayList<String>(dictionary.size());
+      for (int code = 0; code < dictionary.size(); code++) {
+        values.add(dictionary.decode(code));
+      }
+      return values;
+    }
+  }
+}
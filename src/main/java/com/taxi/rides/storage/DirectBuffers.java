@@ -0,0 +1,52 @@
+package com.taxi.rides.storage;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+
+/**
+ * Releases memory of direct buffers explicitly, without waiting for GC(e.g., index regions of
+ * closed file or read buffer of closed stream).
+ */
+public final class DirectBuffers {
+
+  private static final MethodHandle INVOKE_CLEANER = findCleaner();
+
+  private DirectBuffers() {}
+
+  /**
+   * Free memory of direct buffer. Buffer must be allocated by {@link ByteBuffer#allocateDirect},
+   * not be a slice or duplicate of other buffer, and must not be accessed after this call.
+   */
+  public static void free(ByteBuffer buffer) {
+    if (INVOKE_CLEANER == null) {
+      // memory will be released when buffer is collected by GC
+      return;
+    }
+    try {
+      INVOKE_CLEANER.invoke(buffer);
+    } catch (Throwable e) {
+      throw new IllegalStateException("Can't release direct buffer memory", e);
+    }
+  }
+
+  /**
+   * Returns handle which frees memory of direct buffer immediately. Direct buffers don't have
+   * public API for this in Java 17, so handle is looked up in jdk.unsupported module. If it is not
+   * available, memory is released by GC.
+   */
+  private static MethodHandle findCleaner() {
+    try {
+      var unsafeClass = Class.forName("sun.misc.Unsafe");
+      var field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      return MethodHandles.lookup()
+          .findVirtual(
+              unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+          .bindTo(field.get(null));
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package com.taxi.rides.storage;
+
+import com.sun.nio.file.ExtendedOpenOption;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Stream of file data read by direct I/O, bypassing OS page cache. Direct I/O requires buffer
+ * address, file position and size of each read to be aligned to block size of file system, so data
+ * is read by aligned blocks into aligned buffer and bytes before requested offset are discarded.
+ *
+ * <p>Used by large one-off scans: they would evict pages of recently queried data from page cache
+ * otherwise. Stream buffers data itself, so it's read without extra buffering. Memory of buffer is
+ * freed on close.
+ */
+final class DirectFileInputStream extends InputStream {
+
+  // size of one read, rounded up to block size
+  private static final int READ_SIZE = 1024 * 1024;
+
+  private final FileChannel channel;
+  private final int blockSize;
+  // aligned slice can't be freed, memory is released through allocated buffer
+  private final ByteBuffer allocated;
+  private final ByteBuffer buffer;
+  private final int readSize;
+  // file offset of the first byte of buffer
+  private long bufferOffset;
+  // count of bytes at start of the next filled buffer which are before requested offset
+  private int skipInBuffer;
+  // the last read reached end of file
+  private boolean eof;
+  private boolean closed;
+
+  private DirectFileInputStream(FileChannel channel, int blockSize, long offset) {
+    this.channel = channel;
+    this.blockSize = blockSize;
+    this.readSize = (READ_SIZE + blockSize - 1) / blockSize * blockSize;
+    this.allocated = ByteBuffer.allocateDirect(readSize + blockSize);
+    this.buffer = allocated.alignedSlice(blockSize);
+    moveTo(offset);
+  }
+
+  /**
+   * Open stream which returns file data starting from passed offset. Returns empty if file system
+   * doesn't support direct I/O(e.g., tmpfs).
+   */
+  static Optional<InputStream> open(Path path, long offset) throws IOException {
+    FileChannel channel;
+    int blockSize;
+    try {
+      blockSize = Math.toIntExact(Files.getFileStore(path).getBlockSize());
+      channel = FileChannel.open(path, StandardOpenOption.READ, ExtendedOpenOption.DIRECT);
+    } catch (UnsupportedOperationException | ArithmeticException e) {
+      return Optional.empty();
+    } catch (IOException e) {
+      if (!Files.isReadable(path)) {
+        throw e;
+      }
+      // file is readable, but direct I/O is rejected by file system
+      return Optional.empty();
+    }
+    return Optional.of(new DirectFileInputStream(channel, blockSize, offset));
+  }
+
+  /** Position stream at passed offset, buffer is filled by the next read. */
+  private void moveTo(long offset) {
+    long alignedOffset = offset - offset % blockSize;
+    bufferOffset = alignedOffset;
+    buffer.position(0).limit(0);
+    skipInBuffer = (int) (offset - alignedOffset);
+    eof = false;
+  }
+
+  private boolean fill() throws IOException {
+    if (closed) {
+      throw new IOException("Stream is closed");
+    }
+    if (eof) {
+      return false;
+    }
+    bufferOffset += buffer.limit();
+    buffer.clear().limit(readSize);
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, bufferOffset + buffer.position());
+      // direct read of file tail returns less than requested
+      if (read <= 0 || buffer.position() % blockSize != 0) {
+        eof = true;
+        break;
+      }
+    }
+    buffer.flip();
+    int skip = Math.min(skipInBuffer, buffer.limit());
+    buffer.position(skip);
+    skipInBuffer -= skip;
+    return buffer.hasRemaining();
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!buffer.hasRemaining() && !fill()) {
+      return -1;
+    }
+    return buffer.get() & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] buf, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    if (!buffer.hasRemaining() && !fill()) {
+      return -1;
+    }
+    int read = Math.min(len, buffer.remaining());
+    buffer.get(buf, off, read);
+    return read;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    if (n <= 0) {
+      return 0;
+    }
+    if (n <= buffer.remaining()) {
+      buffer.position(buffer.position() + (int) n);
+      return n;
+    }
+    // skipped bytes are not read, the next read starts from block of new position
+    moveTo(bufferOffset + buffer.position() + skipInBuffer + n);
+    return n;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    // buffer looks empty, so reads after close don't touch freed memory
+    buffer.position(0).limit(0);
+    try {
+      channel.close();
+    } finally {
+      DirectBuffers.free(allocated);
+    }
+  }
+}
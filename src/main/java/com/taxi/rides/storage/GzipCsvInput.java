@@ -0,0 +1,360 @@
+package com.taxi.rides.storage;
+
+import com.google.common.io.ByteStreams;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * CSV file compressed by gzip. File may consist of several gzip members(e.g., produced by
+ * concatenation of gzip files or by block compressing tools like bgzip), each member can be
+ * decompressed independently. When input is opened, it records checkpoints at member boundaries:
+ * member offset inside compressed file and offset of its first byte inside uncompressed data.
+ * Reading from any offset starts decompression at the closest preceding checkpoint, so cost of
+ * seeking is bounded by member size and splits of the file can be scanned in parallel.
+ *
+ * <p>Member boundaries are found by decompression of the file, except members of block compressed
+ * files(e.g., bgzip) which record their compressed size in header: such members are skipped without
+ * decompression. Only complete members are available for reading: trailing member which is still
+ * written is ignored, it's scanned again when file is refreshed(see {@link #refresh()}).
+ */
+public final class GzipCsvInput implements CsvInput {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Path path;
+  private final long[] compressedOffsets;
+  private final long[] uncompressedOffsets;
+  private final long compressedSize;
+  private final long scannedSize;
+  private final long size;
+
+  private GzipCsvInput(
+      Path path,
+      long[] compressedOffsets,
+      long[] uncompressedOffsets,
+      long compressedSize,
+      long scannedSize,
+      long size) {
+    this.path = path;
+    this.compressedOffsets = compressedOffsets;
+    this.uncompressedOffsets = uncompressedOffsets;
+    this.compressedSize = compressedSize;
+    this.scannedSize = scannedSize;
+    this.size = size;
+  }
+
+  /** Open gzip file: scan it to find boundaries of complete members. */
+  public static GzipCsvInput open(Path path) throws IOException {
+    try (var scanner = new MemberScanner(path, 0)) {
+      return scanner.scan(new long[16], new long[16], 0, 0);
+    }
+  }
+
+  /**
+   * Open the same file again to make members appended since this input was opened available for
+   * reading. Members which are already known are not scanned again: scan starts after the last
+   * complete member.
+   */
+  public GzipCsvInput refresh() throws IOException {
+    // input without complete members has placeholder checkpoint
+    int members = compressedSize > 0 ? compressedOffsets.length : 0;
+    try (var scanner = new MemberScanner(path, compressedSize)) {
+      return scanner.scan(
+          Arrays.copyOf(compressedOffsets, members + 16),
+          Arrays.copyOf(uncompressedOffsets, members + 16),
+          members,
+          size);
+    }
+  }
+
+  @Override
+  public Path path() {
+    return path;
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  /** Returns count of gzip members, each of them can be used as decompression start point. */
+  public int checkpointsCount() {
+    return compressedOffsets.length;
+  }
+
+  /** Returns size of compressed data available for reading. */
+  public long compressedSize() {
+    return compressedSize;
+  }
+
+  /**
+   * Returns size of the file when it was scanned, including trailing incomplete member or garbage
+   * which is not available for reading.
+   */
+  public long scannedSize() {
+    return scannedSize;
+  }
+
+  @Override
+  public InputStream openAt(long offset) throws IOException {
+    if (offset >= size) {
+      return InputStream.nullInputStream();
+    }
+    int checkpoint = Arrays.binarySearch(uncompressedOffsets, offset);
+    if (checkpoint < 0) {
+      checkpoint = -checkpoint - 2;
+    }
+    var channel = Files.newByteChannel(path, StandardOpenOption.READ);
+    try {
+      channel.position(compressedOffsets[checkpoint]);
+      var compressed =
+          ByteStreams.limit(
+              Channels.newInputStream(channel), compressedSize - compressedOffsets[checkpoint]);
+      var stream =
+          new GZIPInputStream(new BufferedInputStream(compressed, BUFFER_SIZE), BUFFER_SIZE);
+      ByteStreams.skipFully(stream, offset - uncompressedOffsets[checkpoint]);
+      return stream;
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /** Reads gzip file member by member and records boundaries of complete members. */
+  private static final class MemberScanner implements AutoCloseable {
+
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int FHCRC = 2;
+    // header of member which is block of block compressed file
+    private static final int NOT_BLOCK = 0;
+    private static final int NO_HEADER = -1;
+
+    private final Path path;
+    private final InputStream file;
+    private final long fileSize;
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] output = new byte[BUFFER_SIZE];
+    // file offset of the first byte in buffer
+    private long bufferOffset;
+    private int position;
+    private int limit;
+
+    /** Create scanner which reads file starting from passed offset, it should be member start. */
+    MemberScanner(Path path, long startAt) throws IOException {
+      this.path = path;
+      var channel = Files.newByteChannel(path, StandardOpenOption.READ);
+      // bytes appended during scan are left for the next scan
+      this.fileSize = channel.size();
+      channel.position(startAt);
+      this.file = ByteStreams.limit(Channels.newInputStream(channel), fileSize - startAt);
+      this.bufferOffset = startAt;
+    }
+
+    /**
+     * Scan members of the file and append their checkpoints to passed ones.
+     *
+     * @param members Count of checkpoints which are already found.
+     * @param uncompressedEnd Size of uncompressed data of already found members.
+     */
+    GzipCsvInput scan(
+        long[] compressedOffsets, long[] uncompressedOffsets, int members, long uncompressedEnd)
+        throws IOException {
+      long compressedEnd = bufferOffset;
+      while (true) {
+        long memberStart = bufferOffset + position;
+        long memberSize = readMember();
+        if (memberSize < 0) {
+          break;
+        }
+        if (members == compressedOffsets.length) {
+          compressedOffsets = Arrays.copyOf(compressedOffsets, members * 2);
+          uncompressedOffsets = Arrays.copyOf(uncompressedOffsets, members * 2);
+        }
+        compressedOffsets[members] = memberStart;
+        uncompressedOffsets[members++] = uncompressedEnd;
+        compressedEnd = bufferOffset + position;
+        uncompressedEnd += memberSize;
+      }
+      if (members == 0) {
+        // empty or incomplete file: expose empty input
+        compressedOffsets[members] = 0;
+        uncompressedOffsets[members++] = 0;
+      }
+      return new GzipCsvInput(
+          path,
+          Arrays.copyOf(compressedOffsets, members),
+          Arrays.copyOf(uncompressedOffsets, members),
+          compressedEnd,
+          fileSize,
+          uncompressedEnd);
+    }
+
+    /**
+     * Read next member.
+     *
+     * @return Size of uncompressed member data, -1 if there is no more complete members.
+     */
+    private long readMember() throws IOException {
+      long memberStart = bufferOffset + position;
+      int blockSize = readHeader();
+      if (blockSize == NO_HEADER) {
+        return -1;
+      }
+      if (blockSize != NOT_BLOCK) {
+        // block is skipped up to its trailer: CRC32 and size of uncompressed data
+        long headerSize = bufferOffset + position - memberStart;
+        if (blockSize < headerSize + 8) {
+          throw new IOException("Corrupted gzip file " + path);
+        }
+        if (!skip(blockSize - headerSize - 8) || !skip(4)) {
+          return -1;
+        }
+        return readInt(4);
+      }
+      inflater.reset();
+      inflater.setInput(buffer, position, limit - position);
+      try {
+        while (!inflater.finished()) {
+          if (inflater.inflate(output) == 0) {
+            if (inflater.needsInput()) {
+              position = limit;
+              if (!fill()) {
+                // member is incomplete
+                return -1;
+              }
+              inflater.setInput(buffer, position, limit - position);
+            } else if (inflater.needsDictionary()) {
+              throw new IOException("Unsupported deflate stream in " + path);
+            }
+          }
+        }
+      } catch (DataFormatException e) {
+        throw new IOException("Corrupted gzip file " + path, e);
+      }
+      position = limit - inflater.getRemaining();
+      // trailer: CRC32 and size of uncompressed data, checked when member is read by queries
+      if (!skip(8)) {
+        return -1;
+      }
+      return inflater.getBytesWritten();
+    }
+
+    /**
+     * Read member header.
+     *
+     * @return Size of member if header contains it(e.g., 'BC' extra field written by bgzip), {@link
+     *     #NOT_BLOCK} if member size is unknown and {@link #NO_HEADER} if there is no complete
+     *     header.
+     */
+    private int readHeader() throws IOException {
+      if (readByte() != 0x1f || readByte() != 0x8b || readByte() != 8) {
+        // end of file or trailing garbage
+        return NO_HEADER;
+      }
+      int flags = readByte();
+      // modification time, extra flags, OS
+      if (flags < 0 || !skip(6)) {
+        return NO_HEADER;
+      }
+      int blockSize = NOT_BLOCK;
+      if ((flags & FEXTRA) != 0) {
+        int extraSize = readInt(2);
+        // extra field consists of subfields: 2 bytes of ID, 2 bytes of length and data
+        while (extraSize >= 4) {
+          int id1 = readByte();
+          int id2 = readByte();
+          int length = readInt(2);
+          if (length < 0) {
+            return NO_HEADER;
+          }
+          if (id1 == 'B' && id2 == 'C' && length == 2) {
+            int storedSize = readInt(2);
+            if (storedSize < 0) {
+              return NO_HEADER;
+            }
+            // field stores member size minus 1
+            blockSize = storedSize + 1;
+          } else if (!skip(length)) {
+            return NO_HEADER;
+          }
+          extraSize -= 4 + length;
+        }
+        if (extraSize < 0 || !skip(extraSize)) {
+          return NO_HEADER;
+        }
+      }
+      if ((flags & FNAME) != 0 && !skipZeroTerminated()) {
+        return NO_HEADER;
+      }
+      if ((flags & FCOMMENT) != 0 && !skipZeroTerminated()) {
+        return NO_HEADER;
+      }
+      return (flags & FHCRC) == 0 || skip(2) ? blockSize : NO_HEADER;
+    }
+
+    /** Read little-endian unsigned integer of passed count of bytes, -1 if file ended. */
+    private int readInt(int bytes) throws IOException {
+      long value = 0;
+      for (int i = 0; i < bytes; i++) {
+        int b = readByte();
+        if (b < 0) {
+          return -1;
+        }
+        value |= (long) b << (8 * i);
+      }
+      return (int) Math.min(value, Integer.MAX_VALUE);
+    }
+
+    private boolean skipZeroTerminated() throws IOException {
+      int b;
+      do {
+        b = readByte();
+      } while (b > 0);
+      return b == 0;
+    }
+
+    private boolean skip(long count) throws IOException {
+      while (count > 0) {
+        if (position == limit && !fill()) {
+          return false;
+        }
+        int skipped = (int) Math.min(count, limit - position);
+        position += skipped;
+        count -= skipped;
+      }
+      return true;
+    }
+
+    private int readByte() throws IOException {
+      if (position == limit && !fill()) {
+        return -1;
+      }
+      return buffer[position++] & 0xff;
+    }
+
+    private boolean fill() throws IOException {
+      bufferOffset += limit;
+      position = 0;
+      limit = Math.max(0, file.readNBytes(buffer, 0, buffer.length));
+      return limit > 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+      inflater.end();
+      file.close();
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package com.taxi.rides.storage;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Range;
+import com.google.common.io.ByteStreams;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stream of CSV rows located in several ordered ranges of offsets(e.g., regions of split which
+ * satisfy index predicate). Each range is defined by offset of its first row and offset of its last
+ * row: stream returns bytes from range start up to the end of the last row, then moves forward to
+ * the start of the next range on the same underlying stream. Moving forward skips bytes of the
+ * gap(seek of file channel for uncompressed input), so rows of all ranges are read by one reader.
+ *
+ * <p>Ranges separated by small gaps are better read as one range: over-read of the gap is usually
+ * cheaper than seek(see {@link #coalesce(List, long)}).
+ */
+final class OffsetRangesInputStream extends InputStream {
+
+  private final InputStream stream;
+  private final List<Range<Long>> ranges;
+  // offsets of CSV data can't exceed this limit, file can grow after it was indexed
+  private final long limit;
+  private int rangeIdx;
+  private long position;
+  private boolean inQuotes;
+  private boolean exhausted;
+  private long bytesRead;
+  private long bytesSkipped;
+  private int seeks;
+
+  /**
+   * @param ranges Closed ranges ordered by offset, range is [first row offset, last row offset].
+   * @param limit Size of CSV data available for reading.
+   * @param directIo Read input bypassing OS page cache(see {@link CsvInput#openDirectAt(long)}).
+   */
+  OffsetRangesInputStream(CsvInput input, List<Range<Long>> ranges, long limit, boolean directIo)
+      throws IOException {
+    Preconditions.checkArgument(!ranges.isEmpty(), "At least one range is required");
+    this.ranges = ranges;
+    this.limit = limit;
+    this.position = ranges.get(0).lowerEndpoint();
+    var source = directIo ? input.openDirectAt(position) : input.openAt(position);
+    // last rows are read byte by byte, buffer makes it cheap. Direct stream reads data by large
+    // blocks into its own buffer, so it's not buffered twice.
+    this.stream =
+        source instanceof DirectFileInputStream ? source : new BufferedInputStream(source);
+  }
+
+  /**
+   * Merge adjacent ranges if gap between the last row of the range and start of the next range is
+   * not greater than passed count of bytes.
+   *
+   * @param ranges Closed ranges ordered by offset.
+   */
+  static List<Range<Long>> coalesce(List<Range<Long>> ranges, long maxGapBytes) {
+    var res = new ArrayList<Range<Long>>(ranges.size());
+    Range<Long> current = null;
+    for (Range<Long> range : ranges) {
+      if (current != null && range.lowerEndpoint() - current.upperEndpoint() <= maxGapBytes) {
+        current = Range.closed(current.lowerEndpoint(), range.upperEndpoint());
+      } else {
+        if (current != null) {
+          res.add(current);
+        }
+        current = range;
+      }
+    }
+    if (current != null) {
+      res.add(current);
+    }
+    return res;
+  }
+
+  /** Returns count of bytes returned by stream. */
+  long bytesRead() {
+    return bytesRead;
+  }
+
+  /** Returns count of bytes skipped between ranges. */
+  long bytesSkipped() {
+    return bytesSkipped;
+  }
+
+  /** Returns count of moves to the start of the next range. */
+  int seeks() {
+    return seeks;
+  }
+
+  int rangesCount() {
+    return ranges.size();
+  }
+
+  @Override
+  public int read() throws IOException {
+    var buf = new byte[1];
+    return read(buf, 0, 1) < 0 ? -1 : buf[0] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] buf, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (!exhausted) {
+      if (position >= limit) {
+        exhausted = true;
+        break;
+      }
+      var range = ranges.get(rangeIdx);
+      if (position < range.lowerEndpoint()) {
+        seeks++;
+        ByteStreams.skipFully(stream, range.lowerEndpoint() - position);
+        bytesSkipped += range.lowerEndpoint() - position;
+        position = range.lowerEndpoint();
+      }
+      int read;
+      if (position < range.upperEndpoint()) {
+        // read exactly to the start of the last row, so its bytes are checked for row end
+        long toRead = Math.min(range.upperEndpoint(), limit) - position;
+        read = stream.read(buf, off, (int) Math.min(len, toRead));
+      } else {
+        read = readLastRow(buf, off, len);
+      }
+      if (read < 0) {
+        exhausted = true;
+        break;
+      }
+      if (read > 0) {
+        position += read;
+        bytesRead += read;
+        return read;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Copy bytes of the last row of current range. Row ends on the first line break outside of quoted
+   * field, stream is switched to the next range after it.
+   */
+  private int readLastRow(byte[] buf, int off, int len) throws IOException {
+    int count = 0;
+    while (count < len && position + count < limit) {
+      int b = stream.read();
+      if (b < 0) {
+        return count > 0 ? count : -1;
+      }
+      buf[off + count++] = (byte) b;
+      if (b == '"') {
+        inQuotes = !inQuotes;
+      } else if (b == '\n' && !inQuotes) {
+        rangeIdx++;
+        exhausted = rangeIdx == ranges.size();
+        break;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public void close() throws IOException {
+    stream.close();
+  }
+}
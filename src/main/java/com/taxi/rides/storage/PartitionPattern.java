@@ -0,0 +1,137 @@
+package com.taxi.rides.storage;
+
+import com.google.common.collect.Range;
+import java.io.File;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts date partition of data file from its path(e.g., month of trips from file name {@code
+ * yellow_tripdata_2020-05.csv}). Pattern is a path suffix where {@code {year}}, {@code {month}} and
+ * {@code {day}} placeholders match numbers and {@code *} matches any part of file or directory
+ * name:
+ *
+ * <ul>
+ *   <li>{@code yellow_tripdata_{year}-{month}.csv} matches file name;
+ *   <li>{@code year={year}/month={month}/} matches directories of Hive-style layout, pattern which
+ *       ends with '/' matches any file inside the directory.
+ * </ul>
+ *
+ * Year is required, partition covers the whole year, month or day depending on placeholders found
+ * in pattern.
+ */
+public final class PartitionPattern {
+
+  private static final Pattern PLACEHOLDER = Pattern.compile("\\{(\\w+)}|\\*");
+
+  private final String pattern;
+  private final Pattern regex;
+  private final List<String> fields;
+
+  private PartitionPattern(String pattern, Pattern regex, List<String> fields) {
+    this.pattern = pattern;
+    this.regex = regex;
+    this.fields = fields;
+  }
+
+  /**
+   * Parse pattern.
+   *
+   * @throws IllegalArgumentException if pattern contains unknown placeholder or has no year.
+   */
+  public static PartitionPattern compile(String pattern) {
+    var regex = new StringBuilder("(?:^|/)");
+    var fields = new ArrayList<String>();
+    Matcher matcher = PLACEHOLDER.matcher(pattern);
+    int literalStart = 0;
+    while (matcher.find()) {
+      appendLiteral(regex, pattern.substring(literalStart, matcher.start()));
+      literalStart = matcher.end();
+      if (matcher.group(1) == null) {
+        regex.append("[^/]*");
+        continue;
+      }
+      String field = matcher.group(1);
+      if (field.equals("year")) {
+        regex.append("(\\d{4})");
+      } else if (field.equals("month") || field.equals("day")) {
+        regex.append("(\\d{1,2})");
+      } else {
+        throw new IllegalArgumentException(
+            "Unknown placeholder {" + field + "} in partition pattern " + pattern);
+      }
+      if (fields.contains(field)) {
+        throw new IllegalArgumentException(
+            "Placeholder {" + field + "} is repeated in partition pattern " + pattern);
+      }
+      fields.add(field);
+    }
+    appendLiteral(regex, pattern.substring(literalStart));
+    if (!fields.contains("year")) {
+      throw new IllegalArgumentException("Partition pattern has no {year}: " + pattern);
+    }
+    if (fields.contains("day") && !fields.contains("month")) {
+      throw new IllegalArgumentException("Partition pattern has {day} without {month}: " + pattern);
+    }
+    regex.append(pattern.endsWith("/") ? ".+$" : "$");
+    return new PartitionPattern(pattern, Pattern.compile(regex.toString()), List.copyOf(fields));
+  }
+
+  private static void appendLiteral(StringBuilder regex, String literal) {
+    if (!literal.isEmpty()) {
+      regex.append(Pattern.quote(literal));
+    }
+  }
+
+  /**
+   * Returns range of dates covered by partition of the file, empty if path doesn't match pattern or
+   * contains invalid date.
+   *
+   * @param relativePath Path of file relative to data directory.
+   */
+  public Optional<Range<LocalDate>> dateRange(Path relativePath) {
+    var matcher = regex.matcher(relativePath.toString().replace(File.separatorChar, '/'));
+    if (!matcher.find()) {
+      return Optional.empty();
+    }
+    int year = 0;
+    int month = 0;
+    int day = 0;
+    for (int i = 0; i < fields.size(); i++) {
+      int value = Integer.parseInt(matcher.group(i + 1));
+      String field = fields.get(i);
+      if (field.equals("year")) {
+        year = value;
+      } else if (field.equals("month")) {
+        month = value;
+      } else {
+        day = value;
+      }
+    }
+    try {
+      if (fields.contains("day")) {
+        var date = LocalDate.of(year, month, day);
+        return Optional.of(Range.closed(date, date));
+      }
+      if (fields.contains("month")) {
+        var yearMonth = YearMonth.of(year, month);
+        return Optional.of(Range.closed(yearMonth.atDay(1), yearMonth.atEndOfMonth()));
+      }
+      return Optional.of(Range.closed(LocalDate.of(year, 1, 1), LocalDate.of(year, 12, 31)));
+    } catch (DateTimeException e) {
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return pattern;
+  }
+}
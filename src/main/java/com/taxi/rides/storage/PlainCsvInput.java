@@ -0,0 +1,53 @@
+package com.taxi.rides.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/** Uncompressed CSV file, offsets of CSV data are file offsets. */
+public final class PlainCsvInput implements CsvInput {
+
+  private final Path path;
+  private final long size;
+
+  /**
+   * @param size Size of file part available for reading. File can grow after it was listed, only
+   *     bytes which were present at that moment are read.
+   */
+  public PlainCsvInput(Path path, long size) {
+    this.path = path;
+    this.size = size;
+  }
+
+  @Override
+  public Path path() {
+    return path;
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  @Override
+  public InputStream openAt(long offset) throws IOException {
+    var channel = Files.newByteChannel(path, StandardOpenOption.READ);
+    try {
+      channel.position(offset);
+      return Channels.newInputStream(channel);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public InputStream openDirectAt(long offset) throws IOException {
+    // file system may not support direct I/O, regular reads are used then
+    var direct = DirectFileInputStream.open(path, offset);
+    return direct.isPresent() ? direct.get() : openAt(offset);
+  }
+}
@@ -1,21 +1,72 @@
 package com.taxi.rides.storage;
 
+import com.taxi.rides.storage.schema.datatypes.DataType;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
 /**
  * Row contains column values at indexes defined by {@link com.taxi.rides.storage.schema.Schema}.
+ *
+ * <p>Row can hold either parsed values or raw values which are parsed by column data types on
+ * access. Raw values can be read as primitives through {@link #getLong(int)}/{@link
+ * #getDouble(int)} without allocation of value objects.
  */
 public final class Row {
 
   private final Object[] colValues;
+  // data types of columns, null if row holds parsed values
+  private final DataType<?>[] dataTypes;
 
   public Row(int columnCount) {
     this.colValues = new Object[columnCount];
+    this.dataTypes = null;
+  }
+
+  /** Create row which holds raw values of columns with passed data types. */
+  public Row(DataType<?>[] dataTypes) {
+    this.colValues = new Object[dataTypes.length];
+    this.dataTypes = dataTypes.clone();
   }
 
+  /** Set column value: parsed value or raw value if row is created with data types. */
   public void set(int colIndex, Object value) {
     colValues[colIndex] = value;
   }
 
   public Object get(int colIndex) {
+    if (dataTypes != null) {
+      // raw value is parsed on each call
+      return dataTypes[colIndex].parseFrom((String) colValues[colIndex]);
+    }
     return colValues[colIndex];
   }
+
+  /**
+   * Returns value of integer, decimal(as scaled long) or timestamp(as epoch seconds in UTC) column,
+   * {@link DataType#NULL_LONG} if value is null.
+   */
+  public long getLong(int colIndex) {
+    if (dataTypes != null) {
+      return dataTypes[colIndex].parseLong((CharSequence) colValues[colIndex]);
+    }
+    var value = colValues[colIndex];
+    if (value == null) {
+      return DataType.NULL_LONG;
+    } else if (value instanceof LocalDateTime timestamp) {
+      return timestamp.toEpochSecond(ZoneOffset.UTC);
+    } else if (value instanceof BigDecimal decimal) {
+      return decimal.unscaledValue().longValueExact();
+    }
+    return ((Number) value).longValue();
+  }
+
+  /** Returns value of numeric column, {@link DataType#NULL_DOUBLE} if value is null. */
+  public double getDouble(int colIndex) {
+    if (dataTypes != null) {
+      return dataTypes[colIndex].parseDouble((CharSequence) colValues[colIndex]);
+    }
+    var value = colValues[colIndex];
+    return value != null ? ((Number) value).doubleValue() : DataType.NULL_DOUBLE;
+  }
 }
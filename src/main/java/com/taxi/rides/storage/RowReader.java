@@ -1,8 +1,13 @@
 package com.taxi.rides.storage;
 
 import com.taxi.rides.storage.schema.Schema;
+import java.io.IOException;
 import java.util.Iterator;
 
+/**
+ * Iterator over rows of storage file. Reader can return the same row object on each call, so row
+ * should not be retained after next call.
+ */
 public interface RowReader extends Iterator<Row>, AutoCloseable {
 
   /** Returns schema of rows returned by this reader. */
@@ -11,6 +16,9 @@ public interface RowReader extends Iterator<Row>, AutoCloseable {
   /** Print reader internal statistics to stdout. */
   void printStats();
 
+  @Override
+  void close() throws IOException;
+
   static RowReader empty(Schema schema) {
     return new Empty(schema);
   }
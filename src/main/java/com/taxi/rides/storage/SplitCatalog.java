@@ -0,0 +1,192 @@
+package com.taxi.rides.storage;
+
+import com.google.common.collect.Range;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Table level catalog of value ranges of splits, used to find splits which can contain rows matched
+ * by predicate without evaluation of per-split indexes. For each column, catalog holds [min, max]
+ * intervals of split values(from {@link ColumnStatistics}) sorted by min and augmented by max of
+ * maxes of interval ranges(static interval tree). Splits which intersect range of predicate are
+ * found in {@code O(log(n) * k)}, where {@code n} is count of splits and {@code k} is count of
+ * found splits.
+ *
+ * <p>Catalog is immutable and never excludes split which can contain matched rows: splits which
+ * have no statistics for the column are always candidates.
+ */
+public final class SplitCatalog {
+
+  private final int splitsCount;
+  private final BitSet nonEmptySplits;
+  private final Map<String, ColumnIntervals> intervals;
+  // splits where all values of the column are null
+  private final Map<String, BitSet> nullSplits;
+
+  private SplitCatalog(
+      int splitsCount,
+      BitSet nonEmptySplits,
+      Map<String, ColumnIntervals> intervals,
+      Map<String, BitSet> nullSplits) {
+    this.splitsCount = splitsCount;
+    this.nonEmptySplits = nonEmptySplits;
+    this.intervals = intervals;
+    this.nullSplits = nullSplits;
+  }
+
+  /** Build catalog of passed files, split is identified by position of its file in the list. */
+  public static SplitCatalog of(List<CsvStorageFile> files) {
+    var nonEmpty = new BitSet(files.size());
+    Set<String> columns = new HashSet<>();
+    for (int i = 0; i < files.size(); i++) {
+      var file = files.get(i);
+      if (file.rowsCount() > 0) {
+        nonEmpty.set(i);
+      }
+      columns.addAll(file.statisticsColumns());
+    }
+    var intervals = new HashMap<String, ColumnIntervals>();
+    var nullSplits = new HashMap<String, BitSet>();
+    for (String column : columns) {
+      var mins = new double[files.size()];
+      var maxs = new double[files.size()];
+      var nulls = new BitSet(files.size());
+      for (int i = 0; i < files.size(); i++) {
+        var stats = files.get(i).columnStatistics(column).orElse(null);
+        if (stats == null) {
+          mins[i] = Double.NEGATIVE_INFINITY;
+          maxs[i] = Double.POSITIVE_INFINITY;
+        } else if (stats.nullCount() == stats.rowCount()) {
+          nulls.set(i);
+          // empty interval: no value can be in range
+          mins[i] = Double.POSITIVE_INFINITY;
+          maxs[i] = Double.NEGATIVE_INFINITY;
+        } else if (Double.isNaN(stats.min())) {
+          // values are not numeric, their range is unknown
+          mins[i] = Double.NEGATIVE_INFINITY;
+          maxs[i] = Double.POSITIVE_INFINITY;
+        } else {
+          mins[i] = stats.min();
+          maxs[i] = stats.max();
+        }
+      }
+      intervals.put(column, new ColumnIntervals(mins, maxs));
+      nullSplits.put(column, nulls);
+    }
+    return new SplitCatalog(files.size(), nonEmpty, intervals, nullSplits);
+  }
+
+  /**
+   * Returns positions of splits which can contain rows matched by predicate. Split can be scanned
+   * only if it is returned, but it is not guaranteed that returned split contains matched rows.
+   */
+  public BitSet candidates(QueryPredicate predicate) {
+    var res = (BitSet) nonEmptySplits.clone();
+    for (QueryPredicate.Between<?> between : predicate.between()) {
+      var columnIntervals = intervals.get(between.column().name());
+      if (columnIntervals != null && !res.isEmpty()) {
+        res.and(columnIntervals.intersecting(between.range(), splitsCount));
+      }
+    }
+    for (QueryPredicate.NotEqual<?> notEqual : predicate.notEquals()) {
+      var nulls = nullSplits.get(notEqual.column().name());
+      if (notEqual.notEqualTo() == null && nulls != null) {
+        res.andNot(nulls);
+      }
+    }
+    return res;
+  }
+
+  /** Intervals of column values of splits. */
+  private static final class ColumnIntervals {
+
+    // intervals sorted by min
+    private final double[] mins;
+    private final double[] maxs;
+    private final int[] splits;
+    // max of maxs of each node of binary tree over sorted intervals, stored as heap array
+    private final double[] subtreeMax;
+    private final int leaves;
+
+    ColumnIntervals(double[] splitMins, double[] splitMaxs) {
+      var order =
+          IntStream.range(0, splitMins.length)
+              .boxed()
+              .sorted(Comparator.comparingDouble(i -> splitMins[i]))
+              .mapToInt(Integer::intValue)
+              .toArray();
+      mins = new double[order.length];
+      maxs = new double[order.length];
+      splits = order;
+      for (int i = 0; i < order.length; i++) {
+        mins[i] = splitMins[order[i]];
+        maxs[i] = splitMaxs[order[i]];
+      }
+      leaves = Integer.highestOneBit(Math.max(1, order.length * 2 - 1));
+      subtreeMax = new double[leaves * 2];
+      Arrays.fill(subtreeMax, Double.NEGATIVE_INFINITY);
+      System.arraycopy(maxs, 0, subtreeMax, leaves, maxs.length);
+      for (int node = leaves - 1; node > 0; node--) {
+        subtreeMax[node] = Math.max(subtreeMax[node * 2], subtreeMax[node * 2 + 1]);
+      }
+    }
+
+    /** Returns splits which interval intersects passed range. */
+    BitSet intersecting(Range<? extends Comparable<?>> range, int splitsCount) {
+      var res = new BitSet(splitsCount);
+      double lower = Double.NEGATIVE_INFINITY;
+      double upper = Double.POSITIVE_INFINITY;
+      if (range.hasLowerBound()) {
+        lower = ColumnStatistics.toNumber(range.lowerEndpoint());
+      }
+      if (range.hasUpperBound()) {
+        upper = ColumnStatistics.toNumber(range.upperEndpoint());
+      }
+      if (Double.isNaN(lower) || Double.isNaN(upper)) {
+        // range of non-numeric values
+        res.set(0, splitsCount);
+        return res;
+      }
+      // open bounds are treated as closed: catalog may return extra split, but never misses one
+      int candidates = upperBound(upper);
+      collect(1, 0, leaves, candidates, lower, res);
+      return res;
+    }
+
+    /** Returns count of intervals which min <= value. */
+    private int upperBound(double value) {
+      int low = 0;
+      int high = mins.length;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (mins[mid] <= value) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /** Collect intervals from [0, limit) of the node which max >= lower. */
+    private void collect(int node, int from, int to, int limit, double lower, BitSet res) {
+      if (from >= limit || subtreeMax[node] < lower) {
+        return;
+      }
+      if (node >= leaves) {
+        res.set(splits[from]);
+        return;
+      }
+      int mid = (from + to) >>> 1;
+      collect(node * 2, from, mid, limit, lower, res);
+      collect(node * 2 + 1, mid, to, limit, lower, res);
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package com.taxi.rides.storage;
+
+import com.taxi.rides.storage.schema.Column;
+import java.util.List;
+
+/**
+ * Collector receives each row of storage file while file is indexed. Collectors used to gather data
+ * about file content which is not an index, e.g. samples of rows, statistics, etc.
+ */
+public interface SplitCollector {
+
+  /** Columns required by collector. Row passed to collector contains values in the same order. */
+  List<Column<?>> columns();
+
+  /**
+   * Receive next row of the file.
+   *
+   * @param rowId Row ID
+   * @param row Row values, row object is reused between calls and should not be retained.
+   */
+  void collect(long rowId, Row row);
+}
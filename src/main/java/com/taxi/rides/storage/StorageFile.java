@@ -5,5 +5,32 @@ import java.io.IOException;
 import java.util.List;
 
 public interface StorageFile {
-  RowReader openReader(List<Column> requiredColumns, QueryPredicate predicate) throws IOException;
+  default RowReader openReader(List<Column<?>> requiredColumns, QueryPredicate predicate)
+      throws IOException {
+    return openReader(requiredColumns, predicate, new CancellationToken());
+  }
+
+  /**
+   * Open reader which stops with {@link java.util.concurrent.CancellationException} when passed
+   * token is cancelled.
+   */
+  default RowReader openReader(
+      List<Column<?>> requiredColumns, QueryPredicate predicate, CancellationToken cancellation)
+      throws IOException {
+    return openReader(requiredColumns, predicate, cancellation, false);
+  }
+
+  /**
+   * Same as {@link #openReader(List, QueryPredicate, CancellationToken)}, but data can be read
+   * bypassing OS page cache.
+   *
+   * @param directIo Read data by direct I/O, if storage supports it(e.g., one-off scan of large
+   *     part of the table which shouldn't evict recently queried data from page cache).
+   */
+  RowReader openReader(
+      List<Column<?>> requiredColumns,
+      QueryPredicate predicate,
+      CancellationToken cancellation,
+      boolean directIo)
+      throws IOException;
 }
@@ -1,8 +1,14 @@
 package com.taxi.rides.storage.index;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.BoundType;
 import com.google.common.collect.Range;
 import com.taxi.rides.storage.QueryPredicate.Between;
 import com.taxi.rides.storage.schema.Column;
+import com.taxi.rides.storage.schema.datatypes.DataType;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
 import java.util.NavigableMap;
 import java.util.TreeMap;
 import java.util.function.Function;
@@ -37,18 +43,42 @@ import java.util.function.Function;
  *
  * <p>{@link BucketColumnIndex} will help to filter out datasets which still 'selected to scan' by
  * lower cardinality indexes, such as {@link MinMaxColumnIndex}.
+ *
+ * <p>Buckets are collected into tree map while index populated. After {@link #freeze(IndexArena)},
+ * bucket IDs are stored as sorted array and min/max row IDs of buckets are stored in arena region.
+ *
+ * <p>If range of values of each bucket is known(e.g., [day start, next day start) for bucket of
+ * timestamps truncated to day), batch of rows is split into runs by comparison of values with
+ * bounds of the current bucket: bucket ID is computed only for the first row of each run.
  */
 public class BucketColumnIndex<T extends Comparable<? super T>, B extends Comparable<? super B>>
     implements ColumnIndex<T> {
 
   private static final Range<Long> EMPTY_RANGE = Range.closedOpen(0L, 0L);
-  private final NavigableMap<B, MinMax> index = new TreeMap<>();
+  private static final long OBJECT_HEADER_SIZE = 16;
+  private NavigableMap<B, MinMax> index = new TreeMap<>();
+  private Object[] frozenBuckets;
+  private ByteBuffer frozenRegion;
+  // min and max row IDs of bucket I are stored at positions 2*I and 2*I+1
+  private LongBuffer frozenRowIds;
   private final Column<T> column;
   private final Function<T, B> getBucketId;
+  // null if bounds of buckets are unknown, runs are detected by comparison of bucket IDs then
+  private final Function<B, Range<T>> bucketRange;
 
   public BucketColumnIndex(Column<T> column, Function<T, B> getBucketId) {
+    this(column, getBucketId, null);
+  }
+
+  /**
+   * @param bucketRange Returns range of values which belong to bucket, values of bucket should be
+   *     bounded on both sides.
+   */
+  public BucketColumnIndex(
+      Column<T> column, Function<T, B> getBucketId, Function<B, Range<T>> bucketRange) {
     this.column = column;
     this.getBucketId = getBucketId;
+    this.bucketRange = bucketRange;
   }
 
   @Override
@@ -63,14 +93,130 @@ public class BucketColumnIndex<T extends Comparable<? super T>, B extends Compar
 
   @Override
   public void addEntry(long rowId, T colValue) {
-    var bucket = getBucketId.apply(colValue);
-    MinMax minMax = index.computeIfAbsent(bucket, key -> new MinMax(rowId, rowId));
-    minMax.minRowId = Math.min(minMax.minRowId, rowId);
-    minMax.maxRowId = Math.max(minMax.maxRowId, rowId);
+    Preconditions.checkState(index != null, "Index is frozen");
+    if (colValue != null) {
+      addRun(getBucketId.apply(colValue), rowId, rowId);
+    }
+  }
+
+  @Override
+  public void addEntries(long[] rowIds, long[] rowOffsets, T[] values, int count) {
+    Preconditions.checkState(index != null, "Index is frozen");
+    // sequential rows usually belong to the same bucket, tree map is updated once per run of them
+    B runBucket = null;
+    Range<T> runRange = null;
+    long runFirst = 0;
+    long runLast = 0;
+    for (int i = 0; i < count; i++) {
+      T value = values[i];
+      if (value == null) {
+        continue;
+      }
+      if (runRange != null && runRange.contains(value)) {
+        runLast = rowIds[i];
+        continue;
+      }
+      B bucket = getBucketId.apply(value);
+      if (bucket.equals(runBucket)) {
+        runLast = rowIds[i];
+        continue;
+      }
+      if (runBucket != null) {
+        addRun(runBucket, runFirst, runLast);
+      }
+      runBucket = bucket;
+      runRange = bucketRange != null ? bucketRange.apply(bucket) : null;
+      runFirst = rowIds[i];
+      runLast = rowIds[i];
+    }
+    if (runBucket != null) {
+      addRun(runBucket, runFirst, runLast);
+    }
+  }
+
+  @Override
+  public void addEntries(long[] rowIds, long[] rowOffsets, long[] values, int count) {
+    Preconditions.checkState(index != null, "Index is frozen");
+    var dataType = column.dataType();
+    B runBucket = null;
+    // encoded bounds of the current bucket [runStart, runEnd), empty if bounds are unknown
+    long runStart = 0;
+    long runEnd = 0;
+    long runFirst = 0;
+    long runLast = 0;
+    for (int i = 0; i < count; i++) {
+      long value = values[i];
+      if (value == DataType.NULL_LONG) {
+        continue;
+      }
+      if (value >= runStart && value < runEnd) {
+        runLast = rowIds[i];
+        continue;
+      }
+      B bucket = getBucketId.apply(dataType.fromLong(value));
+      if (bucket.equals(runBucket)) {
+        runLast = rowIds[i];
+        continue;
+      }
+      if (runBucket != null) {
+        addRun(runBucket, runFirst, runLast);
+      }
+      runBucket = bucket;
+      if (bucketRange != null) {
+        var range = bucketRange.apply(bucket);
+        runStart = dataType.toLong(range.lowerEndpoint());
+        runEnd = dataType.toLong(range.upperEndpoint());
+        runStart += range.lowerBoundType() == BoundType.OPEN ? 1 : 0;
+        runEnd += range.upperBoundType() == BoundType.CLOSED ? 1 : 0;
+      }
+      runFirst = rowIds[i];
+      runLast = rowIds[i];
+    }
+    if (runBucket != null) {
+      addRun(runBucket, runFirst, runLast);
+    }
+  }
+
+  private void addRun(B bucket, long firstRowId, long lastRowId) {
+    MinMax minMax = index.computeIfAbsent(bucket, key -> new MinMax(firstRowId, lastRowId));
+    minMax.minRowId = Math.min(minMax.minRowId, firstRowId);
+    minMax.maxRowId = Math.max(minMax.maxRowId, lastRowId);
+  }
+
+  @Override
+  public void freeze(IndexArena arena) {
+    if (index == null) {
+      return;
+    }
+    frozenBuckets = index.keySet().toArray();
+    frozenRegion = arena.allocate(16 * frozenBuckets.length);
+    frozenRowIds = frozenRegion.asLongBuffer();
+    for (MinMax minMax : index.values()) {
+      frozenRowIds.put(minMax.minRowId).put(minMax.maxRowId);
+    }
+    index = null;
+  }
+
+  @Override
+  public long memoryUsage() {
+    if (index != null) {
+      // tree entry and min-max object per bucket, bucket values are not accounted
+      return OBJECT_HEADER_SIZE + 48 + index.size() * (40 + 32);
+    }
+    // array of bucket IDs, buffers and region with min-max row IDs
+    return OBJECT_HEADER_SIZE
+        + 48
+        + OBJECT_HEADER_SIZE
+        + 8L * frozenBuckets.length
+        + 2 * 48
+        + frozenRegion.capacity();
   }
 
   @Override
   public Range<Long> evaluateBetween(Between<T> predicate) {
+    if (index == null) {
+      return evaluateFrozen(predicate);
+    }
     if (predicate.range().hasLowerBound() && predicate.range().hasUpperBound()) {
       var lowerBucket = getBucketId.apply(predicate.range().lowerEndpoint());
       var upperBucket = getBucketId.apply(predicate.range().upperEndpoint());
@@ -108,6 +254,48 @@ public class BucketColumnIndex<T extends Comparable<? super T>, B extends Compar
     }
   }
 
+  private Range<Long> evaluateFrozen(Between<T> predicate) {
+    var range = predicate.range();
+    if (!range.hasLowerBound() && !range.hasUpperBound()) {
+      return Range.all();
+    }
+    // positions of the first and the last buckets inside predicate range
+    int first = 0;
+    int last = frozenBuckets.length - 1;
+    if (range.hasLowerBound()) {
+      int pos = Arrays.binarySearch(frozenBuckets, getBucketId.apply(range.lowerEndpoint()));
+      first = pos >= 0 ? pos : -pos - 1;
+    }
+    if (range.hasUpperBound()) {
+      int pos = Arrays.binarySearch(frozenBuckets, getBucketId.apply(range.upperEndpoint()));
+      last = pos >= 0 ? pos : -pos - 2;
+    }
+    if (first > last) {
+      return EMPTY_RANGE;
+    }
+    if (range.hasLowerBound() && range.hasUpperBound()) {
+      return Range.closed(
+          Math.min(minRowId(first), minRowId(last)), Math.max(maxRowId(first), maxRowId(last)));
+    } else if (range.hasLowerBound()) {
+      // same bound as for tree map: row IDs are not negative
+      return Range.atLeast(0L);
+    } else {
+      long upper = 0;
+      for (int i = first; i <= last; i++) {
+        upper = Math.max(upper, maxRowId(i));
+      }
+      return Range.atMost(upper);
+    }
+  }
+
+  private long minRowId(int bucket) {
+    return frozenRowIds.get(2 * bucket);
+  }
+
+  private long maxRowId(int bucket) {
+    return frozenRowIds.get(2 * bucket + 1);
+  }
+
   class MinMax {
     long minRowId;
     long maxRowId;
@@ -1,8 +1,11 @@
 package com.taxi.rides.storage.index;
 
+import com.google.common.collect.ImmutableRangeSet;
 import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
 import com.taxi.rides.storage.QueryPredicate;
 import com.taxi.rides.storage.schema.Column;
+import com.taxi.rides.storage.schema.datatypes.DataType;
 
 /**
  * Interface declare index on some column in dataset. This is approximate index, e.g. it returns
@@ -32,6 +35,68 @@ public interface ColumnIndex<T extends Comparable<? super T>> {
    */
   void addEntry(long rowId, T colValue);
 
+  /**
+   * Add new index entry for row's column, row starts at passed offset of file. Indexes which locate
+   * rows by exact offset(see {@link #pinRows(RowOffsetLocator)}) keep offset, other indexes ignore
+   * it.
+   */
+  default void addEntry(long rowId, long rowOffset, T colValue) {
+    addEntry(rowId, colValue);
+  }
+
+  /**
+   * Add entries of batch of rows, row IDs are ascending. Index can process batch at once(e.g.,
+   * update bucket once per run of rows which belong to the same bucket), by default entries are
+   * added one by one.
+   *
+   * @param count Count of rows in batch, arrays can be longer.
+   */
+  default void addEntries(long[] rowIds, long[] rowOffsets, T[] values, int count) {
+    for (int i = 0; i < count; i++) {
+      addEntry(rowIds[i], rowOffsets[i], values[i]);
+    }
+  }
+
+  /**
+   * Same as {@link #addEntries(long[], long[], Comparable[], int)}, but values are encoded as longs
+   * by data type of the column(see {@link DataType#isLongEncoded()}), {@link DataType#NULL_LONG}
+   * marks null value. Index can process primitive values without decoding them(e.g., compare epoch
+   * seconds with bounds of the current bucket), by default values are decoded and added one by one.
+   */
+  default void addEntries(long[] rowIds, long[] rowOffsets, long[] values, int count) {
+    var dataType = column().dataType();
+    for (int i = 0; i < count; i++) {
+      long value = values[i];
+      addEntry(
+          rowIds[i], rowOffsets[i], value == DataType.NULL_LONG ? null : dataType.fromLong(value));
+    }
+  }
+
+  /**
+   * Called when all entries are added and row locator of the file is frozen, but before {@link
+   * #freeze(IndexArena)}. Index can add marks of rows it returns individually, so such rows are
+   * read without scanning their neighbours.
+   */
+  default void pinRows(RowOffsetLocator locator) {}
+
+  /**
+   * Called when all entries are added to the index. Index can convert its data to compact read-only
+   * representation stored in heap. {@link #addEntry(long, Comparable)} must not be called after
+   * this method.
+   */
+  default void freeze() {
+    freeze(IndexArena.heap());
+  }
+
+  /**
+   * Same as {@link #freeze()}, but compact representation is stored in regions allocated from
+   * passed arena.
+   */
+  default void freeze(IndexArena arena) {}
+
+  /** Approximate count of bytes occupied by index data, both in heap and in arena. */
+  long memoryUsage();
+
   /**
    * Evaluate passed predicate and returns range of row IDs which can satisfy to predicate
    * condition.
@@ -43,6 +108,14 @@ public interface ColumnIndex<T extends Comparable<? super T>> {
     return Range.all();
   }
 
+  /**
+   * Same as {@link #evaluateBetween(QueryPredicate.Between)}, but rows which can satisfy predicate
+   * are returned as set of disjoint ranges(e.g., few outlier rows spread over the file).
+   */
+  default RangeSet<Long> evaluateBetweenRanges(QueryPredicate.Between<T> predicate) {
+    return ImmutableRangeSet.of(evaluateBetween(predicate));
+  }
+
   /**
    * Evaluate passed predicate and returns range of row IDs which can satisfy to predicate
    * condition.
@@ -54,6 +127,14 @@ public interface ColumnIndex<T extends Comparable<? super T>> {
     return Range.all();
   }
 
+  /**
+   * Same as {@link #evaluateNotEquals(QueryPredicate.NotEqual)}, but rows which can satisfy
+   * predicate are returned as set of disjoint ranges(e.g., rows around long runs of null values).
+   */
+  default RangeSet<Long> evaluateNotEqualsRanges(QueryPredicate.NotEqual<T> predicate) {
+    return ImmutableRangeSet.of(evaluateNotEquals(predicate));
+  }
+
   enum Priority {
     HIGH(0),
     LOW(1),
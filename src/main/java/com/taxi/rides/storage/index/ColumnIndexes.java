@@ -1,74 +1,131 @@
 package com.taxi.rides.storage.index;
 
-import com.google.common.collect.Iterators;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableRangeSet;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Range;
-import com.google.common.collect.TreeMultimap;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
 import com.taxi.rides.storage.QueryPredicate;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 public final class ColumnIndexes {
 
   private static final Range<Long> EMPTY_RANGE = Range.closedOpen(0L, 0L);
-  private static final Comparator<ColumnIndex> INDEX_COMPARATOR =
+  private static final Comparator<ColumnIndex<?>> INDEX_COMPARATOR =
       Comparator.comparingInt(i -> i.order().priotity());
-  private final Multimap<String, ColumnIndex> indexes;
+  private final Multimap<String, ColumnIndex<?>> indexes;
+  private final IndexStatistics statistics;
 
-  public ColumnIndexes(List<ColumnIndex> indexes) {
-    this.indexes = TreeMultimap.create(String::compareTo, INDEX_COMPARATOR);
-    for (ColumnIndex index : indexes) {
+  public ColumnIndexes(List<? extends ColumnIndex<?>> indexes) {
+    this(indexes, new IndexStatistics());
+  }
+
+  /** Create indexes which share statistics with indexes of other splits of the table. */
+  public ColumnIndexes(List<? extends ColumnIndex<?>> indexes, IndexStatistics statistics) {
+    this.statistics = statistics;
+    // indexes are ordered on evaluation, several indexes of the same priority can exist for column
+    this.indexes = ArrayListMultimap.create();
+    for (ColumnIndex<?> index : indexes) {
       this.indexes.put(index.column().name(), index);
     }
   }
 
+  /** Approximate count of bytes occupied by all indexes. */
+  public long memoryUsage() {
+    return indexes.values().stream().mapToLong(ColumnIndex::memoryUsage).sum();
+  }
+
+  /**
+   * Compute range of rows which falls under predicate condition(see {@link
+   * #evaluateRanges(QueryPredicate, long)}).
+   *
+   * @return Range of row's IDs which covers all rows returned by indexes.
+   */
+  public Range<Long> evaluatePredicate(QueryPredicate predicate, long rowsCount) {
+    var ranges = evaluateRanges(predicate, rowsCount);
+    return ranges.isEmpty() ? EMPTY_RANGE : ranges.span();
+  }
+
   /**
-   * Compute range of rows which falls under predicate condition.
+   * Compute ranges of rows which falls under predicate condition. Indexes are evaluated in order of
+   * their expected pruning per nanosecond(see {@link IndexStatistics}), indexes which never prune
+   * rows are skipped.
    *
    * @param predicate Column predicate
-   * @return Range of row's IDs.
+   * @param rowsCount Count of rows covered by indexes, used to compute pruning rate of index.
+   * @return Disjoint ranges of row's IDs, empty set if no row can satisfy predicate.
    */
-  public Range<Long> evaluatePredicate(QueryPredicate predicate) {
-    var result = Range.<Long>all();
-    // sort indexes according to their priority and evaluate indexes with high priority first
-    var betweenIndexes =
-        predicate.between().stream()
-            .map(
-                between ->
-                    this.indexes.get(between.column().name()).stream()
-                        .map(index -> new IndexAndPredicate(index, i -> i.evaluateBetween(between)))
-                        .iterator())
-            .collect(Collectors.toList());
-    var notEqualIndexes =
-        predicate.notEquals().stream()
-            .map(
-                notEqual ->
-                    this.indexes.get(notEqual.column().name()).stream()
-                        .map(
-                            index ->
-                                new IndexAndPredicate(index, i -> i.evaluateNotEquals(notEqual)))
-                        .iterator())
-            .collect(Collectors.toList());
-    betweenIndexes.addAll(notEqualIndexes);
-    var indexes =
-        Iterators.mergeSorted(
-            betweenIndexes, (i1, i2) -> INDEX_COMPARATOR.compare(i1.index, i2.index));
+  public RangeSet<Long> evaluateRanges(QueryPredicate predicate, long rowsCount) {
+    var candidates = new ArrayList<IndexAndPredicate>();
+    for (QueryPredicate.Between<?> between : predicate.between()) {
+      for (ColumnIndex<?> index : indexes.get(between.column().name())) {
+        candidates.add(
+            new IndexAndPredicate(
+                index,
+                IndexStatistics.evaluationKey(index, "between"),
+                () -> evaluateBetween(index, between)));
+      }
+    }
+    for (QueryPredicate.NotEqual<?> notEqual : predicate.notEquals()) {
+      for (ColumnIndex<?> index : indexes.get(notEqual.column().name())) {
+        candidates.add(
+            new IndexAndPredicate(
+                index,
+                IndexStatistics.evaluationKey(index, "notEquals"),
+                () -> evaluateNotEquals(index, notEqual)));
+      }
+    }
+    var ordered = new ArrayList<ScoredIndex>(candidates.size());
+    for (IndexAndPredicate candidate : candidates) {
+      var key = candidate.statsKey();
+      if (statistics.shouldEvaluate(key)) {
+        ordered.add(new ScoredIndex(candidate, statistics.score(key)));
+      }
+    }
+    // indexes without statistics have infinite score, they are ordered by their priority
+    ordered.sort(
+        Comparator.comparingDouble(ScoredIndex::score)
+            .reversed()
+            .thenComparing(scored -> scored.candidate().index(), INDEX_COMPARATOR));
 
     // here we are intersecting ranges returned by all indexes. These
-    // indexes return approximate rows range. If any two index ranges do not intersect, then
+    // indexes return approximate rows ranges. If ranges of any two indexes do not intersect, then
     // there is no rows satisfying predicate. Intersection of all ranges returns the
     // narrowest subset of rows which can satisfy predicate.
-    while (indexes.hasNext()) {
-      IndexAndPredicate next = indexes.next();
-      var range = next.eval().apply(next.index());
-      if (!range.isConnected(result) || (result = result.intersection(range)).isEmpty()) {
-        return EMPTY_RANGE;
+    RangeSet<Long> result = TreeRangeSet.create(List.of(Range.all()));
+    for (ScoredIndex next : ordered) {
+      long startedAt = System.nanoTime();
+      var ranges = next.candidate().eval().get();
+      statistics.recordEvaluation(
+          next.candidate().statsKey(),
+          System.nanoTime() - startedAt,
+          IndexStatistics.prunedFraction(ranges, rowsCount));
+      result.removeAll(ranges.complement());
+      if (result.isEmpty()) {
+        return ImmutableRangeSet.of();
       }
     }
     return result;
   }
 
-  record IndexAndPredicate(ColumnIndex index, Function<ColumnIndex, Range<Long>> eval) {}
+  // index is found by column name of predicate, so both are defined on the same value type
+  @SuppressWarnings("unchecked")
+  private static <T extends Comparable<? super T>> RangeSet<Long> evaluateBetween(
+      ColumnIndex<T> index, QueryPredicate.Between<?> between) {
+    return index.evaluateBetweenRanges((QueryPredicate.Between<T>) between);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T extends Comparable<? super T>> RangeSet<Long> evaluateNotEquals(
+      ColumnIndex<T> index, QueryPredicate.NotEqual<?> notEqual) {
+    return index.evaluateNotEqualsRanges((QueryPredicate.NotEqual<T>) notEqual);
+  }
+
+  record ScoredIndex(IndexAndPredicate candidate, double score) {}
+
+  record IndexAndPredicate(ColumnIndex<?> index, String statsKey, Supplier<RangeSet<Long>> eval) {}
 }
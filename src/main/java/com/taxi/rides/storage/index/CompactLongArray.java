@@ -0,0 +1,159 @@
+package com.taxi.rides.storage.index;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Immutable array of longs which is stored in compact form. Values are modelled as linear function
+ * of their position(which is true for row IDs and row offsets stored in sparse indexes) and only
+ * differences between real values and modelled values are stored, bit-packed into long array. Each
+ * difference occupies as many bits as required to store the largest difference.
+ *
+ * <p>For instance, row IDs recorded by sparse index with constant mark period require 0 bits per
+ * value, file offsets of rows with almost equal width require only few bits per value.
+ *
+ * <p>Packed words are stored in region allocated from {@link IndexArena}, so they can be kept
+ * outside of Java heap.
+ */
+final class CompactLongArray {
+
+  private static final long OBJECT_HEADER_SIZE = 16;
+  // buffer object which references packed words
+  private static final long BUFFER_SIZE = 48;
+  private static final CompactLongArray EMPTY =
+      new CompactLongArray(0, 0, 0, 0, ByteBuffer.allocate(0));
+
+  private final long base;
+  private final double slope;
+  private final int bitsPerValue;
+  private final int size;
+  private final ByteBuffer region;
+  private final LongBuffer words;
+
+  private CompactLongArray(
+      long base, double slope, int bitsPerValue, int size, ByteBuffer region) {
+    this.base = base;
+    this.slope = slope;
+    this.bitsPerValue = bitsPerValue;
+    this.size = size;
+    this.region = region;
+    this.words = region.asLongBuffer();
+  }
+
+  /** Build compact array from first {@code size} elements of passed array, stored in heap. */
+  static CompactLongArray of(long[] values, int size) {
+    return of(values, size, IndexArena.heap());
+  }
+
+  /**
+   * Build compact array from first {@code size} elements of passed array, packed words are
+   * allocated from passed arena.
+   */
+  static CompactLongArray of(long[] values, int size, IndexArena arena) {
+    if (size == 0) {
+      return EMPTY;
+    }
+    double slope = size > 1 ? ((double) values[size - 1] - values[0]) / (size - 1) : 0;
+    long minDelta = Long.MAX_VALUE;
+    long maxDelta = Long.MIN_VALUE;
+    for (int i = 0; i < size; i++) {
+      long delta = values[i] - expected(slope, i);
+      minDelta = Math.min(minDelta, delta);
+      maxDelta = Math.max(maxDelta, delta);
+    }
+    // unsigned difference, can occupy all 64 bits
+    int bitsPerValue = 64 - Long.numberOfLeadingZeros(maxDelta - minDelta);
+    var words = new long[(int) (((long) size * bitsPerValue + 63) / 64)];
+    if (bitsPerValue > 0) {
+      for (int i = 0; i < size; i++) {
+        long packed = values[i] - expected(slope, i) - minDelta;
+        long bitPos = (long) i * bitsPerValue;
+        int word = (int) (bitPos >>> 6);
+        int shift = (int) (bitPos & 63);
+        words[word] |= packed << shift;
+        if (shift + bitsPerValue > 64) {
+          words[word + 1] |= packed >>> (64 - shift);
+        }
+      }
+    }
+    if (words.length == 0) {
+      return new CompactLongArray(minDelta, slope, bitsPerValue, size, EMPTY.region);
+    }
+    var region = arena.allocate(8 * words.length);
+    region.asLongBuffer().put(words);
+    return new CompactLongArray(minDelta, slope, bitsPerValue, size, region);
+  }
+
+  private static long expected(double slope, int index) {
+    return (long) (slope * index);
+  }
+
+  long get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    long packed = 0;
+    if (bitsPerValue > 0) {
+      long bitPos = (long) index * bitsPerValue;
+      int word = (int) (bitPos >>> 6);
+      int shift = (int) (bitPos & 63);
+      packed = words.get(word) >>> shift;
+      if (shift + bitsPerValue > 64) {
+        packed |= words.get(word + 1) << (64 - shift);
+      }
+      if (bitsPerValue < 64) {
+        packed &= (1L << bitsPerValue) - 1;
+      }
+    }
+    return base + packed + expected(slope, index);
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** Approximate count of bytes occupied by this array, both in heap and in arena. */
+  long memoryUsage() {
+    // arrays without packed words share empty region
+    long regionSize = region.capacity() > 0 ? 2 * BUFFER_SIZE + region.capacity() : 0;
+    return OBJECT_HEADER_SIZE + 40 + regionSize;
+  }
+
+  /** Returns arena region which holds packed words. */
+  ByteBuffer region() {
+    return region;
+  }
+
+  /**
+   * Find index of the greatest value which is less or equal to passed key in sorted sequence.
+   *
+   * @return Index of value or -1 if all values are greater than key.
+   */
+  static int floorIndex(IntToLongFunction values, int size, long key) {
+    int low = 0;
+    int high = size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midVal = values.applyAsLong(mid);
+      if (midVal < key) {
+        low = mid + 1;
+      } else if (midVal > key) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return high;
+  }
+
+  /**
+   * Find index of the least value which is greater or equal to passed key in sorted sequence.
+   *
+   * @return Index of value or {@code size} if all values are less than key.
+   */
+  static int ceilingIndex(IntToLongFunction values, int size, long key) {
+    int floor = floorIndex(values, size, key);
+    return floor >= 0 && values.applyAsLong(floor) == key ? floor : floor + 1;
+  }
+}
@@ -0,0 +1,82 @@
+package com.taxi.rides.storage.index;
+
+import com.google.common.base.Preconditions;
+import com.taxi.rides.storage.DirectBuffers;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Memory regions which hold frozen index data of one storage file. Off-heap arena allocates regions
+ * as direct buffers: index data is not scanned by GC and on-heap footprint of index doesn't depend
+ * on count of indexed rows.
+ *
+ * <p>Regions are released explicitly by {@link #close()}. Caller must ensure that indexes which use
+ * arena are not accessed after it is closed. Regions which are replaced while indexes are in use
+ * (e.g., after row locator refinement) are {@link #retire(ByteBuffer) retired}: they are not
+ * accounted by arena anymore and released by GC when concurrent lookups drop them.
+ */
+public final class IndexArena implements AutoCloseable {
+
+  private final boolean offHeap;
+  private final List<ByteBuffer> regions = new ArrayList<>();
+  private long allocatedBytes;
+  private boolean closed;
+
+  private IndexArena(boolean offHeap) {
+    this.offHeap = offHeap;
+  }
+
+  /** Arena which allocates regions outside of Java heap. */
+  public static IndexArena offHeap() {
+    return new IndexArena(true);
+  }
+
+  /** Arena which allocates regions in Java heap(e.g., for indexes without explicit lifecycle). */
+  public static IndexArena heap() {
+    return new IndexArena(false);
+  }
+
+  public boolean isOffHeap() {
+    return offHeap;
+  }
+
+  /** Allocate zeroed region of passed size with native byte order. */
+  public synchronized ByteBuffer allocate(int bytes) {
+    Preconditions.checkState(!closed, "Index arena is closed");
+    var region =
+        (offHeap ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes))
+            .order(ByteOrder.nativeOrder());
+    if (offHeap) {
+      regions.add(region);
+    }
+    allocatedBytes += bytes;
+    return region;
+  }
+
+  /** Stop tracking of region which is replaced by new one. Region is released by GC. */
+  public synchronized void retire(ByteBuffer region) {
+    if (!closed && (!offHeap || regions.remove(region))) {
+      allocatedBytes -= region.capacity();
+    }
+  }
+
+  /** Returns count of bytes occupied by regions of this arena. */
+  public synchronized long allocatedBytes() {
+    return allocatedBytes;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (ByteBuffer region : regions) {
+      DirectBuffers.free(region);
+    }
+    regions.clear();
+    allocatedBytes = 0;
+  }
+}
@@ -0,0 +1,194 @@
+package com.taxi.rides.storage.index;
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Observed efficiency of index types of the table. Each split has own index instances, statistics
+ * are shared by indexes of the same type built on the same column(see {@link #key(ColumnIndex)}).
+ * Evaluations are tracked separately for each predicate kind(e.g., index can prune rows for
+ * 'between' predicate, but never prunes rows for 'not equals' predicate on the same column).
+ *
+ * <p>For each index type statistics track:
+ *
+ * <ul>
+ *   <li>pruning rate: average fraction of split rows excluded by index range;
+ *   <li>evaluation cost: average time of index evaluation;
+ *   <li>build cost: time spent to add rows into index during indexing.
+ * </ul>
+ *
+ * Indexes are evaluated in order of expected pruning per nanosecond of evaluation. Index type which
+ * never pruned any row after {@link #MIN_EVALUATIONS} evaluations is considered useless: it is not
+ * evaluated anymore, except rare probe evaluations which let statistics notice changed workload.
+ */
+public final class IndexStatistics {
+
+  /** Count of evaluations after which index type can be considered useless. */
+  public static final int MIN_EVALUATIONS = 32;
+
+  // useless index is still evaluated once per this count of evaluation requests
+  private static final int PROBE_INTERVAL = 64;
+
+  private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+  /** Returns key of index type: index class and column name(e.g., 'BucketColumnIndex(col)'). */
+  public static String key(ColumnIndex<?> index) {
+    return index.getClass().getSimpleName() + "(" + index.column().name() + ")";
+  }
+
+  /** Returns key of index evaluations for predicate kind(e.g., 'between'). */
+  static String evaluationKey(ColumnIndex<?> index, String predicateKind) {
+    return key(index) + "." + predicateKind;
+  }
+
+  /** Returns fraction of rows [0, rowsCount) which are outside of passed range. */
+  static double prunedFraction(Range<Long> rows, long rowsCount) {
+    if (rowsCount <= 0) {
+      return 0;
+    }
+    return 1 - (double) matchedRows(rows, rowsCount) / rowsCount;
+  }
+
+  /** Returns fraction of rows [0, rowsCount) which are outside of all passed ranges. */
+  static double prunedFraction(RangeSet<Long> rows, long rowsCount) {
+    if (rowsCount <= 0) {
+      return 0;
+    }
+    long matched = 0;
+    for (Range<Long> range : rows.asRanges()) {
+      matched += matchedRows(range, rowsCount);
+    }
+    return 1 - (double) Math.min(matched, rowsCount) / rowsCount;
+  }
+
+  private static long matchedRows(Range<Long> rows, long rowsCount) {
+    long from = 0;
+    if (rows.hasLowerBound()) {
+      from = rows.lowerEndpoint() + (rows.lowerBoundType() == BoundType.CLOSED ? 0 : 1);
+    }
+    long to = rowsCount;
+    if (rows.hasUpperBound()) {
+      to = rows.upperEndpoint() + (rows.upperBoundType() == BoundType.CLOSED ? 1 : 0);
+    }
+    return Math.max(0, Math.min(to, rowsCount) - Math.max(from, 0));
+  }
+
+  void recordEvaluation(String key, long nanos, double prunedFraction) {
+    var indexStats = stats(key);
+    indexStats.evaluations.increment();
+    indexStats.evaluationNanos.add(nanos);
+    indexStats.pruned.add(prunedFraction);
+  }
+
+  /** Record time spent to add rows into index of passed type. */
+  public void recordBuild(String key, long nanos, long rows) {
+    var indexStats = stats(key);
+    indexStats.buildNanos.add(nanos);
+    indexStats.builtRows.add(rows);
+  }
+
+  /**
+   * Returns true if index type(see {@link #key(ColumnIndex)}) is evaluated enough times and never
+   * pruned any row for any predicate kind.
+   */
+  public boolean isUseless(String key) {
+    boolean evaluated = false;
+    for (var entry : stats.entrySet()) {
+      if (entry.getKey().startsWith(key + ".")) {
+        if (!isUselessEvaluation(entry.getKey())) {
+          return false;
+        }
+        evaluated = true;
+      }
+    }
+    return evaluated;
+  }
+
+  /** Returns true if evaluations are observed enough times and never pruned any row. */
+  boolean isUselessEvaluation(String evaluationKey) {
+    var indexStats = stats.get(evaluationKey);
+    return indexStats != null
+        && indexStats.evaluations.sum() >= MIN_EVALUATIONS
+        && indexStats.pruned.sum() == 0;
+  }
+
+  /** Returns true if index should be evaluated: it is not useless or it's time to probe it. */
+  boolean shouldEvaluate(String evaluationKey) {
+    return !isUselessEvaluation(evaluationKey)
+        || stats(evaluationKey).skipped.incrementAndGet() % PROBE_INTERVAL == 0;
+  }
+
+  /**
+   * Returns expected fraction of pruned rows per nanosecond of evaluation. Index types without
+   * enough observations have infinite score, so they are evaluated first and collect statistics.
+   */
+  double score(String key) {
+    var indexStats = stats.get(key);
+    if (indexStats == null || indexStats.evaluations.sum() < MIN_EVALUATIONS) {
+      return Double.POSITIVE_INFINITY;
+    }
+    long evaluations = indexStats.evaluations.sum();
+    double avgPruned = indexStats.pruned.sum() / evaluations;
+    double avgNanos = Math.max(1.0, (double) indexStats.evaluationNanos.sum() / evaluations);
+    return avgPruned / avgNanos;
+  }
+
+  /** Returns statistics of each observed index type and predicate kind. */
+  public Map<String, IndexStats> snapshot() {
+    var res = new TreeMap<String, IndexStats>();
+    stats.forEach(
+        (key, indexStats) -> {
+          long evaluations = indexStats.evaluations.sum();
+          res.put(
+              key,
+              new IndexStats(
+                  evaluations,
+                  evaluations == 0 ? 0 : indexStats.pruned.sum() / evaluations,
+                  Duration.ofNanos(
+                      evaluations == 0 ? 0 : indexStats.evaluationNanos.sum() / evaluations),
+                  Duration.ofNanos(indexStats.buildNanos.sum()),
+                  indexStats.builtRows.sum(),
+                  isUselessEvaluation(key)));
+        });
+    return res;
+  }
+
+  private Stats stats(String key) {
+    return stats.computeIfAbsent(key, k -> new Stats());
+  }
+
+  /**
+   * Statistics of index type.
+   *
+   * @param evaluations Count of index evaluations.
+   * @param avgPruning Average fraction of split rows excluded by index.
+   * @param avgEvaluationTime Average time of one evaluation.
+   * @param buildTime Estimated time spent to add rows into indexes of this type.
+   * @param builtRows Count of rows added into indexes of this type.
+   * @param useless Index never pruned rows and is not evaluated anymore.
+   */
+  public record IndexStats(
+      long evaluations,
+      double avgPruning,
+      Duration avgEvaluationTime,
+      Duration buildTime,
+      long builtRows,
+      boolean useless) {}
+
+  private static final class Stats {
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder evaluationNanos = new LongAdder();
+    private final DoubleAdder pruned = new DoubleAdder();
+    private final LongAdder buildNanos = new LongAdder();
+    private final LongAdder builtRows = new LongAdder();
+    private final AtomicLong skipped = new AtomicLong();
+  }
+}
@@ -3,6 +3,7 @@ package com.taxi.rides.storage.index;
 import com.google.common.collect.Range;
 import com.taxi.rides.storage.QueryPredicate.Between;
 import com.taxi.rides.storage.schema.Column;
+import com.taxi.rides.storage.schema.datatypes.DataType;
 
 public final class MinMaxColumnIndex<T extends Comparable<? super T>> implements ColumnIndex<T> {
 
@@ -28,7 +29,9 @@ public final class MinMaxColumnIndex<T extends Comparable<? super T>> implements
 
   @Override
   public void addEntry(long rowId, T colValue) {
-    // TODO: this is hot method during index building, try to use less branches here
+    if (colValue == null) {
+      return;
+    }
     if (min == null || colValue.compareTo(min) < 0) {
       min = colValue;
     }
@@ -37,6 +40,53 @@ public final class MinMaxColumnIndex<T extends Comparable<? super T>> implements
     }
   }
 
+  @Override
+  public void addEntries(long[] rowIds, long[] rowOffsets, T[] values, int count) {
+    // min and max are kept in locals while batch is scanned
+    T batchMin = min;
+    T batchMax = max;
+    for (int i = 0; i < count; i++) {
+      T value = values[i];
+      if (value == null) {
+        continue;
+      }
+      if (batchMin == null || value.compareTo(batchMin) < 0) {
+        batchMin = value;
+      }
+      if (batchMax == null || value.compareTo(batchMax) > 0) {
+        batchMax = value;
+      }
+    }
+    min = batchMin;
+    max = batchMax;
+  }
+
+  @Override
+  public void addEntries(long[] rowIds, long[] rowOffsets, long[] values, int count) {
+    // loop over primitives without branches, only min and max of batch are decoded
+    long batchMin = Long.MAX_VALUE;
+    long batchMax = Long.MIN_VALUE;
+    for (int i = 0; i < count; i++) {
+      long value = values[i];
+      // null is the smallest long, so it doesn't change max
+      batchMin = Math.min(batchMin, value == DataType.NULL_LONG ? Long.MAX_VALUE : value);
+      batchMax = Math.max(batchMax, value);
+    }
+    if (batchMax == DataType.NULL_LONG) {
+      // batch contains only nulls
+      return;
+    }
+    var dataType = column.dataType();
+    addEntry(rowIds[0], dataType.fromLong(batchMin));
+    addEntry(rowIds[0], dataType.fromLong(batchMax));
+  }
+
+  @Override
+  public long memoryUsage() {
+    // object header and fields, min/max values are not accounted
+    return 16 + 24;
+  }
+
   @Override
   public Range<Long> evaluateBetween(Between<T> predicate) {
     if (min == null && max == null) {
@@ -1,21 +1,52 @@
 package com.taxi.rides.storage.index;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableRangeSet;
 import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
 import com.taxi.rides.storage.QueryPredicate.NotEqual;
 import com.taxi.rides.storage.schema.Column;
+import java.util.Arrays;
 
-/** Index maintenance rows range which contains non-null values. */
+/**
+ * Index maintenance rows range which contains non-null values. Besides null rows at start and end
+ * of the range, index records long runs of null values inside of it(e.g., block of rows without
+ * passenger count written during vendor outage) as row ID intervals, so 'not null' predicate skips
+ * them too.
+ */
 public class NotNullColumnIndex<T extends Comparable<? super T>> implements ColumnIndex<T> {
 
+  /** Default min length of null run inside rows range which is recorded by index. */
+  public static final int DEFAULT_MIN_NULL_RUN = 1024;
+
   private static final int UNDEFINED = -1;
 
   private final Column<T> column;
+  private final int minNullRun;
   private long minRow = Long.MAX_VALUE;
   private long maxRow = UNDEFINED;
   private long lastSeenNullRow = UNDEFINED;
+  private long nullRunStart = UNDEFINED;
+  // first and last rows of recorded null runs, ordered by row ID
+  private long[] runStarts = new long[4];
+  private long[] runEnds = new long[4];
+  private int runsCount;
+  // available after freeze
+  private CompactLongArray frozenStarts;
+  private CompactLongArray frozenEnds;
 
   public NotNullColumnIndex(Column<T> column) {
+    this(column, DEFAULT_MIN_NULL_RUN);
+  }
+
+  /**
+   * @param minNullRun Min count of sequential null rows inside rows range which is recorded as
+   *     separate interval.
+   */
+  public NotNullColumnIndex(Column<T> column, int minNullRun) {
+    Preconditions.checkArgument(minNullRun > 0, "Min null run should be > 0");
     this.column = column;
+    this.minNullRun = minNullRun;
   }
 
   @Override
@@ -31,13 +62,57 @@ public class NotNullColumnIndex<T extends Comparable<? super T>> implements Colu
   @Override
   public void addEntry(long rowId, T colValue) {
     if (colValue != null) {
+      // null run between non-null rows is complete
+      if (nullRunStart != UNDEFINED && maxRow != UNDEFINED && rowId - nullRunStart >= minNullRun) {
+        addRun(nullRunStart, rowId - 1);
+      }
+      nullRunStart = UNDEFINED;
       minRow = Math.min(rowId, minRow);
       maxRow = Math.max(rowId, maxRow);
     } else {
+      if (nullRunStart == UNDEFINED) {
+        nullRunStart = rowId;
+      }
       lastSeenNullRow = rowId;
     }
   }
 
+  private void addRun(long start, long end) {
+    if (runsCount == runStarts.length) {
+      runStarts = Arrays.copyOf(runStarts, runsCount * 2);
+      runEnds = Arrays.copyOf(runEnds, runsCount * 2);
+    }
+    runStarts[runsCount] = start;
+    runEnds[runsCount] = end;
+    runsCount++;
+  }
+
+  @Override
+  public void freeze(IndexArena arena) {
+    if (frozenStarts != null) {
+      return;
+    }
+    frozenStarts = CompactLongArray.of(runStarts, runsCount, arena);
+    frozenEnds = CompactLongArray.of(runEnds, runsCount, arena);
+    runStarts = null;
+    runEnds = null;
+  }
+
+  /** Returns count of null runs recorded inside rows range. */
+  public int nullRunsCount() {
+    return runsCount;
+  }
+
+  @Override
+  public long memoryUsage() {
+    // object header and fields
+    long size = 16 + 72;
+    if (frozenStarts != null) {
+      return size + frozenStarts.memoryUsage() + frozenEnds.memoryUsage();
+    }
+    return size + 2 * (16 + 8L * runStarts.length);
+  }
+
   @Override
   public Range<Long> evaluateNotEquals(NotEqual<T> predicate) {
     if (predicate.notEqualTo() == null) {
@@ -53,4 +128,21 @@ public class NotNullColumnIndex<T extends Comparable<? super T>> implements Colu
       return Range.all();
     }
   }
+
+  @Override
+  public RangeSet<Long> evaluateNotEqualsRanges(NotEqual<T> predicate) {
+    if (predicate.notEqualTo() != null || maxRow == UNDEFINED || runsCount == 0) {
+      return ImmutableRangeSet.of(evaluateNotEquals(predicate));
+    }
+    var res = ImmutableRangeSet.<Long>builder();
+    long from = minRow;
+    for (int i = 0; i < runsCount; i++) {
+      long start = frozenStarts != null ? frozenStarts.get(i) : runStarts[i];
+      long end = frozenEnds != null ? frozenEnds.get(i) : runEnds[i];
+      res.add(Range.closed(from, start - 1));
+      from = end + 1;
+    }
+    res.add(Range.closed(from, maxRow));
+    return res.build();
+  }
 }
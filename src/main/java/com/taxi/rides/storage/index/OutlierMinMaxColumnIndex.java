@@ -0,0 +1,257 @@
+package com.taxi.rides.storage.index;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableRangeSet;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import com.google.common.collect.TreeRangeSet;
+import com.taxi.rides.storage.QueryPredicate.Between;
+import com.taxi.rides.storage.schema.Column;
+import com.taxi.rides.storage.schema.datatypes.DataType;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Min-max index which tolerates outlier values(e.g., trips of 2008 in file of 2020). Index keeps
+ * range of the bulk of values, between configured quantiles, and explicit list of outlier rows
+ * outside of it: their IDs, offsets and values. Predicate which doesn't intersect bulk range is
+ * satisfied only by matched outliers, so split is either skipped or only those rows are read by
+ * exact offsets(see {@link #pinRows(RowOffsetLocator)}) instead of the whole split.
+ *
+ * <p>Candidates to outliers are the smallest and the largest values of the split, they are tracked
+ * by two bounded heaps while split is indexed. Count of outliers on each side is limited by {@code
+ * maxOutliers}, so file with wide spread of values gets wider bulk range instead of long list.
+ */
+public final class OutlierMinMaxColumnIndex<T extends Comparable<? super T>>
+    implements ColumnIndex<T> {
+
+  private static final Range<Long> EMPTY_RANGE = Range.closedOpen(0L, 0L);
+
+  private final Column<T> column;
+  private final double lowerQuantile;
+  private final double upperQuantile;
+  private final int maxOutliers;
+  private long valuesCount;
+  // the smallest values(max-heap) and the largest values(min-heap), cleared on freeze
+  private PriorityQueue<Entry<T>> lowest;
+  private PriorityQueue<Entry<T>> highest;
+  // available after freeze
+  private T bulkMin;
+  private T bulkMax;
+  private long[] outlierRowIds = new long[0];
+  private long[] outlierOffsets = new long[0];
+  private List<T> outlierValues = List.of();
+
+  /**
+   * @param lowerQuantile Quantile of values where bulk range starts(e.g., 0.001).
+   * @param upperQuantile Quantile of values where bulk range ends(e.g., 0.999).
+   * @param maxOutliers Max count of outliers kept on each side of bulk range.
+   */
+  public OutlierMinMaxColumnIndex(
+      Column<T> column, double lowerQuantile, double upperQuantile, int maxOutliers) {
+    Preconditions.checkArgument(
+        lowerQuantile >= 0 && lowerQuantile < upperQuantile && upperQuantile <= 1,
+        "Quantiles should satisfy 0 <= lower < upper <= 1");
+    Preconditions.checkArgument(maxOutliers >= 0, "Max outliers must be non-negative");
+    this.column = column;
+    this.lowerQuantile = lowerQuantile;
+    this.upperQuantile = upperQuantile;
+    this.maxOutliers = maxOutliers;
+    Comparator<Entry<T>> byValue = Comparator.comparing(Entry::value);
+    this.lowest = new PriorityQueue<>(byValue.reversed());
+    this.highest = new PriorityQueue<>(byValue);
+  }
+
+  @Override
+  public Column<T> column() {
+    return column;
+  }
+
+  @Override
+  public Priority order() {
+    return Priority.HIGH;
+  }
+
+  @Override
+  public void addEntry(long rowId, T colValue) {
+    addEntry(rowId, -1, colValue);
+  }
+
+  @Override
+  public void addEntry(long rowId, long rowOffset, T colValue) {
+    if (colValue == null) {
+      return;
+    }
+    valuesCount++;
+    // heaps hold one value more than max outliers: it becomes bound of bulk range
+    if (lowest.size() <= maxOutliers) {
+      lowest.add(new Entry<>(colValue, rowId, rowOffset));
+    } else if (colValue.compareTo(lowest.peek().value()) < 0) {
+      lowest.poll();
+      lowest.add(new Entry<>(colValue, rowId, rowOffset));
+    }
+    if (highest.size() <= maxOutliers) {
+      highest.add(new Entry<>(colValue, rowId, rowOffset));
+    } else if (colValue.compareTo(highest.peek().value()) > 0) {
+      highest.poll();
+      highest.add(new Entry<>(colValue, rowId, rowOffset));
+    }
+  }
+
+  @Override
+  public void addEntries(long[] rowIds, long[] rowOffsets, T[] values, int count) {
+    int i = 0;
+    // fill heaps, after that bulk of values is skipped by comparison with their heads
+    while (i < count && (lowest.size() <= maxOutliers || highest.size() <= maxOutliers)) {
+      addEntry(rowIds[i], rowOffsets[i], values[i]);
+      i++;
+    }
+    T lowBound = lowest.isEmpty() ? null : lowest.peek().value();
+    T highBound = highest.isEmpty() ? null : highest.peek().value();
+    for (; i < count; i++) {
+      T value = values[i];
+      if (value == null) {
+        continue;
+      }
+      if (value.compareTo(lowBound) < 0 || value.compareTo(highBound) > 0) {
+        addEntry(rowIds[i], rowOffsets[i], value);
+        lowBound = lowest.peek().value();
+        highBound = highest.peek().value();
+      } else {
+        valuesCount++;
+      }
+    }
+  }
+
+  @Override
+  public void addEntries(long[] rowIds, long[] rowOffsets, long[] values, int count) {
+    var dataType = column.dataType();
+    int i = 0;
+    while (i < count && (lowest.size() <= maxOutliers || highest.size() <= maxOutliers)) {
+      long value = values[i];
+      addEntry(
+          rowIds[i], rowOffsets[i], value == DataType.NULL_LONG ? null : dataType.fromLong(value));
+      i++;
+    }
+    if (i == count) {
+      return;
+    }
+    // heaps are full, bulk of values is compared with encoded heads without decoding
+    long lowBound = dataType.toLong(lowest.peek().value());
+    long highBound = dataType.toLong(highest.peek().value());
+    for (; i < count; i++) {
+      long value = values[i];
+      if (value == DataType.NULL_LONG) {
+        continue;
+      }
+      if (value < lowBound || value > highBound) {
+        addEntry(rowIds[i], rowOffsets[i], dataType.fromLong(value));
+        lowBound = dataType.toLong(lowest.peek().value());
+        highBound = dataType.toLong(highest.peek().value());
+      } else {
+        valuesCount++;
+      }
+    }
+  }
+
+  @Override
+  public void pinRows(RowOffsetLocator locator) {
+    computeOutliers();
+    var rowIds = new long[outlierRowIds.length];
+    var offsets = new long[outlierRowIds.length];
+    int count = 0;
+    for (int i = 0; i < outlierRowIds.length; i++) {
+      if (outlierOffsets[i] >= 0) {
+        rowIds[count] = outlierRowIds[i];
+        offsets[count++] = outlierOffsets[i];
+      }
+    }
+    if (count > 0) {
+      locator.refine(rowIds, offsets, count);
+    }
+  }
+
+  @Override
+  public void freeze(IndexArena arena) {
+    computeOutliers();
+  }
+
+  private void computeOutliers() {
+    if (lowest == null) {
+      return;
+    }
+    if (valuesCount > 0) {
+      var low = sortedByValue(lowest);
+      var high = sortedByValue(highest);
+      int lowCount = (int) Math.min((long) (lowerQuantile * valuesCount), low.size() - 1);
+      int highCount = (int) Math.min((long) ((1 - upperQuantile) * valuesCount), high.size() - 1);
+      bulkMin = low.get(lowCount).value();
+      bulkMax = high.get(high.size() - 1 - highCount).value();
+      var outliers = new ArrayList<Entry<T>>();
+      // values equal to bound of bulk range are not outliers
+      for (int i = 0; i < lowCount && low.get(i).value().compareTo(bulkMin) < 0; i++) {
+        outliers.add(low.get(i));
+      }
+      for (int i = high.size() - 1;
+          i > high.size() - 1 - highCount && high.get(i).value().compareTo(bulkMax) > 0;
+          i--) {
+        outliers.add(high.get(i));
+      }
+      outliers.sort(Comparator.comparingLong(Entry::rowId));
+      outlierRowIds = outliers.stream().mapToLong(Entry::rowId).toArray();
+      outlierOffsets = outliers.stream().mapToLong(Entry::rowOffset).toArray();
+      outlierValues = outliers.stream().map(Entry::value).toList();
+    }
+    lowest = null;
+    highest = null;
+  }
+
+  private static <T extends Comparable<? super T>> List<Entry<T>> sortedByValue(
+      PriorityQueue<Entry<T>> heap) {
+    var res = new ArrayList<>(heap);
+    res.sort(Comparator.comparing(Entry::value));
+    return res;
+  }
+
+  /** Returns count of rows which values are outside of bulk range. */
+  public int outliersCount() {
+    return outlierRowIds.length;
+  }
+
+  @Override
+  public long memoryUsage() {
+    // object header and fields, values are not accounted
+    return 16 + 64 + outlierRowIds.length * (8L + 8 + 8);
+  }
+
+  @Override
+  public Range<Long> evaluateBetween(Between<T> predicate) {
+    var ranges = evaluateBetweenRanges(predicate);
+    return ranges.isEmpty() ? EMPTY_RANGE : ranges.span();
+  }
+
+  @Override
+  public RangeSet<Long> evaluateBetweenRanges(Between<T> predicate) {
+    computeOutliers();
+    if (valuesCount == 0) {
+      // index is empty, we can't judge what rows satisfy predicate
+      return ImmutableRangeSet.of(Range.all());
+    }
+    var range = predicate.range();
+    var bulk = Range.closed(bulkMin, bulkMax);
+    if (bulk.isConnected(range) && !bulk.intersection(range).isEmpty()) {
+      return ImmutableRangeSet.of(Range.all());
+    }
+    RangeSet<Long> rows = TreeRangeSet.create();
+    for (int i = 0; i < outlierRowIds.length; i++) {
+      if (range.contains(outlierValues.get(i))) {
+        rows.add(Range.closed(outlierRowIds[i], outlierRowIds[i]));
+      }
+    }
+    return rows;
+  }
+
+  private record Entry<T>(T value, long rowId, long rowOffset) {}
+}
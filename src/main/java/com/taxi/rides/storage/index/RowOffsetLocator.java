@@ -1,35 +1,133 @@
 package com.taxi.rides.storage.index;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Range;
-import com.taxi.rides.storage.QueryPredicate.Between;
-import com.taxi.rides.storage.schema.Column;
-import com.taxi.rides.storage.schema.datatypes.LongDataType;
-import java.util.concurrent.ThreadLocalRandom;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntToLongFunction;
 
 /**
  * Class maintenances sparse index of row locations inside file. It records file offset for each Nth
- * row.
+ * row or for first row after each N bytes, whatever comes first. Limit by bytes makes granularity
+ * of index adaptive to width of rows in the file: each mark covers approximately the same count of
+ * bytes to read.
  *
  * <p>This class contains methods which is used to find out file offset range which corresponds to
  * some row range. Usually, these methods are called with rows range computed by evaluating
  * predicates on indexes.
+ *
+ * <p>Marks are collected into primitive arrays while file is indexed. When all rows are added,
+ * {@link #freeze()} converts marks to compact representation(see {@link CompactLongArray}) which is
+ * used to serve lookups. Frozen locator counts how often each region between two marks contains
+ * boundary of requested row range(e.g., region which is read only partially). Such regions can be
+ * refined later by adding finer marks inside them(see {@link #hotRegions(int, int)}). Frozen marks
+ * and counters are stored in regions of {@link IndexArena} passed to {@link #freeze(IndexArena)}.
  */
 public final class RowOffsetLocator {
 
-  private final SparseColumnIndex<Long> index;
+  private static final Range<Long> EMPTY_RANGE = Range.closedOpen(0L, 0L);
+  private static final long OBJECT_HEADER_SIZE = 16;
+  private static final VarHandle BOUNDARY_HITS =
+      MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+  private final int markPeriod;
+  private final long markBytes;
+  private int leftToSkip;
+  private long lastMarkOffset;
+  private long maxSeenRowId = Long.MIN_VALUE;
+  // marks collected during population
+  private long[] rowIds = new long[16];
+  private long[] offsets = new long[16];
+  private int size;
+  // compact marks, available after freeze
+  private volatile Marks marks;
+  private IndexArena arena;
 
+  /**
+   * Create locator which records offset of each Nth row.
+   *
+   * @param markPeriod Count of rows between marks.
+   */
   public RowOffsetLocator(int markPeriod) {
-    index =
-        new SparseColumnIndex<>(
-            new Column<>("__row_id__" + ThreadLocalRandom.current().nextLong(), new LongDataType()),
-            markPeriod);
+    this(markPeriod, Long.MAX_VALUE);
+  }
+
+  /**
+   * Create locator which records row offset after each N rows or N bytes.
+   *
+   * @param markPeriod Max count of rows between marks.
+   * @param markBytes Max count of bytes between marks.
+   */
+  public RowOffsetLocator(int markPeriod, long markBytes) {
+    Preconditions.checkArgument(markPeriod > 0, "Mark period should be > 0");
+    Preconditions.checkArgument(markBytes > 0, "Mark bytes should be > 0");
+    this.markPeriod = markPeriod;
+    this.markBytes = markBytes;
   }
 
-  /** Add row location to index. */
+  /** Add row location to index. Row IDs should be added in ascending order. */
   public void addEntry(long rowId, long rowOffset) {
-    // inverse parameters passed to sparse index, because it builds index based on column value,
-    // and we want to build index where key is row ID.
-    index.addEntry(rowOffset, rowId);
+    Preconditions.checkState(marks == null, "Row locator is frozen");
+    Preconditions.checkArgument(rowId > maxSeenRowId, "Row IDs should be added in ascending order");
+    maxSeenRowId = rowId;
+    leftToSkip--;
+    if (leftToSkip <= 0 || rowOffset - lastMarkOffset >= markBytes) {
+      leftToSkip = markPeriod;
+      lastMarkOffset = rowOffset;
+      if (size == rowIds.length) {
+        rowIds = Arrays.copyOf(rowIds, size * 2);
+        offsets = Arrays.copyOf(offsets, size * 2);
+      }
+      rowIds[size] = rowId;
+      offsets[size] = rowOffset;
+      size++;
+    }
+  }
+
+  /**
+   * Convert collected marks into compact read-only representation stored in heap. Entries can't be
+   * added after this call.
+   */
+  public void freeze() {
+    freeze(IndexArena.heap());
+  }
+
+  /**
+   * Convert collected marks into compact read-only representation stored in passed arena. Entries
+   * can't be added after this call.
+   */
+  public synchronized void freeze(IndexArena arena) {
+    if (marks != null) {
+      return;
+    }
+    this.arena = arena;
+    marks = new Marks(rowIds, offsets, size, arena);
+    rowIds = null;
+    offsets = null;
+  }
+
+  /** Approximate count of bytes occupied by this locator. */
+  public long memoryUsage() {
+    var frozen = marks;
+    long marksSize =
+        frozen != null
+            ? frozen.rowIds.memoryUsage()
+                + frozen.offsets.memoryUsage()
+                + OBJECT_HEADER_SIZE
+                + frozen.boundaryHits.capacity()
+            : 2 * (OBJECT_HEADER_SIZE + 8L * rowIds.length);
+    return OBJECT_HEADER_SIZE + 64 + marksSize;
+  }
+
+  /** Returns count of marks recorded by locator. */
+  public int marksCount() {
+    var frozen = marks;
+    return frozen != null ? frozen.rowIds.size() : size;
   }
 
   /**
@@ -37,6 +135,148 @@ public final class RowOffsetLocator {
    * more rows than requested(but never less).
    */
   public Range<Long> getClosestOffsets(Range<Long> rowRange) {
-    return index.evaluateBetween(new Between<>(index.column(), rowRange));
+    var frozen = marks;
+    IntToLongFunction rowIdAt;
+    IntToLongFunction offsetAt;
+    int count;
+    if (frozen != null) {
+      rowIdAt = frozen.rowIds::get;
+      offsetAt = frozen.offsets::get;
+      count = frozen.rowIds.size();
+    } else {
+      rowIdAt = i -> rowIds[i];
+      offsetAt = i -> offsets[i];
+      count = size;
+    }
+
+    if (count == 0) {
+      return Range.all();
+    }
+    // least known row is greater than range upper bound
+    if (rowRange.hasUpperBound() && rowIdAt.applyAsLong(0) > rowRange.upperEndpoint()) {
+      return EMPTY_RANGE;
+    }
+    // greatest known row is less than range lower bound
+    if (rowRange.hasLowerBound() && maxSeenRowId < rowRange.lowerEndpoint()) {
+      return EMPTY_RANGE;
+    }
+
+    Long lowerOffset = null;
+    Long upperOffset = null;
+    if (rowRange.hasLowerBound()) {
+      int floor = CompactLongArray.floorIndex(rowIdAt, count, rowRange.lowerEndpoint());
+      if (floor >= 0 && rowIdAt.applyAsLong(floor) != rowRange.lowerEndpoint()) {
+        recordBoundaryHit(frozen, floor);
+      }
+      // rows before the first mark are located at least at the first mark offset
+      lowerOffset = offsetAt.applyAsLong(Math.max(0, floor));
+    }
+    if (rowRange.hasUpperBound()) {
+      int ceiling = CompactLongArray.ceilingIndex(rowIdAt, count, rowRange.upperEndpoint());
+      if (ceiling < count) {
+        if (ceiling > 0 && rowIdAt.applyAsLong(ceiling) != rowRange.upperEndpoint()) {
+          recordBoundaryHit(frozen, ceiling - 1);
+        }
+        upperOffset = offsetAt.applyAsLong(ceiling);
+      }
+    }
+
+    if (lowerOffset != null && upperOffset != null) {
+      return Range.closed(Math.min(lowerOffset, upperOffset), Math.max(lowerOffset, upperOffset));
+    } else if (lowerOffset != null) {
+      return Range.atLeast(lowerOffset);
+    } else if (upperOffset != null) {
+      return Range.atMost(upperOffset);
+    } else {
+      return Range.all();
+    }
+  }
+
+  private static void recordBoundaryHit(Marks frozen, int region) {
+    // region after the last mark has no end mark and can't be refined
+    if (frozen != null && region < frozen.regionsCount()) {
+      BOUNDARY_HITS.getAndAdd(frozen.boundaryHits, 4 * region, 1);
+    }
+  }
+
+  /**
+   * Returns regions between marks which contained boundary of requested row range at least {@code
+   * minHits} times and which can be split by finer marks.
+   *
+   * @param minRows Minimal count of rows in region which is worth refinement.
+   */
+  public List<Region> hotRegions(int minHits, int minRows) {
+    var frozen = marks;
+    var res = new ArrayList<Region>();
+    if (frozen == null) {
+      return res;
+    }
+    for (int i = 0; i < frozen.regionsCount(); i++) {
+      long startRowId = frozen.rowIds.get(i);
+      long endRowId = frozen.rowIds.get(i + 1);
+      if ((int) BOUNDARY_HITS.getVolatile(frozen.boundaryHits, 4 * i) >= minHits
+          && endRowId - startRowId > minRows) {
+        res.add(new Region(startRowId, frozen.offsets.get(i), endRowId, frozen.offsets.get(i + 1)));
+      }
+    }
+    return res;
+  }
+
+  /**
+   * Add finer marks to frozen locator. Marks are merged with existing ones and replace them
+   * atomically, concurrent lookups observe either old or new marks. Boundary hit counters are
+   * reset. Regions of old marks are retired from arena.
+   *
+   * @param newRowIds Row IDs in ascending order.
+   * @param newOffsets Offsets of rows.
+   * @param count Count of marks in passed arrays.
+   */
+  public synchronized void refine(long[] newRowIds, long[] newOffsets, int count) {
+    var frozen = marks;
+    Preconditions.checkState(frozen != null, "Row locator should be frozen before refinement");
+    int oldCount = frozen.rowIds.size();
+    var mergedRowIds = new long[oldCount + count];
+    var mergedOffsets = new long[oldCount + count];
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < oldCount || j < count) {
+      long oldRowId = i < oldCount ? frozen.rowIds.get(i) : Long.MAX_VALUE;
+      long newRowId = j < count ? newRowIds[j] : Long.MAX_VALUE;
+      if (oldRowId <= newRowId) {
+        mergedRowIds[k] = oldRowId;
+        mergedOffsets[k++] = frozen.offsets.get(i++);
+        if (oldRowId == newRowId) {
+          j++;
+        }
+      } else {
+        mergedRowIds[k] = newRowId;
+        mergedOffsets[k++] = newOffsets[j++];
+      }
+    }
+    marks = new Marks(mergedRowIds, mergedOffsets, k, arena);
+    arena.retire(frozen.rowIds.region());
+    arena.retire(frozen.offsets.region());
+    arena.retire(frozen.boundaryHits);
+  }
+
+  /** Rows region between two adjacent marks: start mark is inclusive, end mark is exclusive. */
+  public record Region(long startRowId, long startOffset, long endRowId, long endOffset) {}
+
+  private static final class Marks {
+    final CompactLongArray rowIds;
+    final CompactLongArray offsets;
+    // int counters of boundary hits of region between mark I and I+1
+    final ByteBuffer boundaryHits;
+
+    Marks(long[] rowIds, long[] offsets, int size, IndexArena arena) {
+      this.rowIds = CompactLongArray.of(rowIds, size, arena);
+      this.offsets = CompactLongArray.of(offsets, size, arena);
+      this.boundaryHits = arena.allocate(4 * Math.max(0, size - 1));
+    }
+
+    int regionsCount() {
+      return boundaryHits.capacity() / 4;
+    }
   }
 }
@@ -5,6 +5,9 @@ import com.google.common.collect.Comparators;
 import com.google.common.collect.Range;
 import com.taxi.rides.storage.QueryPredicate.Between;
 import com.taxi.rides.storage.schema.Column;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.TreeMap;
@@ -12,13 +15,21 @@ import java.util.TreeMap;
 /**
  * Class maintenances sparse index of values, e.g. it records value location(e.g., row ID) for each
  * Nth value.
+ *
+ * <p>Marks are collected into tree map while index populated. After {@link #freeze(IndexArena)},
+ * marks are stored as sorted array of values and {@link CompactLongArray} of row IDs allocated from
+ * arena.
  */
 public class SparseColumnIndex<T extends Comparable<? super T>> implements ColumnIndex<T> {
 
   private static final Range<Long> EMPTY_RANGE = Range.closedOpen(0L, 0L);
-  private final NavigableMap<T, Long> index = new TreeMap<>();
+  private static final long OBJECT_HEADER_SIZE = 16;
+  private static final long TREE_ENTRY_SIZE = 40;
+  private NavigableMap<T, Long> index = new TreeMap<>();
+  private List<T> frozenValues;
+  private CompactLongArray frozenRowIds;
   private T maxSeenValue;
-  private final Column column;
+  private final Column<T> column;
   private final int markPeriod;
   private int leftToSkip;
 
@@ -40,6 +51,7 @@ public class SparseColumnIndex<T extends Comparable<? super T>> implements Colum
 
   @Override
   public void addEntry(long rowId, T colValue) {
+    Preconditions.checkState(index != null, "Index is frozen");
     leftToSkip--;
     maxSeenValue = maxSeenValue == null ? colValue : Comparators.max(maxSeenValue, colValue);
     if (leftToSkip <= 0) {
@@ -48,15 +60,43 @@ public class SparseColumnIndex<T extends Comparable<? super T>> implements Colum
     }
   }
 
+  @Override
+  public void freeze(IndexArena arena) {
+    if (index == null) {
+      return;
+    }
+    frozenValues = new ArrayList<>(index.keySet());
+    var rowIds = new long[index.size()];
+    int i = 0;
+    for (Long rowId : index.values()) {
+      rowIds[i++] = rowId;
+    }
+    frozenRowIds = CompactLongArray.of(rowIds, rowIds.length, arena);
+    index = null;
+  }
+
+  @Override
+  public long memoryUsage() {
+    if (index != null) {
+      // tree entry and boxed row ID per mark, value objects are not accounted
+      return OBJECT_HEADER_SIZE + 32 + index.size() * (TREE_ENTRY_SIZE + OBJECT_HEADER_SIZE + 8);
+    }
+    return OBJECT_HEADER_SIZE
+        + 32
+        + OBJECT_HEADER_SIZE
+        + 8L * frozenValues.size()
+        + frozenRowIds.memoryUsage();
+  }
+
   @Override
   public Range<Long> evaluateBetween(Between<T> predicate) {
-    if (index.isEmpty()) {
+    if (marksCount() == 0) {
       return Range.all();
     }
 
     // least known value is greater than predicate upper bound
     if (predicate.range().hasUpperBound()
-        && index.firstEntry().getKey().compareTo(predicate.range().upperEndpoint()) > 0) {
+        && firstValue().compareTo(predicate.range().upperEndpoint()) > 0) {
       return EMPTY_RANGE;
     }
 
@@ -68,27 +108,48 @@ public class SparseColumnIndex<T extends Comparable<? super T>> implements Colum
 
     var valRange = predicate.range();
     if (valRange.hasLowerBound() && valRange.hasUpperBound()) {
-      var lower = index.floorEntry(valRange.lowerEndpoint());
-      if (lower == null) {
-        lower = index.firstEntry();
-      }
-      var upper = index.ceilingEntry(valRange.upperEndpoint());
+      var lower = floorRowId(valRange.lowerEndpoint());
+      var upper = ceilingRowId(valRange.upperEndpoint());
       return upper != null
-          ? Range.closed(
-              Math.min(lower.getValue(), upper.getValue()),
-              Math.max(lower.getValue(), upper.getValue()))
-          : Range.atLeast(lower.getValue());
+          ? Range.closed(Math.min(lower, upper), Math.max(lower, upper))
+          : Range.atLeast(lower);
     } else if (valRange.hasLowerBound()) {
-      var lower = index.floorEntry(valRange.lowerEndpoint());
-      if (lower == null) {
-        lower = index.firstEntry();
-      }
-      return Range.atLeast(lower.getValue());
+      return Range.atLeast(floorRowId(valRange.lowerEndpoint()));
     } else if (valRange.hasUpperBound()) {
-      var entry = index.ceilingEntry(valRange.upperEndpoint());
-      return entry != null ? Range.atMost(entry.getValue()) : Range.all();
+      var upper = ceilingRowId(valRange.upperEndpoint());
+      return upper != null ? Range.atMost(upper) : Range.all();
     } else {
       return Range.all();
     }
   }
+
+  private int marksCount() {
+    return index != null ? index.size() : frozenValues.size();
+  }
+
+  private T firstValue() {
+    return index != null ? index.firstKey() : frozenValues.get(0);
+  }
+
+  /** Returns row ID of mark with the greatest value less or equal to passed value. */
+  private long floorRowId(T value) {
+    if (index != null) {
+      var lower = index.floorEntry(value);
+      return lower != null ? lower.getValue() : index.firstEntry().getValue();
+    }
+    int pos = Collections.binarySearch(frozenValues, value);
+    // values less than the first mark are located at least at the first mark
+    return frozenRowIds.get(pos >= 0 ? pos : Math.max(0, -pos - 2));
+  }
+
+  /** Returns row ID of mark with the least value greater or equal to passed value. */
+  private Long ceilingRowId(T value) {
+    if (index != null) {
+      var upper = index.ceilingEntry(value);
+      return upper != null ? upper.getValue() : null;
+    }
+    int pos = Collections.binarySearch(frozenValues, value);
+    int ceiling = pos >= 0 ? pos : -pos - 1;
+    return ceiling < frozenValues.size() ? frozenRowIds.get(ceiling) : null;
+  }
 }
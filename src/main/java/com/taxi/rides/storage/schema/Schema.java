@@ -7,17 +7,17 @@ import java.util.OptionalInt;
 
 public final class Schema {
 
-  private final List<Column> columns;
+  private final List<Column<?>> columns;
 
-  public Schema(List<Column> columns) {
+  public Schema(List<? extends Column<?>> columns) {
     this.columns = List.copyOf(columns);
   }
 
-  public List<Column> columns() {
+  public List<Column<?>> columns() {
     return columns;
   }
 
-  public Column getColumnAt(int index) {
+  public Column<?> getColumnAt(int index) {
     return columns.get(index);
   }
 
@@ -26,8 +26,8 @@ public final class Schema {
     return index >= 0 ? OptionalInt.of(index) : OptionalInt.empty();
   }
 
-  public Optional<Column> getColumn(String colName) {
-    for (Column column : columns) {
+  public Optional<Column<?>> getColumn(String colName) {
+    for (Column<?> column : columns) {
       if (column.name().equals(colName)) {
         return Optional.of(column);
       }
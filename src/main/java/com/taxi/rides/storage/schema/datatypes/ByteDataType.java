@@ -1,9 +1,14 @@
 package com.taxi.rides.storage.schema.datatypes;
 
-public class ByteDataType extends AbstractDataType<Byte> {
+public class ByteDataType extends IntegralDataType<Byte> {
+
+  public ByteDataType() {
+    super(Byte.MIN_VALUE, Byte.MAX_VALUE);
+  }
 
   @Override
   public Byte parseRawValue(String rawValue) {
-    return Byte.parseByte(rawValue);
+    long value = parseLong(rawValue);
+    return value == NULL_LONG ? null : (byte) value;
   }
 }
@@ -1,6 +1,66 @@
 package com.taxi.rides.storage.schema.datatypes;
 
+/**
+ * Data type of column values. Besides parsing of values as objects, data type can parse values into
+ * primitives without allocation(e.g., to aggregate values while file is scanned). Primitive parsers
+ * return null sentinel({@link #NULL_LONG} or {@link #NULL_DOUBLE}) for empty and malformed values
+ * instead of throwing exception.
+ */
 public interface DataType<T extends Comparable<? super T>> {
 
+  /** Value returned by {@link #parseLong} for null values, can't be used as regular value. */
+  long NULL_LONG = Long.MIN_VALUE;
+
+  /** Value returned by {@link #parseDouble} for null values. */
+  double NULL_DOUBLE = Double.NaN;
+
   T parseFrom(String rawValue);
+
+  /**
+   * Parse value as long. Supported by integer types, decimals(parsed as scaled long, see {@link
+   * DecimalDataType}) and timestamps(parsed as epoch seconds in UTC).
+   *
+   * @throws UnsupportedOperationException if values of type can't be represented as long.
+   */
+  default long parseLong(CharSequence rawValue) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " is not integer type");
+  }
+
+  /** Same as {@link #parseLong(CharSequence)}, but value is parsed from ASCII bytes. */
+  default long parseLong(byte[] buf, int offset, int length) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " is not integer type");
+  }
+
+  /**
+   * Returns true if {@link #parseLong} encodes values without loss and keeps their order(e.g.,
+   * timestamps as epoch seconds), so values can be compared as longs and converted back by {@link
+   * #fromLong(long)}.
+   */
+  default boolean isLongEncoded() {
+    return false;
+  }
+
+  /** Returns value which is encoded as passed long, supported if {@link #isLongEncoded()}. */
+  default T fromLong(long value) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " is not long encoded");
+  }
+
+  /** Returns long encoding of value, supported if {@link #isLongEncoded()}. */
+  default long toLong(T value) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " is not long encoded");
+  }
+
+  /**
+   * Parse value as double. Supported by numeric types.
+   *
+   * @throws UnsupportedOperationException if values of type can't be represented as double.
+   */
+  default double parseDouble(CharSequence rawValue) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " is not numeric type");
+  }
+
+  /** Same as {@link #parseDouble(CharSequence)}, but value is parsed from ASCII bytes. */
+  default double parseDouble(byte[] buf, int offset, int length) {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " is not numeric type");
+  }
 }
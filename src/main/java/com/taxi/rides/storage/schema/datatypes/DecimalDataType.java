@@ -0,0 +1,60 @@
+package com.taxi.rides.storage.schema.datatypes;
+
+import com.google.common.base.Preconditions;
+import java.math.BigDecimal;
+
+/**
+ * Decimal number with fixed count of fractional digits(e.g., monetary amounts). Values are parsed
+ * by {@link #parseLong} into long scaled by {@code 10^scale}(e.g., {@code 12.50} is parsed into
+ * {@code 1250} cents for scale 2) without allocation, so they can be summed exactly. Values with
+ * more fractional digits than scale are rounded half up.
+ */
+public final class DecimalDataType extends AbstractDataType<BigDecimal> {
+
+  private final int scale;
+  private final double unit;
+
+  /**
+   * @param scale Count of fractional digits, in range [0, 18].
+   */
+  public DecimalDataType(int scale) {
+    Preconditions.checkArgument(scale >= 0 && scale <= 18, "Scale should be in [0, 18] range");
+    this.scale = scale;
+    this.unit = Math.pow(10, scale);
+  }
+
+  public int scale() {
+    return scale;
+  }
+
+  @Override
+  protected BigDecimal parseRawValue(String rawValue) {
+    long unscaled = parseLong(rawValue);
+    return unscaled == NULL_LONG ? null : BigDecimal.valueOf(unscaled, scale);
+  }
+
+  /** Parse value into long scaled by {@code 10^scale}. */
+  @Override
+  public long parseLong(CharSequence rawValue) {
+    return NumberParsers.parseDecimal(rawValue, scale);
+  }
+
+  @Override
+  public long parseLong(byte[] buf, int offset, int length) {
+    return NumberParsers.parseDecimal(buf, offset, length, scale);
+  }
+
+  @Override
+  public double parseDouble(CharSequence rawValue) {
+    return toDouble(parseLong(rawValue));
+  }
+
+  @Override
+  public double parseDouble(byte[] buf, int offset, int length) {
+    return toDouble(parseLong(buf, offset, length));
+  }
+
+  private double toDouble(long unscaled) {
+    return unscaled == NULL_LONG ? NULL_DOUBLE : unscaled / unit;
+  }
+}
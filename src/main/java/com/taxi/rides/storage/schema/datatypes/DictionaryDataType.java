@@ -0,0 +1,71 @@
+package com.taxi.rides.storage.schema.datatypes;
+
+/**
+ * Text values of categorical column(e.g., flags or codes with few distinct values) encoded by
+ * dictionary. {@link #parseLong} returns dictionary code of value, so predicates and group-bys can
+ * compare small int codes instead of strings and decode values only in the final result.
+ *
+ * <p>Dictionary is shared by all splits which use the same data type instance: codes are the same
+ * in all splits and partial results computed for splits can be merged by codes. Dictionary is
+ * populated while files are indexed and scanned.
+ */
+public final class DictionaryDataType extends AbstractDataType<String> {
+
+  private final StringDictionary dictionary = new StringDictionary();
+
+  public StringDictionary dictionary() {
+    return dictionary;
+  }
+
+  /** Returns dictionary instance of value, so parsed values don't hold separate strings. */
+  @Override
+  protected String parseRawValue(String rawValue) {
+    return dictionary.decode(dictionary.encode(rawValue));
+  }
+
+  /** Returns dictionary code of value, {@link #NULL_LONG} for empty value. */
+  @Override
+  public long parseLong(CharSequence rawValue) {
+    if (rawValue == null) {
+      return NULL_LONG;
+    }
+    int start = 0;
+    int end = rawValue.length();
+    while (start < end && rawValue.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && rawValue.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    if (start == end) {
+      return NULL_LONG;
+    }
+    return dictionary.encode(
+        start == 0 && end == rawValue.length() ? rawValue : rawValue.subSequence(start, end));
+  }
+
+  @Override
+  public long parseLong(byte[] buf, int offset, int length) {
+    int start = offset;
+    int end = offset + length;
+    while (start < end && (buf[start] & 0xff) <= ' ') {
+      start++;
+    }
+    while (end > start && (buf[end - 1] & 0xff) <= ' ') {
+      end--;
+    }
+    return start == end ? NULL_LONG : dictionary.encode(buf, start, end - start);
+  }
+
+  /**
+   * Returns code which can be compared with codes returned by {@link #parseLong}, {@link
+   * StringDictionary#NO_CODE} if value was never seen(e.g., no row can be equal to it).
+   */
+  public int codeOf(String value) {
+    return dictionary.codeOf(value);
+  }
+
+  public String decode(long code) {
+    return dictionary.decode((int) code);
+  }
+}
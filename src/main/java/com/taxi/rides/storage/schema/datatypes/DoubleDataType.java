@@ -6,6 +6,17 @@ public final class DoubleDataType extends AbstractDataType<Double> {
 
   @Override
   public Double parseRawValue(String rawValue) {
-    return FastDoubleParser.parseDouble(rawValue.trim());
+    // value is already trimmed
+    return FastDoubleParser.parseDouble(rawValue);
+  }
+
+  @Override
+  public double parseDouble(CharSequence rawValue) {
+    return NumberParsers.parseDouble(rawValue);
+  }
+
+  @Override
+  public double parseDouble(byte[] buf, int offset, int length) {
+    return NumberParsers.parseDouble(buf, offset, length);
   }
 }
@@ -6,4 +6,15 @@ public class FloatDataType extends AbstractDataType<Float> {
   public Float parseRawValue(String rawValue) {
     return Float.parseFloat(rawValue);
   }
+
+  @Override
+  public double parseDouble(CharSequence rawValue) {
+    // round to float precision, so value is the same as value parsed as object
+    return (float) NumberParsers.parseDouble(rawValue);
+  }
+
+  @Override
+  public double parseDouble(byte[] buf, int offset, int length) {
+    return (float) NumberParsers.parseDouble(buf, offset, length);
+  }
 }
@@ -0,0 +1,39 @@
+package com.taxi.rides.storage.schema.datatypes;
+
+/** Base class of integer types: their values are parsed into long without allocation. */
+public abstract class IntegralDataType<T extends Comparable<? super T>>
+    extends AbstractDataType<T> {
+
+  private final long minValue;
+  private final long maxValue;
+
+  /** Values outside of passed range are parsed as {@link #NULL_LONG}. */
+  protected IntegralDataType(long minValue, long maxValue) {
+    this.minValue = minValue;
+    this.maxValue = maxValue;
+  }
+
+  @Override
+  public long parseLong(CharSequence rawValue) {
+    return NumberParsers.parseLong(rawValue, minValue, maxValue);
+  }
+
+  @Override
+  public long parseLong(byte[] buf, int offset, int length) {
+    return NumberParsers.parseLong(buf, offset, length, minValue, maxValue);
+  }
+
+  @Override
+  public double parseDouble(CharSequence rawValue) {
+    return toDouble(parseLong(rawValue));
+  }
+
+  @Override
+  public double parseDouble(byte[] buf, int offset, int length) {
+    return toDouble(parseLong(buf, offset, length));
+  }
+
+  private static double toDouble(long value) {
+    return value == NULL_LONG ? NULL_DOUBLE : value;
+  }
+}
@@ -1,11 +1,14 @@
 package com.taxi.rides.storage.schema.datatypes;
 
-import com.google.common.primitives.Longs;
+public final class LongDataType extends IntegralDataType<Long> {
 
-public final class LongDataType extends AbstractDataType<Long> {
+  public LongDataType() {
+    super(Long.MIN_VALUE, Long.MAX_VALUE);
+  }
 
   @Override
   public Long parseRawValue(String rawValue) {
-    return Longs.tryParse(rawValue);
+    long value = parseLong(rawValue);
+    return value == NULL_LONG ? null : value;
   }
 }
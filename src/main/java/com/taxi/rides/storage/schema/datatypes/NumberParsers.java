@@ -0,0 +1,242 @@
+package com.taxi.rides.storage.schema.datatypes;
+
+import com.taxi.rides.storage.schema.datatypes.fastdoubleparser.FastDoubleParser;
+
+/**
+ * Parsers of numbers into primitives which don't throw: empty and malformed values(and integers
+ * outside of allowed range) are parsed as null sentinels of {@link DataType}. Leading and trailing
+ * whitespace is ignored(as by {@link String#trim()}).
+ */
+final class NumberParsers {
+
+  private NumberParsers() {}
+
+  static long parseLong(CharSequence str, long min, long max) {
+    if (str == null) {
+      return DataType.NULL_LONG;
+    }
+    int start = 0;
+    int end = str.length();
+    while (start < end && str.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && str.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    if (start == end) {
+      return DataType.NULL_LONG;
+    }
+    char first = str.charAt(start);
+    boolean negative = first == '-';
+    if (negative || first == '+') {
+      start++;
+    }
+    if (start == end) {
+      return DataType.NULL_LONG;
+    }
+    // accumulate negative value: its range is wider than range of positive values
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      int digit = str.charAt(i) - '0';
+      if (digit < 0 || digit > 9 || value < Long.MIN_VALUE / 10) {
+        return DataType.NULL_LONG;
+      }
+      value = value * 10 - digit;
+      if (value > 0) {
+        // overflow
+        return DataType.NULL_LONG;
+      }
+    }
+    return checkRange(negative, value, min, max);
+  }
+
+  static long parseLong(byte[] buf, int offset, int length, long min, long max) {
+    int start = offset;
+    int end = offset + length;
+    while (start < end && (buf[start] & 0xff) <= ' ') {
+      start++;
+    }
+    while (end > start && (buf[end - 1] & 0xff) <= ' ') {
+      end--;
+    }
+    if (start == end) {
+      return DataType.NULL_LONG;
+    }
+    boolean negative = buf[start] == '-';
+    if (negative || buf[start] == '+') {
+      start++;
+    }
+    if (start == end) {
+      return DataType.NULL_LONG;
+    }
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      int digit = buf[i] - '0';
+      if (digit < 0 || digit > 9 || value < Long.MIN_VALUE / 10) {
+        return DataType.NULL_LONG;
+      }
+      value = value * 10 - digit;
+      if (value > 0) {
+        return DataType.NULL_LONG;
+      }
+    }
+    return checkRange(negative, value, min, max);
+  }
+
+  private static long checkRange(boolean negative, long negatedValue, long min, long max) {
+    long value;
+    if (negative) {
+      value = negatedValue;
+    } else if (negatedValue == Long.MIN_VALUE) {
+      return DataType.NULL_LONG;
+    } else {
+      value = -negatedValue;
+    }
+    return value >= min && value <= max ? value : DataType.NULL_LONG;
+  }
+
+  static double parseDouble(CharSequence str) {
+    if (str == null || str.length() == 0) {
+      return DataType.NULL_DOUBLE;
+    }
+    try {
+      return FastDoubleParser.parseDouble(str);
+    } catch (NumberFormatException e) {
+      return DataType.NULL_DOUBLE;
+    }
+  }
+
+  static double parseDouble(byte[] buf, int offset, int length) {
+    if (length == 0) {
+      return DataType.NULL_DOUBLE;
+    }
+    try {
+      return FastDoubleParser.parseDouble(buf, offset, length);
+    } catch (NumberFormatException e) {
+      return DataType.NULL_DOUBLE;
+    }
+  }
+
+  /**
+   * Parse decimal number(e.g., {@code -12.5}) into long scaled by {@code 10^scale}. Extra
+   * fractional digits are rounded half up, values which don't fit into long are parsed as {@link
+   * DataType#NULL_LONG}.
+   */
+  static long parseDecimal(CharSequence str, int scale) {
+    if (str == null) {
+      return DataType.NULL_LONG;
+    }
+    int start = 0;
+    int end = str.length();
+    while (start < end && str.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && str.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    if (start == end) {
+      return DataType.NULL_LONG;
+    }
+    boolean negative = str.charAt(start) == '-';
+    if (negative || str.charAt(start) == '+') {
+      start++;
+    }
+    long value = 0;
+    int digits = 0;
+    // count of fractional digits, -1 until decimal point is seen
+    int fraction = -1;
+    boolean roundUp = false;
+    for (int i = start; i < end; i++) {
+      char ch = str.charAt(i);
+      if (ch == '.' && fraction < 0) {
+        fraction = 0;
+        continue;
+      }
+      int digit = ch - '0';
+      if (digit < 0 || digit > 9) {
+        return DataType.NULL_LONG;
+      }
+      digits++;
+      if (fraction < scale) {
+        if (value > (Long.MAX_VALUE - digit) / 10) {
+          return DataType.NULL_LONG;
+        }
+        value = value * 10 + digit;
+      } else if (fraction == scale) {
+        roundUp = digit >= 5;
+      }
+      if (fraction >= 0) {
+        fraction++;
+      }
+    }
+    return scaledValue(negative, value, digits, Math.max(fraction, 0), scale, roundUp);
+  }
+
+  static long parseDecimal(byte[] buf, int offset, int length, int scale) {
+    int start = offset;
+    int end = offset + length;
+    while (start < end && (buf[start] & 0xff) <= ' ') {
+      start++;
+    }
+    while (end > start && (buf[end - 1] & 0xff) <= ' ') {
+      end--;
+    }
+    if (start == end) {
+      return DataType.NULL_LONG;
+    }
+    boolean negative = buf[start] == '-';
+    if (negative || buf[start] == '+') {
+      start++;
+    }
+    long value = 0;
+    int digits = 0;
+    int fraction = -1;
+    boolean roundUp = false;
+    for (int i = start; i < end; i++) {
+      byte b = buf[i];
+      if (b == '.' && fraction < 0) {
+        fraction = 0;
+        continue;
+      }
+      int digit = b - '0';
+      if (digit < 0 || digit > 9) {
+        return DataType.NULL_LONG;
+      }
+      digits++;
+      if (fraction < scale) {
+        if (value > (Long.MAX_VALUE - digit) / 10) {
+          return DataType.NULL_LONG;
+        }
+        value = value * 10 + digit;
+      } else if (fraction == scale) {
+        roundUp = digit >= 5;
+      }
+      if (fraction >= 0) {
+        fraction++;
+      }
+    }
+    return scaledValue(negative, value, digits, Math.max(fraction, 0), scale, roundUp);
+  }
+
+  private static long scaledValue(
+      boolean negative, long value, int digits, int fraction, int scale, boolean roundUp) {
+    if (digits == 0) {
+      return DataType.NULL_LONG;
+    }
+    // pad missing fractional digits
+    for (int i = fraction; i < scale; i++) {
+      if (value > Long.MAX_VALUE / 10) {
+        return DataType.NULL_LONG;
+      }
+      value *= 10;
+    }
+    if (roundUp) {
+      if (value == Long.MAX_VALUE) {
+        return DataType.NULL_LONG;
+      }
+      value++;
+    }
+    // magnitude is rounded, so negative half is rounded away from zero as well
+    return negative ? -value : value;
+  }
+}
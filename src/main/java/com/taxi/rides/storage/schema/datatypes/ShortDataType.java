@@ -1,9 +1,14 @@
 package com.taxi.rides.storage.schema.datatypes;
 
-public class ShortDataType extends AbstractDataType<Short> {
+public class ShortDataType extends IntegralDataType<Short> {
+
+  public ShortDataType() {
+    super(Short.MIN_VALUE, Short.MAX_VALUE);
+  }
 
   @Override
   public Short parseRawValue(String rawValue) {
-    return Short.parseShort(rawValue);
+    long value = parseLong(rawValue);
+    return value == NULL_LONG ? null : (short) value;
   }
 }
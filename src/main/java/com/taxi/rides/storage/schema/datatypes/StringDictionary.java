@@ -0,0 +1,150 @@
+package com.taxi.rides.storage.schema.datatypes;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Dictionary which assigns dense int codes(0, 1, 2, ...) to distinct strings. Code of value never
+ * changes, so codes assigned by different splits of the table can be compared and merged directly.
+ *
+ * <p>Dictionary is intended for columns with low count of distinct values. Lookups are lock-free
+ * and don't allocate: new value is appended in place and published by release write of its slot,
+ * arrays are replaced by arrays of double capacity only when they are full.
+ */
+public final class StringDictionary {
+
+  /** Code returned by {@link #codeOf} for values which are not in dictionary. */
+  public static final int NO_CODE = -1;
+
+  private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(int[].class);
+
+  private volatile State state = new State(new String[8], new int[16]);
+  private volatile int size;
+
+  /** Returns code of value, value is added to dictionary if it is not there yet. */
+  public int encode(CharSequence value) {
+    int code = codeOf(value);
+    return code != NO_CODE ? code : add(value.toString());
+  }
+
+  /**
+   * Returns code of value stored as UTF-8 bytes, value is added if it is not there yet. ASCII
+   * values are looked up without allocation.
+   */
+  public int encode(byte[] buf, int offset, int length) {
+    for (int i = offset; i < offset + length; i++) {
+      if (buf[i] < 0) {
+        // non-ASCII value, chars are decoded from UTF-8
+        return encode(new String(buf, offset, length, StandardCharsets.UTF_8));
+      }
+    }
+    var current = state;
+    int slot = hash(buf, offset, length) & (current.slots.length - 1);
+    int entry;
+    while ((entry = (int) SLOTS.getAcquire(current.slots, slot)) != 0) {
+      int code = entry - 1;
+      if (equals(current.values[code], buf, offset, length)) {
+        return code;
+      }
+      slot = (slot + 1) & (current.slots.length - 1);
+    }
+    return add(new String(buf, offset, length, StandardCharsets.UTF_8));
+  }
+
+  /** Returns code of value, {@link #NO_CODE} if value is not in dictionary. */
+  public int codeOf(CharSequence value) {
+    var current = state;
+    int slot = hash(value) & (current.slots.length - 1);
+    int entry;
+    while ((entry = (int) SLOTS.getAcquire(current.slots, slot)) != 0) {
+      int code = entry - 1;
+      if (current.values[code].contentEquals(value)) {
+        return code;
+      }
+      slot = (slot + 1) & (current.slots.length - 1);
+    }
+    return NO_CODE;
+  }
+
+  /** Returns value of code. */
+  public String decode(int code) {
+    return state.values[code];
+  }
+
+  /** Returns count of values in dictionary. */
+  public int size() {
+    return size;
+  }
+
+  private synchronized int add(String value) {
+    // value can be added concurrently
+    int code = codeOf(value);
+    if (code != NO_CODE) {
+      return code;
+    }
+    var current = state;
+    code = size;
+    if (code == current.values.length) {
+      // keep load factor <= 0.5
+      current = grow(current, code * 2);
+      state = current;
+    }
+    current.values[code] = value;
+    // readers which see the slot see the value too
+    SLOTS.setRelease(current.slots, freeSlot(current.slots, hash(value)), code + 1);
+    size = code + 1;
+    return code;
+  }
+
+  /** Returns copy of state which can hold passed count of values. */
+  private static State grow(State current, int capacity) {
+    var values = Arrays.copyOf(current.values, capacity);
+    var slots = new int[capacity * 2];
+    for (int i = 0; i < current.values.length; i++) {
+      // 0 marks empty slot
+      slots[freeSlot(slots, hash(values[i]))] = i + 1;
+    }
+    return new State(values, slots);
+  }
+
+  private static int freeSlot(int[] slots, int hash) {
+    int slot = hash & (slots.length - 1);
+    while (slots[slot] != 0) {
+      slot = (slot + 1) & (slots.length - 1);
+    }
+    return slot;
+  }
+
+  private static int hash(CharSequence value) {
+    int h = 0;
+    for (int i = 0; i < value.length(); i++) {
+      h = 31 * h + value.charAt(i);
+    }
+    return h ^ (h >>> 16);
+  }
+
+  /** Hash of ASCII bytes, equal to hash of the same chars. */
+  private static int hash(byte[] buf, int offset, int length) {
+    int h = 0;
+    for (int i = offset; i < offset + length; i++) {
+      h = 31 * h + buf[i];
+    }
+    return h ^ (h >>> 16);
+  }
+
+  private static boolean equals(String value, byte[] buf, int offset, int length) {
+    if (value.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (value.charAt(i) != buf[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private record State(String[] values, int[] slots) {}
+}
@@ -1,9 +1,16 @@
 package com.taxi.rides.storage.schema.datatypes;
 
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 
 public class TimestampDataType extends AbstractDataType<LocalDateTime> {
 
+  // length of 'yyyy-MM-dd HH:mm:ss'
+  private static final int TIMESTAMP_LENGTH = 19;
+  private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+  // days from 0000-03-01 to 1970-01-01
+  private static final long DAYS_0000_TO_1970 = 719468;
+
   @Override
   public LocalDateTime parseRawValue(String rawValue) {
     // parse string of format 'yyyy-MM-dd HH:mm:ss' manually, this is more performant than
@@ -17,6 +24,69 @@ public class TimestampDataType extends AbstractDataType<LocalDateTime> {
         parseInt(rawValue, 17, rawValue.length()));
   }
 
+  /** Parse timestamp of format 'yyyy-MM-dd HH:mm:ss' as count of seconds since epoch in UTC. */
+  @Override
+  public long parseLong(CharSequence rawValue) {
+    if (rawValue == null) {
+      return NULL_LONG;
+    }
+    int start = 0;
+    int end = rawValue.length();
+    while (start < end && rawValue.charAt(start) <= ' ') {
+      start++;
+    }
+    while (end > start && rawValue.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    if (end - start != TIMESTAMP_LENGTH) {
+      return NULL_LONG;
+    }
+    return epochSecond(
+        digits(rawValue, start, 4),
+        digits(rawValue, start + 5, 2),
+        digits(rawValue, start + 8, 2),
+        digits(rawValue, start + 11, 2),
+        digits(rawValue, start + 14, 2),
+        digits(rawValue, start + 17, 2));
+  }
+
+  @Override
+  public long parseLong(byte[] buf, int offset, int length) {
+    int start = offset;
+    int end = offset + length;
+    while (start < end && (buf[start] & 0xff) <= ' ') {
+      start++;
+    }
+    while (end > start && (buf[end - 1] & 0xff) <= ' ') {
+      end--;
+    }
+    if (end - start != TIMESTAMP_LENGTH) {
+      return NULL_LONG;
+    }
+    return epochSecond(
+        digits(buf, start, 4),
+        digits(buf, start + 5, 2),
+        digits(buf, start + 8, 2),
+        digits(buf, start + 11, 2),
+        digits(buf, start + 14, 2),
+        digits(buf, start + 17, 2));
+  }
+
+  @Override
+  public boolean isLongEncoded() {
+    return true;
+  }
+
+  @Override
+  public LocalDateTime fromLong(long epochSecond) {
+    return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+  }
+
+  @Override
+  public long toLong(LocalDateTime value) {
+    return value.toEpochSecond(ZoneOffset.UTC);
+  }
+
   static int parseInt(String s, int beginIndex, int endIndex) {
     int sum = 0;
     int multiplier = 1;
@@ -26,4 +96,71 @@ public class TimestampDataType extends AbstractDataType<LocalDateTime> {
     }
     return sum;
   }
+
+  /** Returns number formed by digits, -1 if there is non-digit character. */
+  private static int digits(CharSequence s, int beginIndex, int count) {
+    int value = 0;
+    for (int i = beginIndex; i < beginIndex + count; i++) {
+      int digit = s.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  private static int digits(byte[] buf, int beginIndex, int count) {
+    int value = 0;
+    for (int i = beginIndex; i < beginIndex + count; i++) {
+      int digit = buf[i] - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  private static long epochSecond(int year, int month, int day, int hour, int minute, int second) {
+    if (year < 0
+        || month < 1
+        || month > 12
+        || day < 1
+        || day > lengthOfMonth(year, month)
+        || hour < 0
+        || hour > 23
+        || minute < 0
+        || minute > 59
+        || second < 0
+        || second > 59) {
+      return NULL_LONG;
+    }
+    return epochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+  }
+
+  private static int lengthOfMonth(int year, int month) {
+    switch (month) {
+      case 2:
+        boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+        return leap ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  /** Count of days since epoch, computed for year which starts at March(leap day is the last). */
+  private static long epochDay(int year, int month, int day) {
+    int y = month <= 2 ? year - 1 : year;
+    int era = Math.floorDiv(y, 400);
+    int yearOfEra = y - era * 400;
+    int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return (long) era * 146097 + dayOfEra - DAYS_0000_TO_1970;
+  }
 }
@@ -1,5 +1,7 @@
 package com.taxi.rides.storage.schema.datatypes.fastdoubleparser;
 
+import java.nio.charset.StandardCharsets;
+
 /*
  * copied from https://github.com/wrandelshofer/FastDoubleParser
  */
@@ -246,6 +248,87 @@ public class FastDoubleParser {
     return parseRestOfDecimalFloatLiteral(str, index, offset, endIndex, isNegative, hasLeadingZero);
   }
 
+  /**
+   * Parses double from ASCII bytes, accepts the same syntax as {@link #parseDouble(CharSequence,
+   * int, int)}. Decimal literals with up to 19 significant digits(e.g., values of CSV files) are
+   * parsed without allocation, other literals are parsed from string.
+   *
+   * @param buf bytes to parse
+   * @param offset the index of the first byte to parse
+   * @param length the number of bytes to parse
+   * @return the parsed double value
+   * @throws NumberFormatException if the bytes can not be parsed
+   */
+  public static double parseDouble(byte[] buf, int offset, int length)
+      throws NumberFormatException {
+    int index = offset;
+    int endIndex = offset + length;
+    while (index < endIndex && (buf[index] & 0xff) <= 0x20) {
+      index++;
+    }
+    while (endIndex > index && (buf[endIndex - 1] & 0xff) <= 0x20) {
+      endIndex--;
+    }
+    if (index == endIndex) {
+      throw new NumberFormatException("empty String");
+    }
+    final boolean isNegative = buf[index] == '-';
+    if (isNegative || buf[index] == '+') {
+      index++;
+    }
+
+    long digits = 0;
+    int digitCount = 0;
+    int exponent = 0;
+    boolean hasPoint = false;
+    for (; index < endIndex; index++) {
+      byte b = buf[index];
+      if (b >= '0' && b <= '9') {
+        digits = 10 * digits + b - '0';
+        digitCount++;
+        if (hasPoint) {
+          exponent--;
+        }
+      } else if (b == '.' && !hasPoint) {
+        hasPoint = true;
+      } else {
+        break;
+      }
+    }
+    long expNumber = 0;
+    if (index < endIndex && (buf[index] == 'e' || buf[index] == 'E') && digitCount > 0) {
+      index++;
+      boolean negativeExp = index < endIndex && buf[index] == '-';
+      if (index < endIndex && (negativeExp || buf[index] == '+')) {
+        index++;
+      }
+      int expStart = index;
+      for (; index < endIndex && buf[index] >= '0' && buf[index] <= '9'; index++) {
+        // Guard against overflow of expNumber
+        if (expNumber < MINIMAL_EIGHT_DIGIT_INTEGER) {
+          expNumber = 10 * expNumber + buf[index] - '0';
+        }
+      }
+      if (index == expStart) {
+        throw new NumberFormatException(
+            "For input string: \""
+                + new String(buf, offset, length, StandardCharsets.ISO_8859_1)
+                + "\"");
+      }
+      exponent += negativeExp ? -expNumber : expNumber;
+    }
+    if (index < endIndex || digitCount == 0 || digitCount > 19) {
+      // NaN, Infinity, hex literal, too many digits or malformed value
+      return parseDouble(new String(buf, offset, length, StandardCharsets.ISO_8859_1));
+    }
+    double result =
+        FastDoubleMath.decFloatLiteralToDouble(
+            index, isNegative, digits, exponent, index, expNumber, false, 0);
+    return Double.isNaN(result)
+        ? Double.parseDouble(new String(buf, offset, length, StandardCharsets.ISO_8859_1))
+        : result;
+  }
+
   private static double parseInfinity(
       CharSequence str, int startIndex, int endIndex, boolean negative) {
     if (startIndex + 7 < endIndex
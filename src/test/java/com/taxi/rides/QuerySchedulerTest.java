@@ -0,0 +1,108 @@
+package com.taxi.rides;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class QuerySchedulerTest {
+
+  private final ExecutorService workers = Executors.newFixedThreadPool(2);
+
+  @AfterEach
+  void tearDown() throws InterruptedException {
+    workers.shutdown();
+    assertThat(workers.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  void testInteractiveTasksOvertakeBatchTasks() throws Exception {
+    var scheduler = new QueryScheduler(workers, 1, 1, 1);
+    var started = new CopyOnWriteArrayList<String>();
+    var release = new CountDownLatch(1);
+    var batch = scheduler.newQuery(QueryPriority.BATCH);
+    var batchScans =
+        List.of(
+            CompletableFuture.runAsync(() -> awaitAndRecord(release, started, "batch-1"), batch),
+            CompletableFuture.runAsync(() -> started.add("batch-2"), batch),
+            CompletableFuture.runAsync(() -> started.add("batch-3"), batch));
+    var interactive = scheduler.newQuery(QueryPriority.INTERACTIVE);
+    var interactiveScan = CompletableFuture.runAsync(() -> started.add("interactive"), interactive);
+
+    release.countDown();
+    interactiveScan.get(10, TimeUnit.SECONDS);
+    CompletableFuture.allOf(batchScans.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+    // split scan of batch query which is already running isn't interrupted
+    assertThat(started).containsExactly("batch-1", "interactive", "batch-2", "batch-3");
+
+    batch.finish();
+    interactive.finish();
+    var metrics = scheduler.metrics();
+    assertThat(metrics.get(QueryPriority.BATCH).queries()).isEqualTo(1);
+    assertThat(metrics.get(QueryPriority.BATCH).tasks()).isEqualTo(3);
+    assertThat(metrics.get(QueryPriority.INTERACTIVE).tasks()).isEqualTo(1);
+    assertThat(metrics.get(QueryPriority.INTERACTIVE).maxQueueWait()).isGreaterThan(Duration.ZERO);
+  }
+
+  @Test
+  void testHeavyQueriesAreCapped() throws Exception {
+    var scheduler = new QueryScheduler(workers, 2, 2, 1);
+    var started = new CopyOnWriteArrayList<String>();
+    var release = new CountDownLatch(1);
+    var first = scheduler.newQuery(QueryPriority.BATCH);
+    var second = scheduler.newQuery(QueryPriority.BATCH);
+    var firstScan =
+        CompletableFuture.runAsync(() -> awaitAndRecord(release, started, "first"), first);
+    var secondScan = CompletableFuture.runAsync(() -> started.add("second"), second);
+
+    // second batch query waits for free heavy query slot, although there is free worker
+    TimeUnit.MILLISECONDS.sleep(100);
+    assertThat(secondScan).isNotDone();
+    release.countDown();
+    firstScan.get(10, TimeUnit.SECONDS);
+    assertThat(secondScan).isNotDone();
+    first.finish();
+    secondScan.get(10, TimeUnit.SECONDS);
+    second.finish();
+    assertThat(started).containsExactly("first", "second");
+  }
+
+  @Test
+  void testQueryTaskBudget() throws Exception {
+    var scheduler = new QueryScheduler(workers, 2, 1, 1);
+    var release = new CountDownLatch(1);
+    var started = new CopyOnWriteArrayList<String>();
+    var wide = scheduler.newQuery(QueryPriority.INTERACTIVE);
+    var wideScans =
+        List.of(
+            CompletableFuture.runAsync(() -> awaitAndRecord(release, started, "wide-1"), wide),
+            CompletableFuture.runAsync(() -> started.add("wide-2"), wide));
+    // query uses only one worker, second worker serves other query
+    var other = scheduler.newQuery(QueryPriority.INTERACTIVE);
+    CompletableFuture.runAsync(() -> started.add("other"), other).get(10, TimeUnit.SECONDS);
+    assertThat(started).containsExactly("other");
+
+    release.countDown();
+    CompletableFuture.allOf(wideScans.toArray(CompletableFuture[]::new)).get(10, TimeUnit.SECONDS);
+    wide.finish();
+    other.finish();
+    assertThat(started).containsExactly("other", "wide-1", "wide-2");
+  }
+
+  private static void awaitAndRecord(CountDownLatch latch, List<String> started, String name) {
+    try {
+      assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+    started.add(name);
+  }
+}
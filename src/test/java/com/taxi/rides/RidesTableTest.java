@@ -4,22 +4,48 @@
 package com.taxi.rides;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import com.google.common.base.StandardSystemProperty;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.Comparators;
 import com.taxi.rides.RidesTable.Settings;
+import com.taxi.rides.storage.ColumnStatistics;
+import com.taxi.rides.storage.CsvStorageFile;
+import com.taxi.rides.storage.DimensionTable;
+import com.taxi.rides.storage.PartitionPattern;
+import com.taxi.rides.storage.PlainCsvInput;
+import com.taxi.rides.storage.index.BucketColumnIndex;
+import com.taxi.rides.storage.index.IndexStatistics;
+import com.taxi.rides.storage.index.RowOffsetLocator;
+import com.taxi.rides.storage.schema.Column;
+import com.taxi.rides.storage.schema.Schema;
+import com.taxi.rides.storage.schema.datatypes.TimestampDataType;
 import de.siegmar.fastcsv.writer.CsvWriter;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeFormatterBuilder;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.DoubleAdder;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
 import org.assertj.core.data.Offset;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.RepeatedTest;
@@ -29,6 +55,11 @@ class RidesTableTest {
 
   private static final DateTimeFormatter DATE_FORMATTER =
       new DateTimeFormatterBuilder().appendPattern("yyyy-MM-dd HH:mm:ss").toFormatter();
+  private static final String CSV_HEADER =
+      "VendorID,tpep_pickup_datetime,tpep_dropoff_datetime,passenger_count,trip_distance,"
+          + "RatecodeID,store_and_fwd_flag,PULocationID,DOLocationID,payment_type,fare_amount,"
+          + "extra,mta_tax,tip_amount,tolls_amount,improvement_surcharge,total_amount,"
+          + "congestion_surcharge\n";
 
   @Disabled
   @Test
@@ -47,6 +78,43 @@ class RidesTableTest {
     res.forEach((k, v) -> System.out.println(k + " : " + v));
   }
 
+  // page cache should be dropped before benchmark to measure cold scans(e.g., 'sync; echo 3 >
+  // /proc/sys/vm/drop_caches'), the first scan is cold and the next ones are warm
+  @Disabled
+  @Test
+  void benchmarkCachedScan() {
+    benchmarkScan(ScanMode.CACHED);
+  }
+
+  @Disabled
+  @Test
+  void benchmarkDirectScan() {
+    benchmarkScan(ScanMode.DIRECT);
+  }
+
+  private void benchmarkScan(ScanMode scanMode) {
+    try (var table = new RidesTable(new Settings())) {
+      table.init(Paths.get(StandardSystemProperty.USER_HOME.value() + "/Downloads/trip_data"));
+      var yearStart = LocalDateTime.of(2020, 1, 1, 0, 0);
+      var lastMonth = LocalDateTime.of(2020, 12, 1, 0, 0);
+      for (int i = 0; i < 3; i++) {
+        var sw = Stopwatch.createStarted();
+        table
+            .getAverageDistancesAsync(
+                yearStart, yearStart.plusYears(1), null, QueryPriority.BATCH, scanMode, res -> {})
+            .result()
+            .join();
+        System.out.println(
+            scanMode + " year scan #" + i + ": " + sw.elapsed(TimeUnit.MILLISECONDS) + "ms");
+        // short query over recent data, its pages are evicted by cached year scan
+        sw = Stopwatch.createStarted();
+        table.getAverageDistances(lastMonth, lastMonth.plusDays(7));
+        System.out.println(
+            scanMode + " week query after year scan: " + sw.elapsed(TimeUnit.MILLISECONDS) + "ms");
+      }
+    }
+  }
+
   @RepeatedTest(30)
   void testAvgDistances() throws Exception {
     var t1 =
@@ -156,5 +224,573 @@ class RidesTableTest {
                             .isCloseTo(val, Offset.offset(0.00000001))));
   }
 
+  @Test
+  void testRefresh() throws Exception {
+    var csvDir = Files.createTempDirectory("avg-dist-refresh");
+    var csvFile = csvDir.resolve("trips-1.csv");
+    var pickup = LocalDateTime.of(2020, 5, 10, 10, 0);
+    Files.writeString(csvFile, CSV_HEADER + tripRows(pickup, 1, 1.0, 1000));
+
+    try (var table = new RidesTable(new Settings(12 * 1024))) {
+      table.init(csvDir);
+      var start = pickup.minusDays(1);
+      var end = pickup.plusDays(1);
+      assertThat(table.getAverageDistances(start, end)).containsEntry(1, 1.0);
+
+      // append complete rows and one incomplete line which should not be visible yet
+      Files.writeString(
+          csvFile,
+          tripRows(pickup, 1, 3.0, 1000) + "1," + pickup.format(DATE_FORMATTER),
+          StandardOpenOption.APPEND);
+      Files.writeString(csvDir.resolve("trips-2.csv"), CSV_HEADER + tripRows(pickup, 2, 5.0, 10));
+
+      assertThat(table.refresh()).isGreaterThanOrEqualTo(2);
+      var res = table.getAverageDistances(start, end);
+      assertThat(res.get(1)).isCloseTo(2.0, Offset.offset(0.00000001));
+      assertThat(res).containsEntry(2, 5.0);
+      // nothing changed since previous refresh
+      assertThat(table.refresh()).isZero();
+    }
+  }
+
+  @Test
+  void testAvgDistancesApprox() throws Exception {
+    var csvDir = Files.createTempDirectory("avg-dist-approx");
+    var pickup = LocalDateTime.of(2020, 5, 10, 10, 0);
+    var rows = new StringBuilder(CSV_HEADER);
+    for (int i = 0; i < 5000; i++) {
+      rows.append(tripRows(pickup, 1, i % 2 == 0 ? 1.0 : 3.0, 1));
+    }
+    Files.writeString(csvDir.resolve("trips.csv"), rows);
+
+    try (var table = new RidesTable(new Settings(12 * 1024).withSampleSize(100))) {
+      table.init(csvDir);
+      var start = pickup.minusDays(1);
+      var end = pickup.plusDays(1);
+
+      // loose error target is satisfied by samples
+      var estimate = table.getAverageDistancesApprox(start, end, 10, Duration.ofSeconds(10)).get(1);
+      assertThat(estimate.lowerBound()).isLessThanOrEqualTo(estimate.upperBound());
+      assertThat(estimate.value()).isBetween(1.0, 3.0);
+
+      // exact target requires scan of all splits
+      estimate = table.getAverageDistancesApprox(start, end, 0, Duration.ofSeconds(10)).get(1);
+      assertThat(estimate.value()).isCloseTo(2.0, Offset.offset(0.00000001));
+      assertThat(estimate.relativeError()).isZero();
+    }
+  }
+
+  @Test
+  void testAvgDistancesApproxWithoutSampledTrips() throws Exception {
+    var csvDir = Files.createTempDirectory("avg-dist-approx-unsampled");
+    var pickup = LocalDateTime.of(2020, 5, 10, 10, 0);
+    var rare = pickup.plusDays(10);
+    Files.writeString(
+        csvDir.resolve("trips.csv"),
+        CSV_HEADER
+            + tripRows(pickup, 1, 1.0, 2500)
+            + tripRows(rare, 2, 7.0, 1)
+            + tripRows(pickup, 1, 1.0, 2500));
+
+    try (var table = new RidesTable(new Settings(12 * 1024).withSampleSize(1))) {
+      table.init(csvDir);
+      var start = rare.minusHours(1);
+      var end = rare.plusHours(1);
+
+      // the only trip of range is most likely not sampled, but it is found by scan
+      var exact = table.getAverageDistances(start, end);
+      var approx = table.getAverageDistancesApprox(start, end, 10, Duration.ofSeconds(10));
+      assertThat(exact).containsOnlyKeys(2);
+      assertThat(approx).containsOnlyKeys(exact.keySet());
+      assertThat(approx.get(2).value()).isCloseTo(exact.get(2), Offset.offset(0.00000001));
+    }
+  }
+
+  @Test
+  void testAsyncQuery() throws Exception {
+    var csvDir = Files.createTempDirectory("avg-dist-async");
+    var pickup = LocalDateTime.of(2020, 5, 10, 10, 0);
+    Files.writeString(csvDir.resolve("trips.csv"), CSV_HEADER + tripRows(pickup, 1, 2.0, 5000));
+
+    try (var table = new RidesTable(new Settings(12 * 1024))) {
+      table.init(csvDir);
+      var start = pickup.minusDays(1);
+      var end = pickup.plusDays(1);
+
+      var partialResults = new ArrayList<HashMap<Integer, Double>>();
+      var query = table.getAverageDistancesAsync(start, end, null, partialResults::add);
+      assertThat(query.result().get()).containsEntry(1, 2.0);
+      assertThat(query.completedSplits()).isEqualTo(query.totalSplits()).isGreaterThan(1);
+      assertThat(partialResults).hasSize(query.totalSplits());
+      assertThat(partialResults).allSatisfy(res -> assertThat(res).containsEntry(1, 2.0));
+
+      var expired = table.getAverageDistancesAsync(start, end, Duration.ZERO, res -> {});
+      assertThatThrownBy(() -> expired.result().join()).isInstanceOf(CancellationException.class);
+
+      var cancelled = table.getAverageDistancesAsync(start, end, null, res -> {});
+      cancelled.cancel();
+      assertThatThrownBy(() -> cancelled.result().join()).isInstanceOf(CancellationException.class);
+    }
+  }
+
+  @Test
+  void testDirectScanMatchesCachedScan() throws Exception {
+    var csvDir = Files.createTempDirectory("direct-scan");
+    var pickup = LocalDateTime.of(2020, 5, 10, 10, 0);
+    Files.writeString(
+        csvDir.resolve("trips.csv"),
+        CSV_HEADER
+            + tripRows(pickup, 1, 2.0, 3000)
+            + tripRows(pickup.plusDays(1), 2, 3.0, 3000)
+            + tripRows(pickup.plusDays(2), 1, 4.0, 3000));
+
+    // any query is large enough to be read by direct I/O
+    try (var table = new RidesTable(new Settings(12 * 1024).withDirectScanBytes(1))) {
+      table.init(csvDir);
+      var start = pickup.plusDays(1).minusHours(1);
+      var end = pickup.plusDays(3);
+
+      var cached =
+          table
+              .getAverageDistancesAsync(
+                  start, end, null, QueryPriority.INTERACTIVE, ScanMode.CACHED, res -> {})
+              .result()
+              .get();
+      assertThat(cached).containsEntry(1, 4.0).containsEntry(2, 3.0);
+      assertThat(table.getAverageDistances(start, end)).isEqualTo(cached);
+      assertThat(
+              table
+                  .getAverageDistancesAsync(
+                      start, end, null, QueryPriority.INTERACTIVE, ScanMode.DIRECT, res -> {})
+                  .result()
+                  .get())
+          .isEqualTo(cached);
+    }
+  }
+
+  @Test
+  void testDefaultDirectScanThreshold() {
+    assertThat(new Settings(1024).directScanBytes())
+        .isEqualTo(Settings.DEFAULT_DIRECT_SCAN_SPLITS * 1024L);
+    assertThat(new Settings(1024).withDirectScanBytes(0).directScanBytes()).isZero();
+    assertThat(new Settings(1024).withDirectScanBytes(5000).directScanBytes()).isEqualTo(5000);
+  }
+
+  @Test
+  void testTripStatistics() throws Exception {
+    var csvDir = Files.createTempDirectory("trip-stats");
+    var pickup = LocalDateTime.of(2020, 5, 10, 10, 0);
+    var rows = new StringBuilder(CSV_HEADER);
+    for (int i = 0; i < 1000; i++) {
+      rows.append(tripRows(pickup, 1, i / 10.0, 1));
+    }
+    // outside of queried range
+    rows.append(tripRows(pickup.plusDays(5), 1, 1000, 10));
+    Files.writeString(csvDir.resolve("trips.csv"), rows);
+
+    try (var table = new RidesTable(new Settings(12 * 1024))) {
+      table.init(csvDir);
+      var stats = table.getTripStatistics(pickup.minusDays(1), pickup.plusDays(1));
+      assertThat(stats.distanceQuantiles()[0]).isCloseTo(50, Offset.offset(1.0));
+      assertThat(stats.distanceQuantiles()[2]).isCloseTo(99, Offset.offset(1.0));
+      // all trips have the same fare and locations
+      assertThat(stats.fareQuantiles()).containsOnly(1.1);
+      assertThat(stats.distinctPickupLocations()).isEqualTo(1);
+      assertThat(stats.distinctDropoffLocations()).isEqualTo(1);
+      assertThat(stats.distanceHistogram()).hasSize(52);
+      assertThat(stats.distanceHistogram()[1]).isEqualTo(10);
+      assertThat(Arrays.stream(stats.distanceHistogram()).sum()).isEqualTo(1000);
+    }
+  }
+
+  @Test
+  void testRevenueIsExact() throws Exception {
+    var csvDir = Files.createTempDirectory("revenue");
+    var pickup = LocalDateTime.of(2020, 5, 10, 10, 0);
+    // 1.1 and 9.0 per trip: floating point sum of 1.1 accumulates rounding errors
+    Files.writeString(
+        csvDir.resolve("trips.csv"),
+        CSV_HEADER + tripRows(pickup, 1, 1.0, 10_000) + tripRows(pickup.plusDays(5), 1, 1.0, 10));
+
+    try (var table = new RidesTable(new Settings(12 * 1024))) {
+      table.init(csvDir);
+      var revenue = table.getRevenue(pickup.minusDays(1), pickup.plusDays(1));
+      assertThat(revenue.trips()).isEqualTo(10_000);
+      assertThat(revenue.fares()).isEqualTo(new BigDecimal("11000.00"));
+      assertThat(revenue.tips()).isEqualTo(new BigDecimal("0.00"));
+      assertThat(revenue.total()).isEqualTo(new BigDecimal("90000.00"));
+    }
+  }
+
+  @Test
+  void testTripCountsByDictionaryColumn() throws Exception {
+    var csvDir = Files.createTempDirectory("trip-counts");
+    var pickup = LocalDateTime.of(2020, 5, 10, 10, 0);
+    var flagged = tripRows(pickup, 1, 1.0, 300).replace(",N,", ",Y,");
+    var unknown = tripRows(pickup, 1, 1.0, 50).replace(",N,", ",,");
+    Files.writeString(
+        csvDir.resolve("trips.csv"),
+        CSV_HEADER
+            + tripRows(pickup, 1, 1.0, 1000)
+            + flagged
+            + unknown
+            + tripRows(pickup.plusDays(5), 1, 1.0, 10));
+
+    try (var table = new RidesTable(new Settings(12 * 1024))) {
+      table.init(csvDir);
+      var start = pickup.minusDays(1);
+      var end = pickup.plusDays(1);
+      // values are known after indexing, before any query scanned the column
+      assertThat(table.getTripCounts(start, end, "store_and_fwd_flag", Set.of("Y", "X")))
+          .isEqualTo(Map.of("Y", 300L));
+      assertThat(table.getTripCounts(start, end, "store_and_fwd_flag", Set.of()))
+          .isEqualTo(Map.of("N", 1000L, "Y", 300L));
+      assertThat(table.getTripCounts(start, end, "store_and_fwd_flag", Set.of("X"))).isEmpty();
+      assertThatThrownBy(() -> table.getTripCounts(start, end, "VendorID", Set.of()))
+          .isInstanceOf(IllegalArgumentException.class);
+    }
+  }
+
+  @Test
+  void testTripCountsByZoneBorough() throws Exception {
+    var csvDir = Files.createTempDirectory("trip-counts-zones");
+    var zonesFile = Files.createTempFile("zones", ".csv");
+    Files.writeString(
+        zonesFile,
+        "LocationID,Borough,Zone\n1,EWR,Newark Airport\n4,Manhattan,Alphabet City\n"
+            + "12,Manhattan,Battery Park\n7,Queens,Astoria\n");
+    var pickup = LocalDateTime.of(2020, 5, 10, 10, 0);
+    // rows written by tripRows use 1 as pickup location
+    Files.writeString(
+        csvDir.resolve("trips.csv"),
+        CSV_HEADER
+            + tripRows(pickup, 1, 1.0, 100)
+            + tripRows(pickup, 1, 1.0, 200).replace(",N,1,", ",N,4,")
+            + tripRows(pickup, 1, 1.0, 300).replace(",N,1,", ",N,12,")
+            + tripRows(pickup, 1, 1.0, 50).replace(",N,1,", ",N,7,")
+            + tripRows(pickup, 1, 1.0, 70).replace(",N,1,", ",N,99,")
+            + tripRows(pickup.plusDays(5), 1, 1.0, 10).replace(",N,1,", ",N,4,"));
+
+    var borough = DimensionTable.load(zonesFile, "LocationID").attribute("Borough");
+    try (var table = new RidesTable(new Settings(12 * 1024))) {
+      table.init(csvDir);
+      var start = pickup.minusDays(1);
+      var end = pickup.plusDays(1);
+      assertThat(table.getTripCounts(start, end, "PULocationID", borough, Set.of()))
+          .isEqualTo(Map.of("EWR", 100L, "Manhattan", 500L, "Queens", 50L));
+      assertThat(table.getTripCounts(start, end, "PULocationID", borough, Set.of("Manhattan")))
+          .isEqualTo(Map.of("Manhattan", 500L));
+      assertThat(table.getTripCounts(start, end, "DOLocationID", borough, Set.of()))
+          .isEqualTo(Map.of("EWR", 720L));
+      assertThatThrownBy(
+              () -> table.getTripCounts(start, end, "tpep_pickup_datetime", borough, Set.of()))
+          .isInstanceOf(IllegalArgumentException.class);
+    }
+  }
+
+  @Test
+  void testAverageDistanceSeries() throws Exception {
+    var csvDir = Files.createTempDirectory("avg-dist-series");
+    var firstPickup = LocalDateTime.of(2020, 5, 1, 0, 0);
+    var queryStart = firstPickup.plusHours(5);
+    var queryEnd = firstPickup.plusDays(2).minusSeconds(1);
+    var expected = new TreeMap<LocalDateTime, Map<Integer, AvgState>>();
+    var rows = new StringBuilder(CSV_HEADER);
+    for (int i = 0; i < 5000; i++) {
+      var pickup = firstPickup.plusMinutes(ThreadLocalRandom.current().nextInt(0, 3 * 24 * 60));
+      var dropoff = pickup.plusMinutes(ThreadLocalRandom.current().nextInt(0, 90));
+      int psgCnt = ThreadLocalRandom.current().nextInt(0, 4);
+      double dist = ThreadLocalRandom.current().nextInt(1, 100) / 10.0;
+      rows.append(
+          tripRows(pickup, psgCnt, dist, 1)
+              .replace(
+                  pickup.plusMinutes(10).format(DATE_FORMATTER), dropoff.format(DATE_FORMATTER)));
+      if (!pickup.isBefore(queryStart) && !dropoff.isAfter(queryEnd)) {
+        var bucket = queryStart.plusHours(Duration.between(queryStart, pickup).toHours());
+        var avgState =
+            expected
+                .computeIfAbsent(bucket, k -> new HashMap<>())
+                .computeIfAbsent(psgCnt, k -> new AvgState(new DoubleAdder(), new LongAdder()));
+        avgState.sum.add(dist);
+        avgState.count.increment();
+      }
+    }
+    Files.writeString(csvDir.resolve("trips.csv"), rows);
+
+    try (var table = new RidesTable(new Settings(32 * 1024))) {
+      table.init(csvDir);
+      var series = table.getAverageDistanceSeries(queryStart, queryEnd, Duration.ofHours(1));
+      assertThat(series.keySet()).isEqualTo(expected.keySet());
+      expected.forEach(
+          (bucket, averages) -> {
+            assertThat(series.get(bucket).keySet()).isEqualTo(averages.keySet());
+            averages.forEach(
+                (psgCnt, avgState) ->
+                    assertThat(series.get(bucket).get(psgCnt))
+                        .isCloseTo(
+                            avgState.sum.doubleValue() / avgState.count.doubleValue(),
+                            Offset.offset(0.00000001)));
+          });
+      assertThatThrownBy(
+              () -> table.getAverageDistanceSeries(queryStart, queryEnd, Duration.ofMillis(10)))
+          .isInstanceOf(IllegalArgumentException.class);
+    }
+  }
+
+  @Test
+  void testUselessIndexesAreSkipped() throws Exception {
+    var csvDir = Files.createTempDirectory("index-stats");
+    var pickup = LocalDateTime.of(2020, 5, 10, 10, 0);
+    // trips have no missing values, so not-null indexes never prune rows
+    Files.writeString(
+        csvDir.resolve("trips.csv"),
+        CSV_HEADER + tripRows(pickup, 1, 1.0, 2000) + tripRows(pickup.plusDays(5), 2, 3.0, 2000));
+
+    var start = pickup.minusDays(1);
+    var end = pickup.plusDays(1);
+    HashMap<Integer, Double> expected;
+    IndexStatistics statistics;
+    long indexMemory;
+    try (var table = new RidesTable(new Settings(12 * 1024))) {
+      table.init(csvDir);
+      indexMemory = table.indexMemoryUsage();
+      expected = table.getAverageDistances(start, end);
+      for (int i = 0; i < IndexStatistics.MIN_EVALUATIONS; i++) {
+        assertThat(table.getAverageDistances(start, end)).isEqualTo(expected);
+      }
+      statistics = table.indexStatistics();
+    }
+    assertThat(statistics.isUseless("NotNullColumnIndex(passenger_count)")).isTrue();
+    // min/max of splits are checked by table catalog, only split which contains trips of both days
+    // is pruned by index
+    assertThat(statistics.isUseless("BucketColumnIndex(tpep_dropoff_datetime)")).isFalse();
+
+    var settings = new Settings(12 * 1024).withIndexStatistics(statistics, true);
+    try (var table = new RidesTable(settings)) {
+      table.init(csvDir);
+      assertThat(table.indexMemoryUsage()).isLessThan(indexMemory);
+      assertThat(table.getAverageDistances(start, end)).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  void testEstimateTrips() throws Exception {
+    var csvDir = Files.createTempDirectory("estimate");
+    var pickup = LocalDateTime.of(2020, 5, 10, 10, 0);
+    Files.writeString(
+        csvDir.resolve("trips.csv"),
+        CSV_HEADER + tripRows(pickup, 1, 1.0, 1000) + tripRows(pickup.plusDays(5), 2, 3.0, 3000));
+    try (var table = new RidesTable(new Settings(12 * 1024))) {
+      table.init(csvDir);
+      var passengerStats = table.columnStatistics("passenger_count");
+      assertThat(passengerStats).hasSizeGreaterThan(1);
+      assertThat(passengerStats.stream().mapToLong(ColumnStatistics::rowCount).sum())
+          .isEqualTo(4000);
+      assertThat(passengerStats).allMatch(stats -> stats.distinctCount() <= 2);
+
+      var all = table.estimateTrips(pickup.minusDays(1), pickup.plusDays(6));
+      assertThat(all.rows()).isEqualTo(4000);
+      assertThat(all.bytes()).isEqualTo(Files.size(csvDir.resolve("trips.csv")));
+      var firstDay = table.estimateTrips(pickup.minusDays(1), pickup.plusDays(1));
+      assertThat(firstDay.rows()).isBetween(500L, 1500L);
+      assertThat(table.estimateTrips(pickup.plusDays(7), pickup.plusDays(8)).rows()).isZero();
+      // full scan is chosen for query which matches all rows, result is the same
+      assertThat(table.getAverageDistances(pickup.minusDays(1), pickup.plusDays(6)))
+          .containsEntry(1, 1.0)
+          .containsEntry(2, 3.0);
+    }
+  }
+
+  @Test
+  void testLazyPartitions() throws Exception {
+    var csvDir = Files.createTempDirectory("partitions");
+    var may = LocalDateTime.of(2020, 5, 10, 10, 0);
+    var june = LocalDateTime.of(2020, 6, 10, 10, 0);
+    Files.writeString(
+        csvDir.resolve("yellow_tripdata_2020-05.csv"), CSV_HEADER + tripRows(may, 1, 1.0, 1000));
+    // trip with pickup time outside of partition belongs to June partition
+    Files.writeString(
+        csvDir.resolve("yellow_tripdata_2020-06.csv"),
+        CSV_HEADER + tripRows(june, 2, 3.0, 1000) + tripRows(may, 3, 5.0, 1));
+    var settings =
+        new Settings(12 * 1024)
+            .withPartitions(PartitionPattern.compile("yellow_tripdata_{year}-{month}.csv"), true);
+    try (var table = new RidesTable(settings)) {
+      table.init(csvDir);
+      assertThat(table.indexMemoryUsage()).isZero();
+
+      assertThat(table.getAverageDistances(may.minusDays(1), may.plusDays(1)))
+          .isEqualTo(Map.of(1, 1.0));
+      long mayIndexMemory = table.indexMemoryUsage();
+      assertThat(mayIndexMemory).isPositive();
+      assertThat(
+              table.getTripCounts(
+                  may.minusDays(1), may.plusDays(1), "store_and_fwd_flag", Set.of()))
+          .isEqualTo(Map.of("N", 1000L));
+      assertThat(table.indexMemoryUsage()).isEqualTo(mayIndexMemory);
+
+      assertThat(table.getAverageDistances(may.minusDays(1), june.plusDays(1)))
+          .isEqualTo(Map.of(1, 1.0, 2, 3.0, 3, 5.0));
+      assertThat(table.indexMemoryUsage()).isGreaterThan(mayIndexMemory);
+    }
+  }
+
+  @RepeatedTest(5)
+  void testRollupMatchesScan() throws Exception {
+    var csvDir = Files.createTempDirectory("avg-dist-rollup");
+    var firstPickup = LocalDateTime.of(2020, 5, 1, 0, 0);
+    var rows = new StringBuilder(CSV_HEADER);
+    for (int i = 0; i < 5000; i++) {
+      // trips are spread over 10 days, some of them cross midnight
+      var pickup = firstPickup.plusMinutes(ThreadLocalRandom.current().nextInt(0, 10 * 24 * 60));
+      var dropoff = pickup.plusMinutes(ThreadLocalRandom.current().nextInt(0, 180));
+      rows.append("1,")
+          .append(pickup.format(DATE_FORMATTER))
+          .append(',')
+          .append(dropoff.format(DATE_FORMATTER))
+          .append(',')
+          .append(ThreadLocalRandom.current().nextInt(0, 5))
+          .append(',')
+          .append(ThreadLocalRandom.current().nextInt(1, 100) / 10.0)
+          .append(",1,N,1,1,1,1.1,0.5,0.5,0,0,0.4,9.0,1\n");
+    }
+    Files.writeString(csvDir.resolve("trips.csv"), rows);
+
+    var rollup = new RollupDefinition("trip_distance", "passenger_count");
+    try (var scanTable = new RidesTable(new Settings(32 * 1024));
+        var rollupTable = new RidesTable(new Settings(32 * 1024).withRollups(rollup))) {
+      scanTable.init(csvDir);
+      rollupTable.init(csvDir);
+      for (int i = 0; i < 10; i++) {
+        var start = firstPickup.plusMinutes(ThreadLocalRandom.current().nextInt(0, 5 * 24 * 60));
+        var end = start.plusMinutes(ThreadLocalRandom.current().nextInt(0, 5 * 24 * 60));
+        if (i == 0) {
+          // range of whole days
+          start = firstPickup.plusDays(1);
+          end = firstPickup.plusDays(4).minusSeconds(1);
+        }
+        var expected = scanTable.getAverageDistances(start, end);
+        var actual = rollupTable.getAverageDistances(start, end);
+        assertThat(actual).hasSameSizeAs(expected);
+        expected.forEach(
+            (psgCnt, avg) ->
+                assertThat(actual.get(psgCnt)).isCloseTo(avg, Offset.offset(0.00000001)));
+      }
+    }
+  }
+
+  @Test
+  void testGzipFiles() throws Exception {
+    var csvDir = Files.createTempDirectory("avg-dist-gzip");
+    var gzipDir = Files.createTempDirectory("avg-dist-gzip");
+    var pickup = LocalDateTime.of(2020, 5, 10, 10, 0);
+    var rows = new StringBuilder(CSV_HEADER);
+    for (int i = 0; i < 5000; i++) {
+      rows.append(tripRows(pickup.plusMinutes(i), i % 4, i % 10 + 0.5, 1));
+    }
+    var bytes = rows.toString().getBytes(StandardCharsets.UTF_8);
+    Files.write(csvDir.resolve("trips.csv"), bytes);
+    // multi-member file can be split, single-member file is read by one split
+    try (var out = Files.newOutputStream(gzipDir.resolve("trips-1.csv.gz"))) {
+      int memberSize = 16 * 1024;
+      for (int offset = 0; offset < bytes.length; offset += memberSize) {
+        // finish member without closing underlying stream
+        var gzip = new GZIPOutputStream(out);
+        gzip.write(bytes, offset, Math.min(memberSize, bytes.length - offset));
+        gzip.finish();
+      }
+    }
+    try (var gzip =
+        new GZIPOutputStream(Files.newOutputStream(gzipDir.resolve("trips-2.csv.gz")))) {
+      gzip.write(bytes);
+    }
+
+    try (var plainTable = new RidesTable(new Settings(32 * 1024));
+        var gzipTable = new RidesTable(new Settings(32 * 1024))) {
+      plainTable.init(csvDir);
+      gzipTable.init(gzipDir);
+      var start = pickup.plusHours(10);
+      var end = pickup.plusHours(40);
+      var expected = plainTable.getAverageDistances(start, end);
+      var actual = gzipTable.getAverageDistances(start, end);
+      assertThat(expected).isNotEmpty();
+      expected.forEach(
+          (psgCnt, avg) -> assertThat(actual.get(psgCnt)).isCloseTo(avg, Offset.offset(0.0000001)));
+      // nothing changed since initialization
+      assertThat(gzipTable.refresh()).isZero();
+
+      // appended member is indexed as new split, trailing incomplete member doesn't cause
+      // re-indexing of the file on each refresh
+      var appended = tripRows(pickup.plusHours(20), 7, 3.5, 100).getBytes(StandardCharsets.UTF_8);
+      var out = new ByteArrayOutputStream();
+      try (var gzip = new GZIPOutputStream(out)) {
+        gzip.write(appended);
+      }
+      var member = out.toByteArray();
+      var gzipFile = gzipDir.resolve("trips-1.csv.gz");
+      Files.write(gzipFile, Arrays.copyOf(member, member.length / 2), StandardOpenOption.APPEND);
+      assertThat(gzipTable.refresh()).isZero();
+      assertThat(gzipTable.refresh()).isZero();
+      Files.write(
+          gzipFile,
+          Arrays.copyOfRange(member, member.length / 2, member.length),
+          StandardOpenOption.APPEND);
+      assertThat(gzipTable.refresh()).isEqualTo(1);
+      assertThat(gzipTable.getAverageDistances(start, end).get(7))
+          .isCloseTo(3.5, Offset.offset(0.0000001));
+    }
+  }
+
+  @Test
+  void testReplacedSplitsClosedWhenPreviousSnapshotsReleased() throws Exception {
+    var timeCol = new Column<>("time", new TimestampDataType());
+    var csvFile = Files.createTempFile("split", ".csv");
+    var csv = new StringBuilder("time\n");
+    for (int i = 0; i < 1000; i++) {
+      csv.append(LocalDateTime.of(2020, 1, 1, 0, 0).plusMinutes(i).format(DATE_FORMATTER));
+      csv.append('\n');
+    }
+    Files.writeString(csvFile, csv);
+    var file =
+        new CsvStorageFile(
+            new PlainCsvInput(csvFile, Files.size(csvFile)),
+            new Schema(List.of(timeCol)),
+            new RowOffsetLocator(100),
+            List.of(new BucketColumnIndex<>(timeCol, t -> t.truncatedTo(ChronoUnit.HOURS))),
+            List.of(),
+            0,
+            Long.MAX_VALUE);
+    var split = new RidesTable.TableSplit(file, null, Map.of());
+    assertThat(file.offHeapIndexMemoryUsage()).isPositive();
+
+    var first = new RidesTable.SnapshotRefs();
+    var second = new RidesTable.SnapshotRefs();
+    var third = new RidesTable.SnapshotRefs();
+    // query uses the first snapshot, split is dropped when the second snapshot is replaced
+    assertThat(first.tryRetain()).isTrue();
+    first.retire(List.of(), second);
+    second.retire(List.of(split), third);
+    assertThat(second.tryRetain()).isFalse();
+    assertThat(file.offHeapIndexMemoryUsage()).isPositive();
+
+    first.release();
+    assertThat(file.offHeapIndexMemoryUsage()).isZero();
+    assertThat(third.tryRetain()).isTrue();
+  }
+
+  private static String tripRows(LocalDateTime pickup, int psgCnt, double dist, int count) {
+    var row =
+        "1,"
+            + pickup.format(DATE_FORMATTER)
+            + ","
+            + pickup.plusMinutes(10).format(DATE_FORMATTER)
+            + ","
+            + psgCnt
+            + ","
+            + dist
+            + ",1,N,1,1,1,1.1,0.5,0.5,0,0,0.4,9.0,1\n";
+    return row.repeat(count);
+  }
+
   record AvgState(DoubleAdder sum, LongAdder count) {}
 }
@@ -0,0 +1,59 @@
+package com.taxi.rides;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class TimeSeriesAggregationTest {
+
+  private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+  private static final long START_SECOND = START.toEpochSecond(ZoneOffset.UTC);
+  private static final int BUCKETS = 1000;
+
+  @Test
+  void testWindowGrowsInBothDirections() {
+    var series = new TimeSeriesAggregation(START_SECOND, 60, BUCKETS);
+    // window starts at bucket 500 and is extended down to 0 and up to the last bucket
+    series.add(START_SECOND + 500 * 60, (byte) 1, 2.0);
+    series.add(START_SECOND + 500 * 60 + 59, (byte) 1, 4.0);
+    series.add(START_SECOND + 520 * 60, (byte) 1, 1.0);
+    series.add(START_SECOND, (byte) 1, 5.0);
+    series.add(START_SECOND + (BUCKETS - 1) * 60, (byte) 2, 7.0);
+
+    assertThat(series.computeResult())
+        .containsExactly(
+            Map.entry(START, averages(1, 5.0)),
+            Map.entry(START.plusMinutes(500), averages(1, 3.0)),
+            Map.entry(START.plusMinutes(520), averages(1, 1.0)),
+            Map.entry(START.plusMinutes(BUCKETS - 1), averages(2, 7.0)));
+  }
+
+  @Test
+  void testMergeAddsOtherSeriesInPlace() {
+    var merged = new TimeSeriesAggregation(START_SECOND, 60, BUCKETS);
+    var first = new TimeSeriesAggregation(START_SECOND, 60, BUCKETS);
+    first.add(START_SECOND + 10 * 60, (byte) 1, 2.0);
+    var second = new TimeSeriesAggregation(START_SECOND, 60, BUCKETS);
+    second.add(START_SECOND + 10 * 60, (byte) 1, 4.0);
+    second.add(START_SECOND + 900 * 60, (byte) 3, 1.0);
+
+    assertThat(merged.merge(first).merge(second)).isSameAs(merged);
+    assertThat(merged.computeResult())
+        .containsExactly(
+            Map.entry(START.plusMinutes(10), averages(1, 3.0)),
+            Map.entry(START.plusMinutes(900), averages(3, 1.0)));
+    // merged series are not changed
+    assertThat(first.computeResult())
+        .containsExactly(Map.entry(START.plusMinutes(10), averages(1, 2.0)));
+  }
+
+  private static HashMap<Integer, Double> averages(int passengerCount, double average) {
+    var res = new HashMap<Integer, Double>();
+    res.put(passengerCount, average);
+    return res;
+  }
+}
@@ -0,0 +1,33 @@
+package com.taxi.rides.query.aggregations;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import org.junit.jupiter.api.Test;
+
+public class DecimalSumAggregationTest {
+
+  @Test
+  void testSumIsExact() {
+    var first = new DecimalSumAggregation(2);
+    var second = new DecimalSumAggregation(2);
+    double floatingSum = 0;
+    for (int i = 0; i < 1_000_000; i++) {
+      (i % 2 == 0 ? first : second).add(10L);
+      floatingSum += 0.1;
+    }
+    var merged = first.merge(second);
+    assertThat(merged.computeResult()).isEqualTo(new BigDecimal("100000.00"));
+    assertThat(merged.count()).isEqualTo(1_000_000);
+    // the same sum computed in floating point is not exact
+    assertThat(floatingSum).isNotEqualTo(100000.0);
+  }
+
+  @Test
+  void testOverflow() {
+    var sum = new DecimalSumAggregation(2);
+    sum.add(Long.MAX_VALUE);
+    assertThatThrownBy(() -> sum.add(1L)).isInstanceOf(ArithmeticException.class);
+  }
+}
@@ -0,0 +1,29 @@
+package com.taxi.rides.query.aggregations;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+public class HistogramAggregationTest {
+
+  @Test
+  void testBuckets() {
+    var histogram = new HistogramAggregation(0, 10, 5);
+    histogram.add(-1.0);
+    histogram.add(0.0);
+    histogram.add(1.99);
+    histogram.add(2.0);
+    histogram.add(9.99);
+    histogram.add(10.0);
+    histogram.add(Double.NaN);
+    assertThat(histogram.computeResult()).containsExactly(1, 2, 1, 0, 0, 1, 1);
+    assertThat(histogram.bucketLowerBound(1)).isEqualTo(2.0);
+
+    var other = new HistogramAggregation(0, 10, 5);
+    other.add(5.0);
+    assertThat(histogram.merge(other).computeResult()).containsExactly(1, 2, 1, 1, 0, 1, 1);
+    assertThatThrownBy(() -> histogram.merge(new HistogramAggregation(0, 10, 4)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
@@ -0,0 +1,33 @@
+package com.taxi.rides.query.aggregations;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.assertj.core.data.Percentage;
+import org.junit.jupiter.api.Test;
+
+public class HyperLogLogAggregationTest {
+
+  @Test
+  void testSmallCardinality() {
+    var hll = new HyperLogLogAggregation(12);
+    assertThat(hll.computeResult()).isZero();
+    for (int i = 0; i < 100_000; i++) {
+      hll.add(i % 265);
+    }
+    assertThat(hll.computeResult()).isCloseTo(265, Percentage.withPercentage(5));
+  }
+
+  @Test
+  void testLargeCardinalityAfterMerge() {
+    var hll1 = new HyperLogLogAggregation(12);
+    var hll2 = new HyperLogLogAggregation(12);
+    for (long i = 0; i < 1_000_000; i++) {
+      hll1.add(i);
+      // half of values overlaps with the first sketch
+      hll2.add(i + 500_000);
+    }
+    assertThat(hll1.merge(hll2).computeResult()).isCloseTo(1_500_000, Percentage.withPercentage(5));
+    // arguments of merge are not changed
+    assertThat(hll1.computeResult()).isCloseTo(1_000_000, Percentage.withPercentage(5));
+  }
+}
@@ -0,0 +1,59 @@
+package com.taxi.rides.query.aggregations;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import org.assertj.core.data.Offset;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+public class TDigestAggregationTest {
+
+  @Test
+  void testEmpty() {
+    var digest = new TDigestAggregation(100, 0.5);
+    assertThat(digest.computeResult()).containsExactly(Double.NaN);
+  }
+
+  @Test
+  void testUniformValues() {
+    var digest = new TDigestAggregation(100, 0.5, 0.95, 0.99);
+    for (int i = 0; i < 100_000; i++) {
+      digest.add(i % 1000);
+    }
+    var quantiles = digest.computeResult();
+    assertThat(quantiles[0]).isCloseTo(500, Offset.offset(10.0));
+    assertThat(quantiles[1]).isCloseTo(950, Offset.offset(5.0));
+    assertThat(quantiles[2]).isCloseTo(990, Offset.offset(2.0));
+    assertThat(digest.count()).isEqualTo(100_000);
+    assertThat(digest.quantile(0)).isEqualTo(0);
+    assertThat(digest.quantile(1)).isEqualTo(999);
+  }
+
+  @RepeatedTest(10)
+  void testMergedDigestsMatchSingleDigest() {
+    int parts = ThreadLocalRandom.current().nextInt(2, 20);
+    var values = new double[50_000];
+    var merged = new TDigestAggregation(100, 0.5, 0.95, 0.99);
+    var digests = new TDigestAggregation[parts];
+    for (int i = 0; i < parts; i++) {
+      digests[i] = new TDigestAggregation(100, 0.5, 0.95, 0.99);
+    }
+    for (int i = 0; i < values.length; i++) {
+      // skewed distribution with long tail, similar to trip distances
+      values[i] = -Math.log(1 - ThreadLocalRandom.current().nextDouble()) * 3;
+      digests[ThreadLocalRandom.current().nextInt(parts)].add(values[i]);
+    }
+    for (TDigestAggregation digest : digests) {
+      merged = merged.merge(digest);
+    }
+
+    Arrays.sort(values);
+    assertThat(merged.count()).isEqualTo(values.length);
+    var quantiles = merged.computeResult();
+    assertThat(quantiles[0]).isCloseTo(values[values.length / 2], Offset.offset(0.05));
+    assertThat(quantiles[1]).isCloseTo(values[(int) (values.length * 0.95)], Offset.offset(0.15));
+    assertThat(quantiles[2]).isCloseTo(values[(int) (values.length * 0.99)], Offset.offset(0.3));
+  }
+}
@@ -0,0 +1,53 @@
+package com.taxi.rides.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.taxi.rides.RidesTable;
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Test;
+
+public class QueryServerTest {
+
+  @Test
+  void testProtocol() throws Exception {
+    var table = new RidesTable(new RidesTable.Settings());
+    table.init(Files.createTempDirectory("query-server"));
+    try (table;
+        var server = QueryServer.startOnPort(table, new QueryServer.Settings(), 0);
+        var client = SocketChannel.open(server.localAddress());
+        var reader = new BufferedReader(Channels.newReader(client, StandardCharsets.UTF_8));
+        var writer = new PrintWriter(Channels.newWriter(client, StandardCharsets.UTF_8), true)) {
+      writer.println("PING");
+      assertThat(reader.readLine()).isEqualTo("PONG");
+
+      writer.println("AVG|2020-05-01 00:00:00|2020-08-11 00:00:00");
+      assertThat(reader.readLine()).matches("OK\\|\\d+\\|");
+
+      writer.println("APPROX|2020-05-01 00:00:00|2020-08-11 00:00:00|0.01|100");
+      assertThat(reader.readLine()).matches("OK\\|\\d+\\|");
+
+      writer.println("AVG|2020-05-01 00:00:00|2020-08-11 00:00:00|1000");
+      assertThat(reader.readLine()).matches("OK\\|\\d+\\|");
+
+      writer.println("AVG|2020-05-01");
+      assertThat(reader.readLine()).startsWith("ERR|");
+
+      writer.println("UNKNOWN");
+      assertThat(reader.readLine()).startsWith("ERR|");
+
+      writer.println("REFRESH");
+      assertThat(reader.readLine()).matches("OK\\|\\d+\\|0");
+
+      writer.println("STATS");
+      assertThat(reader.readLine()).startsWith("OK|served=3,rejected=0,failed=0");
+
+      writer.println("QUIT");
+      assertThat(reader.readLine()).isNull();
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package com.taxi.rides.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import com.google.common.collect.Range;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.Test;
+
+public class ColumnStatisticsTest {
+
+  @Test
+  void testNumericColumn() {
+    var builder = new ColumnStatistics.Builder("trip_distance");
+    for (int i = 0; i < 10_000; i++) {
+      double value = i % 1000;
+      builder.add(Double.toString(value).length(), value);
+    }
+    for (int i = 0; i < 2_000; i++) {
+      builder.add(0, null);
+    }
+    var stats = builder.build();
+
+    assertThat(stats.rowCount()).isEqualTo(12_000);
+    assertThat(stats.nullCount()).isEqualTo(2_000);
+    assertThat(stats.distinctCount()).isCloseTo(1000, within(150L));
+    assertThat(stats.histogramBounds()[0]).isEqualTo(0);
+    assertThat(stats.histogramBounds()[stats.histogramBounds().length - 1]).isEqualTo(999);
+    double nonNull = 10_000.0 / 12_000;
+    assertThat(stats.selectivity(Range.all())).isCloseTo(nonNull, within(1e-9));
+    assertThat(stats.selectivity(Range.atLeast(0.0))).isCloseTo(nonNull, within(1e-9));
+    assertThat(stats.selectivity(Range.lessThan(0.0))).isZero();
+    assertThat(stats.selectivity(Range.greaterThan(999.0))).isZero();
+    assertThat(stats.selectivity(Range.closed(0.0, 499.0))).isCloseTo(nonNull / 2, within(0.06));
+    assertThat(stats.notEqualSelectivity(null)).isCloseTo(nonNull, within(1e-9));
+  }
+
+  @Test
+  void testTimestampAndStringColumns() {
+    var timestamps = new ColumnStatistics.Builder("tpep_pickup_datetime");
+    var flags = new ColumnStatistics.Builder("store_and_fwd_flag");
+    var start = LocalDateTime.of(2020, 1, 1, 0, 0);
+    for (int i = 0; i < 1000; i++) {
+      timestamps.add(19, start.plusMinutes(i));
+      flags.add(1, i % 10 == 0 ? "Y" : "N");
+    }
+    var timestampStats = timestamps.build();
+    var flagStats = flags.build();
+
+    assertThat(timestampStats.distinctCount()).isCloseTo(1000, within(150L));
+    assertThat(timestampStats.averageWidth()).isEqualTo(19);
+    assertThat(timestampStats.selectivity(Range.atLeast(start.plusMinutes(900))))
+        .isCloseTo(0.1, within(0.05));
+    assertThat(timestampStats.selectivity(Range.atMost(start.minusDays(1)))).isZero();
+    // string values have no histogram, range selectivity is unknown
+    assertThat(flagStats.distinctCount()).isEqualTo(2);
+    assertThat(flagStats.histogramBounds()).isEmpty();
+    assertThat(flagStats.selectivity(Range.atLeast("Y"))).isEqualTo(1);
+    assertThat(flagStats.notEqualSelectivity("Y")).isEqualTo(0.5);
+  }
+}
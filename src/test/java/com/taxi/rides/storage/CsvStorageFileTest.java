@@ -0,0 +1,87 @@
+package com.taxi.rides.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.Range;
+import com.taxi.rides.storage.QueryPredicate.Between;
+import com.taxi.rides.storage.index.BucketColumnIndex;
+import com.taxi.rides.storage.index.RowOffsetLocator;
+import com.taxi.rides.storage.schema.Column;
+import com.taxi.rides.storage.schema.Schema;
+import com.taxi.rides.storage.schema.datatypes.DoubleDataType;
+import com.taxi.rides.storage.schema.datatypes.TimestampDataType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class CsvStorageFileTest {
+
+  private static final DateTimeFormatter DATE_FORMATTER =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+  private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+  private static final int ROWS_PER_DAY = 50;
+
+  private final Column<LocalDateTime> timeCol = new Column<>("time", new TimestampDataType());
+  private final Column<Double> valueCol = new Column<>("value", new DoubleDataType());
+  private final Schema schema = new Schema(List.of(timeCol, valueCol));
+
+  @Test
+  void testRowLocatorRefinement() throws Exception {
+    var csvFile = writeCsv(20);
+    var file =
+        new CsvStorageFile(
+            new PlainCsvInput(csvFile, Files.size(csvFile)),
+            schema,
+            new RowOffsetLocator(200),
+            List.of(new BucketColumnIndex<>(timeCol, t -> t.truncatedTo(ChronoUnit.DAYS))),
+            List.of(),
+            0,
+            Long.MAX_VALUE);
+
+    var day = START.plusDays(5);
+    var predicate =
+        new QueryPredicate()
+            .withBetween(List.of(new Between<>(timeCol, Range.closed(day, day.plusHours(23)))));
+    long rowsBefore = countRows(file, predicate);
+    assertThat(rowsBefore).isGreaterThan(ROWS_PER_DAY);
+    // the same region is hit by range boundaries, it should be refined
+    countRows(file, predicate);
+    assertThat(file.refineRowLocator(2, 10)).isPositive();
+
+    long rowsAfter = countRows(file, predicate);
+    assertThat(rowsAfter).isLessThan(rowsBefore).isGreaterThanOrEqualTo(ROWS_PER_DAY);
+    assertThat(countRows(file, new QueryPredicate())).isEqualTo(20 * ROWS_PER_DAY);
+  }
+
+  private long countRows(CsvStorageFile file, QueryPredicate predicate) throws Exception {
+    long count = 0;
+    try (var reader = file.openReader(List.of(timeCol, valueCol), predicate)) {
+      while (reader.hasNext()) {
+        var row = reader.next();
+        assertThat(row.get(0)).isInstanceOf(LocalDateTime.class);
+        assertThat(row.get(1)).isInstanceOf(Double.class);
+        count++;
+      }
+    }
+    return count;
+  }
+
+  private Path writeCsv(int days) throws Exception {
+    var csv = new StringBuilder("time,value\n");
+    for (int d = 0; d < days; d++) {
+      for (int i = 0; i < ROWS_PER_DAY; i++) {
+        csv.append(START.plusDays(d).plusMinutes(i).format(DATE_FORMATTER))
+            .append(',')
+            .append(i * 1.5)
+            .append('\n');
+      }
+    }
+    var file = Files.createTempFile("storage-file", ".csv");
+    Files.writeString(file, csv);
+    return file;
+  }
+}
@@ -0,0 +1,50 @@
+package com.taxi.rides.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.taxi.rides.storage.schema.datatypes.StringDictionary;
+import java.nio.file.Files;
+import org.junit.jupiter.api.Test;
+
+public class DimensionTableTest {
+
+  @Test
+  void testLookupByKey() throws Exception {
+    var csvFile = Files.createTempFile("zones", ".csv");
+    Files.writeString(
+        csvFile,
+        "\"LocationID\",\"Borough\",\"Zone\",\"service_zone\"\n"
+            + "1,\"EWR\",\"Newark Airport\",\"EWR\"\n"
+            + "4,\"Manhattan\",\"Alphabet City\",\"Yellow Zone\"\n"
+            + "7,\"Queens\",\"Astoria\",\"Boro Zone\"\n"
+            + "12,\"Manhattan\",\"Battery Park\",\"Yellow Zone\"\n"
+            + "265,\"Unknown\",,\n");
+
+    var zones = DimensionTable.load(csvFile, "LocationID");
+    assertThat(zones.size()).isEqualTo(5);
+    assertThat(zones.attributeNames()).containsExactly("Borough", "Zone", "service_zone");
+
+    var borough = zones.attribute("Borough");
+    assertThat(borough.values()).containsExactly("EWR", "Manhattan", "Queens", "Unknown");
+    assertThat(borough.codeOf(4)).isEqualTo(borough.codeOf(12));
+    assertThat(borough.decode(borough.codeOf(7))).isEqualTo("Queens");
+    assertThat(borough.codeOfValue("Manhattan")).isEqualTo(borough.codeOf(4));
+    for (long unknownKey : new long[] {0, 2, 264, 266, -1, Long.MAX_VALUE}) {
+      assertThat(borough.codeOf(unknownKey)).isEqualTo(StringDictionary.NO_CODE);
+    }
+    assertThat(zones.attribute("Zone").codeOf(265)).isEqualTo(StringDictionary.NO_CODE);
+    assertThatThrownBy(() -> zones.attribute("LocationID"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void testInvalidKey() throws Exception {
+    var csvFile = Files.createTempFile("zones", ".csv");
+    Files.writeString(csvFile, "LocationID,Borough\n1,Queens\n40000,Bronx\n");
+    assertThatThrownBy(() -> DimensionTable.load(csvFile, "LocationID"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> DimensionTable.load(csvFile, "ID"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
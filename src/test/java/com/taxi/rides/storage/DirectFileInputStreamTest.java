@@ -0,0 +1,72 @@
+package com.taxi.rides.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+public class DirectFileInputStreamTest {
+
+  @Test
+  void testReadFromUnalignedOffsets() throws Exception {
+    var data = new byte[3 * 1024 * 1024 + 123];
+    new Random(42).nextBytes(data);
+    var file = Files.createTempFile("direct", ".bin");
+    Files.write(file, data);
+
+    for (long offset : new long[] {0, 1, 4095, 4096, 1024 * 1024 + 7, data.length - 5}) {
+      var stream = DirectFileInputStream.open(file, offset);
+      Assumptions.assumeTrue(stream.isPresent(), "File system doesn't support direct I/O");
+      try (InputStream in = stream.get()) {
+        assertThat(in.readAllBytes())
+            .isEqualTo(Arrays.copyOfRange(data, (int) offset, data.length));
+      }
+    }
+  }
+
+  @Test
+  void testSkip() throws Exception {
+    var data = new byte[2 * 1024 * 1024];
+    new Random(7).nextBytes(data);
+    var file = Files.createTempFile("direct", ".bin");
+    Files.write(file, data);
+
+    var stream = DirectFileInputStream.open(file, 10);
+    Assumptions.assumeTrue(stream.isPresent(), "File system doesn't support direct I/O");
+    try (InputStream in = stream.get()) {
+      var buf = new byte[100];
+      assertThat(in.readNBytes(buf, 0, 100)).isEqualTo(100);
+      assertThat(buf).isEqualTo(Arrays.copyOfRange(data, 10, 110));
+      // skip inside of buffer and beyond it
+      assertThat(in.skip(1000)).isEqualTo(1000);
+      assertThat(in.read()).isEqualTo(data[1110] & 0xFF);
+      assertThat(in.skip(1024 * 1024 + 5000)).isEqualTo(1024 * 1024 + 5000);
+      assertThat(in.readAllBytes())
+          .isEqualTo(Arrays.copyOfRange(data, 1111 + 1024 * 1024 + 5000, data.length));
+    }
+  }
+
+  @Test
+  void testReadAfterCloseFails() throws Exception {
+    var data = new byte[64 * 1024];
+    new Random(1).nextBytes(data);
+    var file = Files.createTempFile("direct", ".bin");
+    Files.write(file, data);
+
+    var stream = DirectFileInputStream.open(file, 0);
+    Assumptions.assumeTrue(stream.isPresent(), "File system doesn't support direct I/O");
+    var in = stream.get();
+    assertThat(in.read()).isEqualTo(data[0] & 0xFF);
+    in.close();
+    // buffer is freed by the first close
+    in.close();
+    assertThatThrownBy(in::read).isInstanceOf(IOException.class);
+    assertThatThrownBy(() -> in.read(new byte[10], 0, 10)).isInstanceOf(IOException.class);
+  }
+}
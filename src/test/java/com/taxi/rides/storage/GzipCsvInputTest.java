@@ -0,0 +1,148 @@
+package com.taxi.rides.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+
+public class GzipCsvInputTest {
+
+  @Test
+  void testReadFromMemberCheckpoints() throws Exception {
+    var data = new StringBuilder();
+    for (int i = 0; i < 100_000; i++) {
+      data.append("row-").append(i).append('\n');
+    }
+    var bytes = data.toString().getBytes(StandardCharsets.US_ASCII);
+    var file = Files.createTempFile("members", ".csv.gz");
+    // compress data as 4 independent members
+    int memberSize = bytes.length / 4 + 1;
+    for (int offset = 0; offset < bytes.length; offset += memberSize) {
+      Files.write(
+          file,
+          gzip(Arrays.copyOfRange(bytes, offset, Math.min(bytes.length, offset + memberSize))),
+          StandardOpenOption.APPEND);
+    }
+    long completeSize = Files.size(file);
+    // member which is still written is not visible
+    var incomplete = gzip(bytes);
+    Files.write(file, Arrays.copyOf(incomplete, incomplete.length / 2), StandardOpenOption.APPEND);
+
+    var input = GzipCsvInput.open(file);
+    assertThat(input.checkpointsCount()).isEqualTo(4);
+    assertThat(input.size()).isEqualTo(bytes.length);
+    assertThat(input.compressedSize()).isEqualTo(completeSize);
+    for (long offset : new long[] {0, 1, memberSize - 1, memberSize, memberSize * 3L + 17}) {
+      try (var stream = input.openAt(offset)) {
+        assertThat(stream.readAllBytes())
+            .isEqualTo(Arrays.copyOfRange(bytes, (int) offset, bytes.length));
+      }
+    }
+    try (var stream = input.openAt(bytes.length)) {
+      assertThat(stream.read()).isEqualTo(-1);
+    }
+  }
+
+  @Test
+  void testSingleMember() throws Exception {
+    var bytes = "a,b\n1,2\n".getBytes(StandardCharsets.US_ASCII);
+    var file = Files.createTempFile("single", ".csv.gz");
+    Files.write(file, gzip(bytes));
+
+    var input = GzipCsvInput.open(file);
+    assertThat(input.checkpointsCount()).isEqualTo(1);
+    try (var stream = input.openAt(4)) {
+      assertThat(new String(stream.readAllBytes(), StandardCharsets.US_ASCII)).isEqualTo("1,2\n");
+    }
+  }
+
+  @Test
+  void testBlockCompressedMembers() throws Exception {
+    var data = new StringBuilder();
+    for (int i = 0; i < 20_000; i++) {
+      data.append("row-").append(i).append('\n');
+    }
+    var bytes = data.toString().getBytes(StandardCharsets.US_ASCII);
+    var file = Files.createTempFile("blocks", ".csv.gz");
+    int blockSize = 32 * 1024;
+    int blocks = 0;
+    for (int offset = 0; offset < bytes.length; offset += blockSize, blocks++) {
+      Files.write(
+          file,
+          bgzfBlock(Arrays.copyOfRange(bytes, offset, Math.min(bytes.length, offset + blockSize))),
+          StandardOpenOption.APPEND);
+    }
+
+    var input = GzipCsvInput.open(file);
+    assertThat(input.checkpointsCount()).isEqualTo(blocks);
+    assertThat(input.size()).isEqualTo(bytes.length);
+    try (var stream = input.openAt(blockSize + 5)) {
+      assertThat(stream.readAllBytes())
+          .isEqualTo(Arrays.copyOfRange(bytes, blockSize + 5, bytes.length));
+    }
+  }
+
+  @Test
+  void testRefreshScansOnlyAppendedMembers() throws Exception {
+    var first = "a,b\n1,2\n".getBytes(StandardCharsets.US_ASCII);
+    var second = "3,4\n".getBytes(StandardCharsets.US_ASCII);
+    var file = Files.createTempFile("appended", ".csv.gz");
+    Files.write(file, gzip(first));
+    // trailing member is still written
+    var incomplete = gzip(second);
+    Files.write(file, Arrays.copyOf(incomplete, incomplete.length - 4), StandardOpenOption.APPEND);
+
+    var input = GzipCsvInput.open(file);
+    assertThat(input.size()).isEqualTo(first.length);
+    assertThat(input.scannedSize()).isEqualTo(Files.size(file));
+    assertThat(input.compressedSize()).isLessThan(input.scannedSize());
+
+    Files.write(
+        file,
+        Arrays.copyOfRange(incomplete, incomplete.length - 4, incomplete.length),
+        StandardOpenOption.APPEND);
+    var refreshed = input.refresh();
+    assertThat(refreshed.checkpointsCount()).isEqualTo(2);
+    assertThat(refreshed.compressedSize()).isEqualTo(Files.size(file));
+    try (var stream = refreshed.openAt(0)) {
+      assertThat(new String(stream.readAllBytes(), StandardCharsets.US_ASCII))
+          .isEqualTo("a,b\n1,2\n3,4\n");
+    }
+  }
+
+  /** Compress data as gzip member with 'BC' extra field which stores member size(bgzip block). */
+  private static byte[] bgzfBlock(byte[] data) {
+    var deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    deflater.setInput(data);
+    deflater.finish();
+    var compressed = new byte[data.length + 1024];
+    int compressedSize = deflater.deflate(compressed);
+    deflater.end();
+    var crc = new CRC32();
+    crc.update(data);
+    var block = ByteBuffer.allocate(26 + compressedSize).order(ByteOrder.LITTLE_ENDIAN);
+    block.put(new byte[] {0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff});
+    block.putShort((short) 6).put((byte) 'B').put((byte) 'C').putShort((short) 2);
+    block.putShort((short) (block.capacity() - 1));
+    block.put(compressed, 0, compressedSize);
+    block.putInt((int) crc.getValue()).putInt(data.length);
+    return block.array();
+  }
+
+  private static byte[] gzip(byte[] data) throws Exception {
+    var out = new ByteArrayOutputStream();
+    try (var gzip = new GZIPOutputStream(out)) {
+      gzip.write(data);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,58 @@
+package com.taxi.rides.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.Range;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class OffsetRangesInputStreamTest {
+
+  @Test
+  void testRangesAreReadWithSkippedGaps() throws Exception {
+    var rows = new ArrayList<String>();
+    var offsets = new ArrayList<Long>();
+    var csv = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      offsets.add((long) csv.length());
+      var row = i == 42 ? "42,\"multi\nline\"\n" : i + ",value" + i + "\n";
+      rows.add(row);
+      csv.append(row);
+    }
+    var file = Files.createTempFile("ranges", ".csv");
+    Files.writeString(file, csv);
+    var input = new PlainCsvInput(file, Files.size(file));
+
+    var ranges =
+        List.of(
+            Range.closed(offsets.get(0), offsets.get(2)),
+            Range.closed(offsets.get(40), offsets.get(42)),
+            Range.closed(offsets.get(99), offsets.get(99)));
+    try (var stream = new OffsetRangesInputStream(input, ranges, input.size(), false)) {
+      var content = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+      var expected =
+          String.join("", rows.subList(0, 3))
+              + String.join("", rows.subList(40, 43))
+              + rows.get(99);
+      assertThat(content).isEqualTo(expected);
+      assertThat(stream.bytesRead()).isEqualTo(expected.length());
+      assertThat(stream.bytesSkipped()).isEqualTo(csv.length() - expected.length());
+      assertThat(stream.seeks()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  void testCoalesce() {
+    var ranges =
+        List.of(Range.closed(0L, 100L), Range.closed(150L, 200L), Range.closed(1000L, 1100L));
+
+    assertThat(OffsetRangesInputStream.coalesce(ranges, 0)).isEqualTo(ranges);
+    assertThat(OffsetRangesInputStream.coalesce(ranges, 50))
+        .containsExactly(Range.closed(0L, 200L), Range.closed(1000L, 1100L));
+    assertThat(OffsetRangesInputStream.coalesce(ranges, 1000))
+        .containsExactly(Range.closed(0L, 1100L));
+  }
+}
@@ -0,0 +1,48 @@
+package com.taxi.rides.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.Range;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+
+public class PartitionPatternTest {
+
+  @Test
+  void testFileNamePattern() {
+    var pattern = PartitionPattern.compile("yellow_tripdata_{year}-{month}.csv");
+    assertThat(pattern.dateRange(Path.of("yellow_tripdata_2020-02.csv")))
+        .contains(Range.closed(LocalDate.of(2020, 2, 1), LocalDate.of(2020, 2, 29)));
+    assertThat(pattern.dateRange(Path.of("2020", "yellow_tripdata_2020-12.csv")))
+        .contains(Range.closed(LocalDate.of(2020, 12, 1), LocalDate.of(2020, 12, 31)));
+    assertThat(pattern.dateRange(Path.of("green_tripdata_2020-02.csv"))).isEmpty();
+    assertThat(pattern.dateRange(Path.of("my_yellow_tripdata_2020-02.csv"))).isEmpty();
+    assertThat(pattern.dateRange(Path.of("yellow_tripdata_2020-13.csv"))).isEmpty();
+    assertThat(pattern.dateRange(Path.of("yellow_tripdata_2020-02.csv.gz"))).isEmpty();
+  }
+
+  @Test
+  void testHiveStylePattern() {
+    var pattern = PartitionPattern.compile("year={year}/month={month}/day={day}/");
+    assertThat(pattern.dateRange(Path.of("trips", "year=2020", "month=5", "day=07", "a.csv")))
+        .contains(Range.closed(LocalDate.of(2020, 5, 7), LocalDate.of(2020, 5, 7)));
+    assertThat(pattern.dateRange(Path.of("year=2020", "month=05", "a.csv"))).isEmpty();
+
+    var yearly = PartitionPattern.compile("year={year}/*.csv");
+    assertThat(yearly.dateRange(Path.of("year=2019", "trips.csv")))
+        .contains(Range.closed(LocalDate.of(2019, 1, 1), LocalDate.of(2019, 12, 31)));
+    assertThat(yearly.dateRange(Path.of("year=2019", "nested", "trips.csv"))).isEmpty();
+  }
+
+  @Test
+  void testInvalidPattern() {
+    assertThatThrownBy(() -> PartitionPattern.compile("trips_{month}.csv"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> PartitionPattern.compile("trips_{year}_{hour}.csv"))
+        .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> PartitionPattern.compile("{year}/{year}.csv"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
@@ -0,0 +1,93 @@
+package com.taxi.rides.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.Range;
+import com.taxi.rides.storage.QueryPredicate.Between;
+import com.taxi.rides.storage.QueryPredicate.NotEqual;
+import com.taxi.rides.storage.index.MinMaxColumnIndex;
+import com.taxi.rides.storage.index.NotNullColumnIndex;
+import com.taxi.rides.storage.index.RowOffsetLocator;
+import com.taxi.rides.storage.schema.Column;
+import com.taxi.rides.storage.schema.Schema;
+import com.taxi.rides.storage.schema.datatypes.DoubleDataType;
+import com.taxi.rides.storage.schema.datatypes.TimestampDataType;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class SplitCatalogTest {
+
+  private static final DateTimeFormatter DATE_FORMATTER =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+  private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+  private final Column<LocalDateTime> timeCol = new Column<>("time", new TimestampDataType());
+  private final Column<Double> valueCol = new Column<>("value", new DoubleDataType());
+
+  @Test
+  void testCandidateSplits() throws Exception {
+    // each split contains trips of about one day, values of the last days are missing
+    var csvFile = Files.createTempFile("catalog", ".csv");
+    var csv = new StringBuilder("time,value\n");
+    for (int day = 0; day < 10; day++) {
+      for (int i = 0; i < 100; i++) {
+        csv.append(START.plusDays(day).plusMinutes(i).format(DATE_FORMATTER))
+            .append(',')
+            .append(day < 8 ? String.valueOf(i) : "")
+            .append('\n');
+      }
+    }
+    Files.writeString(csvFile, csv.toString());
+    var input = new PlainCsvInput(csvFile, Files.size(csvFile));
+    var files = new ArrayList<CsvStorageFile>();
+    long startAt = 0;
+    while (startAt < input.size()) {
+      var file =
+          new CsvStorageFile(
+              input,
+              new Schema(List.of(timeCol, valueCol)),
+              new RowOffsetLocator(16),
+              List.of(new MinMaxColumnIndex<>(timeCol), new NotNullColumnIndex<>(valueCol)),
+              List.of(),
+              startAt,
+              100 * 22);
+      files.add(file);
+      startAt = file.endOffset() + 1;
+    }
+    assertThat(files).hasSizeGreaterThan(5);
+    var catalog = SplitCatalog.of(files);
+
+    assertThat(catalog.candidates(new QueryPredicate()).cardinality()).isEqualTo(files.size());
+    for (var range :
+        List.of(
+            Range.closed(START.plusDays(3), START.plusDays(5)),
+            Range.atLeast(START.plusDays(8).plusHours(1)),
+            Range.atMost(START.plusDays(1)),
+            Range.closed(START.plusDays(2).plusHours(5), START.plusDays(2).plusHours(6)))) {
+      var candidates = catalog.candidates(between(range));
+      assertThat(candidates.isEmpty()).isFalse();
+      for (int i = 0; i < files.size(); i++) {
+        var stats = files.get(i).columnStatistics(timeCol.name()).orElseThrow();
+        var splitRange =
+            Range.closed(
+                LocalDateTime.ofEpochSecond((long) stats.min(), 0, ZoneOffset.UTC),
+                LocalDateTime.ofEpochSecond((long) stats.max(), 0, ZoneOffset.UTC));
+        assertThat(candidates.get(i)).isEqualTo(splitRange.isConnected(range));
+      }
+    }
+    assertThat(catalog.candidates(between(Range.atMost(START.minusDays(1)))).isEmpty()).isTrue();
+
+    var notNull = new QueryPredicate().withNotEquals(List.of(new NotEqual<>(valueCol, null)));
+    assertThat(catalog.candidates(notNull).get(0)).isTrue();
+    assertThat(catalog.candidates(notNull).get(files.size() - 1)).isFalse();
+  }
+
+  private QueryPredicate between(Range<LocalDateTime> range) {
+    return new QueryPredicate().withBetween(List.of(new Between<>(timeCol, range)));
+  }
+}
@@ -7,12 +7,15 @@ import com.google.common.collect.Comparators;
 import com.google.common.collect.Range;
 import com.taxi.rides.storage.QueryPredicate.Between;
 import com.taxi.rides.storage.schema.Column;
+import com.taxi.rides.storage.schema.datatypes.DataType;
 import com.taxi.rides.storage.schema.datatypes.TimestampDataType;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalAdjusters;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.RepeatedTest;
 
 public class BucketColumnIndexTest {
@@ -160,4 +163,109 @@ public class BucketColumnIndexTest {
                 index.evaluateBetween(new Between<>(col, Range.atMost(end.plusMonths(1))))))
         .allSatisfy(Range::isEmpty);
   }
+
+  @RepeatedTest(100)
+  void testFrozenIndexReturnsSameRanges() {
+    var col = new Column<>("col", new TimestampDataType());
+    var building = new BucketColumnIndex<>(col, (LocalDateTime val) -> val.toLocalDate());
+    var frozen = new BucketColumnIndex<>(col, (LocalDateTime val) -> val.toLocalDate());
+    var start = LocalDateTime.of(2020, 1, 1, 0, 0);
+    for (long i = 0; i < 1000; i++) {
+      var value = start.plusHours(i).plusMinutes(ThreadLocalRandom.current().nextInt(-300, 300));
+      building.addEntry(i, value);
+      frozen.addEntry(i, value);
+    }
+    try (var arena = IndexArena.offHeap()) {
+      frozen.freeze(arena);
+      assertThat(arena.allocatedBytes()).isPositive();
+
+      for (int hours = -100; hours < 1100; hours += 13) {
+        var from = start.plusHours(hours);
+        var until = from.plusHours(ThreadLocalRandom.current().nextInt(0, 100));
+        for (var range :
+            List.of(Range.closed(from, until), Range.atLeast(from), Range.atMost(from))) {
+          assertThat(frozen.evaluateBetween(new Between<>(col, range)))
+              .isEqualTo(building.evaluateBetween(new Between<>(col, range)));
+        }
+      }
+    }
+  }
+
+  @RepeatedTest(100)
+  void testBatchedEntriesBuildSameIndex() {
+    var col = new Column<>("col", new TimestampDataType());
+    var single = new BucketColumnIndex<>(col, (LocalDateTime val) -> val.toLocalDate());
+    var batched = new BucketColumnIndex<>(col, (LocalDateTime val) -> val.toLocalDate());
+    var start = LocalDateTime.of(2020, 1, 1, 0, 0);
+    int batchSize = ThreadLocalRandom.current().nextInt(1, 100);
+    var rowIds = new long[batchSize];
+    var values = new LocalDateTime[batchSize];
+    int count = 0;
+    for (long i = 0; i < 1000; i++) {
+      var value = start.plusHours(i).plusMinutes(ThreadLocalRandom.current().nextInt(-300, 300));
+      single.addEntry(i, value);
+      rowIds[count] = i;
+      values[count++] = value;
+      if (count == batchSize || i == 999) {
+        batched.addEntries(rowIds, new long[batchSize], values, count);
+        count = 0;
+      }
+    }
+
+    for (int hours = -100; hours < 1100; hours += 13) {
+      var from = start.plusHours(hours);
+      var until = from.plusHours(ThreadLocalRandom.current().nextInt(0, 100));
+      for (var range :
+          List.of(Range.closed(from, until), Range.atLeast(from), Range.atMost(from))) {
+        assertThat(batched.evaluateBetween(new Between<>(col, range)))
+            .isEqualTo(single.evaluateBetween(new Between<>(col, range)));
+      }
+    }
+  }
+
+  @RepeatedTest(100)
+  void testLongBatchesDetectRunsByBucketBounds() {
+    var col = new Column<>("col", new TimestampDataType());
+    var single =
+        new BucketColumnIndex<>(col, (LocalDateTime val) -> val.truncatedTo(ChronoUnit.DAYS));
+    var bucketIdCalls = new AtomicInteger();
+    var batched =
+        new BucketColumnIndex<>(
+            col,
+            (LocalDateTime val) -> {
+              bucketIdCalls.incrementAndGet();
+              return val.truncatedTo(ChronoUnit.DAYS);
+            },
+            day -> Range.closedOpen(day, day.plusDays(1)));
+    var start = LocalDateTime.of(2020, 1, 1, 0, 0);
+    int batchSize = ThreadLocalRandom.current().nextInt(1, 100);
+    var rowIds = new long[batchSize];
+    var values = new long[batchSize];
+    int count = 0;
+    int batches = 0;
+    for (long i = 0; i < 1000; i++) {
+      // rows are ordered by time, every 7th row has no value
+      var value = i % 7 == 3 ? null : start.plusHours(i);
+      single.addEntry(i, value);
+      rowIds[count] = i;
+      values[count++] = value == null ? DataType.NULL_LONG : value.toEpochSecond(ZoneOffset.UTC);
+      if (count == batchSize || i == 999) {
+        batched.addEntries(rowIds, new long[batchSize], values, count);
+        count = 0;
+        batches++;
+      }
+    }
+
+    // bucket ID is computed once per day and once per batch
+    assertThat(bucketIdCalls.get()).isLessThanOrEqualTo(1000 / 24 + 1 + batches);
+    for (int hours = -100; hours < 1100; hours += 13) {
+      var from = start.plusHours(hours);
+      var until = from.plusHours(ThreadLocalRandom.current().nextInt(0, 100));
+      for (var range :
+          List.of(Range.closed(from, until), Range.atLeast(from), Range.atMost(from))) {
+        assertThat(batched.evaluateBetween(new Between<>(col, range)))
+            .isEqualTo(single.evaluateBetween(new Between<>(col, range)));
+      }
+    }
+  }
 }
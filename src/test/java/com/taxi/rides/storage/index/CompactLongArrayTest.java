@@ -0,0 +1,61 @@
+package com.taxi.rides.storage.index;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+public class CompactLongArrayTest {
+
+  @RepeatedTest(100)
+  void testRandomValues() {
+    int size = ThreadLocalRandom.current().nextInt(1, 1000);
+    long bound = 1L << ThreadLocalRandom.current().nextInt(1, 63);
+    var values = new long[size];
+    for (int i = 0; i < size; i++) {
+      values[i] = ThreadLocalRandom.current().nextLong(-bound, bound);
+    }
+
+    var array = CompactLongArray.of(values, size);
+    assertThat(array.size()).isEqualTo(size);
+    for (int i = 0; i < size; i++) {
+      assertThat(array.get(i)).isEqualTo(values[i]);
+    }
+  }
+
+  @Test
+  void testLinearValuesArePackedTightly() {
+    int size = 10_000;
+    var rowIds = new long[size];
+    var offsets = new long[size];
+    long offset = 0;
+    for (int i = 0; i < size; i++) {
+      rowIds[i] = i * 8192L;
+      offsets[i] = offset;
+      offset += 8192 * 100 + ThreadLocalRandom.current().nextInt(0, 1000);
+    }
+
+    var packedRowIds = CompactLongArray.of(rowIds, size);
+    var packedOffsets = CompactLongArray.of(offsets, size);
+    for (int i = 0; i < size; i++) {
+      assertThat(packedRowIds.get(i)).isEqualTo(rowIds[i]);
+      assertThat(packedOffsets.get(i)).isEqualTo(offsets[i]);
+    }
+    // row IDs with constant step don't require any bits per value
+    assertThat(packedRowIds.memoryUsage()).isLessThan(100);
+    assertThat(packedOffsets.memoryUsage()).isLessThan(8L * size / 2);
+  }
+
+  @Test
+  void testSearch() {
+    var values = new long[] {-10, 0, 5, 5, 20};
+    var array = CompactLongArray.of(values, values.length);
+    assertThat(CompactLongArray.floorIndex(array::get, array.size(), -11)).isEqualTo(-1);
+    assertThat(CompactLongArray.floorIndex(array::get, array.size(), 1)).isEqualTo(1);
+    assertThat(CompactLongArray.floorIndex(array::get, array.size(), 100)).isEqualTo(4);
+    assertThat(CompactLongArray.ceilingIndex(array::get, array.size(), -11)).isEqualTo(0);
+    assertThat(CompactLongArray.ceilingIndex(array::get, array.size(), 6)).isEqualTo(4);
+    assertThat(CompactLongArray.ceilingIndex(array::get, array.size(), 21)).isEqualTo(5);
+  }
+}
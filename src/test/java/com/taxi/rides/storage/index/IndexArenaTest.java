@@ -0,0 +1,52 @@
+package com.taxi.rides.storage.index;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.common.collect.Range;
+import org.junit.jupiter.api.Test;
+
+public class IndexArenaTest {
+
+  @Test
+  void testOffHeapRegions() {
+    var arena = IndexArena.offHeap();
+    var region = arena.allocate(1024);
+    assertThat(region.isDirect()).isTrue();
+    assertThat(arena.allocate(512).isDirect()).isTrue();
+    assertThat(arena.allocatedBytes()).isEqualTo(1536);
+
+    arena.retire(region);
+    assertThat(arena.allocatedBytes()).isEqualTo(512);
+    // region which is already retired is not accounted twice
+    arena.retire(region);
+    assertThat(arena.allocatedBytes()).isEqualTo(512);
+
+    arena.close();
+    assertThat(arena.allocatedBytes()).isZero();
+    assertThatThrownBy(() -> arena.allocate(8)).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void testRefinedLocatorRetiresOldMarks() {
+    try (var arena = IndexArena.offHeap()) {
+      var locator = new RowOffsetLocator(100);
+      for (long i = 0; i < 1000; i++) {
+        locator.addEntry(i, i * 100);
+      }
+      locator.freeze(arena);
+      assertThat(arena.allocatedBytes()).isPositive();
+
+      locator.refine(new long[] {50, 150}, new long[] {5000, 15000}, 2);
+      assertThat(locator.marksCount()).isEqualTo(12);
+      assertThat(locator.getClosestOffsets(Range.closed(60L, 140L)))
+          .isEqualTo(Range.closed(5000L, 15000L));
+      long refinedSize = arena.allocatedBytes();
+
+      // marks are already known: locator is rebuilt with the same marks and old ones are retired
+      locator.refine(new long[] {50, 150}, new long[] {5000, 15000}, 2);
+      assertThat(locator.marksCount()).isEqualTo(12);
+      assertThat(arena.allocatedBytes()).isEqualTo(refinedSize);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package com.taxi.rides.storage.index;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatObject;
+
+import com.google.common.collect.Range;
+import com.taxi.rides.storage.QueryPredicate;
+import com.taxi.rides.storage.QueryPredicate.Between;
+import com.taxi.rides.storage.QueryPredicate.NotEqual;
+import com.taxi.rides.storage.schema.Column;
+import com.taxi.rides.storage.schema.datatypes.LongDataType;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class IndexStatisticsTest {
+
+  @Test
+  void testPrunedFraction() {
+    assertThat(IndexStatistics.prunedFraction(Range.all(), 100)).isEqualTo(0);
+    assertThat(IndexStatistics.prunedFraction(Range.closedOpen(0L, 0L), 100)).isEqualTo(1);
+    assertThat(IndexStatistics.prunedFraction(Range.closed(10L, 19L), 100)).isEqualTo(0.9);
+    assertThat(IndexStatistics.prunedFraction(Range.greaterThan(49L), 100)).isEqualTo(0.5);
+    assertThat(IndexStatistics.prunedFraction(Range.atLeast(1000L), 100)).isEqualTo(1);
+  }
+
+  @Test
+  void testIndexWhichNeverPrunesIsDisabled() {
+    var column = new Column<>("col", new LongDataType());
+    var notNull = new NotNullColumnIndex<>(column);
+    var bucket = new BucketColumnIndex<>(column, v -> v / 10);
+    for (long i = 0; i < 100; i++) {
+      notNull.addEntry(i, i);
+      bucket.addEntry(i, i);
+    }
+    var statistics = new IndexStatistics();
+    var indexes = new ColumnIndexes(List.of(notNull, bucket), statistics);
+    var predicate =
+        new QueryPredicate()
+            .withBetween(List.of(new Between<>(column, Range.closed(20L, 29L))))
+            .withNotEquals(List.of(new NotEqual<>(column, null)));
+    for (int i = 0; i < IndexStatistics.MIN_EVALUATIONS; i++) {
+      assertThatObject(indexes.evaluatePredicate(predicate, 100))
+          .matches(r -> r.encloses(Range.closed(20L, 29L)));
+    }
+
+    var notNullKey = IndexStatistics.key(notNull);
+    var bucketKey = IndexStatistics.key(bucket);
+    assertThat(statistics.isUseless(notNullKey)).isTrue();
+    assertThat(statistics.isUseless(bucketKey)).isFalse();
+    var notNullEvaluations = IndexStatistics.evaluationKey(notNull, "notEquals");
+    var bucketEvaluations = IndexStatistics.evaluationKey(bucket, "between");
+    assertThat(statistics.score(bucketEvaluations))
+        .isGreaterThan(statistics.score(notNullEvaluations));
+
+    // useless index is evaluated only by rare probes
+    for (int i = 0; i < 100; i++) {
+      indexes.evaluatePredicate(predicate, 100);
+    }
+    var snapshot = statistics.snapshot();
+    assertThat(snapshot.get(notNullEvaluations).evaluations())
+        .isBetween((long) IndexStatistics.MIN_EVALUATIONS, IndexStatistics.MIN_EVALUATIONS + 2L);
+    assertThat(snapshot.get(notNullEvaluations).useless()).isTrue();
+    assertThat(snapshot.get(bucketEvaluations).evaluations())
+        .isEqualTo(IndexStatistics.MIN_EVALUATIONS + 100);
+    assertThat(snapshot.get(bucketEvaluations).avgPruning()).isGreaterThan(0.5);
+  }
+}
@@ -0,0 +1,69 @@
+package com.taxi.rides.storage.index;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.Range;
+import com.taxi.rides.storage.QueryPredicate.Between;
+import com.taxi.rides.storage.schema.Column;
+import com.taxi.rides.storage.schema.datatypes.DataType;
+import com.taxi.rides.storage.schema.datatypes.TimestampDataType;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class MinMaxColumnIndexTest {
+
+  private static final LocalDateTime START = LocalDateTime.of(2020, 1, 1, 0, 0);
+
+  private final Column<LocalDateTime> column = new Column<>("time", new TimestampDataType());
+
+  @Test
+  void testNullValuesAreSkipped() {
+    var single = new MinMaxColumnIndex<>(column);
+    single.addEntry(0, null);
+    single.addEntry(1, START.plusHours(5));
+    single.addEntry(2, START.plusHours(2));
+    var batched = new MinMaxColumnIndex<>(column);
+    batched.addEntries(
+        new long[] {0, 1, 2}, new long[3], new LocalDateTime[] {null, START.plusHours(5), null}, 3);
+    batched.addEntries(
+        new long[] {3, 4}, new long[2], new LocalDateTime[] {START.plusHours(2), null}, 2);
+    var encoded = new MinMaxColumnIndex<>(column);
+    encoded.addEntries(
+        new long[] {0, 1, 2},
+        new long[3],
+        new long[] {DataType.NULL_LONG, epochSecond(START.plusHours(5)), DataType.NULL_LONG},
+        3);
+    encoded.addEntries(new long[] {3}, new long[1], new long[] {DataType.NULL_LONG}, 1);
+    encoded.addEntries(
+        new long[] {4}, new long[1], new long[] {epochSecond(START.plusHours(2))}, 1);
+
+    for (var index : List.of(single, batched, encoded)) {
+      assertThat(evaluate(index, START, START.plusHours(1))).isEqualTo(Range.closedOpen(0L, 0L));
+      assertThat(evaluate(index, START.plusHours(2), START.plusHours(3))).isEqualTo(Range.all());
+      assertThat(evaluate(index, START.plusHours(5), START.plusHours(6))).isEqualTo(Range.all());
+      assertThat(evaluate(index, START.plusHours(6), START.plusHours(7)))
+          .isEqualTo(Range.closedOpen(0L, 0L));
+    }
+  }
+
+  @Test
+  void testIndexWithOnlyNullsMatchesAllRows() {
+    var index = new MinMaxColumnIndex<>(column);
+    index.addEntries(new long[] {0, 1}, new long[2], new LocalDateTime[2], 2);
+    index.addEntries(
+        new long[] {2, 3}, new long[2], new long[] {DataType.NULL_LONG, DataType.NULL_LONG}, 2);
+
+    assertThat(evaluate(index, START, START.plusHours(1))).isEqualTo(Range.all());
+  }
+
+  private Range<Long> evaluate(
+      MinMaxColumnIndex<LocalDateTime> index, LocalDateTime from, LocalDateTime to) {
+    return index.evaluateBetween(new Between<>(column, Range.closed(from, to)));
+  }
+
+  private static long epochSecond(LocalDateTime time) {
+    return time.toEpochSecond(ZoneOffset.UTC);
+  }
+}
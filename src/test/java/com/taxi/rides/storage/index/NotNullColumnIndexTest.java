@@ -1,5 +1,6 @@
 package com.taxi.rides.storage.index;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatObject;
 
 import com.google.common.collect.Range;
@@ -54,4 +55,24 @@ public class NotNullColumnIndexTest {
     assertThatObject(index.evaluateNotEquals(new NotEqual<>(column, null)))
         .matches(r -> r.encloses(Range.closed(1L, 2L)));
   }
+
+  @Test
+  void nullRunsInsideRange() {
+    var column = new Column<>("col", new LongDataType());
+    var index = new NotNullColumnIndex<>(column, 10);
+    for (long i = 0; i < 100; i++) {
+      // long runs [20, 39] and [60, 79], short run [50, 54] and trailing nulls [95, 99]
+      boolean isNull = (i >= 20 && i < 40) || (i >= 50 && i < 55) || (i >= 60 && i < 80) || i >= 95;
+      index.addEntry(i, isNull ? null : i);
+    }
+    index.freeze(IndexArena.heap());
+
+    var predicate = new NotEqual<>(column, (Long) null);
+    assertThat(index.nullRunsCount()).isEqualTo(2);
+    assertThat(index.evaluateNotEqualsRanges(predicate).asRanges())
+        .containsExactly(Range.closed(0L, 19L), Range.closed(40L, 59L), Range.closed(80L, 94L));
+    assertThatObject(index.evaluateNotEquals(predicate)).isEqualTo(Range.closed(0L, 94L));
+    assertThat(index.evaluateNotEqualsRanges(new NotEqual<>(column, 1L)).encloses(Range.all()))
+        .isTrue();
+  }
 }
@@ -0,0 +1,150 @@
+package com.taxi.rides.storage.index;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.google.common.collect.Range;
+import com.taxi.rides.storage.QueryPredicate.Between;
+import com.taxi.rides.storage.schema.Column;
+import com.taxi.rides.storage.schema.datatypes.DataType;
+import com.taxi.rides.storage.schema.datatypes.LongDataType;
+import com.taxi.rides.storage.schema.datatypes.TimestampDataType;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class OutlierMinMaxColumnIndexTest {
+
+  private final Column<Long> column = new Column<>("col", new LongDataType());
+
+  @Test
+  void testOutliersAreReturnedAsRows() {
+    var index = new OutlierMinMaxColumnIndex<>(column, 0.01, 0.99, 16);
+    for (long i = 0; i < 1000; i++) {
+      index.addEntry(i, i * 100, 1000 + i % 100);
+    }
+    // outliers far below and far above the bulk of values
+    index.addEntry(1000, 100_000, 5L);
+    index.addEntry(1001, 100_100, 7L);
+    index.addEntry(1002, 100_200, 1_000_000L);
+    index.freeze(IndexArena.heap());
+
+    assertThat(index.outliersCount()).isEqualTo(3);
+    assertThat(index.evaluateBetweenRanges(between(1050, 1060)).encloses(Range.all())).isTrue();
+    assertThat(index.evaluateBetweenRanges(between(0, 10)).asRanges())
+        .containsExactly(Range.closed(1000L, 1000L), Range.closed(1001L, 1001L));
+    assertThat(index.evaluateBetweenRanges(between(6, 100)).asRanges())
+        .containsExactly(Range.closed(1001L, 1001L));
+    assertThat(index.evaluateBetweenRanges(between(2000, 3000)).isEmpty()).isTrue();
+    assertThat(index.evaluateBetween(between(500_000, 2_000_000)))
+        .isEqualTo(Range.closed(1002L, 1002L));
+  }
+
+  @Test
+  void testOutliersAreLimited() {
+    var index = new OutlierMinMaxColumnIndex<>(column, 0.1, 0.9, 4);
+    for (long i = 0; i < 1000; i++) {
+      index.addEntry(i, i);
+    }
+    index.freeze(IndexArena.heap());
+
+    // quantiles exclude 100 rows on each side, but only 4 of them are kept
+    assertThat(index.outliersCount()).isEqualTo(8);
+    assertThat(index.evaluateBetweenRanges(between(4, 995)).encloses(Range.all())).isTrue();
+    assertThat(index.evaluateBetweenRanges(between(0, 2)).asRanges()).hasSize(3);
+  }
+
+  @Test
+  void testOutliersArePinnedInLocator() {
+    var index = new OutlierMinMaxColumnIndex<>(column, 0.01, 0.99, 16);
+    var locator = new RowOffsetLocator(1000);
+    for (long i = 0; i < 5000; i++) {
+      long value = i == 2500 ? -1 : i % 10;
+      locator.addEntry(i, i * 10);
+      index.addEntry(i, i * 10, value);
+    }
+    locator.freeze();
+    index.pinRows(locator);
+
+    var rows = index.evaluateBetween(between(-10, -1));
+    assertThat(rows).isEqualTo(Range.closed(2500L, 2500L));
+    assertThat(locator.getClosestOffsets(rows)).isEqualTo(Range.closed(25_000L, 25_000L));
+  }
+
+  @Test
+  void testBatchedEntriesFindSameOutliers() {
+    var single = new OutlierMinMaxColumnIndex<>(column, 0.01, 0.99, 16);
+    var batched = new OutlierMinMaxColumnIndex<>(column, 0.01, 0.99, 16);
+    var random = new Random(42);
+    var rowIds = new long[100];
+    var offsets = new long[100];
+    var values = new Long[100];
+    for (int batch = 0; batch < 50; batch++) {
+      for (int i = 0; i < 100; i++) {
+        long rowId = batch * 100L + i;
+        long value = random.nextInt(100) == 0 ? random.nextInt(1_000_000) : random.nextInt(1000);
+        single.addEntry(rowId, rowId * 10, value);
+        rowIds[i] = rowId;
+        offsets[i] = rowId * 10;
+        values[i] = value;
+      }
+      batched.addEntries(rowIds, offsets, values, 100);
+    }
+    single.freeze(IndexArena.heap());
+    batched.freeze(IndexArena.heap());
+
+    assertThat(batched.outliersCount()).isEqualTo(single.outliersCount());
+    for (long from = 0; from < 1_000_000; from += 50_000) {
+      var predicate = between(from, from + 50_000);
+      assertThat(batched.evaluateBetweenRanges(predicate))
+          .isEqualTo(single.evaluateBetweenRanges(predicate));
+    }
+  }
+
+  @Test
+  void testLongBatchesFindSameOutliers() {
+    var timeColumn = new Column<>("time", new TimestampDataType());
+    var single = new OutlierMinMaxColumnIndex<>(timeColumn, 0.01, 0.99, 16);
+    var batched = new OutlierMinMaxColumnIndex<>(timeColumn, 0.01, 0.99, 16);
+    var start = LocalDateTime.of(2020, 1, 1, 0, 0);
+    var random = new Random(42);
+    var rowIds = new long[100];
+    var offsets = new long[100];
+    var values = new long[100];
+    for (int batch = 0; batch < 50; batch++) {
+      for (int i = 0; i < 100; i++) {
+        long rowId = batch * 100L + i;
+        int minutes = random.nextInt(100) == 0 ? random.nextInt(1_000_000) : random.nextInt(1000);
+        var value = random.nextInt(50) == 0 ? null : start.plusMinutes(minutes);
+        single.addEntry(rowId, rowId * 10, value);
+        rowIds[i] = rowId;
+        offsets[i] = rowId * 10;
+        values[i] = value == null ? DataType.NULL_LONG : value.toEpochSecond(ZoneOffset.UTC);
+      }
+      batched.addEntries(rowIds, offsets, values, 100);
+    }
+    single.freeze(IndexArena.heap());
+    batched.freeze(IndexArena.heap());
+
+    assertThat(batched.outliersCount()).isEqualTo(single.outliersCount()).isPositive();
+    for (long from = 0; from < 1_000_000; from += 50_000) {
+      var predicate =
+          new Between<>(
+              timeColumn, Range.closed(start.plusMinutes(from), start.plusMinutes(from + 50_000)));
+      assertThat(batched.evaluateBetweenRanges(predicate))
+          .isEqualTo(single.evaluateBetweenRanges(predicate));
+    }
+  }
+
+  @Test
+  void testEmptyIndexMatchesAllRows() {
+    var index = new OutlierMinMaxColumnIndex<>(column, 0.01, 0.99, 16);
+    index.freeze(IndexArena.heap());
+
+    assertThat(index.evaluateBetweenRanges(between(0, 10)).encloses(Range.all())).isTrue();
+  }
+
+  private Between<Long> between(long from, long to) {
+    return new Between<>(column, Range.closed(from, to));
+  }
+}
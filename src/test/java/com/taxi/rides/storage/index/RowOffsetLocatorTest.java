@@ -1,8 +1,12 @@
 package com.taxi.rides.storage.index;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatObject;
 
 import com.google.common.collect.Range;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 import org.junit.jupiter.api.Test;
 
 public class RowOffsetLocatorTest {
@@ -33,4 +37,65 @@ public class RowOffsetLocatorTest {
       }
     }
   }
+
+  @Test
+  void testFrozenLocatorReturnsSameOffsets() {
+    var building = new RowOffsetLocator(7);
+    var frozen = new RowOffsetLocator(7);
+    long offset = 0;
+    for (long i = 0; i < 1000; i++) {
+      building.addEntry(i, offset);
+      frozen.addEntry(i, offset);
+      offset += ThreadLocalRandom.current().nextInt(50, 150);
+    }
+    frozen.freeze();
+
+    for (long i = -10; i < 1010; i += 3) {
+      for (var range :
+          List.of(Range.closed(i, i + 20), Range.atLeast(i), Range.atMost(i), Range.<Long>all())) {
+        assertThat(frozen.getClosestOffsets(range)).isEqualTo(building.getClosestOffsets(range));
+      }
+    }
+    assertThat(frozen.memoryUsage()).isLessThan(building.memoryUsage());
+  }
+
+  @Test
+  void testByteGranularity() {
+    var rowLocator = new RowOffsetLocator(1000, 1000);
+    for (long i = 0; i < 1000; i++) {
+      rowLocator.addEntry(i, i * 100);
+    }
+    // mark placed each 10 rows because of bytes limit
+    assertThat(rowLocator.marksCount()).isEqualTo(100);
+  }
+
+  @Test
+  void testRefinement() {
+    var rowLocator = new RowOffsetLocator(100);
+    for (long i = 0; i < 1000; i++) {
+      rowLocator.addEntry(i, i * 10);
+    }
+    rowLocator.freeze();
+    assertThat(rowLocator.getClosestOffsets(Range.closed(150L, 420L)))
+        .isEqualTo(Range.closed(1000L, 5000L));
+    assertThat(rowLocator.hotRegions(2, 10)).isEmpty();
+    assertThat(rowLocator.getClosestOffsets(Range.closed(155L, 410L)))
+        .isEqualTo(Range.closed(1000L, 5000L));
+
+    var hot = rowLocator.hotRegions(2, 10);
+    assertThat(hot)
+        .containsExactly(
+            new RowOffsetLocator.Region(100, 1000, 200, 2000),
+            new RowOffsetLocator.Region(400, 4000, 500, 5000));
+
+    var rowIds = new long[] {110, 120, 130, 140, 150, 160, 170, 180, 190, 410, 420};
+    var offsets = Arrays.stream(rowIds).map(rowId -> rowId * 10).toArray();
+    rowLocator.refine(rowIds, offsets, rowIds.length);
+    assertThat(rowLocator.marksCount()).isEqualTo(21);
+    assertThat(rowLocator.hotRegions(2, 10)).isEmpty();
+    assertThat(rowLocator.getClosestOffsets(Range.closed(150L, 420L)))
+        .isEqualTo(Range.closed(1500L, 4200L));
+    assertThat(rowLocator.getClosestOffsets(Range.closed(155L, 410L)))
+        .isEqualTo(Range.closed(1500L, 4100L));
+  }
 }
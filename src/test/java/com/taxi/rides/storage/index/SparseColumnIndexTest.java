@@ -1,11 +1,13 @@
 package com.taxi.rides.storage.index;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatObject;
 
 import com.google.common.collect.Range;
 import com.taxi.rides.storage.QueryPredicate.Between;
 import com.taxi.rides.storage.schema.Column;
 import com.taxi.rides.storage.schema.datatypes.LongDataType;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 
 public class SparseColumnIndexTest {
@@ -82,4 +84,23 @@ public class SparseColumnIndexTest {
     assertThatObject(index.evaluateBetween(new Between<>(column, Range.closedOpen(0L, 0L))))
         .matches(r -> r.equals(Range.closed(0L, 0L)));
   }
+
+  @Test
+  void testFrozenIndexReturnsSameRanges() {
+    var column = new Column<>("col", new LongDataType());
+    var building = new SparseColumnIndex<>(column, 16);
+    var frozen = new SparseColumnIndex<>(column, 16);
+    for (long i = 0; i < 1000; i++) {
+      building.addEntry(i, i * 3);
+      frozen.addEntry(i, i * 3);
+    }
+    frozen.freeze();
+
+    for (long i = -50; i < 3050; i += 7) {
+      for (var range : List.of(Range.closed(i, i + 40), Range.atLeast(i), Range.atMost(i))) {
+        assertThat(frozen.evaluateBetween(new Between<>(column, range)))
+            .isEqualTo(building.evaluateBetween(new Between<>(column, range)));
+      }
+    }
+  }
 }
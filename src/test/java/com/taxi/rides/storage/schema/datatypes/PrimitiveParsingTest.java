@@ -0,0 +1,107 @@
+package com.taxi.rides.storage.schema.datatypes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+public class PrimitiveParsingTest {
+
+  private static final DateTimeFormatter DATE_FORMATTER =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+  @Test
+  void testIntegers() {
+    var byteType = new ByteDataType();
+    assertThat(byteType.parseLong(" 12 ")).isEqualTo(12);
+    assertThat(byteType.parseLong("-128")).isEqualTo(-128);
+    assertThat(byteType.parseDouble("+7")).isEqualTo(7.0);
+    assertThat(byteType.parseFrom("3")).isEqualTo((byte) 3);
+    for (String invalid : new String[] {"", " ", "128", "1.5", "-", "abc", null}) {
+      assertThat(byteType.parseLong(invalid)).isEqualTo(DataType.NULL_LONG);
+    }
+    assertThat(byteType.parseDouble("")).isNaN();
+
+    var longType = new LongDataType();
+    assertThat(longType.parseLong(String.valueOf(Long.MAX_VALUE))).isEqualTo(Long.MAX_VALUE);
+    assertThat(longType.parseLong("9223372036854775808")).isEqualTo(DataType.NULL_LONG);
+    assertThat(longType.parseFrom("x1")).isNull();
+    var bytes = "xx-42,".getBytes(StandardCharsets.US_ASCII);
+    assertThat(longType.parseLong(bytes, 2, 3)).isEqualTo(-42);
+    assertThat(new ShortDataType().parseLong(bytes, 0, 5)).isEqualTo(DataType.NULL_LONG);
+  }
+
+  @RepeatedTest(100)
+  void testDoubles() {
+    var random = ThreadLocalRandom.current();
+    var doubleType = new DoubleDataType();
+    var floatType = new FloatDataType();
+    for (String value :
+        new String[] {
+          String.valueOf(random.nextDouble(-1000, 1000)),
+          String.valueOf(random.nextInt(0, 100) / 100.0),
+          String.valueOf(random.nextDouble() * Math.pow(10, random.nextInt(-300, 300))),
+          String.format("%.2f", random.nextDouble(0, 100)),
+          "1e5",
+          ".5",
+          "NaN",
+          "-Infinity"
+        }) {
+      var bytes = (" " + value + " ").getBytes(StandardCharsets.US_ASCII);
+      // boxed values are compared, so NaN is equal to itself
+      Double expected = Double.parseDouble(value);
+      assertThat(Double.valueOf(doubleType.parseDouble(value))).isEqualTo(expected);
+      assertThat(Double.valueOf(doubleType.parseDouble(bytes, 0, bytes.length)))
+          .isEqualTo(expected);
+      assertThat(Double.valueOf(floatType.parseDouble(bytes, 0, bytes.length)))
+          .isEqualTo(Double.valueOf(Float.parseFloat(value)));
+    }
+    assertThat(doubleType.parseDouble("1.2.3")).isNaN();
+    assertThat(doubleType.parseDouble(new byte[] {'1', 'e'}, 0, 2)).isNaN();
+    assertThat(doubleType.parseDouble(new byte[0], 0, 0)).isNaN();
+  }
+
+  @RepeatedTest(100)
+  void testTimestamps() {
+    var random = ThreadLocalRandom.current();
+    var timestamp =
+        LocalDateTime.ofEpochSecond(random.nextLong(0, 4_000_000_000L), 0, ZoneOffset.UTC);
+    var value = timestamp.format(DATE_FORMATTER);
+    var type = new TimestampDataType();
+    assertThat(type.parseLong(value)).isEqualTo(timestamp.toEpochSecond(ZoneOffset.UTC));
+    var bytes = value.getBytes(StandardCharsets.US_ASCII);
+    assertThat(type.parseLong(bytes, 0, bytes.length))
+        .isEqualTo(timestamp.toEpochSecond(ZoneOffset.UTC));
+    assertThat(type.parseLong("2021-02-29 10:00:00")).isEqualTo(DataType.NULL_LONG);
+    assertThat(type.parseLong("2021-02-28")).isEqualTo(DataType.NULL_LONG);
+    assertThatThrownBy(() -> type.parseDouble(value))
+        .isInstanceOf(UnsupportedOperationException.class);
+  }
+
+  @Test
+  void testDecimals() {
+    var cents = new DecimalDataType(2);
+    assertThat(cents.parseLong("12.50")).isEqualTo(1250);
+    assertThat(cents.parseLong(" -2.5 ")).isEqualTo(-250);
+    assertThat(cents.parseLong("7")).isEqualTo(700);
+    assertThat(cents.parseLong(".05")).isEqualTo(5);
+    // extra digits are rounded half up
+    assertThat(cents.parseLong("0.125")).isEqualTo(13);
+    assertThat(cents.parseLong("-0.125")).isEqualTo(-13);
+    assertThat(cents.parseLong("0.1249")).isEqualTo(12);
+    for (String invalid : new String[] {"", ".", "1.2.3", "1e5", "-", "92233720368547758.08"}) {
+      assertThat(cents.parseLong(invalid)).isEqualTo(DataType.NULL_LONG);
+    }
+    var bytes = "x,99.99,".getBytes(StandardCharsets.US_ASCII);
+    assertThat(cents.parseLong(bytes, 2, 5)).isEqualTo(9999);
+    assertThat(cents.parseDouble(bytes, 2, 5)).isEqualTo(99.99);
+    assertThat(cents.parseFrom("1.1")).isEqualTo(new BigDecimal("1.10"));
+  }
+}
@@ -0,0 +1,61 @@
+package com.taxi.rides.storage.schema.datatypes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+public class StringDictionaryTest {
+
+  @Test
+  void testCodesAreDense() {
+    var dictionary = new StringDictionary();
+    assertThat(dictionary.encode("N")).isEqualTo(0);
+    assertThat(dictionary.encode("Y")).isEqualTo(1);
+    assertThat(dictionary.encode(new StringBuilder("N"))).isEqualTo(0);
+    var bytes = ",Y,\u00dcn\u00ef,".getBytes(StandardCharsets.UTF_8);
+    assertThat(dictionary.encode(bytes, 1, 1)).isEqualTo(1);
+    assertThat(dictionary.encode(bytes, 3, bytes.length - 4)).isEqualTo(2);
+    assertThat(dictionary.codeOf("\u00dcn\u00ef")).isEqualTo(2);
+    assertThat(dictionary.codeOf("X")).isEqualTo(StringDictionary.NO_CODE);
+    assertThat(dictionary.decode(2)).isEqualTo("\u00dcn\u00ef");
+    assertThat(dictionary.size()).isEqualTo(3);
+  }
+
+  @Test
+  void testConcurrentEncoding() {
+    var dictionary = new StringDictionary();
+    var futures = new ArrayList<CompletableFuture<HashMap<String, Integer>>>();
+    for (int t = 0; t < 4; t++) {
+      futures.add(
+          CompletableFuture.supplyAsync(
+              () -> {
+                var codes = new HashMap<String, Integer>();
+                for (int i = 0; i < 1000; i++) {
+                  codes.put("v" + i, dictionary.encode("v" + i));
+                }
+                return codes;
+              }));
+    }
+    var expected = futures.get(0).join();
+    for (var future : futures) {
+      assertThat(future.join()).isEqualTo(expected);
+    }
+    assertThat(dictionary.size()).isEqualTo(1000);
+    expected.forEach((value, code) -> assertThat(dictionary.decode(code)).isEqualTo(value));
+  }
+
+  @Test
+  void testDictionaryDataType() {
+    var dataType = new DictionaryDataType();
+    assertThat(dataType.parseLong(" Y ")).isEqualTo(0);
+    assertThat(dataType.parseLong("N".getBytes(StandardCharsets.US_ASCII), 0, 1)).isEqualTo(1);
+    assertThat(dataType.parseLong("")).isEqualTo(DataType.NULL_LONG);
+    assertThat(dataType.parseLong(null)).isEqualTo(DataType.NULL_LONG);
+    assertThat(dataType.parseFrom("N")).isSameAs(dataType.decode(1));
+    assertThat(dataType.codeOf("Y")).isEqualTo(0);
+  }
+}